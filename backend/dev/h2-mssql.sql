@@ -0,0 +1,57 @@
+-- What H2 (MODE=MSSQLServer) lacks for this app to run on it: the T-SQL date functions the intents use,
+-- and just enough of SQL Server's catalog views for SchemaService (tables, columns, foreign keys).
+-- Run after the store tables exist (dev/replicas-local.sql and the load-test generator do).
+
+CREATE ALIAS IF NOT EXISTS SYSUTCDATETIME AS '
+java.time.LocalDateTime now() {
+    return java.time.LocalDateTime.now(java.time.ZoneOffset.UTC);
+}';
+
+CREATE ALIAS IF NOT EXISTS EOMONTH AS '
+java.time.LocalDate eomonth(java.time.LocalDate day, int months) {
+    java.time.LocalDate d = day.plusMonths(months);
+    return d.withDayOfMonth(d.lengthOfMonth());
+}';
+
+CREATE SCHEMA IF NOT EXISTS sys;
+
+CREATE TABLE IF NOT EXISTS sys.schemas (schema_id INT PRIMARY KEY, name VARCHAR(128));
+MERGE INTO sys.schemas KEY (schema_id) VALUES (1, 'dbo');
+
+CREATE TABLE IF NOT EXISTS sys.objects (
+  object_id INT PRIMARY KEY,
+  name VARCHAR(128),
+  schema_id INT,
+  type CHAR(2),
+  modify_date DATETIME2
+);
+MERGE INTO sys.objects KEY (object_id) VALUES
+  (1, 'customers', 1, 'U', CURRENT_TIMESTAMP), (2, 'products', 1, 'U', CURRENT_TIMESTAMP),
+  (3, 'orders', 1, 'U', CURRENT_TIMESTAMP), (4, 'order_items', 1, 'U', CURRENT_TIMESTAMP),
+  (101, 'fk_orders_customers', 1, 'F', CURRENT_TIMESTAMP),
+  (102, 'fk_items_orders', 1, 'F', CURRENT_TIMESTAMP),
+  (103, 'fk_items_products', 1, 'F', CURRENT_TIMESTAMP);
+
+CREATE VIEW IF NOT EXISTS sys.tables AS SELECT object_id, name, schema_id FROM sys.objects WHERE type = 'U';
+
+CREATE VIEW IF NOT EXISTS sys.foreign_keys AS SELECT object_id, name, schema_id FROM sys.objects WHERE type = 'F';
+
+CREATE VIEW IF NOT EXISTS sys.columns AS
+  SELECT o.object_id, CAST(c.ORDINAL_POSITION AS INT) AS column_id, c.COLUMN_NAME AS name
+  FROM INFORMATION_SCHEMA.COLUMNS c
+  JOIN sys.objects o ON o.name = c.TABLE_NAME AND o.type = 'U'
+  WHERE c.TABLE_SCHEMA = 'dbo';
+
+CREATE TABLE IF NOT EXISTS sys.foreign_key_columns (
+  constraint_object_id INT,
+  constraint_column_id INT,
+  parent_object_id INT,
+  parent_column_id INT,
+  referenced_object_id INT,
+  referenced_column_id INT
+);
+DELETE FROM sys.foreign_key_columns;
+INSERT INTO sys.foreign_key_columns VALUES
+  (101, 1, 3, 2, 1, 1),  -- orders.customer_id -> customers.id
+  (102, 1, 4, 1, 3, 1),  -- order_items.order_id -> orders.id
+  (103, 1, 4, 2, 2, 1);  -- order_items.product_id -> products.id
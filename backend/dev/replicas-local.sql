@@ -0,0 +1,49 @@
+-- Seed for the replicas-local profile (application-replicas-local.yml): the same small store in every
+-- in-memory H2 database (primary and replicas), in SQL Server compatibility mode. Paths are relative to
+-- backend/, where bootRun starts.
+CREATE SCHEMA IF NOT EXISTS dbo;
+
+CREATE TABLE IF NOT EXISTS dbo.customers (
+  id INT PRIMARY KEY,
+  name VARCHAR(100) NOT NULL,
+  email VARCHAR(200)
+);
+
+CREATE TABLE IF NOT EXISTS dbo.products (
+  id INT PRIMARY KEY,
+  name VARCHAR(100) NOT NULL,
+  price DECIMAL(10, 2) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS dbo.orders (
+  id INT PRIMARY KEY,
+  customer_id INT NOT NULL,
+  status VARCHAR(20) NOT NULL,
+  created_at DATETIME2 NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS dbo.order_items (
+  order_id INT NOT NULL,
+  product_id INT NOT NULL,
+  qty INT NOT NULL,
+  unit_price DECIMAL(10, 2) NOT NULL,
+  discount DECIMAL(4, 3) NOT NULL DEFAULT 0
+);
+
+MERGE INTO dbo.customers KEY (id) VALUES
+  (1, 'Ada', 'ada@example.com'), (2, 'Grace', 'grace@example.com'), (3, 'Linus', 'linus@example.com');
+
+MERGE INTO dbo.products KEY (id) VALUES
+  (1, 'Linen shirt', 49.00), (2, 'Denim jacket', 89.00), (3, 'Wool scarf', 25.00), (4, 'Canvas sneakers', 65.00);
+
+MERGE INTO dbo.orders KEY (id)
+  SELECT X, MOD(X, 3) + 1, CASE WHEN MOD(X, 10) = 0 THEN 'cancelled' ELSE 'completed' END,
+         DATEADD(HOUR, -X * 7, CURRENT_TIMESTAMP)
+  FROM SYSTEM_RANGE(1, 400);
+
+DELETE FROM dbo.order_items;
+INSERT INTO dbo.order_items
+  SELECT X, MOD(X * 7, 4) + 1, MOD(X, 3) + 1, p.price, CASE WHEN MOD(X, 5) = 0 THEN 0.1 ELSE 0 END
+  FROM SYSTEM_RANGE(1, 400) JOIN dbo.products p ON p.id = MOD(X * 7, 4) + 1;
+
+RUNSCRIPT FROM 'dev/h2-mssql.sql';
@@ -0,0 +1,86 @@
+package com.example.clothesstoreagent.bench;
+
+import com.example.clothesstoreagent.config.AppProps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/** Shared inputs for the benchmarks: prompt/SQL corpora from src/jmh/resources and synthetic result sets. */
+final class Corpus {
+
+    private static final String[] STATUSES = {"completed", "completed", "completed", "pending", "cancelled"};
+    private static final String[] CATEGORIES = {"Apparel", "Footwear", "Accessories", "Outerwear", "Electronics"};
+
+    private Corpus() { }
+
+    static List<String> prompts() {
+        List<String> out = new ArrayList<>();
+        for (String line : read("/bench/prompts.txt").split("\n")) {
+            if (!line.isBlank() && !line.startsWith("#")) out.add(line.trim());
+        }
+        return out;
+    }
+
+    static List<String> queries() {
+        List<String> out = new ArrayList<>();
+        String text = read("/bench/queries.sql");
+        for (String stmt : text.substring(text.indexOf('\n') + 1).split("(?m)^-- @@\\s*$")) {
+            if (!stmt.isBlank()) out.add(stmt.strip());
+        }
+        return out;
+    }
+
+    /** Same guardrails as the shipped application.yml. */
+    static AppProps props() {
+        AppProps props = new AppProps();
+        props.setDisallowSqlKeywords(List.of(
+                "INSERT", "UPDATE", "DELETE", "DROP", "ALTER", "TRUNCATE", "CREATE", "GRANT", "REVOKE",
+                "MERGE", "EXEC", "EXECUTE", "INTO"));
+        props.setAllowTables(List.of("dbo.customers", "dbo.products", "dbo.orders", "dbo.order_items"));
+        return props;
+    }
+
+    static List<String> columns() {
+        return List.of("order_id", "created_at", "status", "customer", "product", "category", "qty", "unit_price", "revenue");
+    }
+
+    /** Rows shaped like a JDBC order-line result (boxed values in insertion-ordered maps), fixed seed. */
+    static List<Map<String, Object>> rows(int n) {
+        Random rnd = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        List<String> cols = columns();
+        List<Map<String, Object>> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int qty = 1 + rnd.nextInt(5);
+            BigDecimal price = BigDecimal.valueOf(500 + rnd.nextInt(19_500), 2);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(cols.get(0), 100_000L + i);
+            row.put(cols.get(1), Timestamp.valueOf(start.plusMinutes(i * 7L)));
+            row.put(cols.get(2), STATUSES[rnd.nextInt(STATUSES.length)]);
+            row.put(cols.get(3), "Customer " + rnd.nextInt(5_000));
+            row.put(cols.get(4), "Product " + rnd.nextInt(800));
+            row.put(cols.get(5), CATEGORIES[rnd.nextInt(CATEGORIES.length)]);
+            row.put(cols.get(6), qty);
+            row.put(cols.get(7), price);
+            row.put(cols.get(8), price.multiply(BigDecimal.valueOf(qty)).setScale(2, RoundingMode.HALF_UP));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static String read(String resource) {
+        try (InputStream in = Corpus.class.getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalStateException("Missing benchmark resource " + resource);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.clothesstoreagent.bench;
+
+import com.example.clothesstoreagent.nlq.NlqProvider;
+import com.example.clothesstoreagent.nlq.RuleBasedProvider;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** {@link RuleBasedProvider#compile} over the prompt corpus, one prompt per op (hits and misses alike). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NlqCompileBenchmark {
+
+    private NlqProvider provider;
+    private List<String> prompts;
+    private int next;
+
+    @Setup
+    public void setup() {
+        provider = new RuleBasedProvider();
+        prompts = Corpus.prompts();
+    }
+
+    @Benchmark
+    public void compile(Blackhole bh) {
+        String prompt = prompts.get(next);
+        next = (next + 1) % prompts.size();
+        try {
+            bh.consume(provider.compile(prompt));
+        } catch (IllegalArgumentException unrecognized) {
+            bh.consume(unrecognized);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.clothesstoreagent.bench;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.nlq.NlqMetrics;
+import com.example.clothesstoreagent.nlq.NlqProvider;
+import com.example.clothesstoreagent.nlq.RuleBasedProvider;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link NlqMetrics} on the request path: {@code bare} compiles a prompt, {@code instrumented} does the
+ * same plus everything the controller records for an executed request (recorder, stages, result, histogram
+ * timers in a Prometheus registry). The difference is the per-request overhead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NlqMetricsBenchmark {
+
+    private NlqProvider provider;
+    private NlqMetrics metrics;
+    private List<String> prompts;
+    private Map<String, Object> result;
+    private int next;
+
+    @Setup
+    public void setup() {
+        provider = new RuleBasedProvider();
+        metrics = new NlqMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), new AppProps());
+        // Recognized prompts only, so both variants do the same work.
+        prompts = Corpus.prompts().stream().filter(p -> {
+            try {
+                provider.compile(p);
+                return true;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }).toList();
+        result = Map.of("rowCount", 25, "truncated", false);
+    }
+
+    @Benchmark
+    public Object bare() {
+        return provider.compile(nextPrompt());
+    }
+
+    @Benchmark
+    public Object instrumented() {
+        NlqMetrics.Recorder rec = metrics.start();
+        NlqProvider.Plan plan = provider.compile(nextPrompt());
+        rec.compiled(plan.intent);
+        rec.stage("validate", 2_000);
+        rec.stage("execute", 150_000);
+        rec.stage("map", 40_000);
+        rec.result(result);
+        rec.ready();
+        metrics.finish(rec);
+        return plan;
+    }
+
+    private String nextPrompt() {
+        String p = prompts.get(next);
+        next = (next + 1) % prompts.size();
+        return p;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.clothesstoreagent.bench;
+
+import com.example.clothesstoreagent.ClothesStoreAgentApplication;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+
+/**
+ * Time to first byte of {@code POST /api/nlq} against {@code POST /api/nlq/events}, end to end: the app runs
+ * in-process on an H2 copy of the store ({@code dev/replicas-local.sql}) with the Azure provider pointed at a
+ * local stub that answers like a chat completion, first token after {@code -PfirstTokenMillis} then one
+ * 4-character token per {@code -PtokenMillis}. Run with {@code ./gradlew nlqTtfb}; prints percentiles in ms.
+ */
+public class NlqTtfb {
+
+    private static final String PLAN = "{\"sql\":\"SELECT TOP 300 o.id, o.customer_id, o.status, o.created_at "
+            + "FROM dbo.orders o WHERE o.status = 'completed' ORDER BY o.created_at DESC\",\"params\":{}}";
+    private static final String PROMPT = "{\"prompt\":\"latest 300 completed orders\"}";
+
+    public static void main(String[] args) throws Exception {
+        int firstTokenMillis = Integer.getInteger("firstTokenMillis", 400);
+        int tokenMillis = Integer.getInteger("tokenMillis", 15);
+        int runs = Integer.getInteger("runs", 20);
+
+        HttpServer stub = stubLlm(firstTokenMillis, tokenMillis);
+        ConfigurableApplicationContext app = SpringApplication.run(ClothesStoreAgentApplication.class,
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:ttfb;MODE=MSSQLServer;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1;"
+                        + "INIT=RUNSCRIPT FROM 'dev/replicas-local.sql'",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--app.nlqProvider=azure",
+                "--app.azureOpenaiEndpoint=http://127.0.0.1:" + stub.getAddress().getPort(),
+                "--app.azureOpenaiApiKey=stub",
+                "--app.azureOpenaiDeployment=stub",
+                "--app.azureOpenaiApiVersion=2024-06-01",
+                // Every request must reach the stub; H2 has no SHOWPLAN, and column sampling is T-SQL
+                "--app.nlqPlanCacheEnabled=false",
+                "--app.schemaSamplesPerColumn=0",
+                "--app.admissionEnabled=false",
+                "--app.rollupEnabled=false",
+                "--logging.level.root=WARN");
+        try {
+            String base = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port");
+            HttpClient http = HttpClient.newHttpClient();
+            for (int i = 0; i < 3; i++) {
+                time(http, base + "/api/nlq");
+                time(http, base + "/api/nlq/events");
+            }
+            report("/api/nlq", http, base + "/api/nlq", runs);
+            report("/api/nlq/events", http, base + "/api/nlq/events", runs);
+        } finally {
+            app.close();
+            stub.stop(0);
+        }
+    }
+
+    private static void report(String name, HttpClient http, String url, int runs) throws Exception {
+        Map<String, List<Double>> marks = new LinkedHashMap<>();
+        for (int i = 0; i < runs; i++) {
+            time(http, url).forEach((k, v) -> marks.computeIfAbsent(k, x -> new ArrayList<>()).add(v));
+        }
+        System.out.printf("%n%s (%d runs, ms)%n%-14s %8s %8s %8s%n", name, runs, "mark", "p50", "p95", "max");
+        marks.forEach((k, v) -> {
+            Collections.sort(v);
+            System.out.printf("%-14s %8.1f %8.1f %8.1f%n", k, pct(v, 0.5), pct(v, 0.95), v.get(v.size() - 1));
+        });
+    }
+
+    /** Milliseconds from sending to the first byte, to the first line of each event type, and to the end. */
+    private static Map<String, Double> time(HttpClient http, String url) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(PROMPT))
+                .build();
+        Map<String, Double> out = new LinkedHashMap<>();
+        long started = System.nanoTime();
+        HttpResponse<InputStream> resp = http.send(req, HttpResponse.BodyHandlers.ofInputStream());
+        try (PushbackInputStream in = new PushbackInputStream(resp.body())) {
+            int first = in.read();
+            out.put("first byte", millis(started));
+            if (first < 0) return out;
+            in.unread(first);
+            BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.startsWith("event:")) {
+                    String event = "event " + line.substring(6).trim();
+                    if (!out.containsKey(event)) out.put(event, millis(started));
+                }
+            }
+        }
+        out.put("complete", millis(started));
+        return out;
+    }
+
+    private static HttpServer stubLlm(int firstTokenMillis, int tokenMillis) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            List<String> tokens = new ArrayList<>();
+            for (int i = 0; i < PLAN.length(); i += 4) tokens.add(PLAN.substring(i, Math.min(PLAN.length(), i + 4)));
+            try {
+                if (body.contains("\"stream\":true")) streamed(exchange, tokens, firstTokenMillis, tokenMillis);
+                else whole(exchange, firstTokenMillis + (long) tokens.size() * tokenMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static void whole(HttpExchange exchange, long delayMillis) throws IOException, InterruptedException {
+        Thread.sleep(delayMillis);
+        byte[] out = ("{\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":"
+                + quote(PLAN) + "}}]}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, out.length);
+        exchange.getResponseBody().write(out);
+    }
+
+    private static void streamed(HttpExchange exchange, List<String> tokens, int firstTokenMillis, int tokenMillis)
+            throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        Thread.sleep(firstTokenMillis);
+        for (String token : tokens) {
+            String chunk = "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":" + quote(token) + "}}]}\n\n";
+            out.write(chunk.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            Thread.sleep(tokenMillis);
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String quote(String s) {
+        return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static double millis(long startedNanos) {
+        return (System.nanoTime() - startedNanos) / 1e6;
+    }
+
+    private static double pct(List<Double> sorted, double p) {
+        return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(p * sorted.size()) - 1));
+    }
+}
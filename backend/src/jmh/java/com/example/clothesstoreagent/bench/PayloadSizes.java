@@ -0,0 +1,39 @@
+package com.example.clothesstoreagent.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Prints the wire size of a {@code /api/query} response per format, raw and gzipped, for the same row counts
+ * as {@link ResultSerializationBenchmark}. Run with {@code ./gradlew payloadSizes}.
+ */
+public class PayloadSizes {
+
+    private static final List<String> FORMATS =
+            List.of("indented", "compact", "columnar", "cbor", "cbor-columnar", "streaming");
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%8s  %-14s %12s %12s %8s%n", "rows", "format", "bytes", "gzip bytes", "vs indented");
+        for (int rows : new int[]{1000, 100_000}) {
+            Map<String, Object> response = ResultSerializationBenchmark.response(Corpus.columns(), Corpus.rows(rows));
+            long baseline = 0;
+            for (String format : FORMATS) {
+                ObjectMapper om = ResultSerializationBenchmark.mapper(format);
+                ByteArrayOutputStream raw = new ByteArrayOutputStream();
+                ResultSerializationBenchmark.write(format, om, response, raw);
+                ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+                try (GZIPOutputStream gz = new GZIPOutputStream(zipped, 8192)) {
+                    raw.writeTo(gz);
+                }
+                if (baseline == 0) baseline = raw.size();
+                System.out.printf("%8d  %-14s %12d %12d %7.0f%%%n",
+                        rows, format, raw.size(), zipped.size(), 100.0 * raw.size() / baseline);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.clothesstoreagent.bench;
+
+import com.example.clothesstoreagent.service.JsonResultWriter;
+import com.example.clothesstoreagent.service.ResultLayout;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serializing a {@code /api/query} response. {@code indented} is {@code APP_JSON_INDENT=true}, {@code compact}
+ * the default, {@code columnar} is {@code ?layout=columnar}, {@code cbor*} the same with
+ * {@code Accept: application/cbor}, and {@code streaming} the row-at-a-time {@link JsonResultWriter} used by
+ * the stream endpoints. {@code gzip} adds response compression as Tomcat would do it.
+ * Output goes to a counting sink, so the numbers are serializer (and compressor) cost only; the returned
+ * value is the payload size. For sizes alone, run {@link PayloadSizes}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResultSerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"indented", "compact", "columnar", "cbor", "cbor-columnar", "streaming"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private ObjectMapper om;
+    private Map<String, Object> response;
+    private List<String> columns;
+    private List<Map<String, Object>> data;
+
+    @Setup
+    public void setup() {
+        om = mapper(format);
+        columns = Corpus.columns();
+        data = Corpus.rows(rows);
+        response = response(columns, data);
+    }
+
+    static ObjectMapper mapper(String format) {
+        ObjectMapper om = format.startsWith("cbor")
+                ? Jackson2ObjectMapperBuilder.cbor().build()
+                : Jackson2ObjectMapperBuilder.json().build();
+        if ("indented".equals(format)) om.enable(SerializationFeature.INDENT_OUTPUT);
+        return om;
+    }
+
+    static Map<String, Object> response(List<String> columns, List<Map<String, Object>> data) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("columns", columns);
+        response.put("rowCount", data.size());
+        response.put("truncated", false);
+        response.put("rows", data);
+        return response;
+    }
+
+    @Benchmark
+    public long serialize() throws IOException {
+        CountingSink sink = new CountingSink();
+        OutputStream out = gzip ? new GZIPOutputStream(sink, 8192) : sink;
+        write(format, om, response, out);
+        out.close();
+        return sink.count;
+    }
+
+    static void write(String format, ObjectMapper om, Map<String, Object> response, OutputStream out) throws IOException {
+        if ("streaming".equals(format)) {
+            @SuppressWarnings("unchecked")
+            List<String> columns = (List<String>) response.get("columns");
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> data = (List<Map<String, Object>>) response.get("rows");
+            JsonResultWriter writer = new JsonResultWriter(om, out, false, Map.of());
+            writer.begin(columns);
+            Object[] row = new Object[columns.size()];
+            for (Map<String, Object> r : data) {
+                int i = 0;
+                for (Object v : r.values()) row[i++] = v;
+                writer.row(row);
+            }
+            writer.end(data.size(), false, null);
+        } else {
+            om.writeValue(out, format.endsWith("columnar") ? ResultLayout.columnar(response) : response);
+        }
+    }
+
+    static final class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.clothesstoreagent.bench;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.service.QueryService;
+import com.example.clothesstoreagent.service.SqlValidator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QueryService#validate} over the SQL corpus, one statement per op (accepted and rejected alike),
+ * with the verdict cache on (steady state for generated SQL) and off (first sight of each statement).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValidateBenchmark {
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private QueryService service;
+    private List<String> queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        AppProps props = Corpus.props();
+        props.setSqlValidationCacheSize(cached ? 4096 : 0);
+        // validate() only needs the validator; no pools, result cache, cursors or admission.
+        service = new QueryService(null, props, null, new SqlValidator(props), null, null);
+        queries = Corpus.queries();
+    }
+
+    @Benchmark
+    public void validate(Blackhole bh) {
+        String sql = queries.get(next);
+        next = (next + 1) % queries.size();
+        try {
+            service.validate(sql);
+            bh.consume(true);
+        } catch (IllegalArgumentException rejected) {
+            bh.consume(rejected);
+        }
+    }
+}
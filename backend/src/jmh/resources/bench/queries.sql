@@ -0,0 +1,66 @@
+-- Statements separated by lines containing only "-- @@". Mix of accepted and rejected SQL.
+SELECT TOP 10 name FROM sys.tables WHERE name LIKE :like
+-- @@
+SELECT TOP 5
+  p.name,
+  SUM(oi.qty * oi.unit_price * (1 - oi.discount)) AS revenue
+FROM dbo.orders o
+JOIN dbo.order_items oi ON oi.order_id = o.id
+JOIN dbo.products p     ON p.id = oi.product_id
+WHERE o.status = 'completed'
+  AND o.created_at >= DATEADD(DAY,1,EOMONTH(SYSUTCDATETIME(),-2))
+  AND o.created_at <  DATEADD(DAY,1,EOMONTH(SYSUTCDATETIME(),-1))
+GROUP BY p.name
+ORDER BY revenue DESC
+-- @@
+SELECT
+  CAST(o.created_at AS date) AS [day],
+  SUM(oi.qty * oi.unit_price * (1 - oi.discount)) AS revenue
+FROM dbo.orders o
+JOIN dbo.order_items oi ON oi.order_id = o.id
+WHERE o.status = 'completed'
+  AND o.created_at >= DATEADD(DAY,-7,CAST(SYSUTCDATETIME() AS date))
+GROUP BY CAST(o.created_at AS date)
+ORDER BY [day]
+-- @@
+WITH first_order AS (
+  SELECT customer_id, MIN(created_at) AS first_order_at
+  FROM dbo.orders
+  WHERE status = 'completed'
+  GROUP BY customer_id
+)
+SELECT
+  SUM(CASE WHEN f.first_order_at >= :start_week AND f.first_order_at < :end_week THEN 1 ELSE 0 END) AS new_customers,
+  SUM(CASE WHEN f.first_order_at <  :start_week THEN 1 ELSE 0 END)                                 AS returning_customers
+FROM first_order f
+JOIN dbo.orders o ON o.customer_id = f.customer_id
+WHERE o.status = 'completed'
+  AND o.created_at >= :start_week AND o.created_at < :end_week
+-- @@
+SELECT c.id, c.name, c.email, COUNT(o.id) AS orders, SUM(oi.qty * oi.unit_price) AS gross
+FROM dbo.customers c
+LEFT JOIN dbo.orders o ON o.customer_id = c.id AND o.status = 'completed'
+LEFT JOIN dbo.order_items oi ON oi.order_id = o.id
+WHERE c.created_at >= '2025-01-01'
+GROUP BY c.id, c.name, c.email
+HAVING COUNT(o.id) > 2
+ORDER BY gross DESC
+-- @@
+select p.category, count(*) as n, avg(p.price) as avg_price from dbo.products p group by p.category order by n desc;
+-- @@
+SELECT o.status, COUNT(*) AS n FROM dbo.orders o WHERE o.created_at >= DATEADD(DAY, -30, SYSUTCDATETIME()) GROUP BY o.status
+-- @@
+SELECT TOP 100 o.id, o.customer_id, o.created_at, o.status
+FROM dbo.orders o
+WHERE o.customer_id IN (SELECT c.id FROM dbo.customers c WHERE c.email LIKE '%@example.com')
+ORDER BY o.created_at DESC
+-- @@
+DELETE FROM dbo.orders WHERE status = 'cancelled'
+-- @@
+SELECT * FROM dbo.customers; DROP TABLE dbo.customers
+-- @@
+UPDATE dbo.products SET price = price * 0.9 WHERE category = 'Apparel'
+-- @@
+SELECT name, create_date FROM sys.objects WHERE type = 'U'
+-- @@
+SELECT p.name, p.price FROM dbo.products p WHERE p.name LIKE N'%shirt%' AND p.price BETWEEN 10 AND 50 ORDER BY p.price
@@ -0,0 +1,261 @@
+package com.example.clothesstoreagent.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Closed-loop load against a running app: {@code -Pconcurrency} clients, each sending its next request as soon
+ * as the previous one is answered, for {@code -Pwarmup} then {@code -Pduration} seconds. Requests are a weighted
+ * mix of {@code /api/nlq} prompts, one family per bundled intent, and {@code /api/query} statements shaped like
+ * dashboard tiles; literals (customers, products, orders, dates) are drawn from the seeded generator's
+ * distributions, so hot keys stay hot. Only requests that start after the warm-up count.
+ *
+ * Reports per intent / query: completed requests, errors (non-200, an {@code error} in the body, or an NLQ
+ * answer from another intent), throughput, and p50 / p99 / p999 / max latency in ms. Printed, and written as
+ * JSON to {@code -Pout} (build/loadtest/report.json).
+ */
+public class LoadDriver {
+
+    private static final ObjectMapper om = new ObjectMapper();
+
+    /** A request family: label, weight, and a body drawn from the client's random source. */
+    record Kind(String label, String path, int weight, String intent, Function<SplittableRandom, Object> body) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String base = System.getProperty("baseUrl", "http://localhost:8080");
+        int concurrency = Integer.getInteger("concurrency", 16);
+        int duration = Integer.getInteger("duration", 60);
+        int warmup = Integer.getInteger("warmup", 10);
+        long seed = Long.getLong("seed", 42);
+        int nlqShare = Integer.getInteger("nlqPercent", 70);
+        boolean cache = Boolean.parseBoolean(System.getProperty("cache", "true"));
+        Path out = Path.of(System.getProperty("out", "build/loadtest/report.json"));
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        Map<String, Long> max = new LinkedHashMap<>();
+        for (String table : List.of("customers", "products", "orders")) {
+            max.put(table, scalar(http, base, "SELECT MAX(id) AS n FROM dbo." + table));
+        }
+        LocalDate last = day(first(http, base, "SELECT MAX(created_at) AS n FROM dbo.orders"));
+        System.out.printf("Store: %s, last order day %s%n", max, last);
+
+        List<Kind> kinds = kinds(max, last, nlqShare, cache);
+        int totalWeight = kinds.stream().mapToInt(Kind::weight).sum();
+
+        long startNanos = System.nanoTime();
+        long measureFrom = startNanos + TimeUnit.SECONDS.toNanos(warmup);
+        long stopAt = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+        List<Map<String, Samples>> perClient = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        SplittableRandom root = new SplittableRandom(seed);
+        for (int t = 0; t < concurrency; t++) {
+            SplittableRandom rnd = root.split();
+            Map<String, Samples> samples = new HashMap<>();
+            perClient.add(samples);
+            Thread client = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < stopAt) {
+                        Kind kind = pick(kinds, rnd.nextInt(totalWeight));
+                        String body = om.writeValueAsString(kind.body().apply(rnd));
+                        long started = System.nanoTime();
+                        boolean ok = send(http, base, kind, body);
+                        long elapsed = System.nanoTime() - started;
+                        if (started >= measureFrom && started < stopAt) {
+                            samples.computeIfAbsent(kind.label(), k -> new Samples()).add(elapsed, ok);
+                        }
+                    }
+                } catch (Exception ex) {
+                    System.err.println("Client stopped: " + ex);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-" + t);
+            client.setDaemon(true);
+            client.start();
+        }
+        System.out.printf("%d clients, %d s warm-up, %d s measured...%n", concurrency, warmup, duration);
+        done.await();
+
+        Map<String, Samples> byLabel = new TreeMap<>();
+        Samples total = new Samples();
+        for (Map<String, Samples> samples : perClient) {
+            samples.forEach((label, s) -> {
+                byLabel.computeIfAbsent(label, k -> new Samples()).addAll(s);
+                total.addAll(s);
+            });
+        }
+        Map<String, Samples> merged = new LinkedHashMap<>(byLabel);
+        merged.put("total", total);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("baseUrl", base);
+        report.put("concurrency", concurrency);
+        report.put("durationSeconds", duration);
+        report.put("seed", seed);
+        Map<String, Object> rows = new LinkedHashMap<>();
+        System.out.printf("%n%-32s %8s %7s %9s %9s %9s %9s %9s%n",
+                "intent / query", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        merged.forEach((label, s) -> {
+            Map<String, Object> row = s.summary(duration);
+            rows.put(label, row);
+            System.out.printf(Locale.ROOT, "%-32s %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", label, row.get("count"),
+                    row.get("errors"), row.get("throughput"), row.get("p50"), row.get("p99"), row.get("p999"), row.get("max"));
+        });
+        report.put("results", rows);
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        om.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), report);
+        System.out.println("\nReport: " + out.toAbsolutePath());
+    }
+
+    private static List<Kind> kinds(Map<String, Long> max, LocalDate last, int nlqShare, boolean cache) {
+        int customers = (int) Math.max(1, max.get("customers"));
+        int products = (int) Math.max(1, max.get("products"));
+        long orders = Math.max(1, max.get("orders"));
+        int q = 100 - nlqShare;
+        List<Kind> kinds = new ArrayList<>();
+
+        kinds.add(nlq("top_products_last_month", nlqShare * 30, cache,
+                r -> "top " + (3 + r.nextInt(18)) + " products by revenue last month"));
+        kinds.add(nlq("revenue_by_product", nlqShare * 20, cache, r -> "revenue by product"));
+        kinds.add(nlq("daily_revenue_7d", nlqShare * 30, cache, r -> "daily revenue last 7 days"));
+        kinds.add(nlq("new_vs_returning_between", nlqShare * 20, cache, r -> {
+            LocalDate from = last.minusDays(7 + r.nextInt(358));
+            return "new vs returning customers between " + from + " and " + from.plusDays(7);
+        }));
+
+        kinds.add(query("orders_by_customer", q * 40, cache, r -> "SELECT TOP 50 id, status, created_at FROM dbo.orders "
+                + "WHERE customer_id = " + StoreDataGenerator.CUSTOMER_RANK.next(r, customers) + " ORDER BY created_at DESC"));
+        // Recent orders are looked up far more often than old ones
+        kinds.add(query("order_detail", q * 35, cache, r -> "SELECT p.name, oi.qty, oi.unit_price, oi.discount "
+                + "FROM dbo.order_items oi JOIN dbo.products p ON p.id = oi.product_id "
+                + "WHERE oi.order_id = " + (orders - (long) (orders * Math.pow(r.nextDouble(), 3)))));
+        kinds.add(query("product_sales_30d", q * 15, cache, r -> "SELECT CAST(o.created_at AS date) AS [day], SUM(oi.qty) AS units "
+                + "FROM dbo.orders o JOIN dbo.order_items oi ON oi.order_id = o.id "
+                + "WHERE oi.product_id = " + StoreDataGenerator.product(StoreDataGenerator.PRODUCT_RANK.next(r, products), products)
+                + " AND o.status = 'completed' "
+                + "AND o.created_at >= DATEADD(DAY, -30, SYSUTCDATETIME()) "
+                + "GROUP BY CAST(o.created_at AS date) ORDER BY [day]"));
+        kinds.add(query("orders_by_status", q * 10, cache, r -> "SELECT status, COUNT(*) AS orders FROM dbo.orders GROUP BY status"));
+        kinds.removeIf(k -> k.weight() <= 0);
+        return kinds;
+    }
+
+    private static Kind nlq(String intent, int weight, boolean cache, Function<SplittableRandom, String> prompt) {
+        return new Kind("nlq:" + intent, "/api/nlq", weight, intent,
+                r -> Map.of("prompt", prompt.apply(r), "execute", true, "cache", cache));
+    }
+
+    private static Kind query(String name, int weight, boolean cache, Function<SplittableRandom, String> sql) {
+        return new Kind("query:" + name, "/api/query", weight, null,
+                r -> Map.of("sql", sql.apply(r), "cache", cache));
+    }
+
+    private static Kind pick(List<Kind> kinds, int u) {
+        for (Kind k : kinds) {
+            if ((u -= k.weight()) < 0) return k;
+        }
+        return kinds.get(kinds.size() - 1);
+    }
+
+    private static boolean send(HttpClient http, String base, Kind kind, String body) throws InterruptedException {
+        try {
+            HttpResponse<byte[]> resp = http.send(post(base + kind.path(), body), HttpResponse.BodyHandlers.ofByteArray());
+            if (resp.statusCode() != 200) return false;
+            JsonNode json = om.readTree(resp.body());
+            if (json.has("error") || json.path("result").has("error")) return false;
+            return kind.intent() == null || kind.intent().equals(json.path("recognizedIntent").asText());
+        } catch (java.io.IOException ex) {
+            return false;
+        }
+    }
+
+    private static HttpRequest post(String url, String body) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(120))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static JsonNode first(HttpClient http, String base, String sql) throws Exception {
+        HttpResponse<String> resp = http.send(post(base + "/api/query",
+                om.writeValueAsString(Map.of("sql", sql, "cache", false))), HttpResponse.BodyHandlers.ofString());
+        JsonNode json = om.readTree(resp.body());
+        JsonNode row = json.path("rows").path(0);
+        if (resp.statusCode() != 200 || json.has("error") || row.isMissingNode()) {
+            throw new IllegalStateException("Cannot read the store through " + base + ": " + resp.body()
+                    + "\nGenerate data (./gradlew loadtestData) and start the app with the loadtest profile.");
+        }
+        return row.path("n");
+    }
+
+    private static long scalar(HttpClient http, String base, String sql) throws Exception {
+        return first(http, base, sql).asLong();
+    }
+
+    /** A timestamp as the app serializes it: ISO text, or epoch millis. */
+    private static LocalDate day(JsonNode value) {
+        if (value.isNumber()) return LocalDate.ofInstant(Instant.ofEpochMilli(value.asLong()), ZoneOffset.UTC);
+        return LocalDate.parse(value.asText().substring(0, 10));
+    }
+
+    /** Latencies of one label, in nanoseconds, and the error count. */
+    static final class Samples {
+        private long[] nanos = new long[1024];
+        private int size;
+        private long errors;
+
+        void add(long elapsed, boolean ok) {
+            if (size == nanos.length) nanos = Arrays.copyOf(nanos, size * 2);
+            nanos[size++] = elapsed;
+            if (!ok) errors++;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) add(other.nanos[i], true);
+            errors += other.errors;
+        }
+
+        Map<String, Object> summary(int seconds) {
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("count", size);
+            out.put("errors", errors);
+            out.put("throughput", round(size / (double) seconds));
+            out.put("p50", pct(sorted, 0.5));
+            out.put("p99", pct(sorted, 0.99));
+            out.put("p999", pct(sorted, 0.999));
+            out.put("max", size == 0 ? 0.0 : round(sorted[size - 1] / 1e6));
+            return out;
+        }
+
+        private static double pct(long[] sorted, double p) {
+            if (sorted.length == 0) return 0.0;
+            return round(sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6);
+        }
+
+        private static double round(double v) {
+            return Math.round(v * 10) / 10.0;
+        }
+    }
+}
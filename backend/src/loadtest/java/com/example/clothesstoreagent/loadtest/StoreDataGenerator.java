@@ -0,0 +1,387 @@
+package com.example.clothesstoreagent.loadtest;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+/**
+ * Synthetic clothes store for load tests: {@code dbo.customers}, {@code dbo.products}, {@code dbo.orders} and
+ * {@code dbo.order_items}, dropped and rebuilt. The same {@code -Pseed} and {@code -Pitems} always give the same
+ * rows (the printed fingerprint covers every value), from 10k items up to 100M.
+ *
+ * Shape, sized from the item count: about 2.2 items per order, four orders per customer and one product per
+ * 500 items (200 to 50,000). Products are drawn by Zipf popularity (a few best sellers, a long tail), and
+ * coats, knitwear and swimwear mostly sell in their season. Customers sign up over the whole period; a
+ * quarter of orders come from a new customer, the rest from earlier ones, also Zipf-skewed (the earliest
+ * sign-ups order most). Order days follow a growth trend, November–December and Black Friday peaks, weekends
+ * and shopping hours; ids ascend with {@code created_at}. Most orders are completed; some cancelled or
+ * returned, and the last two days have pending ones.
+ *
+ * Targets H2 in SQL Server mode by default (a file under build/loadtest, which {@code application-loadtest.yml}
+ * opens); on H2 it also installs {@code dev/h2-mssql.sql}. Any SQL Server works too ({@code -Purl}, {@code -Puser},
+ * {@code -Ppassword}), fastest with {@code useBulkCopyForBatchInsert=true} on the URL.
+ */
+public class StoreDataGenerator {
+
+    static final String DEFAULT_URL = "jdbc:h2:file:./build/loadtest/store;MODE=MSSQLServer;DATABASE_TO_UPPER=false;AUTO_SERVER=TRUE";
+
+    private static final String[] COLORS = {"Black", "White", "Navy", "Grey", "Olive", "Camel", "Burgundy",
+            "Sand", "Sky blue", "Forest green", "Rust", "Cream"};
+    private static final String[] MATERIALS = {"cotton", "linen", "wool", "denim", "cashmere", "silk",
+            "corduroy", "leather", "fleece", "recycled"};
+    /** Garment, base price, season (0 all year, 1 winter, 2 summer). */
+    private static final Object[][] GARMENTS = {
+            {"T-shirt", 19.0, 0}, {"shirt", 45.0, 0}, {"jeans", 69.0, 0}, {"chinos", 59.0, 0}, {"dress", 79.0, 0},
+            {"skirt", 49.0, 0}, {"blazer", 129.0, 0}, {"hoodie", 55.0, 0}, {"sneakers", 75.0, 0}, {"belt", 29.0, 0},
+            {"socks", 9.0, 0}, {"cap", 22.0, 0}, {"backpack", 85.0, 0}, {"coat", 189.0, 1}, {"parka", 219.0, 1},
+            {"sweater", 79.0, 1}, {"cardigan", 69.0, 1}, {"scarf", 25.0, 1}, {"beanie", 19.0, 1}, {"boots", 139.0, 1},
+            {"shorts", 35.0, 2}, {"swimsuit", 39.0, 2}, {"sandals", 45.0, 2}, {"sun hat", 29.0, 2}, {"tank top", 17.0, 2}};
+    private static final String[] FIRST = {"Ada", "Grace", "Linus", "Maria", "Noah", "Olivia", "Liam", "Emma",
+            "Mateo", "Sofia", "Yuki", "Amara", "Ravi", "Chloe", "Lucas", "Ines", "Omar", "Hana", "Elias", "Zoe"};
+    private static final String[] LAST = {"Lovelace", "Hopper", "Torvalds", "Garcia", "Smith", "Nguyen", "Kim",
+            "Muller", "Rossi", "Silva", "Tanaka", "Okafor", "Patel", "Martin", "Novak", "Jensen", "Haddad", "Cohen"};
+    /** Relative order volume per month, January first. */
+    private static final double[] MONTHS = {0.8, 0.75, 0.9, 1.0, 1.0, 1.05, 1.1, 1.05, 0.95, 1.0, 1.35, 1.7};
+    /** Relative order volume per hour of day (UTC). */
+    private static final double[] HOURS = {0.3, 0.2, 0.15, 0.1, 0.1, 0.15, 0.3, 0.6, 0.9, 1.0, 1.1, 1.2,
+            1.4, 1.3, 1.1, 1.0, 1.0, 1.1, 1.3, 1.6, 1.8, 1.6, 1.1, 0.6};
+
+    /** Popularity of products and of repeat customers; the load driver draws its keys from the same curves. */
+    static final Zipf PRODUCT_RANK = new Zipf(0.8);
+    static final Zipf CUSTOMER_RANK = new Zipf(0.5);
+
+    private static final BigDecimal[] DISCOUNTS = {BigDecimal.ZERO.setScale(3), new BigDecimal("0.100"),
+            new BigDecimal("0.200"), new BigDecimal("0.300")};
+
+    private final long seed;
+    private final long items;
+    private final LocalDate end;
+    private final int days;
+    private final int batch;
+
+    private final int products;
+    private final long orders;
+    private final int customers;
+
+    private BigDecimal[] prices;
+    private long fingerprint = 0xcbf29ce484222325L;
+
+    StoreDataGenerator(long seed, long items, LocalDate end, int days, int batch) {
+        if (items < 1 || items > 2_000_000_000L) throw new IllegalArgumentException("items out of range: " + items);
+        this.seed = seed;
+        this.items = items;
+        this.end = end;
+        this.days = days;
+        this.batch = batch;
+        this.products = (int) Math.max(200, Math.min(50_000, items / 500));
+        this.orders = Math.max(1, Math.round(items / 2.2));
+        this.customers = (int) Math.max(50, orders / 4);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long items = Long.getLong("items", 100_000);
+        long seed = Long.getLong("seed", 42);
+        String end = System.getProperty("end");
+        int days = Integer.getInteger("days", 730);
+        String url = System.getProperty("url", DEFAULT_URL);
+        String user = System.getProperty("user", "sa");
+        String password = System.getProperty("password", "");
+
+        StoreDataGenerator gen = new StoreDataGenerator(seed, items,
+                end != null ? LocalDate.parse(end) : LocalDate.now(ZoneOffset.UTC).minusDays(1),
+                days, Integer.getInteger("batch", 5_000));
+        try (Connection c = DriverManager.getConnection(url, user, password)) {
+            gen.run(c);
+        }
+    }
+
+    void run(Connection c) throws SQLException {
+        boolean h2 = "H2".equals(c.getMetaData().getDatabaseProductName());
+        System.out.printf("Generating ~%,d order items (seed %d): %,d products, %,d customers, %,d orders, %s .. %s%n",
+                items, seed, products, customers, orders, end.minusDays(days - 1), end);
+        long started = System.nanoTime();
+        c.setAutoCommit(false);
+        createTables(c, h2);
+
+        SplittableRandom rnd = new SplittableRandom(seed);
+        int[] season = insertProducts(c, rnd.split());
+        insertCustomers(c, rnd.split());
+        long written = insertOrders(c, rnd.split(), season, started);
+
+        try (Statement st = c.createStatement()) {
+            System.out.println("Indexing...");
+            st.execute("CREATE INDEX ix_orders_created_at ON dbo.orders (created_at)");
+            st.execute("CREATE INDEX ix_orders_customer ON dbo.orders (customer_id)");
+            st.execute("CREATE INDEX ix_order_items_order ON dbo.order_items (order_id)");
+            st.execute("CREATE INDEX ix_order_items_product ON dbo.order_items (product_id)");
+            if (h2) {
+                st.execute("ANALYZE");
+                st.execute("RUNSCRIPT FROM '" + System.getProperty("catalogScript", "dev/h2-mssql.sql") + "'");
+            }
+        }
+        c.commit();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("Done: %,d order items in %.1f s (%,.0f rows/s), fingerprint %016x%n",
+                written, seconds, (written + orders + customers + products) / seconds, fingerprint);
+    }
+
+    private static void createTables(Connection c, boolean h2) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            if (h2) st.execute("CREATE SCHEMA IF NOT EXISTS dbo");
+            for (String t : List.of("order_items", "orders", "products", "customers")) {
+                st.execute("DROP TABLE IF EXISTS dbo." + t);
+            }
+            st.execute("CREATE TABLE dbo.customers (id INT NOT NULL PRIMARY KEY, name VARCHAR(100) NOT NULL, email VARCHAR(200))");
+            st.execute("CREATE TABLE dbo.products (id INT NOT NULL PRIMARY KEY, name VARCHAR(100) NOT NULL, price DECIMAL(10, 2) NOT NULL)");
+            st.execute("CREATE TABLE dbo.orders (id INT NOT NULL PRIMARY KEY, customer_id INT NOT NULL, "
+                    + "status VARCHAR(20) NOT NULL, created_at DATETIME2 NOT NULL)");
+            st.execute("CREATE TABLE dbo.order_items (order_id INT NOT NULL, product_id INT NOT NULL, qty INT NOT NULL, "
+                    + "unit_price DECIMAL(10, 2) NOT NULL, discount DECIMAL(4, 3) NOT NULL DEFAULT 0)");
+        }
+        c.commit();
+    }
+
+    /** Returns each product's season (index = id), and keeps prices in {@link #prices}. */
+    private int[] insertProducts(Connection c, SplittableRandom rnd) throws SQLException {
+        int[] season = new int[products + 1];
+        prices = new BigDecimal[products + 1];
+        Set<String> names = new HashSet<>();
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO dbo.products (id, name, price) VALUES (?, ?, ?)")) {
+            for (int id = 1; id <= products; id++) {
+                Object[] g = GARMENTS[rnd.nextInt(GARMENTS.length)];
+                String material = MATERIALS[rnd.nextInt(MATERIALS.length)];
+                String base = COLORS[rnd.nextInt(COLORS.length)] + " " + material + " " + g[0];
+                String name = base;
+                for (int v = 2; !names.add(name); v++) name = base + " v" + v;
+                double factor = switch (material) {
+                    case "cashmere", "silk", "leather" -> 2.2;
+                    case "wool" -> 1.4;
+                    case "recycled" -> 0.9;
+                    default -> 1.0;
+                };
+                // Log-normal spread around the garment's price, ending in .99 or .00
+                long whole = Math.max(5, Math.round((double) g[1] * factor * Math.exp(0.25 * gaussian(rnd))));
+                BigDecimal price = BigDecimal.valueOf(rnd.nextInt(3) == 0 ? whole * 100 : whole * 100 - 1, 2);
+                season[id] = (int) g[2];
+                prices[id] = price;
+                ps.setInt(1, id);
+                ps.setString(2, name);
+                ps.setBigDecimal(3, price);
+                ps.addBatch();
+                mix(id, name.hashCode(), price.unscaledValue().longValue());
+                if (id % batch == 0) flush(c, ps);
+            }
+            flush(c, ps);
+        }
+        return season;
+    }
+
+    private void insertCustomers(Connection c, SplittableRandom rnd) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO dbo.customers (id, name, email) VALUES (?, ?, ?)")) {
+            for (int id = 1; id <= customers; id++) {
+                String first = FIRST[rnd.nextInt(FIRST.length)];
+                String last = LAST[rnd.nextInt(LAST.length)];
+                ps.setInt(1, id);
+                ps.setString(2, first + " " + last);
+                // Some customers never gave an email
+                String email = rnd.nextInt(20) == 0 ? null
+                        : (first + "." + last + id + "@example.com").toLowerCase(Locale.ROOT);
+                ps.setString(3, email);
+                ps.addBatch();
+                mix(id, first.hashCode(), last.hashCode());
+                if (id % batch == 0) flush(c, ps);
+            }
+            flush(c, ps);
+        }
+    }
+
+    private long insertOrders(Connection c, SplittableRandom rnd, int[] season, long started) throws SQLException {
+        LocalDate first = end.minusDays(days - 1);
+        double[] weights = new double[days];
+        double sum = 0;
+        for (int d = 0; d < days; d++) sum += weights[d] = dayWeight(first.plusDays(d), d);
+        double[] hourCdf = cdf(HOURS);
+
+        long written = 0, orderId = 0, lastReport = System.nanoTime();
+        int seen = 0;
+        double cumulative = 0;
+        long allocated = 0;
+        try (PreparedStatement po = c.prepareStatement(
+                     "INSERT INTO dbo.orders (id, customer_id, status, created_at) VALUES (?, ?, ?, ?)");
+             PreparedStatement pi = c.prepareStatement(
+                     "INSERT INTO dbo.order_items (order_id, product_id, qty, unit_price, discount) VALUES (?, ?, ?, ?, ?)")) {
+            int pendingOrders = 0, pendingItems = 0;
+            for (int d = 0; d < days; d++) {
+                LocalDate day = first.plusDays(d);
+                cumulative += orders * weights[d] / sum;
+                long today = Math.round(cumulative) - allocated;
+                allocated += today;
+                int curSeason = seasonOf(day);
+                boolean sale = day.getMonthValue() == 1 || (day.getMonthValue() == 11 && day.getDayOfMonth() >= 20)
+                        || day.getMonthValue() == 12;
+
+                int[] seconds = new int[(int) today];
+                for (int i = 0; i < seconds.length; i++) {
+                    seconds[i] = pick(hourCdf, rnd.nextDouble()) * 3600 + rnd.nextInt(3600);
+                }
+                Arrays.sort(seconds);
+                for (int sec : seconds) {
+                    orderId++;
+                    // New customers arrive evenly over the order sequence; everyone else is a repeat customer
+                    int customer;
+                    if (seen < customers && (seen == 0 || rnd.nextDouble() * (orders - orderId + 1) < customers - seen)) {
+                        customer = ++seen;
+                    } else {
+                        customer = CUSTOMER_RANK.next(rnd, seen);
+                    }
+                    String status = status(rnd, days - d);
+                    LocalDateTime at = day.atStartOfDay().plusSeconds(sec);
+                    po.setInt(1, (int) orderId);
+                    po.setInt(2, customer);
+                    po.setString(3, status);
+                    po.setTimestamp(4, Timestamp.valueOf(at));
+                    po.addBatch();
+                    mix(orderId, customer, status.hashCode(), sec, d);
+
+                    int lines = 1;
+                    while (lines < 12 && rnd.nextDouble() < 0.55) lines++;
+                    int[] picked = new int[lines];
+                    for (int l = 0; l < lines; l++) {
+                        int product = 0;
+                        for (int attempt = 0; attempt < 4; attempt++) {
+                            int p = product(PRODUCT_RANK.next(rnd, products), products);
+                            // Out-of-season products mostly lose the sale to another draw
+                            if (season[p] != 0 && season[p] != curSeason && attempt < 3 && rnd.nextInt(10) < 7) continue;
+                            if (contains(picked, l, p)) continue;
+                            product = p;
+                            break;
+                        }
+                        if (product == 0) continue;
+                        picked[l] = product;
+                        int u = rnd.nextInt(100);
+                        int qty = u < 80 ? 1 : u < 94 ? 2 : u < 98 ? 3 : 4 + rnd.nextInt(3);
+                        BigDecimal discount = DISCOUNTS[discount(rnd, sale)];
+                        pi.setInt(1, (int) orderId);
+                        pi.setInt(2, product);
+                        pi.setInt(3, qty);
+                        pi.setBigDecimal(4, prices[product]);
+                        pi.setBigDecimal(5, discount);
+                        pi.addBatch();
+                        mix(product, qty, discount.unscaledValue().longValue());
+                        written++;
+                        if (++pendingItems >= batch) {
+                            // Orders first: a reader never sees items of an order that is not there yet
+                            po.executeBatch();
+                            pi.executeBatch();
+                            c.commit();
+                            pendingOrders = 0;
+                            pendingItems = 0;
+                        }
+                    }
+                    if (++pendingOrders >= batch) {
+                        po.executeBatch();
+                        pi.executeBatch();
+                        c.commit();
+                        pendingOrders = 0;
+                        pendingItems = 0;
+                    }
+                    if (System.nanoTime() - lastReport > 5_000_000_000L) {
+                        lastReport = System.nanoTime();
+                        double s = (lastReport - started) / 1e9;
+                        System.out.printf("  %,d / ~%,d items (%s), %,.0f items/s%n", written, items, day, written / s);
+                    }
+                }
+            }
+            po.executeBatch();
+            pi.executeBatch();
+            c.commit();
+        }
+        return written;
+    }
+
+    /** Trend (+50% over the period), month, Black Friday to Cyber Monday, and weekend factors. */
+    private double dayWeight(LocalDate day, int index) {
+        double w = (1 + 0.5 * index / days) * MONTHS[day.getMonthValue() - 1];
+        LocalDate blackFriday = day.withMonth(11).with(TemporalAdjusters.dayOfWeekInMonth(4, DayOfWeek.THURSDAY)).plusDays(1);
+        if (!day.isBefore(blackFriday) && !day.isAfter(blackFriday.plusDays(3))) w *= 2.5;
+        DayOfWeek dow = day.getDayOfWeek();
+        if (dow == DayOfWeek.SATURDAY) w *= 1.25;
+        else if (dow == DayOfWeek.SUNDAY) w *= 1.15;
+        else if (dow == DayOfWeek.MONDAY) w *= 0.9;
+        return w;
+    }
+
+    private static int seasonOf(LocalDate day) {
+        int m = day.getMonthValue();
+        return m >= 11 || m <= 2 ? 1 : m >= 5 && m <= 8 ? 2 : 0;
+    }
+
+    private static String status(SplittableRandom rnd, int daysBeforeEnd) {
+        int u = rnd.nextInt(100);
+        if (daysBeforeEnd <= 2 && u < 30) return "pending";
+        return u < 91 ? "completed" : u < 96 ? "cancelled" : "returned";
+    }
+
+    private static int discount(SplittableRandom rnd, boolean sale) {
+        int u = rnd.nextInt(100);
+        if (sale) return u < 60 ? 0 : u < 80 ? 1 : u < 93 ? 2 : 3;
+        return u < 92 ? 0 : 1;
+    }
+
+    /** Id of the product at popularity {@code rank}: best sellers are spread over the id range, not ids 1, 2, 3. */
+    static int product(int rank, int products) {
+        int stride = (int) (products * 0.618) | 1;
+        while (gcd(stride, products) != 1) stride += 2;
+        return (int) ((long) (rank - 1) * stride % products) + 1;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static boolean contains(int[] a, int len, int v) {
+        for (int i = 0; i < len; i++) if (a[i] == v) return true;
+        return false;
+    }
+
+    private static double[] cdf(double[] weights) {
+        double[] out = new double[weights.length];
+        double sum = 0;
+        for (double w : weights) sum += w;
+        double acc = 0;
+        for (int i = 0; i < weights.length; i++) out[i] = (acc += weights[i]) / sum;
+        return out;
+    }
+
+    private static int pick(double[] cdf, double u) {
+        for (int i = 0; i < cdf.length; i++) if (u < cdf[i]) return i;
+        return cdf.length - 1;
+    }
+
+    private static double gaussian(SplittableRandom rnd) {
+        // Box-Muller; SplittableRandom has no nextGaussian on Java 17
+        return Math.sqrt(-2 * Math.log(1 - rnd.nextDouble())) * Math.cos(2 * Math.PI * rnd.nextDouble());
+    }
+
+    private static void flush(Connection c, PreparedStatement ps) throws SQLException {
+        ps.executeBatch();
+        c.commit();
+    }
+
+    private void mix(long... values) {
+        for (long v : values) {
+            fingerprint ^= v;
+            fingerprint *= 0x100000001b3L;
+        }
+    }
+}
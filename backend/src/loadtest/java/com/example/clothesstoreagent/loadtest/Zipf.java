@@ -0,0 +1,25 @@
+package com.example.clothesstoreagent.loadtest;
+
+import java.util.SplittableRandom;
+
+/**
+ * Ranks 1..n drawn with probability roughly proportional to {@code 1 / rank^s}: the inverse of the continuous
+ * power-law CDF, floored. O(1) per draw for any n, so it also serves populations that grow while sampling.
+ */
+final class Zipf {
+
+    private final double s;
+
+    Zipf(double s) {
+        if (s <= 0 || s == 1) throw new IllegalArgumentException("exponent must be > 0 and != 1: " + s);
+        this.s = s;
+    }
+
+    int next(SplittableRandom rnd, int n) {
+        if (n <= 1) return 1;
+        double a = 1 - s;
+        double top = Math.pow(n + 1.0, a);
+        double x = Math.pow((top - 1) * rnd.nextDouble() + 1, 1 / a);
+        return (int) Math.min(n, Math.max(1, (long) x));
+    }
+}
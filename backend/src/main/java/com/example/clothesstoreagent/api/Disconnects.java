@@ -0,0 +1,303 @@
+package com.example.clothesstoreagent.api;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.service.Cancellation;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cancels a request's statements when its client goes away, instead of letting them run to the query
+ * timeout with a connection checked out. Handlers run as async requests; then:
+ * <ul>
+ *   <li>the async request timeout, or an error the container reports, cancels at once;</li>
+ *   <li>streams (a {@code StreamingResponseBody} or an emitter) stop at the first write that fails, which
+ *       {@code QueryService.stream} and the emitters' error callbacks turn into a cancel;</li>
+ *   <li>with {@code app.disconnectPoll=true}, a disconnect from a non-streaming request is noticed by
+ *       polling the kernel's TCP table ({@code /proc/net/tcp}, {@code tcp6}) every
+ *       {@code app.disconnectPollMillis}: once the peer has closed, the server side of the connection sits
+ *       in CLOSE_WAIT (or is gone after a reset). Tomcat itself only learns of it when it next writes, which
+ *       for a non-streaming response is after the statement has finished.</li>
+ * </ul>
+ * Without the poll nothing notices a disconnect before the response is written, so single statements
+ * ({@link #run}) then stay on the servlet thread instead of queueing for the task executor. Each deferred
+ * result times out after its own budget ({@link #timeoutMillis}: the statement timeout, the bulkhead wait
+ * and a margin), not the global {@code spring.mvc.async.request-timeout} that streams use.
+ * <p>
+ * The poll is a heuristic: it needs Linux, and it sees only the TCP connection that ends at this server. Behind
+ * a load balancer or proxy that connection is the proxy's, so a client abort is seen only if the proxy closes
+ * its upstream connection in turn (nginx does by default; most cloud load balancers and pooling proxies do
+ * not), and a proxy that reuses upstream connections never looks disconnected. It is checked once at startup
+ * and stays off, with a log line saying why, when the table cannot be read.
+ */
+@Component
+public class Disconnects {
+
+    private static final Logger log = LoggerFactory.getLogger(Disconnects.class);
+
+    static final String CLIENT_GONE = "client disconnected";
+    static final String TIMED_OUT = "request timed out";
+
+    private static final List<Path> TCP_TABLES = List.of(Path.of("/proc/net/tcp"), Path.of("/proc/net/tcp6"));
+    private static final String CLOSE_WAIT = "08", CLOSE = "07", LAST_ACK = "09";
+    /** Past the statement timeout and bulkhead wait, for the work to report its own timeout first. */
+    private static final long TIMEOUT_MARGIN_MILLIS = 5000;
+
+    /** One in-flight exchange; {@code seen} once its connection was found in the table. */
+    private static final class Watch {
+        final InetAddress remote;
+        final int remotePort;
+        final int localPort;
+        final Collection<Cancellation> cancels;
+        boolean seen;
+
+        Watch(InetAddress remote, int remotePort, int localPort, Collection<Cancellation> cancels) {
+            this.remote = remote;
+            this.remotePort = remotePort;
+            this.localPort = localPort;
+            this.cancels = cancels;
+        }
+    }
+
+    private final AppProps props;
+    private final boolean polling;
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+
+    public Disconnects(AppProps props) {
+        this.props = props;
+        this.polling = props.isCancelOnDisconnect() && props.isDisconnectPoll() && canPoll();
+        if (polling) {
+            log.info("Polling the TCP table every {} ms for clients that went away", props.getDisconnectPollMillis());
+        } else {
+            log.info("Client disconnects are noticed only on a failed write or the request timeout");
+        }
+    }
+
+    /** Reads the tables once, so a missing or unexpected format is reported at startup rather than per poll. */
+    private static boolean canPoll() {
+        if (!Files.isReadable(TCP_TABLES.get(0))) {
+            log.warn("app.disconnectPoll is set but {} is not readable (not Linux?); polling stays off",
+                    TCP_TABLES.get(0));
+            return false;
+        }
+        try {
+            Map<String, String> states = new HashMap<>();
+            for (Path table : TCP_TABLES) {
+                if (Files.isReadable(table)) readTable(table, null, null, states);
+            }
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            log.warn("app.disconnectPoll is set but the TCP table cannot be parsed ({}); polling stays off",
+                    ex.toString());
+            return false;
+        }
+    }
+
+    /** True when disconnects of non-streaming requests are noticed, i.e. moving work off the servlet thread pays. */
+    boolean watching() {
+        return polling;
+    }
+
+    /**
+     * Runs {@code work}, one request's statement, as an async request on {@code executor} while disconnects
+     * are polled, so a client that goes away cancels it. Otherwise the hop would buy nothing: it runs right
+     * here on the servlet thread, and the result is handed back already set.
+     */
+    DeferredResult<Map<String, Object>> run(HttpServletRequest request,
+                                            Supplier<Map<String, Object>> work,
+                                            Executor executor,
+                                            Cancellation cancel,
+                                            long timeoutMillis) {
+        if (!polling) {
+            DeferredResult<Map<String, Object>> result = new DeferredResult<>(timeoutMillis);
+            result.setResult(work.get());
+            return result;
+        }
+        return deferred(request, CompletableFuture.supplyAsync(work, executor), List.of(cancel), timeoutMillis);
+    }
+
+    DeferredResult<Map<String, Object>> deferred(HttpServletRequest request,
+                                                 CompletableFuture<Map<String, Object>> work,
+                                                 Cancellation cancel,
+                                                 long timeoutMillis) {
+        return deferred(request, work, List.of(cancel), timeoutMillis);
+    }
+
+    /** {@code cancels} is read when the client goes away, so it may still be filled while work runs. */
+    DeferredResult<Map<String, Object>> deferred(HttpServletRequest request,
+                                                 CompletableFuture<Map<String, Object>> work,
+                                                 Collection<Cancellation> cancels,
+                                                 long timeoutMillis) {
+        DeferredResult<Map<String, Object>> result = new DeferredResult<>(timeoutMillis);
+        Watch watch = watch(request, cancels);
+        result.onError(ex -> cancelAll(cancels, CLIENT_GONE));
+        result.onTimeout(() -> cancelAll(cancels, TIMED_OUT));
+        result.onCompletion(() -> unwatch(watch));
+        work.whenComplete((value, ex) -> {
+            if (ex == null) result.setResult(value);
+            else result.setErrorResult(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+        });
+        return result;
+    }
+
+    /**
+     * Async timeout for a request whose statement may run {@code statementSeconds} (null = the default query
+     * timeout), plus {@code extraMillis} of other work: long enough for the statement to time out on its own.
+     */
+    long timeoutMillis(Integer statementSeconds, long extraMillis) {
+        int seconds = statementSeconds != null ? statementSeconds : props.getDefaultQueryTimeoutSeconds();
+        return TimeUnit.SECONDS.toMillis(Math.max(1, seconds)) + props.getBulkheadWaitMillis()
+                + Math.max(0, extraMillis) + TIMEOUT_MARGIN_MILLIS;
+    }
+
+    /** Async timeout for a batch with {@code deadline} ({@link System#nanoTime()} based). */
+    long timeoutMillisUntil(long deadline) {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadline - System.nanoTime())) + TIMEOUT_MARGIN_MILLIS;
+    }
+
+    /**
+     * Same for a {@code StreamingResponseBody} returned from the current handler, except that it is not polled:
+     * a client that goes away fails the next write, and the stream cancels itself.
+     */
+    void streaming(HttpServletRequest request, Cancellation cancel) {
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(Disconnects.class.getName(),
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> Object handleError(NativeWebRequest req, Callable<T> task, Throwable t) {
+                        cancel.cancel(CLIENT_GONE);
+                        return RESULT_NONE;
+                    }
+
+                    @Override
+                    public <T> Object handleTimeout(NativeWebRequest req, Callable<T> task) {
+                        cancel.cancel(TIMED_OUT);
+                        return RESULT_NONE;
+                    }
+
+                });
+    }
+
+    /** Same for an {@code SseEmitter} or other {@code ResponseBodyEmitter}; like streams, not polled. */
+    void emitter(ResponseBodyEmitter emitter, Cancellation cancel) {
+        emitter.onError(ex -> cancel.cancel(CLIENT_GONE));
+        emitter.onTimeout(() -> cancel.cancel(TIMED_OUT));
+    }
+
+    /** Checks watched connections against the kernel's TCP table and cancels those whose client has closed. */
+    @Scheduled(fixedDelayString = "${app.disconnectPollMillis:1000}")
+    public void poll() {
+        if (!polling || watches.isEmpty()) return;
+        Set<String> keys = new HashSet<>();
+        Set<Integer> localPorts = new HashSet<>();
+        for (Watch w : watches) {
+            keys.add(key(w.remote, w.remotePort, w.localPort));
+            localPorts.add(w.localPort);
+        }
+        // One pass over each table for every watched request, keeping only their rows
+        Map<String, String> states = new HashMap<>();
+        try {
+            for (Path table : TCP_TABLES) {
+                if (Files.isReadable(table)) readTable(table, localPorts, keys, states);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.debug("TCP table unreadable: {}", ex.getMessage());
+            return;
+        }
+        for (Watch w : watches) {
+            String state = states.get(key(w.remote, w.remotePort, w.localPort));
+            if (state == null) {
+                // Never found: a proxy or NAT rewrote the address; leave it to the timeout. Found before and
+                // gone now: the client reset the connection.
+                if (!w.seen) continue;
+            } else if (!state.equals(CLOSE_WAIT) && !state.equals(CLOSE) && !state.equals(LAST_ACK)) {
+                w.seen = true;
+                continue;
+            }
+            watches.remove(w);
+            log.info("Client {}:{} went away; cancelling its statement", w.remote.getHostAddress(), w.remotePort);
+            cancelAll(w.cancels, CLIENT_GONE);
+        }
+    }
+
+    private Watch watch(HttpServletRequest request, Collection<Cancellation> cancels) {
+        if (!polling) return null;
+        try {
+            // A literal address, so no lookup happens.
+            InetAddress remote = InetAddress.getByName(request.getRemoteAddr());
+            Watch w = new Watch(remote, request.getRemotePort(), request.getLocalPort(), cancels);
+            watches.add(w);
+            return w;
+        } catch (UnknownHostException ex) {
+            return null;
+        }
+    }
+
+    private void unwatch(Watch watch) {
+        if (watch != null) watches.remove(watch);
+    }
+
+    /**
+     * {@code local_address rem_address st} columns: hex address (per 32-bit word, host byte order) and port.
+     * Rows on other local ports are skipped before their addresses are decoded; null filters keep every row.
+     */
+    private static void readTable(Path table, Set<Integer> localPorts, Set<String> keys,
+                                  Map<String, String> states) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(table)) {
+            in.readLine();
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] f = line.trim().split("\\s+");
+                if (f.length < 4) continue;
+                int colon = f[1].indexOf(':');
+                int localPort = Integer.parseInt(f[1].substring(colon + 1), 16);
+                if (localPorts != null && !localPorts.contains(localPort)) continue;
+                String[] rem = f[2].split(":");
+                InetAddress remote = InetAddress.getByAddress(address(rem[0]));
+                String key = key(remote, Integer.parseInt(rem[1], 16), localPort);
+                if (keys == null || keys.contains(key)) states.put(key, f[3]);
+            }
+        }
+    }
+
+    private static byte[] address(String hex) {
+        byte[] out = new byte[hex.length() / 2];
+        for (int word = 0; word < out.length; word += 4) {
+            for (int b = 0; b < 4; b++) {
+                int at = (word + b) * 2;
+                out[word + 3 - b] = (byte) Integer.parseInt(hex.substring(at, at + 2), 16);
+            }
+        }
+        return out;
+    }
+
+    private static String key(InetAddress remote, int remotePort, int localPort) {
+        return remote.getHostAddress() + '|' + remotePort + '|' + localPort;
+    }
+
+    private static void cancelAll(Collection<Cancellation> cancels, String reason) {
+        synchronized (cancels) {
+            for (Cancellation c : cancels) c.cancel(reason);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.clothesstoreagent.api;
+
+import com.example.clothesstoreagent.service.ExportService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/** Downloads and removes files written by {@code POST /api/query/export} (see {@link ExportService}). */
+@RestController
+@RequestMapping("/api/exports")
+public class ExportController {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportController.class);
+
+    // Tomcat's sendfile request attributes (org.apache.catalina.Globals), as its DefaultServlet uses them
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ExportService exports;
+
+    public ExportController(ExportService exports) {
+        this.exports = exports;
+    }
+
+    @GetMapping
+    public Map<String, Object> stats() {
+        return exports.stats();
+    }
+
+    /**
+     * The gzipped file as {@code application/gzip}. Where the connector supports it, Tomcat sends the file with
+     * sendfile(2) once the handler returns, so the bytes stay in the kernel. Otherwise the file is copied into
+     * the response stream through a small heap buffer, a chunk at a time. Unlike the JSON endpoints, an unknown
+     * or expired id is a 404 (with the usual error body), so a download tool does not save the error as the file.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> download(@PathVariable String id,
+                                                        HttpServletRequest request,
+                                                        HttpServletResponse response) throws IOException {
+        Path file = exports.file(id);
+        if (file == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ExportService.notFound(id));
+        try (FileChannel ch = FileChannel.open(file)) {
+            long size = ch.size();
+            response.setContentType("application/gzip");
+            response.setContentLengthLong(size);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                    ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString());
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, size);
+                log.debug("Export {} sent with sendfile ({} bytes)", id, size);
+                return null;
+            }
+            Files.copy(file, response.getOutputStream());
+            log.debug("Export {} copied into the response ({} bytes)", id, size);
+            return null;
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public Map<String, Object> delete(@PathVariable String id) {
+        return exports.delete(id);
+    }
+}
@@ -1,6 +1,12 @@
 package com.example.clothesstoreagent.api;
 
+import com.example.clothesstoreagent.config.StartupWarmup;
+import com.example.clothesstoreagent.service.CostAdmission;
+import com.example.clothesstoreagent.service.PlanCacheStats;
+import com.example.clothesstoreagent.service.ReplicaSet;
+import com.example.clothesstoreagent.service.WorkloadPools;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Map;
@@ -8,8 +14,53 @@ import java.util.Map;
 @RestController
 public class HealthController {
 
+    private final WorkloadPools pools;
+    private final PlanCacheStats planCache;
+    private final CostAdmission admission;
+    private final ReplicaSet replicas;
+    private final StartupWarmup warmup;
+
+    public HealthController(WorkloadPools pools, PlanCacheStats planCache, CostAdmission admission, ReplicaSet replicas,
+                            StartupWarmup warmup) {
+        this.pools = pools;
+        this.planCache = planCache;
+        this.admission = admission;
+        this.replicas = replicas;
+        this.warmup = warmup;
+    }
+
     @GetMapping("/api/health")
     public Map<String, String> health() {
         return Map.of("status", "ok");
     }
+
+    /** Per-workload concurrency, queue-wait and connection pool figures. */
+    @GetMapping("/api/health/workloads")
+    public Map<String, Object> workloads() {
+        return pools.stats();
+    }
+
+    /** SQL Server compile counters and plan cache contents; {@code reset=true} restarts the counter baseline. */
+    @GetMapping("/api/health/plan-cache")
+    public Map<String, Object> planCache(@RequestParam(defaultValue = "false") boolean reset) {
+        return planCache.snapshot(reset);
+    }
+
+    /** Cost-based admission: estimates taken, verdicts, and the heavy lane's occupancy. */
+    @GetMapping("/api/health/admission")
+    public Map<String, Object> admission() {
+        return admission.stats();
+    }
+
+    /** Startup: time to ready, warm-up steps, and how long the first request to each endpoint took. */
+    @GetMapping("/api/health/startup")
+    public Map<String, Object> startup() {
+        return warmup.report();
+    }
+
+    /** Read replicas: rotation, lag, health-check latency and connections handed out. */
+    @GetMapping("/api/health/replicas")
+    public Map<String, Object> replicas() {
+        return replicas.stats();
+    }
 }
@@ -0,0 +1,34 @@
+package com.example.clothesstoreagent.api;
+
+import com.example.clothesstoreagent.service.QueryJobs;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/** Polls and cancels jobs submitted through {@code /api/query/jobs} and {@code /api/nlq/jobs}. */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private final QueryJobs jobs;
+
+    public JobController(QueryJobs jobs) {
+        this.jobs = jobs;
+    }
+
+    @GetMapping
+    public Map<String, Object> stats() {
+        return jobs.stats();
+    }
+
+    /** Job status; once finished it also carries {@code result}, kept for {@code app.jobResultTtlSeconds}. */
+    @GetMapping("/{id}")
+    public Map<String, Object> status(@PathVariable String id) {
+        return jobs.status(id);
+    }
+
+    @DeleteMapping("/{id}")
+    public Map<String, Object> cancel(@PathVariable String id) {
+        return jobs.cancel(id);
+    }
+}
@@ -1,15 +1,41 @@
 package com.example.clothesstoreagent.api;
 
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.nlq.CachingNlqProvider;
+import com.example.clothesstoreagent.nlq.NlqMetrics;
 import com.example.clothesstoreagent.nlq.NlqProvider;
+import com.example.clothesstoreagent.nlq.RevenueRollups;
+import com.example.clothesstoreagent.service.BatchRunner;
+import com.example.clothesstoreagent.service.Cancellation;
+import com.example.clothesstoreagent.service.JsonResultWriter;
+import com.example.clothesstoreagent.service.Priority;
+import com.example.clothesstoreagent.service.QueryJobs;
 import com.example.clothesstoreagent.service.QueryService;
+import com.example.clothesstoreagent.service.ResultLayout;
+import com.example.clothesstoreagent.service.Workload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.constraints.NotBlank;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/nlq")
@@ -18,12 +44,40 @@ public class NlqController {
 
     private static final Logger log = LoggerFactory.getLogger(NlqController.class);
 
+    /** Allowance for the model call in a request's async timeout; providers give up on their own before. */
+    private static final long MODEL_CALL_MILLIS = 60_000;
+
     private final NlqProvider nlq;
     private final QueryService query;
+    private final ObjectMapper om;
+    private final Executor executor;
+    private final NlqMetrics metrics;
+    private final BatchRunner batches;
+    private final RevenueRollups rollups;
+    private final QueryJobs jobs;
+    private final Disconnects disconnects;
+    private final AppProps props;
 
-    public NlqController(NlqProvider nlq, QueryService query) {
+    public NlqController(NlqProvider nlq,
+                         QueryService query,
+                         ObjectMapper om,
+                         @Qualifier("applicationTaskExecutor") Executor executor,
+                         NlqMetrics metrics,
+                         BatchRunner batches,
+                         RevenueRollups rollups,
+                         QueryJobs jobs,
+                         Disconnects disconnects,
+                         AppProps props) {
         this.nlq = nlq;
         this.query = query;
+        this.om = om;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.batches = batches;
+        this.rollups = rollups;
+        this.jobs = jobs;
+        this.disconnects = disconnects;
+        this.props = props;
     }
 
     public static class NlqRequest {
@@ -31,53 +85,415 @@ public class NlqController {
         public Boolean execute;
         public Integer maxRows;
         public Integer timeoutSeconds;
+        public Boolean cache;
+    }
+
+    public static class NlqBatchRequest {
+        public List<NlqRequest> items;
+        /** Items executed in parallel; capped by {@code app.batchConcurrency}. */
+        public Integer concurrency;
+        /** Overall budget, compilation included; capped by {@code app.batchDeadlineMillis}. */
+        public Integer deadlineMillis;
     }
 
+    /**
+     * Compiles without holding a servlet thread (the provider's async API), then runs the query on the
+     * application task executor. A plan that is ready at once (rules, plan cache) runs on the servlet thread
+     * instead unless disconnects are watched. Identical concurrent prompts are de-duplicated by the provider.
+     * {@code layout} and CBOR negotiation work as on {@code /api/query}. If the client disconnects before
+     * the result is ready and disconnects are watched ({@link Disconnects}), the statement is cancelled.
+     */
     @PostMapping
-    public Map<String, Object> handle(@RequestBody NlqRequest req) {
-        Map<String, Object> resp = new LinkedHashMap<>();
+    public DeferredResult<Map<String, Object>> handle(@RequestBody NlqRequest req,
+                                                         @RequestParam(defaultValue = "rows") String layout,
+                                                         HttpServletRequest request) {
+        NlqMetrics.Recorder rec = metrics.start();
+        request.setAttribute(NlqMetrics.RECORDER, rec);
+        String preview = req.prompt != null && req.prompt.length() > 160
+                ? req.prompt.substring(0, 160) + "…"
+                : req.prompt;
+        boolean doRun = req.execute == null || Boolean.TRUE.equals(req.execute);
+        boolean columnar = ResultLayout.isColumnar(layout);
+        log.info("NLQ request execute={} prompt='{}'", doRun, preview);
+
+        CompletableFuture<NlqProvider.Plan> compiled;
         try {
-            String preview = req.prompt != null && req.prompt.length() > 160
-                    ? req.prompt.substring(0, 160) + "…"
-                    : req.prompt;
-            boolean doRunFlag = req.execute == null || Boolean.TRUE.equals(req.execute);
-            log.info("NLQ request execute={} prompt='{}'", doRunFlag, preview);
-
-            NlqProvider.Plan plan = nlq.compile(req.prompt);
-            resp.put("recognizedIntent", plan.intent);
-            resp.put("sql", plan.sql);
-            resp.put("params", plan.params);
-
-            boolean doRun = doRunFlag;
-            resp.put("ran", doRun);
-
-            if (doRun) {
-                log.debug("Executing NLQ plan intent={} sql='{}' params={}",
-                        plan.intent,
-                        compact(plan.sql),
-                        plan.params != null ? plan.params.keySet() : "none");
-                Map<String, Object> result = query.execute(plan.sql, plan.params, req.maxRows, req.timeoutSeconds);
-                resp.put("result", result);
-                log.info("NLQ execution complete intent={} rows={}",
-                        plan.intent,
-                        result.getOrDefault("rowCount", "n/a"));
-            } else {
-                log.info("NLQ returning plan intent={} without execution", plan.intent);
+            compiled = nlq.compileAsync(req.prompt);
+        } catch (RuntimeException ex) {
+            compiled = CompletableFuture.failedFuture(ex);
+        }
+        compiled = compiled.whenComplete((plan, ex) -> rec.compiled(plan != null ? plan.intent : null));
+        Cancellation cancel = new Cancellation();
+        QueryService.Options base = QueryService.Options.DEFAULT.withPriority(Priority.NORMAL).withCancel(cancel);
+        CompletableFuture<Map<String, Object>> resp = !doRun
+                ? compiled.thenApply(plan -> respond(plan, false, req, rec, base, columnar))
+                : compiled.isDone() && !disconnects.watching()
+                ? compiled.thenApply(plan -> respond(plan, true, req, rec, base, columnar))
+                : compiled.thenApplyAsync(plan -> respond(plan, true, req, rec, base, columnar), executor);
+        return disconnects.deferred(request, resp.exceptionally(ex -> failure(ex, rec)), cancel,
+                disconnects.timeoutMillis(req.timeoutSeconds, MODEL_CALL_MILLIS));
+    }
+
+    /**
+     * Compiles and runs the prompt as a background job and returns its {@code jobId} at once; poll and
+     * cancel it under {@code /api/jobs/{jobId}} (see {@link QueryJobs}). The eventual {@code result} is shaped
+     * like {@link #handle}'s.
+     */
+    @PostMapping("/jobs")
+    public Map<String, Object> submit(@RequestBody NlqRequest req, @RequestParam(defaultValue = "rows") String layout) {
+        boolean columnar = ResultLayout.isColumnar(layout);
+        return jobs.submit("nlq", cancel -> {
+            NlqMetrics.Recorder rec = metrics.start();
+            try {
+                NlqProvider.Plan plan = nlq.compile(req.prompt);
+                rec.compiled(plan.intent);
+                QueryService.Options base = QueryService.Options.DEFAULT.withPriority(Priority.NORMAL).withCancel(cancel);
+                return respond(plan, true, req, rec, base, columnar);
+            } catch (RuntimeException ex) {
+                return failure(ex, rec);
+            } finally {
+                metrics.finish(rec);
             }
-            return resp;
+        });
+    }
 
+    /**
+     * Several prompts in one request. All prompts are compiled concurrently first (the provider's async
+     * API); plans that compile and pass validation then execute in parallel under the batch's concurrency
+     * cap and deadline (see {@link BatchRunner}). {@code items} holds one response per prompt, in order,
+     * each shaped like {@link #handle}'s, errors included.
+     */
+    @PostMapping("/batch")
+    public DeferredResult<Map<String, Object>> batch(@RequestBody NlqBatchRequest req,
+                                                     @RequestParam(defaultValue = "rows") String layout,
+                                                     HttpServletRequest request) {
+        long started = System.nanoTime();
+        try {
+            batches.checkSize(req.items);
         } catch (IllegalArgumentException ex) {
+            DeferredResult<Map<String, Object>> invalid = new DeferredResult<>();
+            invalid.setResult(BatchRunner.error("INVALID_BATCH", ex.getMessage()));
+            return invalid;
+        }
+        long deadline = batches.deadline(req.deadlineMillis);
+        int concurrency = batches.concurrency(req.concurrency);
+        boolean columnar = ResultLayout.isColumnar(layout);
+        long compileMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+        List<CompletableFuture<NlqProvider.Plan>> plans = new ArrayList<>(req.items.size());
+        for (NlqRequest item : req.items) {
+            CompletableFuture<NlqProvider.Plan> f;
+            try {
+                f = nlq.compileAsync(item != null ? item.prompt : null);
+            } catch (RuntimeException ex) {
+                f = CompletableFuture.failedFuture(ex);
+            }
+            plans.add(f.orTimeout(compileMillis, TimeUnit.MILLISECONDS));
+        }
+        log.info("NLQ batch request items={} concurrency={}", plans.size(), concurrency);
+
+        List<NlqMetrics.Recorder> recs = new ArrayList<>(plans.size());
+        List<Cancellation> cancels = Collections.synchronizedList(new ArrayList<>(plans.size()));
+        CompletableFuture<Map<String, Object>> work = CompletableFuture.allOf(plans.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, ex) -> null)
+                .thenCompose(ignored -> {
+                    List<Supplier<Map<String, Object>>> tasks = new ArrayList<>(plans.size());
+                    Map<Integer, Map<String, Object>> done = new HashMap<>();
+                    for (int i = 0; i < plans.size(); i++) {
+                        NlqRequest item = req.items.get(i);
+                        NlqMetrics.Recorder rec = metrics.start();
+                        recs.add(rec);
+                        NlqProvider.Plan plan;
+                        try {
+                            plan = plans.get(i).join();
+                            rec.compiled(plan.intent);
+                        } catch (CompletionException ex) {
+                            done.put(i, failure(ex, rec));
+                            tasks.add(null);
+                            continue;
+                        }
+                        boolean doRun = item.execute == null || Boolean.TRUE.equals(item.execute);
+                        if (!doRun) {
+                            done.put(i, respond(plan, false, item, rec, QueryService.Options.DEFAULT, columnar));
+                            tasks.add(null);
+                            continue;
+                        }
+                        try {
+                            query.validate(plan.sql);
+                        } catch (IllegalArgumentException ex) {
+                            Map<String, Object> err = BatchRunner.error("INVALID_SQL", ex.getMessage());
+                            err.put("recognizedIntent", plan.intent);
+                            err.put("sql", plan.sql);
+                            rec.error("INVALID_SQL");
+                            rec.ready();
+                            done.put(i, err);
+                            tasks.add(null);
+                            continue;
+                        }
+                        Cancellation cancel = new Cancellation();
+                        cancels.add(cancel);
+                        QueryService.Options base = QueryService.Options.DEFAULT
+                                .withDeadline(deadline)
+                                .withPriority(Priority.BATCH)
+                                .withCancel(cancel);
+                        tasks.add(() -> respond(plan, true, item, rec, base, columnar));
+                    }
+                    return batches.run(tasks, done, concurrency, deadline);
+                })
+                .thenApply(items -> {
+                    Map<String, Object> resp = BatchRunner.summary(items, started);
+                    log.info("NLQ batch response items={} errors={} elapsedMillis={}",
+                            resp.get("count"), resp.get("errors"), resp.get("elapsedMillis"));
+                    return resp;
+                })
+                .whenComplete((resp, ex) -> recs.forEach(metrics::finish));
+        return disconnects.deferred(request, work, cancels, disconnects.timeoutMillisUntil(deadline));
+    }
+
+    /** {@code base} carries the caller's deadline, priority and cancellation; caching, workload and stages are set here. */
+    private Map<String, Object> respond(NlqProvider.Plan plan, boolean doRun, NlqRequest req, NlqMetrics.Recorder rec,
+                                        QueryService.Options base, boolean columnar) {
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("recognizedIntent", plan.intent);
+        resp.put("sql", plan.sql);
+        resp.put("params", plan.params);
+        resp.put("ran", doRun);
+
+        if (doRun) {
+            log.debug("Executing NLQ plan intent={} sql='{}' params={}",
+                    plan.intent,
+                    compact(plan.sql),
+                    plan.params != null ? plan.params.keySet() : "none");
+            long started = System.nanoTime();
+            Map<String, Object> result = rollups.answer(plan, req.maxRows);
+            if (result != null) {
+                rec.stage("rollup", System.nanoTime() - started);
+                resp.put("answeredFrom", "rollup");
+            } else {
+                QueryService.Options options = base
+                        .withCache(!Boolean.FALSE.equals(req.cache))
+                        .withWorkload(Workload.NLQ)
+                        .withStages(rec);
+                result = query.execute(plan.sql, plan.params, req.maxRows, req.timeoutSeconds, options);
+            }
+            rec.result(result);
+            resp.put("result", columnar ? ResultLayout.columnar(result) : result);
+            log.info("NLQ execution complete intent={} rows={}",
+                    plan.intent,
+                    result.getOrDefault("rowCount", "n/a"));
+        } else {
+            log.info("NLQ returning plan intent={} without execution", plan.intent);
+        }
+        rec.ready();
+        return resp;
+    }
+
+    private Map<String, Object> failure(Throwable err, NlqMetrics.Recorder rec) {
+        Throwable ex = err;
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        Map<String, Object> resp = new LinkedHashMap<>();
+        if (ex instanceof IllegalArgumentException) {
             log.warn("NLQ prompt could not be mapped: {}", ex.getMessage());
             resp.put("error", "UNRECOGNIZED");
             resp.put("message", "I couldn't map that prompt to a known query template.");
             resp.put("try", nlq.suggestions());
-            return resp;
-        } catch (Exception ex) {
+        } else if (ex instanceof TimeoutException) {
+            log.warn("NLQ compilation did not finish before the batch deadline");
+            resp.put("error", "DEADLINE_EXCEEDED");
+            resp.put("message", "The batch deadline passed before this prompt was compiled.");
+        } else {
             log.error("NLQ provider failure", ex);
             resp.put("error", "NLQ_FAILED");
             resp.put("message", ex.getMessage());
-            return resp;
         }
+        if (rec != null) {
+            rec.error(String.valueOf(resp.get("error")));
+            rec.ready();
+        }
+        return resp;
+    }
+
+    /**
+     * Compiles the prompt and streams the result rows (always executes). The plan fields
+     * ({@code recognizedIntent}, {@code sql}, {@code params}) lead the document / first NDJSON line.
+     * Compile failures come back as the regular error map.
+     */
+    @PostMapping("/stream")
+    public ResponseEntity<?> stream(@RequestBody NlqRequest req,
+                                    @RequestParam(defaultValue = "json") String format,
+                                    HttpServletRequest request) {
+        NlqMetrics.Recorder rec = metrics.start();
+        request.setAttribute(NlqMetrics.RECORDER, rec);
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        Map<String, Object> resp = new LinkedHashMap<>();
+        NlqProvider.Plan plan;
+        try {
+            plan = nlq.compile(req.prompt);
+            rec.compiled(plan.intent);
+            query.validate(plan.sql);
+        } catch (Exception ex) {
+            return ResponseEntity.ok(failure(ex, rec));
+        }
+
+        resp.put("recognizedIntent", plan.intent);
+        resp.put("sql", plan.sql);
+        resp.put("params", plan.params);
+        log.info("NLQ streaming intent={} format={}", plan.intent, ndjson ? "ndjson" : "json");
+
+        Cancellation cancel = new Cancellation();
+        disconnects.streaming(request, cancel);
+        QueryService.Options options = QueryService.Options.DEFAULT.withWorkload(Workload.NLQ).withStages(rec).withCancel(cancel);
+        StreamingResponseBody body = out -> query.stream(plan.sql, plan.params, req.maxRows, req.timeoutSeconds,
+                options, new JsonResultWriter(om, out, ndjson, resp));
+        return ResponseEntity.ok()
+                .contentType(ndjson ? QueryController.NDJSON : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Server-sent events version of {@link #handle}, so the answer builds up as it is produced:
+     * <ul>
+     *   <li>{@code token}: {@code {"text"}}, each fragment of the model's output as it streams in (streaming
+     *       providers only; rule-based and cached plans skip straight to {@code plan});</li>
+     *   <li>{@code sql}: {@code {"sql"}}, as soon as the model has written it, before it is checked;</li>
+     *   <li>{@code plan}: {@code recognizedIntent}, {@code sql}, {@code params}, once compiled and validated;</li>
+     *   <li>{@code columns}, then {@code rows} in chunks while the query is fetched (see {@link SseResultWriter}),
+     *       then {@code end}: {@code rowCount}, {@code truncated} (plus {@code answeredFrom} for rollups);</li>
+     *   <li>{@code error}: the same error map {@link #handle} returns; nothing follows it.</li>
+     * </ul>
+     * With {@code execute=false} the stream ends after {@code plan}. Rows are capped by
+     * {@code app.streamMaxRows}, as on {@code /api/nlq/stream}. A client that goes away cancels the statement.
+     */
+    @PostMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@RequestBody NlqRequest req, HttpServletRequest request) {
+        NlqMetrics.Recorder rec = metrics.start();
+        request.setAttribute(NlqMetrics.RECORDER, rec);
+        boolean doRun = req.execute == null || Boolean.TRUE.equals(req.execute);
+        log.info("NLQ events request execute={}", doRun);
+
+        SseEmitter emitter = new SseEmitter();
+        Cancellation cancel = new Cancellation();
+        disconnects.emitter(emitter, cancel);
+        NlqProvider.Progress progress = new NlqProvider.Progress() {
+            @Override
+            public void token(String text) {
+                event(emitter, cancel, "token", Map.of("text", text));
+            }
+
+            @Override
+            public void sql(String sql) {
+                event(emitter, cancel, "sql", Map.of("sql", sql));
+            }
+        };
+
+        CompletableFuture<NlqProvider.Plan> compiled;
+        try {
+            compiled = nlq.compileStreaming(req.prompt, progress);
+        } catch (RuntimeException ex) {
+            compiled = CompletableFuture.failedFuture(ex);
+        }
+        compiled.whenComplete((plan, ex) -> rec.compiled(plan != null ? plan.intent : null))
+                .thenAcceptAsync(plan -> sendAnswer(plan, doRun, req, rec, emitter, cancel), executor)
+                .exceptionally(ex -> {
+                    event(emitter, cancel, "error", failure(ex, rec));
+                    emitter.complete();
+                    return null;
+                });
+        return emitter;
+    }
+
+    private void sendAnswer(NlqProvider.Plan plan, boolean doRun, NlqRequest req, NlqMetrics.Recorder rec,
+                            SseEmitter emitter, Cancellation cancel) {
+        try {
+            query.validate(plan.sql);
+        } catch (IllegalArgumentException ex) {
+            Map<String, Object> err = BatchRunner.error("INVALID_SQL", ex.getMessage());
+            err.put("recognizedIntent", plan.intent);
+            err.put("sql", plan.sql);
+            rec.error("INVALID_SQL");
+            rec.ready();
+            event(emitter, cancel, "error", err);
+            emitter.complete();
+            return;
+        }
+        Map<String, Object> head = new LinkedHashMap<>();
+        head.put("recognizedIntent", plan.intent);
+        head.put("sql", plan.sql);
+        head.put("params", plan.params);
+        if (!event(emitter, cancel, "plan", head)) return;
+        if (!doRun) {
+            event(emitter, cancel, "end", Map.of("ran", false));
+            rec.ready();
+            emitter.complete();
+            return;
+        }
+
+        long started = System.nanoTime();
+        Map<String, Object> rollup = rollups.answer(plan, req.maxRows);
+        try {
+            if (rollup != null) {
+                rec.stage("rollup", System.nanoTime() - started);
+                rec.result(rollup);
+                replay(rollup, new SseResultWriter(emitter, props.getSseRowChunk(), props.getSseFlushMillis(),
+                        Map.of("answeredFrom", "rollup")));
+            } else {
+                QueryService.Options options = QueryService.Options.DEFAULT
+                        .withPriority(Priority.NORMAL)
+                        .withWorkload(Workload.NLQ)
+                        .withStages(rec)
+                        .withCancel(cancel);
+                query.stream(plan.sql, plan.params, req.maxRows, req.timeoutSeconds, options,
+                        new SseResultWriter(emitter, props.getSseRowChunk(), props.getSseFlushMillis(), null));
+            }
+            rec.ready();
+            emitter.complete();
+        } catch (IOException | RuntimeException ex) {
+            log.info("NLQ events stopped: {}", ex.getMessage());
+            cancel.cancel(Disconnects.CLIENT_GONE);
+            emitter.completeWithError(ex);
+        }
+    }
+
+    /** Writes an already materialized result ({@code columns}, {@code rows} as maps) through {@code writer}. */
+    @SuppressWarnings("unchecked")
+    private static void replay(Map<String, Object> result, SseResultWriter writer) throws IOException {
+        List<String> columns = (List<String>) result.get("columns");
+        List<Map<String, Object>> rows = (List<Map<String, Object>>) result.get("rows");
+        writer.begin(columns);
+        Object[] values = new Object[columns.size()];
+        for (Map<String, Object> row : rows) {
+            for (int i = 0; i < values.length; i++) values[i] = row.get(columns.get(i));
+            writer.row(values);
+        }
+        writer.end(rows.size(), Boolean.TRUE.equals(result.get("truncated")), null);
+    }
+
+    /** Sends one event; false (and the request cancelled) if the client is gone. */
+    private static boolean event(SseEmitter emitter, Cancellation cancel, String name, Object data) {
+        if (cancel.isCancelled()) return false;
+        try {
+            SseResultWriter.send(emitter, name, data);
+            return true;
+        } catch (IOException | IllegalStateException ex) {
+            cancel.cancel(Disconnects.CLIENT_GONE);
+            return false;
+        }
+    }
+
+    @GetMapping("/cache")
+    public Map<String, Object> cacheStats() {
+        if (nlq instanceof CachingNlqProvider caching) {
+            return caching.stats();
+        }
+        return Map.of("enabled", false);
+    }
+
+    /** Revenue rollup state and answer/check counters (see {@link RevenueRollups}). */
+    @GetMapping("/rollups")
+    public Map<String, Object> rollupStats() {
+        return rollups.stats();
     }
 
     private String compact(String sql) {
@@ -1,14 +1,29 @@
 package com.example.clothesstoreagent.api;
 
+import com.example.clothesstoreagent.service.BatchRunner;
+import com.example.clothesstoreagent.service.Cancellation;
+import com.example.clothesstoreagent.service.ExportService;
+import com.example.clothesstoreagent.service.JsonResultWriter;
+import com.example.clothesstoreagent.service.Priority;
+import com.example.clothesstoreagent.service.QueryJobs;
 import com.example.clothesstoreagent.service.QueryService;
+import com.example.clothesstoreagent.service.ResultLayout;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.constraints.NotBlank;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/query")
@@ -17,10 +32,30 @@ public class QueryController {
 
     private static final Logger log = LoggerFactory.getLogger(QueryController.class);
 
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final QueryService queryService;
+    private final ObjectMapper om;
+    private final BatchRunner batches;
+    private final QueryJobs jobs;
+    private final ExportService exports;
+    private final Executor executor;
+    private final Disconnects disconnects;
 
-    public QueryController(QueryService queryService) {
+    public QueryController(QueryService queryService,
+                           ObjectMapper om,
+                           BatchRunner batches,
+                           QueryJobs jobs,
+                           ExportService exports,
+                           @Qualifier("applicationTaskExecutor") Executor executor,
+                           Disconnects disconnects) {
         this.queryService = queryService;
+        this.om = om;
+        this.batches = batches;
+        this.jobs = jobs;
+        this.exports = exports;
+        this.executor = executor;
+        this.disconnects = disconnects;
     }
 
     public static class QueryRequest {
@@ -29,20 +64,204 @@ public class QueryController {
         public Map<String, Object> params;
         public Integer maxRows;
         public Integer timeoutSeconds;
+        /** {@code false} skips the result cache for this request (neither read nor written). */
+        public Boolean cache;
+    }
+
+    public static class NextRequest {
+        @NotBlank
+        public String cursor;
+        public Boolean cache;
     }
 
+    public static class BatchRequest {
+        public List<QueryRequest> items;
+        /** Items run in parallel; capped by {@code app.batchConcurrency}. */
+        public Integer concurrency;
+        /** Overall budget; capped by {@code app.batchDeadlineMillis}. */
+        public Integer deadlineMillis;
+    }
+
+    /**
+     * {@code layout=columnar} sends {@code rows} as arrays of values in {@code columns} order instead of
+     * one object per row. {@code Accept: application/cbor} selects binary CBOR instead of JSON.
+     * If the client disconnects before the result is ready and disconnects are watched ({@link Disconnects}),
+     * the statement is cancelled.
+     */
     @PostMapping
-    public Map<String, Object> run(@RequestBody QueryRequest req) {
+    public DeferredResult<Map<String, Object>> run(@RequestBody QueryRequest req,
+                                                   @RequestParam(defaultValue = "rows") String layout,
+                                                   HttpServletRequest request) {
+        Cancellation cancel = new Cancellation();
+        return disconnects.run(request, () -> execute(req, layout, cancel), executor, cancel,
+                disconnects.timeoutMillis(req.timeoutSeconds, 0));
+    }
+
+    /**
+     * Runs the query as a background job and returns its {@code jobId} at once; poll and cancel it under
+     * {@code /api/jobs/{jobId}} (see {@link QueryJobs}). The eventual {@code result} is shaped like {@link #run}'s.
+     */
+    @PostMapping("/jobs")
+    public Map<String, Object> submit(@RequestBody QueryRequest req, @RequestParam(defaultValue = "rows") String layout) {
+        queryService.validate(req.sql);
+        return jobs.submit("query", cancel -> execute(req, layout, cancel));
+    }
+
+    /**
+     * Full extract as a background job: rows go to a gzipped {@code format=csv} (default) or {@code ndjson} file
+     * instead of the heap, so {@code maxRows} may go up to {@code app.exportMaxRows}. Poll {@code /api/jobs/{jobId}};
+     * the job's {@code result} carries the {@code download} path (see {@link ExportService}).
+     */
+    @PostMapping("/export")
+    public Map<String, Object> export(@RequestBody QueryRequest req, @RequestParam(defaultValue = "csv") String format) {
+        ExportService.Format f = ExportService.Format.of(format);
+        if (f == null) return BatchRunner.error("INVALID_FORMAT", "format must be csv or ndjson, got " + format);
+        queryService.validate(req.sql);
+        Map<String, Object> safeParams = req.params != null ? req.params : new LinkedHashMap<>();
+        log.info("/api/query/export request format={} maxRows={} timeout={} params={}",
+                f, req.maxRows, req.timeoutSeconds, safeParams.keySet());
+        return jobs.submit("export", cancel -> exports.export(req.sql, safeParams, req.maxRows, req.timeoutSeconds, f,
+                QueryService.Options.DEFAULT.withPriority(Priority.BATCH).withCancel(cancel)));
+    }
+
+    private Map<String, Object> execute(QueryRequest req, String layout, Cancellation cancel) {
         Map<String, Object> safeParams = req.params != null ? req.params : new LinkedHashMap<>();
         log.info("/api/query request maxRows={} timeout={} params={}",
                 req.maxRows,
                 req.timeoutSeconds,
                 safeParams.keySet());
-        Map<String, Object> result = queryService.execute(req.sql, safeParams, req.maxRows, req.timeoutSeconds);
+        QueryService.Options options = QueryService.Options.DEFAULT
+                .withCache(!Boolean.FALSE.equals(req.cache))
+                .withPriority(Priority.INTERACTIVE)
+                .withCancel(cancel);
+        Map<String, Object> result = queryService.execute(req.sql, safeParams, req.maxRows, req.timeoutSeconds, options);
         log.info("/api/query response rows={} truncated={} error={} ",
                 result.getOrDefault("rowCount", "n/a"),
                 result.getOrDefault("truncated", "n/a"),
                 result.get("error"));
-        return result;
+        return ResultLayout.isColumnar(layout) ? ResultLayout.columnar(result) : result;
+    }
+
+    /**
+     * Next page of a truncated {@code /api/query} or {@code /api/nlq} result, from its {@code nextCursor}.
+     * The cursor fixes the SQL, params, page size and timeout; each page brings the cursor for the one after.
+     */
+    @PostMapping("/next")
+    public DeferredResult<Map<String, Object>> next(@RequestBody NextRequest req,
+                                                    @RequestParam(defaultValue = "rows") String layout,
+                                                    HttpServletRequest request) {
+        Cancellation cancel = new Cancellation();
+        QueryService.Options options = QueryService.Options.DEFAULT
+                .withCache(!Boolean.FALSE.equals(req.cache))
+                .withPriority(Priority.INTERACTIVE)
+                .withCancel(cancel);
+        return disconnects.run(request, () -> {
+            Map<String, Object> result = queryService.next(req.cursor, options);
+            log.info("/api/query/next response rows={} more={} error={}",
+                    result.getOrDefault("rowCount", "n/a"),
+                    result.containsKey("nextCursor"),
+                    result.get("error"));
+            return ResultLayout.isColumnar(layout) ? ResultLayout.columnar(result) : result;
+        }, executor, cancel, disconnects.timeoutMillis(queryService.pageTimeout(req.cursor), 0));
+    }
+
+    /**
+     * Runs several queries in one request. All items are validated up front; the valid ones then run in
+     * parallel (see {@link BatchRunner}) and {@code items} holds one result per request item, in order,
+     * each with the same shape as {@link #run} — including per-item errors.
+     */
+    @PostMapping("/batch")
+    public DeferredResult<Map<String, Object>> batch(@RequestBody BatchRequest req,
+                                                     @RequestParam(defaultValue = "rows") String layout,
+                                                     HttpServletRequest request) {
+        long started = System.nanoTime();
+        try {
+            batches.checkSize(req.items);
+        } catch (IllegalArgumentException ex) {
+            DeferredResult<Map<String, Object>> invalid = new DeferredResult<>();
+            invalid.setResult(BatchRunner.error("INVALID_BATCH", ex.getMessage()));
+            return invalid;
+        }
+        long deadline = batches.deadline(req.deadlineMillis);
+        int concurrency = batches.concurrency(req.concurrency);
+
+        List<Cancellation> cancels = new ArrayList<>(req.items.size());
+        List<Supplier<Map<String, Object>>> tasks = new ArrayList<>(req.items.size());
+        Map<Integer, Map<String, Object>> done = new HashMap<>();
+        for (int i = 0; i < req.items.size(); i++) {
+            QueryRequest item = req.items.get(i);
+            try {
+                queryService.validate(item != null ? item.sql : null);
+            } catch (IllegalArgumentException ex) {
+                done.put(i, BatchRunner.error("INVALID_SQL", ex.getMessage()));
+                tasks.add(null);
+                continue;
+            }
+            Map<String, Object> params = item.params != null ? item.params : new LinkedHashMap<>();
+            Cancellation cancel = new Cancellation();
+            cancels.add(cancel);
+            QueryService.Options options = QueryService.Options.DEFAULT
+                    .withCache(!Boolean.FALSE.equals(item.cache))
+                    .withDeadline(deadline)
+                    .withPriority(Priority.BATCH)
+                    .withCancel(cancel);
+            tasks.add(() -> queryService.execute(item.sql, params, item.maxRows, item.timeoutSeconds, options));
+        }
+        log.info("/api/query/batch request items={} invalid={} concurrency={}", tasks.size(), done.size(), concurrency);
+
+        boolean columnar = ResultLayout.isColumnar(layout);
+        return disconnects.deferred(request, batches.run(tasks, done, concurrency, deadline).thenApply(items -> {
+            if (columnar) items.replaceAll(ResultLayout::columnar);
+            Map<String, Object> resp = BatchRunner.summary(items, started);
+            log.info("/api/query/batch response items={} errors={} elapsedMillis={}",
+                    resp.get("count"), resp.get("errors"), resp.get("elapsedMillis"));
+            return resp;
+        }), cancels, disconnects.timeoutMillisUntil(deadline));
+    }
+
+    /**
+     * Same contract as {@link #run} but rows are written while they are fetched.
+     * {@code format=json} (default) keeps the usual shape with rowCount/truncated after the rows;
+     * {@code format=ndjson} emits a column header line, one line per row and a trailer line.
+     */
+    @PostMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> stream(@RequestBody QueryRequest req,
+                                                       @RequestParam(defaultValue = "json") String format,
+                                                       HttpServletRequest request) {
+        Map<String, Object> safeParams = req.params != null ? req.params : new LinkedHashMap<>();
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        log.info("/api/query/stream request format={} maxRows={} timeout={} params={}",
+                ndjson ? "ndjson" : "json",
+                req.maxRows,
+                req.timeoutSeconds,
+                safeParams.keySet());
+        queryService.validate(req.sql);
+
+        Cancellation cancel = new Cancellation();
+        disconnects.streaming(request, cancel);
+        QueryService.Options options = QueryService.Options.DEFAULT.withPriority(Priority.INTERACTIVE).withCancel(cancel);
+        StreamingResponseBody body = out -> queryService.stream(req.sql, safeParams, req.maxRows, req.timeoutSeconds,
+                options, new JsonResultWriter(om, out, ndjson, Map.of()));
+        return ResponseEntity.ok()
+                .contentType(ndjson ? NDJSON : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    @GetMapping("/cache")
+    public Map<String, Object> cacheStats() {
+        return queryService.cacheStats();
+    }
+
+    /** With a body, drops that one cached request; without, clears the whole result cache. */
+    @DeleteMapping("/cache")
+    public Map<String, Object> invalidate(@RequestBody(required = false) QueryRequest req) {
+        if (req == null || req.sql == null) {
+            queryService.invalidateCache(null, null, null, null);
+            log.info("/api/query/cache cleared");
+        } else {
+            queryService.invalidateCache(req.sql, req.params, req.maxRows, req.timeoutSeconds);
+            log.info("/api/query/cache entry invalidated");
+        }
+        return queryService.cacheStats();
     }
 }
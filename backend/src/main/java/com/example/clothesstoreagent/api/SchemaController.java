@@ -1,19 +1,47 @@
 package com.example.clothesstoreagent.api;
 
+import com.example.clothesstoreagent.service.ColumnSampler;
 import com.example.clothesstoreagent.service.SchemaService;
+import com.example.clothesstoreagent.service.SchemaSnapshot;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
 public class SchemaController {
     private final SchemaService schema;
+    private final ColumnSampler sampler;
 
-    public SchemaController(SchemaService schema) { this.schema = schema; }
+    public SchemaController(SchemaService schema, ColumnSampler sampler) {
+        this.schema = schema;
+        this.sampler = sampler;
+    }
 
+    /**
+     * Serves the pre-serialized snapshot with a strong ETag; Spring answers
+     * {@code If-None-Match} hits with 304 before the body is written.
+     */
     @GetMapping("/api/schema")
-    public Map<String, Object> get() {
-        return schema.getSchema();
+    public ResponseEntity<byte[]> get() {
+        SchemaSnapshot snap = schema.getSnapshot();
+        return ResponseEntity.ok()
+                .eTag(snap.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .header("X-Schema-Version", String.valueOf(snap.getVersion()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snap.getJson());
+    }
+
+    @GetMapping("/api/schema/sampling")
+    public Map<String, Object> sampling() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("version", schema.getSnapshot().getVersion());
+        out.put("millisByTable", sampler.getLastMillisByTable());
+        return out;
     }
 }
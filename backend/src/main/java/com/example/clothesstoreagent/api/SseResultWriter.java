@@ -0,0 +1,79 @@
+package com.example.clothesstoreagent.api;
+
+import com.example.clothesstoreagent.service.ResultWriter;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends a query's rows as server-sent events: {@code columns}, then {@code rows} events of up to
+ * {@code chunk} rows (a partial chunk goes out once {@code flushMillis} have passed since the last one),
+ * then {@code end} with the row count, or {@code error} with the usual error map. Rows are objects keyed by
+ * column, as in the default {@code /api/query} layout. A failed send (client gone) surfaces as the
+ * {@link IOException} that stops the query.
+ */
+class SseResultWriter implements ResultWriter {
+
+    private final SseEmitter emitter;
+    private final int chunk;
+    private final long flushNanos;
+    private final Map<String, Object> trailer;
+    private List<String> columns;
+    private List<Map<String, Object>> pending = new ArrayList<>();
+    private long lastFlush = System.nanoTime();
+
+    /** @param trailer extra fields for the {@code end} event (e.g. where the answer came from); may be empty */
+    SseResultWriter(SseEmitter emitter, int chunk, int flushMillis, Map<String, Object> trailer) {
+        this.emitter = emitter;
+        this.chunk = Math.max(1, chunk);
+        this.flushNanos = Math.max(0, flushMillis) * 1_000_000L;
+        this.trailer = trailer != null ? trailer : Map.of();
+    }
+
+    /** Sends one named event with a JSON body. */
+    static void send(SseEmitter emitter, String name, Object data) throws IOException {
+        emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void begin(List<String> columns) throws IOException {
+        this.columns = columns;
+        send(emitter, "columns", Map.of("columns", columns));
+        lastFlush = System.nanoTime();
+    }
+
+    @Override
+    public void row(Object[] values) throws IOException {
+        Map<String, Object> row = new LinkedHashMap<>(values.length * 2);
+        for (int i = 0; i < values.length; i++) row.put(columns.get(i), values[i]);
+        pending.add(row);
+        if (pending.size() >= chunk || System.nanoTime() - lastFlush >= flushNanos) flush();
+    }
+
+    @Override
+    public void end(int rowCount, boolean truncated, Map<String, Object> error) throws IOException {
+        flush();
+        if (error != null) {
+            send(emitter, "error", error);
+            return;
+        }
+        Map<String, Object> end = new LinkedHashMap<>();
+        end.put("rowCount", rowCount);
+        end.put("truncated", truncated);
+        end.putAll(trailer);
+        send(emitter, "end", end);
+    }
+
+    private void flush() throws IOException {
+        if (!pending.isEmpty()) {
+            send(emitter, "rows", Map.of("rows", pending));
+            pending = new ArrayList<>(Math.min(chunk, 1024));
+        }
+        lastFlush = System.nanoTime();
+    }
+}
@@ -13,11 +13,96 @@ public class AppProps {
     private List<String> disallowSqlKeywords = new ArrayList<>();
     private int defaultMaxRows = 200;
     private int defaultQueryTimeoutSeconds = 20;
+    private int defaultFetchSize = 0;
+    private int streamMaxRows = 250_000;
+    private int streamFetchSize = 1000;
+    private int sseRowChunk = 200;
+    private int sseFlushMillis = 250;
     private List<String> allowTables = new ArrayList<>();
+    private int sqlValidationCacheSize = 4096;
+    private boolean sqlParameterize = true;
+
+    private boolean admissionEnabled = true;
+    private List<String> admissionWorkloads = List.of("QUERY", "NLQ");
+    private double admissionHeavyCost = 50;
+    private double admissionRejectCost = 20_000;
+    private long admissionRejectRows = 100_000_000L;
+    private int admissionHeavyConcurrency = 2;
+    private int admissionHeavyTimeoutSeconds = 15;
+    private int admissionCacheSize = 2048;
+    private int admissionCacheTtlSeconds = 600;
+    private boolean cursorEnabled = true;
+    private String cursorSecret;
+
+    private boolean resultCacheEnabled = true;
+    private long resultCacheMaxBytes = 64L * 1024 * 1024;
+    private int resultCacheTtlSeconds = 30;
+    private String resultCachePolicy = "lru";
 
     private int schemaSamplesPerColumn = 5;
+    private int schemaRefreshSeconds = 60;
+    private int schemaSampleTtlSeconds = 3600;
+    private String schemaSamplingMode = "scan";
+    private int schemaSamplingConcurrency = 4;
+    private int schemaTableSamplePercent = 10;
+
+    private int queryConcurrency = 10;
+    private int nlqConcurrency = 4;
+    private int schemaConcurrency = 2;
+    private int nlqPoolSize = 4;
+    private int schemaPoolSize = 2;
+    private long bulkheadWaitMillis = 5000;
+
+    private List<Replica> replicas = new ArrayList<>();
+    private List<String> replicaWorkloads = List.of("QUERY", "NLQ", "SCHEMA");
+    private double replicaMaxLagSeconds = 30;
+    private int replicaHealthSeconds = 5;
+    private boolean replicaFallbackToPrimary = true;
+    private String replicaLagSql;
+
+    private int batchMaxItems = 50;
+    private int batchConcurrency = 4;
+    private long batchDeadlineMillis = 30_000;
+
+    private boolean rollupEnabled = true;
+    private int rollupRefreshSeconds = 30;
+    private int rollupCheckPercent = 0;
+
+    private int jobMaxActive = 50;
+    private int jobMaxRetained = 500;
+    private int jobResultTtlSeconds = 300;
+    private String exportDir;
+    private int exportMaxRows = 50_000_000;
+    private long exportMaxBytes = 1L << 30;
+    private int exportTimeoutSeconds = 600;
+    private int exportTtlSeconds = 3600;
+    private int exportMaxConcurrent = 2;
+    private boolean cancelOnDisconnect = true;
+    /**
+     * Poll {@code /proc/net/tcp} for clients that went away (Linux only). It sees the connection that ends here,
+     * so behind a load balancer or proxy only an upstream close by the proxy shows; off by default.
+     */
+    private boolean disconnectPoll = false;
+    private long disconnectPollMillis = 1000;
+
+    private boolean warmupEnabled = true;
+    private int warmupTimeoutSeconds = 60;
+    private int warmupRounds = 20;
+    private boolean warmupHttp = true;
 
     private String nlqProvider = "rule";
+    private String intentsFile;
+    private int intentsReloadSeconds = 5;
+
+    private boolean nlqPlanCacheEnabled = true;
+    private int nlqPlanCacheMaxEntries = 10_000;
+    private long nlqPlanCacheTtlSeconds = 86_400;
+    private boolean nlqPlanCacheGeneralize = true;
+    private String nlqPlanCacheFile;
+
+    private boolean nlqSchemaPruning = true;
+    private int nlqSchemaExpandHops = 1;
+    private List<String> nlqSchemaAlwaysInclude = new ArrayList<>();
 
     private String azureOpenaiEndpoint;
     private String azureOpenaiApiKey;
@@ -39,15 +124,228 @@ public class AppProps {
     public int getDefaultQueryTimeoutSeconds() { return defaultQueryTimeoutSeconds; }
     public void setDefaultQueryTimeoutSeconds(int defaultQueryTimeoutSeconds) { this.defaultQueryTimeoutSeconds = defaultQueryTimeoutSeconds; }
 
+    public int getDefaultFetchSize() { return defaultFetchSize; }
+    public void setDefaultFetchSize(int defaultFetchSize) { this.defaultFetchSize = defaultFetchSize; }
+
+    public int getStreamMaxRows() { return streamMaxRows; }
+    public void setStreamMaxRows(int streamMaxRows) { this.streamMaxRows = streamMaxRows; }
+
+    public int getStreamFetchSize() { return streamFetchSize; }
+    public void setStreamFetchSize(int streamFetchSize) { this.streamFetchSize = streamFetchSize; }
+
+    public int getSseRowChunk() { return sseRowChunk; }
+    public void setSseRowChunk(int sseRowChunk) { this.sseRowChunk = sseRowChunk; }
+
+    public int getSseFlushMillis() { return sseFlushMillis; }
+    public void setSseFlushMillis(int sseFlushMillis) { this.sseFlushMillis = sseFlushMillis; }
+
     public List<String> getAllowTables() { return allowTables; }
     public void setAllowTables(List<String> allowTables) { this.allowTables = allowTables; }
 
+    public int getSqlValidationCacheSize() { return sqlValidationCacheSize; }
+    public void setSqlValidationCacheSize(int sqlValidationCacheSize) { this.sqlValidationCacheSize = sqlValidationCacheSize; }
+
+    public boolean isSqlParameterize() { return sqlParameterize; }
+    public void setSqlParameterize(boolean sqlParameterize) { this.sqlParameterize = sqlParameterize; }
+
+    public boolean isAdmissionEnabled() { return admissionEnabled; }
+    public void setAdmissionEnabled(boolean admissionEnabled) { this.admissionEnabled = admissionEnabled; }
+
+    public List<String> getAdmissionWorkloads() { return admissionWorkloads; }
+    public void setAdmissionWorkloads(List<String> admissionWorkloads) { this.admissionWorkloads = admissionWorkloads; }
+
+    public double getAdmissionHeavyCost() { return admissionHeavyCost; }
+    public void setAdmissionHeavyCost(double admissionHeavyCost) { this.admissionHeavyCost = admissionHeavyCost; }
+
+    public double getAdmissionRejectCost() { return admissionRejectCost; }
+    public void setAdmissionRejectCost(double admissionRejectCost) { this.admissionRejectCost = admissionRejectCost; }
+
+    public long getAdmissionRejectRows() { return admissionRejectRows; }
+    public void setAdmissionRejectRows(long admissionRejectRows) { this.admissionRejectRows = admissionRejectRows; }
+
+    public int getAdmissionHeavyConcurrency() { return admissionHeavyConcurrency; }
+    public void setAdmissionHeavyConcurrency(int admissionHeavyConcurrency) { this.admissionHeavyConcurrency = admissionHeavyConcurrency; }
+
+    public int getAdmissionHeavyTimeoutSeconds() { return admissionHeavyTimeoutSeconds; }
+    public void setAdmissionHeavyTimeoutSeconds(int admissionHeavyTimeoutSeconds) { this.admissionHeavyTimeoutSeconds = admissionHeavyTimeoutSeconds; }
+
+    public int getAdmissionCacheSize() { return admissionCacheSize; }
+    public void setAdmissionCacheSize(int admissionCacheSize) { this.admissionCacheSize = admissionCacheSize; }
+
+    public int getAdmissionCacheTtlSeconds() { return admissionCacheTtlSeconds; }
+    public void setAdmissionCacheTtlSeconds(int admissionCacheTtlSeconds) { this.admissionCacheTtlSeconds = admissionCacheTtlSeconds; }
+
+    public boolean isCursorEnabled() { return cursorEnabled; }
+    public void setCursorEnabled(boolean cursorEnabled) { this.cursorEnabled = cursorEnabled; }
+
+    public String getCursorSecret() { return cursorSecret; }
+    public void setCursorSecret(String cursorSecret) { this.cursorSecret = cursorSecret; }
+
+    public boolean isResultCacheEnabled() { return resultCacheEnabled; }
+    public void setResultCacheEnabled(boolean resultCacheEnabled) { this.resultCacheEnabled = resultCacheEnabled; }
+
+    public long getResultCacheMaxBytes() { return resultCacheMaxBytes; }
+    public void setResultCacheMaxBytes(long resultCacheMaxBytes) { this.resultCacheMaxBytes = resultCacheMaxBytes; }
+
+    public int getResultCacheTtlSeconds() { return resultCacheTtlSeconds; }
+    public void setResultCacheTtlSeconds(int resultCacheTtlSeconds) { this.resultCacheTtlSeconds = resultCacheTtlSeconds; }
+
+    public String getResultCachePolicy() { return resultCachePolicy; }
+    public void setResultCachePolicy(String resultCachePolicy) { this.resultCachePolicy = resultCachePolicy; }
+
     public int getSchemaSamplesPerColumn() { return schemaSamplesPerColumn; }
     public void setSchemaSamplesPerColumn(int schemaSamplesPerColumn) { this.schemaSamplesPerColumn = schemaSamplesPerColumn; }
 
+    public int getSchemaRefreshSeconds() { return schemaRefreshSeconds; }
+    public void setSchemaRefreshSeconds(int schemaRefreshSeconds) { this.schemaRefreshSeconds = schemaRefreshSeconds; }
+
+    public int getSchemaSampleTtlSeconds() { return schemaSampleTtlSeconds; }
+    public void setSchemaSampleTtlSeconds(int schemaSampleTtlSeconds) { this.schemaSampleTtlSeconds = schemaSampleTtlSeconds; }
+
+    public String getSchemaSamplingMode() { return schemaSamplingMode; }
+    public void setSchemaSamplingMode(String schemaSamplingMode) { this.schemaSamplingMode = schemaSamplingMode; }
+
+    public int getSchemaSamplingConcurrency() { return schemaSamplingConcurrency; }
+    public void setSchemaSamplingConcurrency(int schemaSamplingConcurrency) { this.schemaSamplingConcurrency = schemaSamplingConcurrency; }
+
+    public int getSchemaTableSamplePercent() { return schemaTableSamplePercent; }
+    public void setSchemaTableSamplePercent(int schemaTableSamplePercent) { this.schemaTableSamplePercent = schemaTableSamplePercent; }
+
+    public int getQueryConcurrency() { return queryConcurrency; }
+    public void setQueryConcurrency(int queryConcurrency) { this.queryConcurrency = queryConcurrency; }
+
+    public int getNlqConcurrency() { return nlqConcurrency; }
+    public void setNlqConcurrency(int nlqConcurrency) { this.nlqConcurrency = nlqConcurrency; }
+
+    public int getSchemaConcurrency() { return schemaConcurrency; }
+    public void setSchemaConcurrency(int schemaConcurrency) { this.schemaConcurrency = schemaConcurrency; }
+
+    public int getNlqPoolSize() { return nlqPoolSize; }
+    public void setNlqPoolSize(int nlqPoolSize) { this.nlqPoolSize = nlqPoolSize; }
+
+    public int getSchemaPoolSize() { return schemaPoolSize; }
+    public void setSchemaPoolSize(int schemaPoolSize) { this.schemaPoolSize = schemaPoolSize; }
+
+    public long getBulkheadWaitMillis() { return bulkheadWaitMillis; }
+    public void setBulkheadWaitMillis(long bulkheadWaitMillis) { this.bulkheadWaitMillis = bulkheadWaitMillis; }
+
+    public List<Replica> getReplicas() { return replicas; }
+    public void setReplicas(List<Replica> replicas) { this.replicas = replicas; }
+
+    public List<String> getReplicaWorkloads() { return replicaWorkloads; }
+    public void setReplicaWorkloads(List<String> replicaWorkloads) { this.replicaWorkloads = replicaWorkloads; }
+
+    public double getReplicaMaxLagSeconds() { return replicaMaxLagSeconds; }
+    public void setReplicaMaxLagSeconds(double replicaMaxLagSeconds) { this.replicaMaxLagSeconds = replicaMaxLagSeconds; }
+
+    public int getReplicaHealthSeconds() { return replicaHealthSeconds; }
+    public void setReplicaHealthSeconds(int replicaHealthSeconds) { this.replicaHealthSeconds = replicaHealthSeconds; }
+
+    public boolean isReplicaFallbackToPrimary() { return replicaFallbackToPrimary; }
+    public void setReplicaFallbackToPrimary(boolean replicaFallbackToPrimary) { this.replicaFallbackToPrimary = replicaFallbackToPrimary; }
+
+    public String getReplicaLagSql() { return replicaLagSql; }
+    public void setReplicaLagSql(String replicaLagSql) { this.replicaLagSql = replicaLagSql; }
+
+    public int getBatchMaxItems() { return batchMaxItems; }
+    public void setBatchMaxItems(int batchMaxItems) { this.batchMaxItems = batchMaxItems; }
+
+    public int getBatchConcurrency() { return batchConcurrency; }
+    public void setBatchConcurrency(int batchConcurrency) { this.batchConcurrency = batchConcurrency; }
+
+    public long getBatchDeadlineMillis() { return batchDeadlineMillis; }
+    public void setBatchDeadlineMillis(long batchDeadlineMillis) { this.batchDeadlineMillis = batchDeadlineMillis; }
+
+    public boolean isRollupEnabled() { return rollupEnabled; }
+    public void setRollupEnabled(boolean rollupEnabled) { this.rollupEnabled = rollupEnabled; }
+
+    public int getRollupRefreshSeconds() { return rollupRefreshSeconds; }
+    public void setRollupRefreshSeconds(int rollupRefreshSeconds) { this.rollupRefreshSeconds = rollupRefreshSeconds; }
+
+    public int getRollupCheckPercent() { return rollupCheckPercent; }
+    public void setRollupCheckPercent(int rollupCheckPercent) { this.rollupCheckPercent = rollupCheckPercent; }
+
+    public int getJobMaxActive() { return jobMaxActive; }
+    public void setJobMaxActive(int jobMaxActive) { this.jobMaxActive = jobMaxActive; }
+
+    public int getJobMaxRetained() { return jobMaxRetained; }
+    public void setJobMaxRetained(int jobMaxRetained) { this.jobMaxRetained = jobMaxRetained; }
+
+    public int getJobResultTtlSeconds() { return jobResultTtlSeconds; }
+    public void setJobResultTtlSeconds(int jobResultTtlSeconds) { this.jobResultTtlSeconds = jobResultTtlSeconds; }
+
+    public String getExportDir() { return exportDir; }
+    public void setExportDir(String exportDir) { this.exportDir = exportDir; }
+
+    public int getExportMaxRows() { return exportMaxRows; }
+    public void setExportMaxRows(int exportMaxRows) { this.exportMaxRows = exportMaxRows; }
+
+    public long getExportMaxBytes() { return exportMaxBytes; }
+    public void setExportMaxBytes(long exportMaxBytes) { this.exportMaxBytes = exportMaxBytes; }
+
+    public int getExportTimeoutSeconds() { return exportTimeoutSeconds; }
+    public void setExportTimeoutSeconds(int exportTimeoutSeconds) { this.exportTimeoutSeconds = exportTimeoutSeconds; }
+
+    public int getExportTtlSeconds() { return exportTtlSeconds; }
+    public void setExportTtlSeconds(int exportTtlSeconds) { this.exportTtlSeconds = exportTtlSeconds; }
+
+    public int getExportMaxConcurrent() { return exportMaxConcurrent; }
+    public void setExportMaxConcurrent(int exportMaxConcurrent) { this.exportMaxConcurrent = exportMaxConcurrent; }
+
+    public boolean isCancelOnDisconnect() { return cancelOnDisconnect; }
+    public void setCancelOnDisconnect(boolean cancelOnDisconnect) { this.cancelOnDisconnect = cancelOnDisconnect; }
+
+    public boolean isDisconnectPoll() { return disconnectPoll; }
+    public void setDisconnectPoll(boolean disconnectPoll) { this.disconnectPoll = disconnectPoll; }
+
+    public long getDisconnectPollMillis() { return disconnectPollMillis; }
+    public void setDisconnectPollMillis(long disconnectPollMillis) { this.disconnectPollMillis = disconnectPollMillis; }
+
+    public boolean isWarmupEnabled() { return warmupEnabled; }
+    public void setWarmupEnabled(boolean warmupEnabled) { this.warmupEnabled = warmupEnabled; }
+
+    public int getWarmupTimeoutSeconds() { return warmupTimeoutSeconds; }
+    public void setWarmupTimeoutSeconds(int warmupTimeoutSeconds) { this.warmupTimeoutSeconds = warmupTimeoutSeconds; }
+
+    public int getWarmupRounds() { return warmupRounds; }
+    public void setWarmupRounds(int warmupRounds) { this.warmupRounds = warmupRounds; }
+
+    public boolean isWarmupHttp() { return warmupHttp; }
+    public void setWarmupHttp(boolean warmupHttp) { this.warmupHttp = warmupHttp; }
+
     public String getNlqProvider() { return nlqProvider; }
     public void setNlqProvider(String nlqProvider) { this.nlqProvider = nlqProvider; }
 
+    public String getIntentsFile() { return intentsFile; }
+    public void setIntentsFile(String intentsFile) { this.intentsFile = intentsFile; }
+
+    public int getIntentsReloadSeconds() { return intentsReloadSeconds; }
+    public void setIntentsReloadSeconds(int intentsReloadSeconds) { this.intentsReloadSeconds = intentsReloadSeconds; }
+
+    public boolean isNlqPlanCacheEnabled() { return nlqPlanCacheEnabled; }
+    public void setNlqPlanCacheEnabled(boolean nlqPlanCacheEnabled) { this.nlqPlanCacheEnabled = nlqPlanCacheEnabled; }
+
+    public int getNlqPlanCacheMaxEntries() { return nlqPlanCacheMaxEntries; }
+    public void setNlqPlanCacheMaxEntries(int nlqPlanCacheMaxEntries) { this.nlqPlanCacheMaxEntries = nlqPlanCacheMaxEntries; }
+
+    public long getNlqPlanCacheTtlSeconds() { return nlqPlanCacheTtlSeconds; }
+    public void setNlqPlanCacheTtlSeconds(long nlqPlanCacheTtlSeconds) { this.nlqPlanCacheTtlSeconds = nlqPlanCacheTtlSeconds; }
+
+    public boolean isNlqPlanCacheGeneralize() { return nlqPlanCacheGeneralize; }
+    public void setNlqPlanCacheGeneralize(boolean nlqPlanCacheGeneralize) { this.nlqPlanCacheGeneralize = nlqPlanCacheGeneralize; }
+
+    public String getNlqPlanCacheFile() { return nlqPlanCacheFile; }
+    public void setNlqPlanCacheFile(String nlqPlanCacheFile) { this.nlqPlanCacheFile = nlqPlanCacheFile; }
+
+    public boolean isNlqSchemaPruning() { return nlqSchemaPruning; }
+    public void setNlqSchemaPruning(boolean nlqSchemaPruning) { this.nlqSchemaPruning = nlqSchemaPruning; }
+
+    public int getNlqSchemaExpandHops() { return nlqSchemaExpandHops; }
+    public void setNlqSchemaExpandHops(int nlqSchemaExpandHops) { this.nlqSchemaExpandHops = nlqSchemaExpandHops; }
+
+    public List<String> getNlqSchemaAlwaysInclude() { return nlqSchemaAlwaysInclude; }
+    public void setNlqSchemaAlwaysInclude(List<String> nlqSchemaAlwaysInclude) { this.nlqSchemaAlwaysInclude = nlqSchemaAlwaysInclude; }
+
     public String getAzureOpenaiEndpoint() { return azureOpenaiEndpoint; }
     public void setAzureOpenaiEndpoint(String v) { this.azureOpenaiEndpoint = v; }
 
@@ -65,4 +363,34 @@ public class AppProps {
 
     public String getBedrockModelId() { return bedrockModelId; }
     public void setBedrockModelId(String bedrockModelId) { this.bedrockModelId = bedrockModelId; }
+
+    /** One read replica ({@code app.replicas[n].*}); blank credentials fall back to {@code spring.datasource.*}. */
+    public static class Replica {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        /** 0 = the main pool's size. */
+        private int poolSize;
+        /** Overrides {@code app.replicaLagSql} for this replica. */
+        private String lagSql;
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getUrl() { return url; }
+        public void setUrl(String url) { this.url = url; }
+
+        public String getUsername() { return username; }
+        public void setUsername(String username) { this.username = username; }
+
+        public String getPassword() { return password; }
+        public void setPassword(String password) { this.password = password; }
+
+        public int getPoolSize() { return poolSize; }
+        public void setPoolSize(int poolSize) { this.poolSize = poolSize; }
+
+        public String getLagSql() { return lagSql; }
+        public void setLagSql(String lagSql) { this.lagSql = lagSql; }
+    }
 }
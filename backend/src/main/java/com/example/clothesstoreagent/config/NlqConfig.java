@@ -5,11 +5,29 @@ import com.example.clothesstoreagent.service.SchemaService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
 @Configuration
 public class NlqConfig {
 
     @Bean
     public NlqProvider nlqProvider(AppProps props, SchemaService schemaService) {
+        NlqProvider provider = baseProvider(props, schemaService);
+        if (!props.isNlqPlanCacheEnabled()) {
+            return provider;
+        }
+        // Cached plans go stale when the schema changes or, for rules, when the intents file is reloaded.
+        // Rules compile in microseconds and check each slot's pattern and range, which a plan generalized
+        // to other literals would skip, so they are only cached for the exact prompt.
+        if (provider instanceof RuleBasedProvider rules) {
+            Supplier<String> version = () -> schemaService.currentEtag() + "/intents-" + rules.version();
+            return new CachingNlqProvider(provider, props, version, false);
+        }
+        return new CachingNlqProvider(provider, props, schemaService::currentEtag);
+    }
+
+    private static NlqProvider baseProvider(AppProps props, SchemaService schemaService) {
         String which = String.valueOf(props.getNlqProvider()).trim().toLowerCase();
         switch (which) {
             case "azure":
@@ -19,7 +37,10 @@ public class NlqConfig {
                 return new AwsBedrockProvider(props, schemaService);
             case "rule":
             default:
-                return new RuleBasedProvider();
+                String file = props.getIntentsFile();
+                return new RuleBasedProvider(file == null || file.isBlank()
+                        ? IntentRegistry.bundled()
+                        : new IntentRegistry(Path.of(file), props.getIntentsReloadSeconds()));
         }
     }
 }
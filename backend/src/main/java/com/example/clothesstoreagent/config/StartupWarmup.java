@@ -0,0 +1,254 @@
+package com.example.clothesstoreagent.config;
+
+import com.example.clothesstoreagent.nlq.NlqProvider;
+import com.example.clothesstoreagent.service.QueryService;
+import com.example.clothesstoreagent.service.SchemaService;
+import com.example.clothesstoreagent.service.SchemaSnapshot;
+import com.example.clothesstoreagent.service.WorkloadPools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pays the first-request costs at startup instead of on live traffic. Runs as an {@link ApplicationRunner},
+ * after the web server has started but before Spring Boot reports readiness ({@code /actuator/health/readiness}
+ * stays OUT_OF_SERVICE until it returns), so a rolling restart only routes traffic to a warm instance:
+ * <ol>
+ *   <li>{@code pools}: every primary pool opened and filled to its minimum idle connections;</li>
+ *   <li>{@code schema}: the schema snapshot built (catalog read, column sampling) and serialized once;</li>
+ *   <li>{@code intents}: every rule-based intent example compiled and its SQL validated,
+ *       {@code app.warmupRounds} times over (regexes, lexer, plan cache, JIT);</li>
+ *   <li>{@code http}: a few loopback requests ({@code /api/schema}, {@code /api/nlq} without execution, and
+ *       {@code SELECT 1} through {@code /api/query}) for the MVC, Jackson and JDBC paths.</li>
+ * </ol>
+ * The whole phase is bounded by {@code app.warmupTimeoutSeconds}; steps past the budget are skipped, and when
+ * the database cannot be reached the database steps are skipped. Failures are logged, never fatal.
+ *
+ * Startup figures (time to ready, each step, and the latency of the first real request per endpoint) are
+ * logged, published as {@code app.startup.*} gauges next to Spring Boot's {@code application.ready.time}, and
+ * returned by {@link #report}.
+ */
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+
+    /** Requests carrying this header are the warm-up's own and are left out of the first-request figures. */
+    public static final String HEADER = "X-Warmup";
+
+    private final AppProps props;
+    private final WorkloadPools pools;
+    private final SchemaService schema;
+    private final NlqProvider nlq;
+    private final QueryService query;
+    private final ObjectMapper om;
+    private final Environment env;
+    private final MeterRegistry registry;
+
+    private final Map<String, Object> steps = new LinkedHashMap<>();
+    private final Map<String, Double> firstRequests = new ConcurrentHashMap<>();
+    private volatile long warmupMillis = -1;
+    private volatile Instant readyAt;
+    private volatile double readySeconds = -1;
+
+    public StartupWarmup(AppProps props,
+                         WorkloadPools pools,
+                         SchemaService schema,
+                         NlqProvider nlq,
+                         QueryService query,
+                         ObjectMapper om,
+                         Environment env,
+                         ObjectProvider<MeterRegistry> meters) {
+        this.props = props;
+        this.pools = pools;
+        this.schema = schema;
+        this.nlq = nlq;
+        this.query = query;
+        this.om = om;
+        this.env = env;
+        this.registry = meters.getIfAvailable();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!props.isWarmupEnabled()) {
+            log.info("Startup warm-up disabled");
+            return;
+        }
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.SECONDS.toNanos(Math.max(1, props.getWarmupTimeoutSeconds()));
+
+        boolean database = step("pools", deadline, () -> pools.prefill(deadline));
+        if (database) {
+            step("schema", deadline, () -> {
+                SchemaSnapshot snap = schema.getSnapshot();
+                om.writeValueAsBytes(snap.getSchema());
+                return snap.getVersion();
+            });
+        } else {
+            skip("schema", "database unreachable");
+        }
+        step("intents", deadline, this::intents);
+        if (props.isWarmupHttp()) step("http", deadline, () -> http(database));
+
+        warmupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        log.info("Startup warm-up finished in {} ms: {}", warmupMillis, steps);
+    }
+
+    @EventListener
+    public void ready(ApplicationReadyEvent event) {
+        readyAt = Instant.now();
+        readySeconds = ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+        log.info("Ready to serve {} s after JVM start (context {} ms, warm-up {} ms)", readySeconds,
+                event.getTimeTaken() != null ? event.getTimeTaken().toMillis() : "n/a", warmupMillis);
+        if (registry != null) {
+            Gauge.builder("app.startup.warmup.seconds", () -> Math.max(0, warmupMillis) / 1000.0)
+                    .description("Time spent in the startup warm-up before readiness")
+                    .register(registry);
+        }
+    }
+
+    /** Latency of the first request to {@code route} after readiness; later calls for the same route are ignored. */
+    public void firstRequest(String route, long nanos) {
+        if (readyAt == null) return;
+        double millis = nanos / 1e6;
+        if (firstRequests.putIfAbsent(route, millis) != null) return;
+        log.info("First request {} took {} ms", route, String.format(Locale.ROOT, "%.1f", millis));
+        if (registry != null) {
+            Gauge.builder("app.startup.first.request.seconds", () -> millis / 1000.0)
+                    .description("Latency of the first request to each endpoint after startup")
+                    .tag("route", route)
+                    .register(registry);
+        }
+    }
+
+    public Map<String, Object> report() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("jvmStartedAt", Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime()).toString());
+        out.put("readyAt", readyAt != null ? readyAt.toString() : null);
+        out.put("readySecondsAfterJvmStart", readySeconds);
+        out.put("warmupEnabled", props.isWarmupEnabled());
+        out.put("warmupMillis", warmupMillis);
+        synchronized (steps) {
+            out.put("steps", new LinkedHashMap<>(steps));
+        }
+        out.put("firstRequestMillis", new TreeMap<>(firstRequests));
+        return out;
+    }
+
+    private boolean step(String name, long deadline, Callable<Object> work) {
+        if (System.nanoTime() - deadline > 0) {
+            skip(name, "over app.warmupTimeoutSeconds");
+            return false;
+        }
+        long started = System.nanoTime();
+        Map<String, Object> s = new LinkedHashMap<>();
+        boolean ok;
+        try {
+            s.put("result", work.call());
+            ok = true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            s.put("error", "interrupted");
+            ok = false;
+        } catch (Exception ex) {
+            log.warn("Warm-up step {} failed: {}", name, ex.getMessage());
+            s.put("error", String.valueOf(ex.getMessage()));
+            ok = false;
+        }
+        double millis = (System.nanoTime() - started) / 1e6;
+        s.put("millis", Math.round(millis));
+        synchronized (steps) {
+            steps.put(name, s);
+        }
+        if (registry != null) {
+            Gauge.builder("app.startup.step.seconds", () -> millis / 1000.0)
+                    .description("Duration of each startup warm-up step")
+                    .tag("step", name)
+                    .register(registry);
+        }
+        return ok;
+    }
+
+    private void skip(String name, String why) {
+        log.info("Warm-up step {} skipped: {}", name, why);
+        synchronized (steps) {
+            steps.put(name, Map.of("skipped", why));
+        }
+    }
+
+    private Map<String, Object> intents() {
+        List<String> examples = nlq.examples();
+        int compiled = 0, failed = 0;
+        int rounds = Math.max(1, props.getWarmupRounds());
+        for (int r = 0; r < rounds; r++) {
+            for (String prompt : examples) {
+                try {
+                    query.validate(nlq.compile(prompt).sql);
+                    if (r == 0) compiled++;
+                } catch (RuntimeException ex) {
+                    if (r == 0) {
+                        failed++;
+                        log.warn("Warm-up: intent example '{}' does not compile or validate: {}", prompt, ex.getMessage());
+                    }
+                }
+            }
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("examples", examples.size());
+        out.put("compiled", compiled);
+        out.put("failed", failed);
+        out.put("rounds", rounds);
+        return out;
+    }
+
+    private Map<String, Object> http(boolean database) throws Exception {
+        String port = env.getProperty("local.server.port");
+        if (port == null) return Map.of("skipped", "no web server");
+        String base = "http://127.0.0.1:" + port + env.getProperty("server.servlet.context-path", "");
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        Map<String, Object> out = new LinkedHashMap<>();
+        if (database) out.put("GET /api/schema", call(http, HttpRequest.newBuilder(URI.create(base + "/api/schema")).GET()));
+        List<String> examples = nlq.examples();
+        if (!examples.isEmpty()) {
+            String body = om.writeValueAsString(Map.of("prompt", examples.get(0), "execute", false));
+            out.put("POST /api/nlq", call(http, HttpRequest.newBuilder(URI.create(base + "/api/nlq"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))));
+        }
+        if (database) {
+            out.put("POST /api/query", call(http, HttpRequest.newBuilder(URI.create(base + "/api/query"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"sql\":\"SELECT 1 AS ok\",\"cache\":false}"))));
+        }
+        return out;
+    }
+
+    private static String call(HttpClient http, HttpRequest.Builder req) throws Exception {
+        long started = System.nanoTime();
+        HttpResponse<Void> resp = http.send(req.header(HEADER, "1").timeout(Duration.ofSeconds(30)).build(),
+                HttpResponse.BodyHandlers.discarding());
+        return resp.statusCode() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms";
+    }
+}
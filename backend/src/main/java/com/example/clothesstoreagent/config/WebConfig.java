@@ -0,0 +1,59 @@
+package com.example.clothesstoreagent.config;
+
+import com.example.clothesstoreagent.nlq.NlqMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private static final String STARTED = WebConfig.class.getName() + ".started";
+
+    private final NlqMetrics nlqMetrics;
+    private final StartupWarmup warmup;
+
+    public WebConfig(NlqMetrics nlqMetrics, StartupWarmup warmup) {
+        this.nlqMetrics = nlqMetrics;
+        this.warmup = warmup;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // afterCompletion runs once the body has been written (after the async dispatch for CompletableFuture
+        // and streaming handlers), which is what closes the serialize/total stages.
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                                        Object handler, Exception ex) {
+                if (request.getAttribute(NlqMetrics.RECORDER) instanceof NlqMetrics.Recorder r) {
+                    nlqMetrics.finish(r);
+                }
+            }
+        }).addPathPatterns("/api/nlq", "/api/nlq/stream", "/api/nlq/events");
+
+        // First request per endpoint after startup (see StartupWarmup). preHandle runs again on the async
+        // dispatch, so only the first call sets the start.
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                if (request.getAttribute(STARTED) == null) request.setAttribute(STARTED, System.nanoTime());
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                                        Object handler, Exception ex) {
+                if (request.getHeader(StartupWarmup.HEADER) != null) return;
+                if (request.getAttribute(STARTED) instanceof Long started
+                        && request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE) instanceof String pattern) {
+                    warmup.firstRequest(request.getMethod() + " " + pattern, System.nanoTime() - started);
+                }
+            }
+        }).addPathPatterns("/api/**");
+    }
+}
@@ -2,34 +2,155 @@ package com.example.clothesstoreagent.nlq;
 
 import com.example.clothesstoreagent.config.AppProps;
 import com.example.clothesstoreagent.service.SchemaService;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
 
 public class AzureOpenAIProvider implements NlqProvider {
 
+    private static final Logger log = LoggerFactory.getLogger(AzureOpenAIProvider.class);
+
     private final AppProps props;
     private final SchemaService schema;
+    private final SchemaContextBuilder contextBuilder;
     private final HttpClient http = HttpClient.newHttpClient();
     private final ObjectMapper om = new ObjectMapper();
+    private final ConcurrentHashMap<String, CompletableFuture<Plan>> inFlight = new ConcurrentHashMap<>();
 
     public AzureOpenAIProvider(AppProps props, SchemaService schema) {
         this.props = props;
         this.schema = schema;
+        this.contextBuilder = new SchemaContextBuilder(props);
     }
 
     @Override
     public Plan compile(String prompt) {
+        try {
+            return compileAsync(prompt).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            throw ex;
+        }
+    }
+
+    /**
+     * Non-blocking compile on {@link HttpClient#sendAsync}. Concurrent calls with the same prompt share a
+     * single in-flight request; each caller gets its own dependent future, so cancelling one does not
+     * affect the others.
+     */
+    @Override
+    public CompletableFuture<Plan> compileAsync(String prompt) {
+        String key = prompt == null ? "" : prompt.trim();
+        CompletableFuture<Plan> mine = new CompletableFuture<>();
+        CompletableFuture<Plan> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            log.debug("Joining in-flight Azure request for identical prompt");
+            return running.copy();
+        }
+
+        CompletableFuture<Plan> call;
+        try {
+            call = send(prompt);
+        } catch (RuntimeException ex) {
+            call = CompletableFuture.failedFuture(ex);
+        }
+        call.whenComplete((plan, err) -> {
+            inFlight.remove(key, mine);
+            if (err != null) mine.completeExceptionally(unwrap(err));
+            else mine.complete(plan);
+        });
+        return mine.copy();
+    }
+
+    /**
+     * Compiles with {@code "stream": true}: the completion arrives as server-sent chunks, each delta goes to
+     * {@code progress} as it is read, and the SQL is reported once its string is complete in the partial JSON.
+     * Not shared with identical in-flight prompts, since each caller wants its own progress.
+     */
+    @Override
+    public CompletableFuture<Plan> compileStreaming(String prompt, Progress progress) {
+        try {
+            HttpRequest req = request(prompt, true);
+            return wrapErrors(http.sendAsync(req, info -> {
+                if (info.statusCode() < 200 || info.statusCode() >= 300) {
+                    return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                            body -> { throw callFailed(info.statusCode(), body); });
+                }
+                return HttpResponse.BodySubscribers.fromLineSubscriber(new StreamedCompletion(progress),
+                        StreamedCompletion::plan, StandardCharsets.UTF_8, null);
+            }).thenApply(HttpResponse::body));
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private CompletableFuture<Plan> send(String prompt) {
+        HttpRequest req = request(prompt, false);
+        return wrapErrors(http.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+                .thenApply(resp -> {
+                    if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+                        throw callFailed(resp.statusCode(), resp.body());
+                    }
+                    return parsePlan(resp.body());
+                }));
+    }
+
+    private HttpRequest request(String prompt, boolean stream) {
         requireConfigured();
+        try {
+            Map<String, Object> body = requestBody(prompt);
+            if (stream) body.put("stream", true);
+            return HttpRequest.newBuilder()
+                    .uri(URI.create(chatUrl()))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .header("api-key", props.getAzureOpenaiApiKey())
+                    .POST(HttpRequest.BodyPublishers.ofString(om.writeValueAsString(body)))
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalStateException("AzureOpenAIProvider error: " + e.getMessage(), e);
+        }
+    }
 
-        Map<String, Object> ctx = schema.getSchema();
+    private static IllegalStateException callFailed(int status, String body) {
+        return new IllegalStateException("AzureOpenAIProvider error: Azure call failed: HTTP " + status + " - " + body);
+    }
+
+    private static CompletableFuture<Plan> wrapErrors(CompletableFuture<Plan> call) {
+        return call.exceptionally(err -> {
+            Throwable cause = unwrap(err);
+            if (cause instanceof IllegalStateException ise
+                    && String.valueOf(ise.getMessage()).startsWith("AzureOpenAIProvider error")) {
+                throw ise;
+            }
+            throw new IllegalStateException("AzureOpenAIProvider error: " + cause.getMessage(), cause);
+        });
+    }
+
+    private Map<String, Object> requestBody(String prompt) {
+        SchemaContextBuilder.Context ctx = contextBuilder.build(schema.getSnapshot(), prompt);
+        log.info("Schema context tables={} tokens~{} (full ddl~{}, json~{})",
+                ctx.tables.size(), ctx.prunedTokens, ctx.fullTokens, ctx.jsonTokens);
 
         String system = """
                 You are a Text-to-SQL assistant for **Microsoft SQL Server**.
@@ -58,46 +179,49 @@ public class AzureOpenAIProvider implements NlqProvider {
                                 "AND o.created_at <  DATEADD(DAY,1,EOMONTH(SYSUTCDATETIME(),-1)) " +
                                 "GROUP BY p.name ORDER BY revenue DESC\",\"params\":{}}"),
                 Map.of("role", "user", "content",
-                        "Schema JSON:\n" + safeJson(ctx) + "\n\nUser request:\n" + prompt
+                        "Schema (table(column type[?=nullable] [-> fk] [e.g. samples])):\n" + ctx.text
+                                + "\nUser request:\n" + prompt
                                 + "\n\nReturn ONLY strict JSON.")));
         body.put("temperature", 0);
-    body.put("response_format", Map.of("type", "json_object"));
+        body.put("response_format", Map.of("type", "json_object"));
+        return body;
+    }
 
-    String url = props.getAzureOpenaiEndpoint().replaceAll("/+$", "") +
-        "/openai/deployments/" + props.getAzureOpenaiDeployment() +
-        "/chat/completions?api-version=" + props.getAzureOpenaiApiVersion();
+    private String chatUrl() {
+        return props.getAzureOpenaiEndpoint().replaceAll("/+$", "") +
+                "/openai/deployments/" + props.getAzureOpenaiDeployment() +
+                "/chat/completions?api-version=" + props.getAzureOpenaiApiVersion();
+    }
 
+    private Plan parsePlan(String responseBody) {
         try {
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofSeconds(30))
-                    .header("Content-Type", "application/json")
-                    .header("api-key", props.getAzureOpenaiApiKey())
-                    .POST(HttpRequest.BodyPublishers.ofString(om.writeValueAsString(body)))
-                    .build();
-
-            HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
-            if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
-                throw new IllegalStateException("Azure call failed: HTTP " + resp.statusCode() + " - " + resp.body());
-            }
-
-            Map<?, ?> json = om.readValue(resp.body(), Map.class);
+            Map<?, ?> json = om.readValue(responseBody, Map.class);
             List<?> choices = (List<?>) json.get("choices");
             if (choices == null || choices.isEmpty()) {
                 throw new IllegalStateException("No choices from Azure.");
             }
             Map<?, ?> choice0 = (Map<?, ?>) choices.get(0);
             Map<?, ?> message = (Map<?, ?>) choice0.get("message");
-            String content = String.valueOf(message.get("content"));
+            return planFrom(String.valueOf(message.get("content")));
+        } catch (IllegalStateException e) {
+            if (String.valueOf(e.getMessage()).startsWith("AzureOpenAIProvider error")) throw e;
+            throw new IllegalStateException("AzureOpenAIProvider error: " + e.getMessage(), e);
+        } catch (Exception e) {
+            throw new IllegalStateException("AzureOpenAIProvider error: " + e.getMessage(), e);
+        }
+    }
 
+    /** The plan in the model's JSON output. */
+    private Plan planFrom(String content) {
+        try {
             Map<?, ?> out = om.readValue(content, Map.class);
             String sql = String.valueOf(out.get("sql"));
 
-            Map<String, Object> params = java.util.Collections.emptyMap();
+            Map<String, Object> params = Collections.emptyMap();
             Object paramsRaw = out.get("params");
             if (paramsRaw instanceof Map) {
                 Map<?, ?> m = (Map<?, ?>) paramsRaw;
-                Map<String, Object> copy = new java.util.LinkedHashMap<>();
+                Map<String, Object> copy = new LinkedHashMap<>();
                 for (Map.Entry<?, ?> e : m.entrySet()) {
                     copy.put(String.valueOf(e.getKey()), e.getValue());
                 }
@@ -109,11 +233,102 @@ public class AzureOpenAIProvider implements NlqProvider {
             }
             return new Plan("ai_azure", sql, params);
 
+        } catch (IllegalStateException e) {
+            if (String.valueOf(e.getMessage()).startsWith("AzureOpenAIProvider error")) throw e;
+            throw new IllegalStateException("AzureOpenAIProvider error: " + e.getMessage(), e);
         } catch (Exception e) {
             throw new IllegalStateException("AzureOpenAIProvider error: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Reads a streamed completion line by line: {@code data: {chunk}} lines carry {@code choices[0].delta.content},
+     * {@code data: [DONE]} ends it. Lines arrive one at a time, in order.
+     */
+    private final class StreamedCompletion implements Flow.Subscriber<String> {
+        private final Progress progress;
+        private final StringBuilder content = new StringBuilder();
+        private boolean sqlReported;
+
+        StreamedCompletion(Progress progress) {
+            this.progress = progress;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!line.startsWith("data:")) return;
+            String data = line.substring(5).trim();
+            if (data.isEmpty() || data.equals("[DONE]")) return;
+            String delta;
+            try {
+                delta = delta(om.readTree(data));
+            } catch (IOException e) {
+                log.debug("Unreadable completion chunk: {}", e.getMessage());
+                return;
+            }
+            if (delta == null || delta.isEmpty()) return;
+            content.append(delta);
+            progress.token(delta);
+            if (!sqlReported) {
+                String sql = completedSql(content);
+                if (sql != null) {
+                    sqlReported = true;
+                    progress.sql(sql);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        Plan plan() {
+            if (content.length() == 0) throw new IllegalStateException("AzureOpenAIProvider error: Empty completion stream.");
+            return planFrom(content.toString());
+        }
+
+        private static String delta(JsonNode chunk) {
+            JsonNode choices = chunk.path("choices");
+            if (!choices.isArray() || choices.isEmpty()) return null; // e.g. the prompt-filter chunk
+            JsonNode text = choices.get(0).path("delta").path("content");
+            return text.isTextual() ? text.asText() : null;
+        }
+
+        /** The top-level {@code sql} string once the partial JSON has all of it, else null. */
+        private String completedSql(CharSequence partial) {
+            try (JsonParser p = om.getFactory().createParser(partial.toString())) {
+                if (p.nextToken() != JsonToken.START_OBJECT) return null;
+                JsonToken t;
+                while ((t = p.nextToken()) != null && t != JsonToken.END_OBJECT) {
+                    if (t != JsonToken.FIELD_NAME) continue;
+                    String field = p.currentName();
+                    JsonToken value = p.nextToken();
+                    if ("sql".equals(field) && value == JsonToken.VALUE_STRING) return p.getText();
+                    p.skipChildren();
+                }
+            } catch (IOException incomplete) {
+                // not there yet
+            }
+            return null;
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
     private void requireConfigured() {
         if (isBlank(props.getAzureOpenaiEndpoint()) ||
                 isBlank(props.getAzureOpenaiApiKey()) ||
@@ -126,12 +341,4 @@ public class AzureOpenAIProvider implements NlqProvider {
     private static boolean isBlank(String s) {
         return s == null || s.isBlank();
     }
-
-    private String safeJson(Object o) {
-        try {
-            return om.writeValueAsString(o);
-        } catch (Exception e) {
-            return "{}";
-        }
-    }
 }
@@ -0,0 +1,343 @@
+package com.example.clothesstoreagent.nlq;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plan cache in front of any {@link NlqProvider}.
+ *
+ * Prompts are normalized (case, punctuation, whitespace) and their number/date literals pulled out,
+ * so "Top 5 products by revenue last month!" and "top 7 products by revenue last month" share one
+ * template. When generalizing is on and each literal of the cached prompt appears exactly once in the
+ * plan (SQL token or parameter value), the plan is reused for other literal values by substitution;
+ * otherwise it is only reused for the exact same literals. A substituted plan is not checked against
+ * the delegate, so generalizing suits providers whose compile is expensive (a model call) and not
+ * ones that validate literals themselves, such as the rules' slot ranges and patterns.
+ *
+ * Entries expire after {@code app.nlqPlanCacheTtlSeconds}, the least recently used go first beyond
+ * {@code app.nlqPlanCacheMaxEntries}, and everything is dropped when the schema version changes.
+ * With {@code app.nlqPlanCacheFile} set, the cache is loaded on startup and written back periodically
+ * and on shutdown.
+ */
+public class CachingNlqProvider implements NlqProvider, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingNlqProvider.class);
+
+    private static final Pattern LITERAL = Pattern.compile("\\d{4}-\\d{2}-\\d{2}|\\d+(?:\\.\\d+)?");
+    private static final Pattern NOT_WORD = Pattern.compile("[^\\p{L}\\p{N}#]+");
+
+    /** Normalized prompt: template text plus the literals that were lifted out of it, in order. */
+    static final class Normalized {
+        final String template;
+        final List<String> literals;
+
+        Normalized(String template, List<String> literals) {
+            this.template = template;
+            this.literals = literals;
+        }
+
+        String exactKey() {
+            return literals.isEmpty() ? template : template + "|" + String.join("|", literals);
+        }
+    }
+
+    static final class Entry {
+        public String intent;
+        public String sql;
+        public Map<String, Object> params;
+        public List<String> literals;
+        public boolean generalizable;
+        public long createdAt;
+    }
+
+    private final NlqProvider delegate;
+    private final AppProps props;
+    private final Supplier<String> schemaVersion;
+    private final boolean generalize;
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private String cachedForSchema;
+    private boolean dirty;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong generalizedHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingNlqProvider(NlqProvider delegate, AppProps props, Supplier<String> schemaVersion) {
+        this(delegate, props, schemaVersion, props.isNlqPlanCacheGeneralize());
+    }
+
+    /** {@code generalize} false reuses plans only for the exact same literals, whatever the setting. */
+    public CachingNlqProvider(NlqProvider delegate, AppProps props, Supplier<String> schemaVersion,
+                              boolean generalize) {
+        this.delegate = delegate;
+        this.props = props;
+        this.schemaVersion = schemaVersion;
+        this.generalize = generalize;
+        load();
+    }
+
+    @Override
+    public Plan compile(String prompt) {
+        Normalized n = normalize(prompt);
+        Plan cached = lookup(n);
+        if (cached != null) return cached;
+
+        misses.incrementAndGet();
+        Plan plan = delegate.compile(prompt);
+        store(n, plan);
+        return plan;
+    }
+
+    @Override
+    public CompletableFuture<Plan> compileAsync(String prompt) {
+        Normalized n = normalize(prompt);
+        Plan cached = lookup(n);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        misses.incrementAndGet();
+        return delegate.compileAsync(prompt).thenApply(plan -> {
+            store(n, plan);
+            return plan;
+        });
+    }
+
+    /** A cache hit completes at once without progress; a miss streams from the delegate. */
+    @Override
+    public CompletableFuture<Plan> compileStreaming(String prompt, Progress progress) {
+        Normalized n = normalize(prompt);
+        Plan cached = lookup(n);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        misses.incrementAndGet();
+        return delegate.compileStreaming(prompt, progress).thenApply(plan -> {
+            store(n, plan);
+            return plan;
+        });
+    }
+
+    @Override
+    public List<String> suggestions() {
+        return delegate.suggestions();
+    }
+
+    @Override
+    public List<String> examples() {
+        return delegate.examples();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        synchronized (this) {
+            out.put("entries", entries.size());
+            out.put("schemaVersion", cachedForSchema);
+        }
+        out.put("hits", hits.get());
+        out.put("generalizedHits", generalizedHits.get());
+        out.put("misses", misses.get());
+        return out;
+    }
+
+    @Scheduled(fixedDelay = 60, initialDelay = 60, timeUnit = TimeUnit.SECONDS)
+    public void flush() {
+        String file = props.getNlqPlanCacheFile();
+        if (file == null || file.isBlank()) return;
+        Map<String, Object> doc = new LinkedHashMap<>();
+        synchronized (this) {
+            if (!dirty) return;
+            doc.put("schemaVersion", cachedForSchema);
+            doc.put("entries", new LinkedHashMap<>(entries));
+            dirty = false;
+        }
+        Path path = Path.of(file);
+        try {
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            om.writeValue(tmp.toFile(), doc);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("NLQ plan cache written to {}", path);
+        } catch (IOException ex) {
+            log.warn("Could not write NLQ plan cache to {}: {}", path, ex.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private Plan lookup(Normalized n) {
+        checkSchemaVersion();
+        long ttl = TimeUnit.SECONDS.toMillis(props.getNlqPlanCacheTtlSeconds());
+        long now = System.currentTimeMillis();
+        Entry exact;
+        Entry general;
+        synchronized (this) {
+            exact = live(n.exactKey(), now, ttl);
+            // Without generalizing, entries under a template (say from a file written with it on) stay unused
+            general = exact == null && generalize ? live(n.template, now, ttl) : null;
+        }
+        if (exact != null) {
+            hits.incrementAndGet();
+            return new Plan(exact.intent, exact.sql, exact.params);
+        }
+        if (general != null) {
+            hits.incrementAndGet();
+            if (!general.literals.equals(n.literals)) generalizedHits.incrementAndGet();
+            return substitute(general, n.literals);
+        }
+        return null;
+    }
+
+    private Entry live(String key, long now, long ttl) {
+        Entry e = entries.get(key);
+        if (e != null && now - e.createdAt > ttl) {
+            entries.remove(key);
+            dirty = true;
+            return null;
+        }
+        return e;
+    }
+
+    private void store(Normalized n, Plan plan) {
+        Entry e = new Entry();
+        e.intent = plan.intent;
+        e.sql = plan.sql;
+        e.params = new LinkedHashMap<>(plan.params);
+        e.literals = n.literals;
+        e.generalizable = generalize && generalizable(n.literals, plan);
+        e.createdAt = System.currentTimeMillis();
+
+        synchronized (this) {
+            entries.put(e.generalizable ? n.template : n.exactKey(), e);
+            int max = Math.max(1, props.getNlqPlanCacheMaxEntries());
+            Iterator<String> it = entries.keySet().iterator();
+            while (entries.size() > max && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+            dirty = true;
+        }
+    }
+
+    private synchronized void checkSchemaVersion() {
+        String current;
+        try {
+            current = schemaVersion.get();
+        } catch (RuntimeException ex) {
+            log.debug("Schema version unavailable, keeping plan cache: {}", ex.getMessage());
+            return;
+        }
+        if (current == null || current.equals(cachedForSchema)) return;
+        if (cachedForSchema != null && !entries.isEmpty()) {
+            log.info("Schema version changed ({} -> {}), dropping {} cached NLQ plans",
+                    cachedForSchema, current, entries.size());
+            entries.clear();
+        }
+        cachedForSchema = current;
+        dirty = true;
+    }
+
+    /** Every literal must be distinct and occur exactly once across the SQL tokens and parameter values. */
+    private static boolean generalizable(List<String> literals, Plan plan) {
+        if (new HashSet<>(literals).size() != literals.size()) return false;
+        for (String lit : literals) {
+            int n = countTokens(plan.sql, lit);
+            for (Object v : plan.params.values()) {
+                if (v != null && String.valueOf(v).equals(lit)) n++;
+            }
+            if (n != 1) return false;
+        }
+        return true;
+    }
+
+    private static Plan substitute(Entry e, List<String> literals) {
+        String sql = e.sql;
+        Map<String, Object> params = new LinkedHashMap<>(e.params);
+        for (int i = 0; i < literals.size(); i++) {
+            String from = e.literals.get(i);
+            String to = literals.get(i);
+            if (from.equals(to)) continue;
+            if (countTokens(sql, from) == 1) {
+                sql = tokenPattern(from).matcher(sql).replaceFirst(Matcher.quoteReplacement(to));
+                continue;
+            }
+            for (Map.Entry<String, Object> p : params.entrySet()) {
+                Object v = p.getValue();
+                if (v != null && String.valueOf(v).equals(from)) {
+                    p.setValue(retype(v, to));
+                }
+            }
+        }
+        return new Plan(e.intent, sql, params);
+    }
+
+    private static Object retype(Object original, String value) {
+        try {
+            if (original instanceof Integer) return Integer.valueOf(value);
+            if (original instanceof Long) return Long.valueOf(value);
+            if (original instanceof Double) return Double.valueOf(value);
+        } catch (NumberFormatException ignored) { }
+        return value;
+    }
+
+    private static int countTokens(String sql, String literal) {
+        Matcher m = tokenPattern(literal).matcher(sql);
+        int n = 0;
+        while (m.find()) n++;
+        return n;
+    }
+
+    private static Pattern tokenPattern(String literal) {
+        return Pattern.compile("(?<![\\w.])" + Pattern.quote(literal) + "(?![\\w.])");
+    }
+
+    static Normalized normalize(String prompt) {
+        String p = prompt == null ? "" : prompt.toLowerCase(Locale.ROOT);
+        List<String> literals = new ArrayList<>();
+        Matcher m = LITERAL.matcher(p);
+        StringBuilder sb = new StringBuilder();
+        while (m.find()) {
+            literals.add(m.group());
+            m.appendReplacement(sb, " # ");
+        }
+        m.appendTail(sb);
+        String template = NOT_WORD.matcher(sb).replaceAll(" ").trim();
+        return new Normalized(template, List.copyOf(literals));
+    }
+
+    private void load() {
+        String file = props.getNlqPlanCacheFile();
+        if (file == null || file.isBlank() || !Files.exists(Path.of(file))) return;
+        try {
+            Map<?, ?> doc = om.readValue(Path.of(file).toFile(), Map.class);
+            Map<?, ?> raw = (Map<?, ?>) doc.get("entries");
+            synchronized (this) {
+                cachedForSchema = (String) doc.get("schemaVersion");
+                if (raw != null) {
+                    for (Map.Entry<?, ?> e : raw.entrySet()) {
+                        entries.put(String.valueOf(e.getKey()), om.convertValue(e.getValue(), Entry.class));
+                    }
+                }
+            }
+            log.info("Loaded {} cached NLQ plans from {}", entries.size(), file);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Ignoring unreadable NLQ plan cache {}: {}", file, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.clothesstoreagent.nlq;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Intent definitions for {@link RuleBasedProvider}, loaded from YAML (format documented in
+ * {@code intents.yml}). All intent patterns are compiled into one alternation with one group per intent,
+ * so recognizing a prompt is a single {@link Matcher#find()}.
+ *
+ * With a file path the registry re-checks the file's modification time at most every
+ * {@code reloadSeconds} and swaps in the new definitions; a file that fails to load is logged and
+ * the previous definitions stay active. Without a path, the bundled {@code intents.yml} is used.
+ */
+public class IntentRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(IntentRegistry.class);
+    static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{\\s*(\\w+)\\s*}}");
+    private static final String CLASSPATH_RESOURCE = "/intents.yml";
+
+    static final class Slot {
+        final String name;
+        final String type;
+        final Pattern pattern;
+        final int occurrence;
+        final Integer min;
+        final Integer max;
+        final Object fallback;
+
+        Slot(String name, String type, Pattern pattern, int occurrence, Integer min, Integer max, Object fallback) {
+            this.name = name;
+            this.type = type;
+            this.pattern = pattern;
+            this.occurrence = occurrence;
+            this.min = min;
+            this.max = max;
+            this.fallback = fallback;
+        }
+    }
+
+    static final class Intent {
+        final String name;
+        final List<Slot> slots;
+        final String sql;
+        final Map<String, String> params;
+        final List<String> examples;
+
+        Intent(String name, List<Slot> slots, String sql, Map<String, String> params, List<String> examples) {
+            this.name = name;
+            this.slots = slots;
+            this.sql = sql;
+            this.params = params;
+            this.examples = examples;
+        }
+    }
+
+    /** One immutable generation of definitions. */
+    static final class Definitions {
+        final long version;
+        final List<Intent> intents;
+        final Pattern combined;
+        final List<String> suggestions;
+
+        Definitions(long version, List<Intent> intents, Pattern combined) {
+            this.version = version;
+            this.intents = intents;
+            this.combined = combined;
+            List<String> s = new ArrayList<>();
+            for (Intent i : intents) {
+                if (!i.examples.isEmpty()) s.add(i.examples.get(0));
+            }
+            this.suggestions = List.copyOf(s);
+        }
+
+        /** The intent whose pattern matches earliest in {@code prompt}, or null. */
+        Intent match(String prompt) {
+            Matcher m = combined.matcher(prompt);
+            if (!m.find()) return null;
+            for (int g = 1; g <= intents.size(); g++) {
+                if (m.start(g) >= 0) return intents.get(g - 1);
+            }
+            return null;
+        }
+    }
+
+    private final Path file;
+    private final long reloadNanos;
+    private volatile Definitions current;
+    private volatile FileTime loadedMtime;
+    private volatile long nextCheck;
+
+    /** @param file YAML file to load and watch, or null for the bundled definitions */
+    public IntentRegistry(Path file, int reloadSeconds) {
+        this.file = file;
+        this.reloadNanos = TimeUnit.SECONDS.toNanos(Math.max(1, reloadSeconds));
+        if (file == null) {
+            try (InputStream in = IntentRegistry.class.getResourceAsStream(CLASSPATH_RESOURCE)) {
+                if (in == null) throw new IllegalStateException("Missing " + CLASSPATH_RESOURCE + " on the classpath");
+                current = parse(in, 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            loadedMtime = mtime();
+            try (InputStream in = Files.newInputStream(file)) {
+                current = parse(in, 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read intents file " + file, e);
+            }
+            nextCheck = System.nanoTime() + reloadNanos;
+        }
+        log.info("Loaded {} NLQ intents from {}", current.intents.size(), file != null ? file : "classpath:intents.yml");
+    }
+
+    public static IntentRegistry bundled() {
+        return new IntentRegistry(null, 5);
+    }
+
+    Definitions current() {
+        if (file != null && System.nanoTime() - nextCheck > 0) reloadIfChanged();
+        return current;
+    }
+
+    /** Increments whenever a reload swaps in new definitions. */
+    public long version() {
+        return current().version;
+    }
+
+    public List<String> suggestions() {
+        return current().suggestions;
+    }
+
+    /** Every example of every intent, in definition order. */
+    public List<String> examples() {
+        List<String> out = new ArrayList<>();
+        for (Intent i : current().intents) out.addAll(i.examples);
+        return out;
+    }
+
+    private synchronized void reloadIfChanged() {
+        if (System.nanoTime() - nextCheck <= 0) return;
+        nextCheck = System.nanoTime() + reloadNanos;
+        FileTime mtime = mtime();
+        if (mtime == null || mtime.equals(loadedMtime)) return;
+        try (InputStream in = Files.newInputStream(file)) {
+            Definitions next = parse(in, current.version + 1);
+            current = next;
+            log.info("Reloaded {} NLQ intents from {} (version {})", next.intents.size(), file, next.version);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Keeping previous NLQ intents; {} failed to load: {}", file, ex.getMessage());
+        }
+        loadedMtime = mtime;
+    }
+
+    private FileTime mtime() {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Definitions parse(InputStream in, long version) {
+        Object doc = new Yaml(new SafeConstructor(new LoaderOptions())).load(in);
+        if (!(doc instanceof Map<?, ?> root) || !(root.get("intents") instanceof List<?> raw)) {
+            throw new IllegalArgumentException("Expected a top-level 'intents' list");
+        }
+
+        List<Intent> intents = new ArrayList<>();
+        StringBuilder combined = new StringBuilder();
+        Set<String> names = new HashSet<>();
+        for (Object o : raw) {
+            Map<String, Object> def = (Map<String, Object>) o;
+            String name = required(def, "name", "intent");
+            if (!names.add(name)) throw new IllegalArgumentException("Duplicate intent '" + name + "'");
+            String pattern = required(def, "pattern", name);
+            if (Pattern.compile(pattern).matcher("").groupCount() > 0) {
+                throw new IllegalArgumentException("Intent '" + name + "': use (?:...) groups only in 'pattern'");
+            }
+
+            List<Slot> slots = new ArrayList<>();
+            Map<String, Object> rawSlots = (Map<String, Object>) def.getOrDefault("slots", Map.of());
+            for (Map.Entry<String, Object> e : rawSlots.entrySet()) {
+                slots.add(slot(name, e.getKey(), (Map<String, Object>) e.getValue()));
+            }
+
+            String sql = required(def, "sql", name);
+            Matcher ph = PLACEHOLDER.matcher(sql);
+            while (ph.find()) {
+                Slot s = slots.stream().filter(x -> x.name.equals(ph.group(1))).findFirst().orElse(null);
+                if (s == null || !"int".equals(s.type)) {
+                    throw new IllegalArgumentException("Intent '" + name + "': only int slots may be inlined in sql, got {{"
+                            + ph.group(1) + "}}; pass other values through 'params'");
+                }
+            }
+            Map<String, String> params = new LinkedHashMap<>();
+            ((Map<String, Object>) def.getOrDefault("params", Map.of()))
+                    .forEach((k, v) -> params.put(k, String.valueOf(v)));
+
+            List<String> examples = new ArrayList<>();
+            for (Object ex : (List<Object>) def.getOrDefault("examples", List.of())) examples.add(String.valueOf(ex));
+
+            if (combined.length() > 0) combined.append('|');
+            combined.append("(").append(pattern).append(")");
+            intents.add(new Intent(name, List.copyOf(slots), sql, params, List.copyOf(examples)));
+        }
+
+        Definitions defs = new Definitions(version, List.copyOf(intents),
+                Pattern.compile(combined.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+        for (Intent i : defs.intents) {
+            if (!i.examples.isEmpty() && defs.match(i.examples.get(0)) != i) {
+                throw new IllegalArgumentException("Intent '" + i.name + "': example '" + i.examples.get(0)
+                        + "' does not resolve to this intent");
+            }
+        }
+        return defs;
+    }
+
+    private static Slot slot(String intent, String name, Map<String, Object> def) {
+        String type = String.valueOf(def.getOrDefault("type", "string"));
+        if (!List.of("int", "date", "string").contains(type)) {
+            throw new IllegalArgumentException("Intent '" + intent + "', slot '" + name + "': unknown type " + type);
+        }
+        Pattern p = Pattern.compile(required(def, "pattern", intent + "." + name), Pattern.CASE_INSENSITIVE);
+        int occurrence = def.get("occurrence") instanceof Number n ? Math.max(1, n.intValue()) : 0;
+        Integer min = def.get("min") instanceof Number n ? n.intValue() : null;
+        Integer max = def.get("max") instanceof Number n ? n.intValue() : null;
+        return new Slot(name, type, p, occurrence, min, max, def.get("default"));
+    }
+
+    private static String required(Map<String, Object> def, String key, String owner) {
+        Object v = def.get(key);
+        if (v == null || String.valueOf(v).isBlank()) {
+            throw new IllegalArgumentException("'" + owner + "' is missing '" + key + "'");
+        }
+        return String.valueOf(v);
+    }
+}
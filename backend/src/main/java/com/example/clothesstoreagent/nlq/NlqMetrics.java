@@ -0,0 +1,132 @@
+package com.example.clothesstoreagent.nlq;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.service.StageListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics for the {@code /api/nlq} pipeline, exported through Actuator ({@code /actuator/prometheus}):
+ * <ul>
+ *   <li>{@code nlq.stage} – timer per stage ({@code compile}, {@code validate}, {@code execute}, {@code map},
+ *       {@code serialize}, {@code total}), tagged {@code provider} and {@code intent}</li>
+ *   <li>{@code nlq.rows} – rows returned per executed request</li>
+ *   <li>{@code nlq.truncated} – executed requests whose result hit maxRows</li>
+ *   <li>{@code nlq.errors} – by {@code type} ({@code UNRECOGNIZED}, {@code NLQ_FAILED}, {@code QUERY_FAILED}, {@code BUSY})</li>
+ * </ul>
+ * A {@link Recorder} collects one request's timings and everything is published at once in {@link #finish},
+ * when the intent is known; meters are looked up once per tag combination and then cached.
+ */
+@Component
+public class NlqMetrics {
+
+    /** Request attribute holding the {@link Recorder} of the current request. */
+    public static final String RECORDER = NlqMetrics.class.getName() + ".recorder";
+
+    private final MeterRegistry registry;
+    private final String provider;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> rows = new ConcurrentHashMap<>();
+
+    public NlqMetrics(MeterRegistry registry, AppProps props) {
+        this.registry = registry;
+        this.provider = String.valueOf(props.getNlqProvider()).trim().toLowerCase(Locale.ROOT);
+    }
+
+    public Recorder start() {
+        return new Recorder();
+    }
+
+    /** Publishes everything the recorder collected; {@code serialize} and {@code total} end now. */
+    public void finish(Recorder r) {
+        if (r.finished) return;
+        r.finished = true;
+        long now = System.nanoTime();
+        if (r.readyAt != 0) r.stage("serialize", now - r.readyAt);
+        r.stage("total", now - r.startedAt);
+
+        String intent = r.intent;
+        r.stages.forEach((stage, nanos) -> timer(stage, intent).record(nanos, TimeUnit.NANOSECONDS));
+        if (r.rowCount >= 0) {
+            rows.computeIfAbsent(intent, i -> DistributionSummary.builder("nlq.rows")
+                    .baseUnit("rows")
+                    .tag("provider", provider)
+                    .tag("intent", i)
+                    .register(registry)).record(r.rowCount);
+        }
+        if (r.truncated) counter("nlq.truncated", "intent", intent).increment();
+        if (r.error != null) counter("nlq.errors", "type", r.error).increment();
+    }
+
+    private Timer timer(String stage, String intent) {
+        return timers.computeIfAbsent(stage + '|' + intent, k -> Timer.builder("nlq.stage")
+                .tag("stage", stage)
+                .tag("provider", provider)
+                .tag("intent", intent)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofSeconds(60))
+                .register(registry));
+    }
+
+    private Counter counter(String name, String tag, String value) {
+        return counters.computeIfAbsent(name + '|' + value, k -> Counter.builder(name)
+                .tag("provider", provider)
+                .tag(tag, value)
+                .register(registry));
+    }
+
+    /** Per-request collector. Used by one thread at a time (request, then async continuation). */
+    public static final class Recorder implements StageListener {
+        private final long startedAt = System.nanoTime();
+        private final Map<String, Long> stages = new LinkedHashMap<>(8);
+        private String intent = "unknown";
+        private String error;
+        private long rowCount = -1;
+        private boolean truncated;
+        private long readyAt;
+        private boolean finished;
+
+        @Override
+        public void stage(String stage, long nanos) {
+            stages.merge(stage, nanos, Long::sum);
+        }
+
+        /** Marks the end of compilation; the elapsed time since the request started is the compile stage. */
+        public void compiled(String intent) {
+            stage("compile", System.nanoTime() - startedAt);
+            if (intent != null) this.intent = intent;
+        }
+
+        /** Takes row count, truncation and error type from a {@code QueryService} result map. */
+        public void result(Map<String, Object> result) {
+            Object err = result.get("error");
+            if (err != null) {
+                error = String.valueOf(err);
+                return;
+            }
+            if (result.get("rowCount") instanceof Number n) rowCount = n.longValue();
+            truncated = Boolean.TRUE.equals(result.get("truncated"));
+        }
+
+        public void error(String type) {
+            this.error = type;
+        }
+
+        /** The response body is ready; from here until {@link NlqMetrics#finish} is serialization. */
+        public void ready() {
+            readyAt = System.nanoTime();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.example.clothesstoreagent.nlq;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface NlqProvider {
     final class Plan {
@@ -18,6 +19,45 @@ public interface NlqProvider {
 
     Plan compile(String prompt);
 
+    /**
+     * Non-blocking variant. The default simply runs {@link #compile} on the caller's thread, which is
+     * fine for in-memory providers; network-backed providers should override it.
+     */
+    default CompletableFuture<Plan> compileAsync(String prompt) {
+        try {
+            return CompletableFuture.completedFuture(compile(prompt));
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /** Callbacks for {@link #compileStreaming}, on the provider's threads; they should return quickly. */
+    interface Progress {
+        Progress NONE = new Progress() {};
+
+        /** A fragment of the model's output, as it arrives. */
+        default void token(String text) {}
+
+        /** The generated SQL, as soon as it can be read from the partial output (before the plan is checked). */
+        default void sql(String sql) {}
+    }
+
+    /**
+     * Like {@link #compileAsync}, reporting the model's output through {@code progress} while it is generated.
+     * The default reports nothing, which suits providers that do not stream.
+     */
+    default CompletableFuture<Plan> compileStreaming(String prompt, Progress progress) {
+        return compileAsync(prompt);
+    }
+
+    /**
+     * Prompts that compile locally and cheaply, used to warm the compile path at startup. Empty for providers
+     * that call out to a model.
+     */
+    default List<String> examples() {
+        return List.of();
+    }
+
     default List<String> suggestions() {
         return List.of(
             "top 5 products by revenue last month",
@@ -0,0 +1,422 @@
+package com.example.clothesstoreagent.nlq;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.service.QueryService;
+import com.example.clothesstoreagent.service.Workload;
+import com.example.clothesstoreagent.service.WorkloadPools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory revenue of completed orders per UTC day and product, used to answer the revenue intents of the
+ * bundled {@code intents.yml} ({@code top_products_last_month}, {@code revenue_by_product},
+ * {@code daily_revenue_7d}) without re-aggregating the order tables.
+ *
+ * A plan is answered here only when it names one of those intents and its SQL is the bundled template
+ * (whitespace aside), so an edited intents file or any other plan always goes to the database. Days before
+ * today (UTC) are aggregated once and never re-read; today is topped up every {@code app.rollupRefreshSeconds}
+ * with the items of orders whose id is above the last one seen. When the day rolls over, the finished day is
+ * aggregated again in full, which also picks up orders that committed out of id order or changed status
+ * during the day. Status changes and backfills of older days are not seen until a restart.
+ *
+ * Loading is lazy (first matching plan) and runs on the schema workload, off the request path; until it
+ * finishes, and whenever the rollup is behind the clock, plans simply run as SQL. With
+ * {@code app.rollupCheckPercent} > 0 that share of answers is re-run against the database in the background
+ * and compared; mismatches are logged and counted in {@link #stats()}.
+ */
+@Component
+public class RevenueRollups {
+
+    private static final Logger log = LoggerFactory.getLogger(RevenueRollups.class);
+
+    private static final LocalDate EPOCH = LocalDate.of(1900, 1, 1);
+
+    private static final String DAYS_SQL = """
+        SELECT CAST(o.created_at AS date) AS d,
+               oi.product_id,
+               SUM(oi.qty * oi.unit_price * (1 - oi.discount)) AS revenue
+        FROM dbo.orders o
+        JOIN dbo.order_items oi ON oi.order_id = o.id
+        WHERE o.status = 'completed'
+          AND o.created_at >= ? AND o.created_at < ?
+        GROUP BY CAST(o.created_at AS date), oi.product_id
+        """;
+
+    private static final String TODAY_SQL = """
+        SELECT oi.product_id,
+               SUM(oi.qty * oi.unit_price * (1 - oi.discount)) AS revenue
+        FROM dbo.orders o
+        JOIN dbo.order_items oi ON oi.order_id = o.id
+        WHERE o.status = 'completed'
+          AND o.created_at >= ?
+          AND o.id > ? AND o.id <= ?
+        GROUP BY oi.product_id
+        """;
+
+    enum Kind { TOP_PRODUCTS_LAST_MONTH, REVENUE_BY_PRODUCT, DAILY_REVENUE_7D }
+
+    /** Bundled SQL (whitespace-normalized) and parameter names of a rollup-backed intent. */
+    static final class Signature {
+        final Kind kind;
+        final String sql;
+        final Set<String> params;
+
+        Signature(Kind kind, String sql, Set<String> params) {
+            this.kind = kind;
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    /** Immutable; every refresh publishes a new one so readers never lock. */
+    private static final class Snapshot {
+        final LocalDate today;
+        final NavigableMap<LocalDate, Map<Long, BigDecimal>> closedDays;
+        final Map<YearMonth, Map<Long, BigDecimal>> closedMonths;
+        final Map<Long, BigDecimal> closedTotals;
+        final Map<Long, BigDecimal> todayTotals;
+        /** Highest order id already folded into {@link #todayTotals}. */
+        final long watermark;
+        final Map<Long, String> names;
+        final Instant refreshedAt;
+
+        Snapshot(LocalDate today,
+                 NavigableMap<LocalDate, Map<Long, BigDecimal>> closedDays,
+                 Map<YearMonth, Map<Long, BigDecimal>> closedMonths,
+                 Map<Long, BigDecimal> closedTotals,
+                 Map<Long, BigDecimal> todayTotals,
+                 long watermark,
+                 Map<Long, String> names) {
+            this.today = today;
+            this.closedDays = closedDays;
+            this.closedMonths = closedMonths;
+            this.closedTotals = closedTotals;
+            this.todayTotals = todayTotals;
+            this.watermark = watermark;
+            this.names = names;
+            this.refreshedAt = Instant.now();
+        }
+    }
+
+    private final WorkloadPools pools;
+    private final AppProps props;
+    private final QueryService query;
+    private final Executor executor;
+    private final Map<String, Signature> signatures;
+
+    private volatile Snapshot current;
+    private final AtomicBoolean loading = new AtomicBoolean();
+    /** After a failed load, no new attempt before this {@link System#nanoTime()}. */
+    private volatile long retryAt = System.nanoTime();
+    private final Object refreshLock = new Object();
+
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong passed = new AtomicLong();
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong lastRefreshNanos = new AtomicLong();
+
+    public RevenueRollups(WorkloadPools pools,
+                          AppProps props,
+                          QueryService query,
+                          @Qualifier("applicationTaskExecutor") Executor executor) {
+        this.pools = pools;
+        this.props = props;
+        this.query = query;
+        this.executor = executor;
+        this.signatures = signatures(IntentRegistry.bundled().current());
+    }
+
+    /**
+     * The plan's result computed from memory, shaped like {@link QueryService#execute}'s, or null when the
+     * plan must run as SQL: not a rollup-backed template, rollups disabled or not loaded yet, or more rows
+     * than {@code maxRows} (paging needs the SQL).
+     */
+    public Map<String, Object> answer(NlqProvider.Plan plan, Integer maxRows) {
+        if (!props.isRollupEnabled()) return null;
+        Signature sig = signatures.get(plan.intent);
+        if (sig == null || !sig.params.equals(plan.params.keySet()) || !sig.sql.equals(normalize(plan.sql))) return null;
+        if (sig.kind == Kind.TOP_PRODUCTS_LAST_MONTH && !(plan.params.get("n") instanceof Number)) return null;
+
+        Snapshot snap = current;
+        if (snap == null) {
+            loadAsync();
+            passed.incrementAndGet();
+            return null;
+        }
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        if (!today.equals(snap.today)) {
+            passed.incrementAndGet();
+            return null;
+        }
+
+        Map<String, Object> result = switch (sig.kind) {
+            case TOP_PRODUCTS_LAST_MONTH -> {
+                int n = ((Number) plan.params.get("n")).intValue();
+                Map<Long, BigDecimal> month = snap.closedMonths.getOrDefault(YearMonth.from(today).minusMonths(1), Map.of());
+                List<Map<String, Object>> rows = byName(month, snap.names);
+                yield result(List.of("name", "revenue"), rows.size() > n ? rows.subList(0, n) : rows);
+            }
+            case REVENUE_BY_PRODUCT -> {
+                Map<Long, BigDecimal> all = new HashMap<>(snap.closedTotals);
+                snap.todayTotals.forEach((id, v) -> all.merge(id, v, BigDecimal::add));
+                yield result(List.of("name", "revenue"), byName(all, snap.names));
+            }
+            case DAILY_REVENUE_7D -> {
+                List<Map<String, Object>> rows = new ArrayList<>();
+                for (Map.Entry<LocalDate, Map<Long, BigDecimal>> e : snap.closedDays.tailMap(today.minusDays(7), true).entrySet()) {
+                    rows.add(dayRow(e.getKey(), e.getValue()));
+                }
+                if (!snap.todayTotals.isEmpty()) rows.add(dayRow(today, snap.todayTotals));
+                yield result(List.of("day", "revenue"), rows);
+            }
+        };
+
+        int max = Math.min(maxRows != null ? maxRows : props.getDefaultMaxRows(), props.getDefaultMaxRows());
+        if ((int) result.get("rowCount") > max) {
+            passed.incrementAndGet();
+            return null;
+        }
+        answered.incrementAndGet();
+        if (props.getRollupCheckPercent() > 0 && ThreadLocalRandom.current().nextInt(100) < props.getRollupCheckPercent()) {
+            executor.execute(() -> check(plan, sig.kind, result, maxRows));
+        }
+        return result;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        Snapshot snap = current;
+        out.put("enabled", props.isRollupEnabled());
+        out.put("loaded", snap != null);
+        if (snap != null) {
+            out.put("today", snap.today.toString());
+            out.put("closedDays", snap.closedDays.size());
+            out.put("products", snap.names.size());
+            out.put("watermark", snap.watermark);
+            out.put("refreshedAt", snap.refreshedAt.toString());
+        }
+        out.put("refreshes", refreshes.get());
+        out.put("lastRefreshMillis", TimeUnit.NANOSECONDS.toMillis(lastRefreshNanos.get()));
+        out.put("answered", answered.get());
+        out.put("passedToSql", passed.get());
+        out.put("checks", checks.get());
+        out.put("mismatches", mismatches.get());
+        return out;
+    }
+
+    /** Tops up today, sealing finished days first when the date has changed. */
+    @Scheduled(fixedDelayString = "${app.rollupRefreshSeconds:30}",
+               initialDelayString = "${app.rollupRefreshSeconds:30}",
+               timeUnit = TimeUnit.SECONDS)
+    public void refresh() {
+        if (current == null) return; // nobody asked yet; stay lazy
+        synchronized (refreshLock) {
+            long started = System.nanoTime();
+            try {
+                Snapshot snap = current;
+                LocalDate today = LocalDate.now(ZoneOffset.UTC);
+                if (!today.equals(snap.today)) snap = seal(snap, today);
+                current = topUp(snap, names());
+                refreshes.incrementAndGet();
+                lastRefreshNanos.set(System.nanoTime() - started);
+            } catch (Exception ex) {
+                log.warn("Revenue rollup refresh failed, keeping data as of {}: {}", current.refreshedAt, ex.getMessage());
+            }
+        }
+    }
+
+    private void loadAsync() {
+        if (System.nanoTime() - retryAt < 0 || !loading.compareAndSet(false, true)) return;
+        executor.execute(() -> {
+            synchronized (refreshLock) {
+                long started = System.nanoTime();
+                try {
+                    if (current != null) return;
+                    LocalDate today = LocalDate.now(ZoneOffset.UTC);
+                    Snapshot empty = new Snapshot(EPOCH, new TreeMap<>(), Map.of(), Map.of(), Map.of(), 0, Map.of());
+                    current = topUp(seal(empty, today), names());
+                    refreshes.incrementAndGet();
+                    lastRefreshNanos.set(System.nanoTime() - started);
+                    log.info("Revenue rollups loaded: {} days in {} ms", current.closedDays.size(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                } catch (Exception ex) {
+                    retryAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(props.getRollupRefreshSeconds());
+                    log.warn("Revenue rollup load failed; revenue intents keep running as SQL: {}", ex.getMessage());
+                } finally {
+                    loading.set(false);
+                }
+            }
+        });
+    }
+
+    /** Aggregates every day in [snap.today, today) in full and starts an empty today. */
+    private Snapshot seal(Snapshot snap, LocalDate today) {
+        NavigableMap<LocalDate, Map<Long, BigDecimal>> days = new TreeMap<>(snap.closedDays);
+        Map<YearMonth, Map<Long, BigDecimal>> months = new HashMap<>(snap.closedMonths);
+        Map<Long, BigDecimal> totals = new HashMap<>(snap.closedTotals);
+
+        Map<LocalDate, Map<Long, BigDecimal>> fresh = new TreeMap<>();
+        each(DAYS_SQL, rs -> {
+            fresh.computeIfAbsent(rs.getDate("d").toLocalDate(), d -> new HashMap<>())
+                    .merge(rs.getLong("product_id"), rs.getBigDecimal("revenue"), BigDecimal::add);
+        }, Timestamp.valueOf(snap.today.atStartOfDay()), Timestamp.valueOf(today.atStartOfDay()));
+
+        for (Map.Entry<LocalDate, Map<Long, BigDecimal>> e : fresh.entrySet()) {
+            days.put(e.getKey(), Map.copyOf(e.getValue()));
+            Map<Long, BigDecimal> month = new HashMap<>(months.getOrDefault(YearMonth.from(e.getKey()), Map.of()));
+            e.getValue().forEach((id, v) -> {
+                month.merge(id, v, BigDecimal::add);
+                totals.merge(id, v, BigDecimal::add);
+            });
+            months.put(YearMonth.from(e.getKey()), Map.copyOf(month));
+        }
+        if (!fresh.isEmpty()) log.debug("Revenue rollups sealed {} day(s) before {}", fresh.size(), today);
+        return new Snapshot(today, Collections.unmodifiableNavigableMap(days), Map.copyOf(months),
+                Map.copyOf(totals), Map.of(), snap.watermark, snap.names);
+    }
+
+    /** Adds today's completed orders with ids in (watermark, current max]. */
+    private Snapshot topUp(Snapshot snap, Map<Long, String> names) {
+        Timestamp from = Timestamp.valueOf(snap.today.atStartOfDay());
+        Long max = pools.call(Workload.SCHEMA, () -> pools.jdbc(Workload.SCHEMA)
+                .queryForObject("SELECT MAX(id) FROM dbo.orders WHERE created_at >= ?", Long.class, from));
+        if (max == null || max <= snap.watermark) {
+            return new Snapshot(snap.today, snap.closedDays, snap.closedMonths, snap.closedTotals,
+                    snap.todayTotals, snap.watermark, names);
+        }
+        Map<Long, BigDecimal> today = new HashMap<>(snap.todayTotals);
+        each(TODAY_SQL, rs -> {
+            today.merge(rs.getLong("product_id"), rs.getBigDecimal("revenue"), BigDecimal::add);
+        }, from, snap.watermark, max);
+        return new Snapshot(snap.today, snap.closedDays, snap.closedMonths, snap.closedTotals,
+                Map.copyOf(today), max, names);
+    }
+
+    private Map<Long, String> names() {
+        Map<Long, String> out = new HashMap<>();
+        each("SELECT id, name FROM dbo.products", rs -> {
+            out.put(rs.getLong("id"), rs.getString("name"));
+        });
+        return Map.copyOf(out);
+    }
+
+    private void each(String sql, RowCallbackHandler rows, Object... args) {
+        pools.call(Workload.SCHEMA, () -> {
+            pools.jdbc(Workload.SCHEMA).query(sql, rows, args);
+            return null;
+        });
+    }
+
+    /** Re-runs the plan as SQL (bypassing the result cache) and compares it with what was answered. */
+    private void check(NlqProvider.Plan plan, Kind kind, Map<String, Object> answer, Integer maxRows) {
+        Map<String, Object> actual = query.execute(plan.sql, plan.params, maxRows, null,
+                QueryService.Options.DEFAULT.withCache(false).withWorkload(Workload.NLQ));
+        if (actual.containsKey("error")) {
+            log.debug("Revenue rollup check skipped: {}", actual.get("message"));
+            return;
+        }
+        checks.incrementAndGet();
+        List<String> expected = fingerprint(actual, kind);
+        List<String> got = fingerprint(answer, kind);
+        if (!expected.equals(got)) {
+            mismatches.incrementAndGet();
+            List<String> missing = new ArrayList<>(expected);
+            missing.removeAll(got);
+            List<String> extra = new ArrayList<>(got);
+            extra.removeAll(expected);
+            log.warn("Revenue rollup mismatch for {}: database has {} but memory has {} (today's figures may lag by up to {}s)",
+                    plan.intent, missing, extra, props.getRollupRefreshSeconds());
+        }
+    }
+
+    /** Rows as {@code key=revenue} strings; sorted except for the daily series, since revenue ties have no order. */
+    @SuppressWarnings("unchecked")
+    private static List<String> fingerprint(Map<String, Object> result, Kind kind) {
+        List<String> out = new ArrayList<>();
+        for (Map<String, Object> row : (List<Map<String, Object>>) result.get("rows")) {
+            Iterator<Object> values = row.values().iterator();
+            Object key = values.next();
+            Object revenue = values.next();
+            String amount = revenue instanceof BigDecimal d ? d.stripTrailingZeros().toPlainString() : String.valueOf(revenue);
+            out.add(key + "=" + amount);
+        }
+        if (kind != Kind.DAILY_REVENUE_7D) Collections.sort(out);
+        return out;
+    }
+
+    /** Same grouping as the SQL: by product name, products that no longer exist dropped, revenue descending. */
+    private static List<Map<String, Object>> byName(Map<Long, BigDecimal> byId, Map<Long, String> names) {
+        Map<String, BigDecimal> sums = new HashMap<>();
+        byId.forEach((id, v) -> {
+            String name = names.get(id);
+            if (name != null) sums.merge(name, v, BigDecimal::add);
+        });
+        List<Map.Entry<String, BigDecimal>> sorted = new ArrayList<>(sums.entrySet());
+        sorted.sort(Map.Entry.<String, BigDecimal>comparingByValue().reversed());
+        List<Map<String, Object>> rows = new ArrayList<>(sorted.size());
+        for (Map.Entry<String, BigDecimal> e : sorted) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("name", e.getKey());
+            row.put("revenue", e.getValue());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static Map<String, Object> dayRow(LocalDate day, Map<Long, BigDecimal> byId) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (BigDecimal v : byId.values()) sum = sum.add(v);
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("day", java.sql.Date.valueOf(day));
+        row.put("revenue", sum);
+        return row;
+    }
+
+    private static Map<String, Object> result(List<String> columns, List<Map<String, Object>> rows) {
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("columns", columns);
+        resp.put("rowCount", rows.size());
+        resp.put("truncated", false);
+        resp.put("rows", rows);
+        return resp;
+    }
+
+    static Map<String, Signature> signatures(IntentRegistry.Definitions defs) {
+        Map<String, Signature> out = new HashMap<>();
+        for (IntentRegistry.Intent intent : defs.intents) {
+            Kind kind = switch (intent.name) {
+                case "top_products_last_month" -> Kind.TOP_PRODUCTS_LAST_MONTH;
+                case "revenue_by_product" -> Kind.REVENUE_BY_PRODUCT;
+                case "daily_revenue_7d" -> Kind.DAILY_REVENUE_7D;
+                default -> null;
+            };
+            if (kind == null || IntentRegistry.PLACEHOLDER.matcher(intent.sql).find()) continue;
+            out.put(intent.name, new Signature(kind, normalize(intent.sql), Set.copyOf(intent.params.keySet())));
+        }
+        return Map.copyOf(out);
+    }
+
+    private static String normalize(String sql) {
+        String s = sql.replaceAll("\\s+", " ").trim();
+        return s.endsWith(";") ? s.substring(0, s.length() - 1).trim() : s;
+    }
+}
@@ -2,115 +2,96 @@ package com.example.clothesstoreagent.nlq;
 
 import java.util.*;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Maps prompts to SQL templates defined in {@link IntentRegistry} (see {@code intents.yml}).
+ */
 public class RuleBasedProvider implements NlqProvider {
 
-    private static final Pattern NUMBER = Pattern.compile("\\b(\\d{1,3})\\b");
-    private static final Pattern INTENT_TOP_PRODUCTS_LAST_MONTH =
-        Pattern.compile("(?i)\\b(top|best)\\b.*\\bproducts?\\b.*\\b(last|previous)\\s+month\\b");
-    private static final Pattern INTENT_REVENUE_BY_PRODUCT =
-        Pattern.compile("(?i)\\brevenue\\b.*\\bby\\b.*\\bproducts?\\b|\\bproducts?\\b.*\\brevenue\\b");
-    private static final Pattern INTENT_DAILY_REVENUE_7D =
-        Pattern.compile("(?i)\\b(daily|per\\s*day)\\b.*\\b(last|past)\\s*(7|seven)\\s*days\\b");
-    private static final Pattern INTENT_NEW_VS_RETURNING_BETWEEN =
-        Pattern.compile("(?i)\\bnew\\b.*\\breturning\\b.*\\bbetween\\b\\s*(\\d{4}-\\d{2}-\\d{2})\\s*\\b(and|to)\\b\\s*(\\d{4}-\\d{2}-\\d{2})");
+    private final IntentRegistry registry;
+
+    public RuleBasedProvider() {
+        this(IntentRegistry.bundled());
+    }
+
+    public RuleBasedProvider(IntentRegistry registry) {
+        this.registry = registry;
+    }
 
     @Override
     public Plan compile(String prompt) {
         String p = prompt == null ? "" : prompt.trim();
         if (p.isEmpty()) throw unrecognized();
 
-        if (INTENT_TOP_PRODUCTS_LAST_MONTH.matcher(p).find()) {
-            int topN = extractTopN(p, 5);
-            String sql = """
-                    SELECT TOP %d
-                      p.name,
-                      SUM(oi.qty * oi.unit_price * (1 - oi.discount)) AS revenue
-                    FROM dbo.orders o
-                    JOIN dbo.order_items oi ON oi.order_id = o.id
-                    JOIN dbo.products p     ON p.id = oi.product_id
-                    WHERE o.status = 'completed'
-                      AND o.created_at >= DATEADD(DAY,1,EOMONTH(SYSUTCDATETIME(),-2))
-                      AND o.created_at <  DATEADD(DAY,1,EOMONTH(SYSUTCDATETIME(),-1))
-                    GROUP BY p.name
-                    ORDER BY revenue DESC
-                    """.formatted(topN);
-            return new Plan("top_products_last_month", sql, Map.of());
-        }
-
-        if (INTENT_REVENUE_BY_PRODUCT.matcher(p).find()) {
-            String sql = """
-                    SELECT
-                      p.name,
-                      SUM(oi.qty * oi.unit_price * (1 - oi.discount)) AS revenue
-                    FROM dbo.orders o
-                    JOIN dbo.order_items oi ON oi.order_id = o.id
-                    JOIN dbo.products p     ON p.id = oi.product_id
-                    WHERE o.status = 'completed'
-                    GROUP BY p.name
-                    ORDER BY revenue DESC
-                    """;
-            return new Plan("revenue_by_product", sql, Map.of());
-        }
+        IntentRegistry.Intent intent = registry.current().match(p);
+        if (intent == null) throw unrecognized();
 
-        if (INTENT_DAILY_REVENUE_7D.matcher(p).find()) {
-            String sql = """
-                    SELECT
-                      CAST(o.created_at AS date) AS [day],
-                      SUM(oi.qty * oi.unit_price * (1 - oi.discount)) AS revenue
-                    FROM dbo.orders o
-                    JOIN dbo.order_items oi ON oi.order_id = o.id
-                    WHERE o.status = 'completed'
-                      AND o.created_at >= DATEADD(DAY,-7,CAST(SYSUTCDATETIME() AS date))
-                    GROUP BY CAST(o.created_at AS date)
-                    ORDER BY [day]
-                    """;
-            return new Plan("daily_revenue_7d", sql, Map.of());
+        Map<String, Object> values = new HashMap<>();
+        for (IntentRegistry.Slot slot : intent.slots) {
+            Object v = extract(slot, p);
+            if (v == null) throw unrecognized();
+            values.put(slot.name, v);
         }
 
-        Matcher m = INTENT_NEW_VS_RETURNING_BETWEEN.matcher(p);
-        if (m.find()) {
-            String start = m.group(1);
-            String end   = m.group(3);
-            String sql = """
-                    WITH first_order AS (
-                      SELECT customer_id, MIN(created_at) AS first_order_at
-                      FROM dbo.orders
-                      WHERE status = 'completed'
-                      GROUP BY customer_id
-                    )
-                    SELECT
-                      SUM(CASE WHEN f.first_order_at >= :start_week AND f.first_order_at < :end_week THEN 1 ELSE 0 END) AS new_customers,
-                      SUM(CASE WHEN f.first_order_at <  :start_week THEN 1 ELSE 0 END)                                 AS returning_customers
-                    FROM first_order f
-                    JOIN dbo.orders o ON o.customer_id = f.customer_id
-                    WHERE o.status = 'completed'
-                      AND o.created_at >= :start_week AND o.created_at < :end_week
-                    """;
-            Map<String, Object> params = new LinkedHashMap<>();
-            params.put("start_week", start);
-            params.put("end_week", end);
-            return new Plan("new_vs_returning_between", sql, params);
-        }
-
-        throw unrecognized();
+        String sql = fill(intent.sql, values);
+        Map<String, Object> params = new LinkedHashMap<>();
+        intent.params.forEach((name, template) -> params.put(name, param(template, values)));
+        return new Plan(intent.name, sql, params);
     }
 
     @Override
     public List<String> suggestions() {
-        return NlqProvider.super.suggestions();
+        return registry.suggestions();
+    }
+
+    @Override
+    public List<String> examples() {
+        return registry.examples();
     }
 
-    private static int extractTopN(String text, int fallback) {
-        Matcher m = NUMBER.matcher(text);
+    /** Changes whenever the intent definitions are reloaded. */
+    public long version() {
+        return registry.version();
+    }
+
+    private static Object extract(IntentRegistry.Slot slot, String prompt) {
+        Matcher m = slot.pattern.matcher(prompt);
+        int seen = 0;
         while (m.find()) {
+            String raw = m.groupCount() > 0 ? m.group(1) : m.group();
+            if (raw == null) continue;
+            seen++;
+            if (slot.occurrence > 0 && seen != slot.occurrence) continue;
+            if (!"int".equals(slot.type)) return raw;
             try {
-                int n = Integer.parseInt(m.group(1));
-                if (n >= 1 && n <= 1000) return n;
+                int n = Integer.parseInt(raw);
+                if ((slot.min == null || n >= slot.min) && (slot.max == null || n <= slot.max)) return n;
             } catch (NumberFormatException ignored) {}
+            if (slot.occurrence > 0) break;
+        }
+        return slot.fallback;
+    }
+
+    private static String fill(String template, Map<String, Object> values) {
+        if (template.indexOf("{{") < 0) return template;
+        StringBuilder sb = new StringBuilder(template.length());
+        int i = 0;
+        while (true) {
+            int open = template.indexOf("{{", i);
+            int close = open < 0 ? -1 : template.indexOf("}}", open);
+            if (close < 0) break;
+            sb.append(template, i, open).append(values.get(template.substring(open + 2, close).trim()));
+            i = close + 2;
+        }
+        return sb.append(template, i, template.length()).toString();
+    }
+
+    private static Object param(String template, Map<String, Object> values) {
+        String t = template.trim();
+        if (t.startsWith("{{") && t.endsWith("}}") && t.indexOf("{{", 2) < 0) {
+            return values.get(t.substring(2, t.length() - 2).trim());
         }
-        return fallback;
+        return fill(template, values);
     }
 
     private static IllegalArgumentException unrecognized() {
@@ -0,0 +1,268 @@
+package com.example.clothesstoreagent.nlq;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.service.SchemaSnapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Turns a schema snapshot into the compact, DDL-like text we hand to an LLM, keeping only what is
+ * relevant to the prompt:
+ * <ul>
+ *   <li>tables whose name, column names or sample values match prompt words,</li>
+ *   <li>plus {@code app.nlqSchemaAlwaysInclude},</li>
+ *   <li>plus FK neighbours up to {@code app.nlqSchemaExpandHops} hops (key/matched columns only).</li>
+ * </ul>
+ * When nothing matches, the whole schema is used. Per-table text and the match index are built once per
+ * snapshot version.
+ */
+public class SchemaContextBuilder {
+
+    private static final Pattern WORDS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    public static final class Context {
+        public final String text;
+        public final List<String> tables;
+        public final int jsonTokens;
+        public final int fullTokens;
+        public final int prunedTokens;
+
+        Context(String text, List<String> tables, int jsonTokens, int fullTokens, int prunedTokens) {
+            this.text = text;
+            this.tables = tables;
+            this.jsonTokens = jsonTokens;
+            this.fullTokens = fullTokens;
+            this.prunedTokens = prunedTokens;
+        }
+    }
+
+    private static final class Column {
+        final String name;
+        final String type;
+        final boolean nullable;
+        final List<String> samples;
+        final Set<String> words;
+        String references;
+
+        Column(String name, String type, boolean nullable, List<String> samples) {
+            this.name = name;
+            this.type = type;
+            this.nullable = nullable;
+            this.samples = samples;
+            this.words = words(name.replace('_', ' '));
+        }
+
+        boolean isKey() {
+            return references != null || name.equalsIgnoreCase("id");
+        }
+    }
+
+    private static final class Table {
+        final String name;
+        final Set<String> words;
+        final List<Column> columns = new ArrayList<>();
+        final Set<String> neighbours = new LinkedHashSet<>();
+
+        Table(String name) {
+            this.name = name;
+            this.words = words(name.substring(name.indexOf('.') + 1).replace('_', ' '));
+        }
+    }
+
+    /** Everything derived from one snapshot version. */
+    private static final class Index {
+        final long version;
+        final Map<String, Table> tables = new LinkedHashMap<>();
+        final Map<String, String> fullLines = new LinkedHashMap<>();
+        String fullText;
+        int jsonTokens;
+        int fullTokens;
+
+        Index(long version) {
+            this.version = version;
+        }
+    }
+
+    private final AppProps props;
+    private volatile Index index;
+
+    public SchemaContextBuilder(AppProps props) {
+        this.props = props;
+    }
+
+    public Context build(SchemaSnapshot snapshot, String prompt) {
+        Index idx = indexFor(snapshot);
+        if (!props.isNlqSchemaPruning()) {
+            return new Context(idx.fullText, List.copyOf(idx.tables.keySet()), idx.jsonTokens, idx.fullTokens, idx.fullTokens);
+        }
+
+        Set<String> promptWords = words(prompt);
+        String loweredPrompt = prompt == null ? "" : prompt.toLowerCase(Locale.ROOT);
+
+        Map<String, Set<String>> matchedColumns = new LinkedHashMap<>();
+        Set<String> direct = new LinkedHashSet<>();
+        for (Table t : idx.tables.values()) {
+            boolean nameHit = !Collections.disjoint(t.words, promptWords);
+            Set<String> cols = new LinkedHashSet<>();
+            for (Column c : t.columns) {
+                if (!Collections.disjoint(c.words, promptWords) || sampleHit(c, loweredPrompt)) {
+                    cols.add(c.name);
+                }
+            }
+            if (nameHit || !cols.isEmpty()) {
+                direct.add(t.name);
+                matchedColumns.put(t.name, cols);
+            }
+        }
+
+        if (direct.isEmpty()) {
+            return new Context(idx.fullText, List.copyOf(idx.tables.keySet()), idx.jsonTokens, idx.fullTokens, idx.fullTokens);
+        }
+
+        Set<String> full = new LinkedHashSet<>(direct);
+        for (String pinned : props.getNlqSchemaAlwaysInclude()) {
+            for (String name : idx.tables.keySet()) {
+                if (name.equalsIgnoreCase(pinned.trim())) full.add(name);
+            }
+        }
+
+        Set<String> expanded = new LinkedHashSet<>();
+        Set<String> frontier = new LinkedHashSet<>(full);
+        for (int hop = 0; hop < Math.max(0, props.getNlqSchemaExpandHops()); hop++) {
+            Set<String> next = new LinkedHashSet<>();
+            for (String name : frontier) {
+                for (String n : idx.tables.get(name).neighbours) {
+                    if (!full.contains(n) && expanded.add(n)) next.add(n);
+                }
+            }
+            frontier = next;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        List<String> included = new ArrayList<>();
+        for (Table t : idx.tables.values()) {
+            if (full.contains(t.name)) {
+                sb.append(idx.fullLines.get(t.name)).append('\n');
+                included.add(t.name);
+            } else if (expanded.contains(t.name)) {
+                Set<String> cols = matchedColumns.getOrDefault(t.name, Set.of());
+                sb.append(render(t, c -> c.isKey() || cols.contains(c.name))).append('\n');
+                included.add(t.name);
+            }
+        }
+        String text = sb.toString();
+        return new Context(text, included, idx.jsonTokens, idx.fullTokens, estimateTokens(text));
+    }
+
+    /** Crude but stable: roughly four characters per token for English/SQL text. */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+    private Index indexFor(SchemaSnapshot snapshot) {
+        Index idx = index;
+        if (idx != null && idx.version == snapshot.getVersion()) return idx;
+        synchronized (this) {
+            idx = index;
+            if (idx == null || idx.version != snapshot.getVersion()) {
+                idx = buildIndex(snapshot);
+                index = idx;
+            }
+            return idx;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Index buildIndex(SchemaSnapshot snapshot) {
+        Map<String, Object> schema = snapshot.getSchema();
+        Map<String, List<Map<String, Object>>> columnsByTable =
+                (Map<String, List<Map<String, Object>>>) schema.getOrDefault("columnsByTable", Map.of());
+        Map<String, List<String>> samples =
+                (Map<String, List<String>>) schema.getOrDefault("samplesByColumn", Map.of());
+        List<Map<String, Object>> fks = (List<Map<String, Object>>) schema.getOrDefault("fks", List.of());
+
+        Index idx = new Index(snapshot.getVersion());
+        for (Map.Entry<String, List<Map<String, Object>>> e : columnsByTable.entrySet()) {
+            Table t = new Table(e.getKey());
+            for (Map<String, Object> c : e.getValue()) {
+                String col = String.valueOf(c.get("COLUMN_NAME"));
+                t.columns.add(new Column(col,
+                        String.valueOf(c.get("DATA_TYPE")),
+                        "YES".equalsIgnoreCase(String.valueOf(c.get("IS_NULLABLE"))),
+                        samples.getOrDefault(e.getKey() + "." + col, List.of())));
+            }
+            idx.tables.put(t.name, t);
+        }
+
+        for (Map<String, Object> fk : fks) {
+            String from = fk.get("from_schema") + "." + fk.get("from_table");
+            String to = fk.get("to_schema") + "." + fk.get("to_table");
+            Table ft = idx.tables.get(from);
+            Table tt = idx.tables.get(to);
+            if (ft == null || tt == null) continue;
+            ft.neighbours.add(to);
+            tt.neighbours.add(from);
+            for (Column c : ft.columns) {
+                if (c.name.equals(fk.get("from_column"))) c.references = to + "." + fk.get("to_column");
+            }
+        }
+
+        StringBuilder full = new StringBuilder();
+        for (Table t : idx.tables.values()) {
+            String line = render(t, c -> true);
+            idx.fullLines.put(t.name, line);
+            full.append(line).append('\n');
+        }
+        idx.fullText = full.toString();
+        idx.fullTokens = estimateTokens(idx.fullText);
+        idx.jsonTokens = estimateTokens(new String(snapshot.getJson(), StandardCharsets.UTF_8));
+        return idx;
+    }
+
+    private static String render(Table t, Predicate<Column> keep) {
+        StringBuilder sb = new StringBuilder(t.name).append('(');
+        boolean first = true;
+        for (Column c : t.columns) {
+            if (!keep.test(c)) continue;
+            if (!first) sb.append(", ");
+            first = false;
+            sb.append(c.name).append(' ').append(c.type);
+            if (c.nullable) sb.append('?');
+            if (c.references != null) sb.append(" -> ").append(c.references);
+            if (!c.samples.isEmpty() && c.references == null && !c.name.equalsIgnoreCase("id")) {
+                sb.append(" e.g. ");
+                for (int i = 0; i < c.samples.size(); i++) {
+                    if (i > 0) sb.append('|');
+                    String v = c.samples.get(i);
+                    sb.append(v.length() > 30 ? v.substring(0, 30) : v);
+                }
+            }
+        }
+        return sb.append(')').toString();
+    }
+
+    private static boolean sampleHit(Column c, String loweredPrompt) {
+        for (String v : c.samples) {
+            if (v != null && v.length() >= 3 && loweredPrompt.contains(v.toLowerCase(Locale.ROOT))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lower-cased words of three or more letters plus a naive singular form, so "products" matches
+     * table "product" and vice versa; short words ("at", "id", "by") are too common to be signal.
+     */
+    private static Set<String> words(String text) {
+        Set<String> out = new HashSet<>();
+        if (text == null) return out;
+        for (String w : WORDS.split(text.toLowerCase(Locale.ROOT))) {
+            if (w.length() < 3) continue;
+            out.add(w);
+            if (w.length() > 3 && w.endsWith("s")) out.add(w.substring(0, w.length() - 1));
+        }
+        return out;
+    }
+}
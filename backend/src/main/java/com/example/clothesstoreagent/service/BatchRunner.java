@@ -0,0 +1,149 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Runs the items of one batch request in parallel: at most {@code concurrency} at a time (a batch takes
+ * that many workers from the application task executor, which pull items in order), all under one
+ * deadline. Results come back in item order; each item carries its own result or error map, so one
+ * failure never fails the batch.
+ *
+ * Items still queued at the deadline are not started. Items already running should cap their statement
+ * timeout at the deadline ({@link QueryService.Options#withDeadline}), and are reported as {@code DEADLINE_EXCEEDED} if they have not finished
+ * shortly after the deadline.
+ */
+@Component
+public class BatchRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchRunner.class);
+
+    /** Grace after the deadline for statements cancelled by their deadline-capped timeout to unwind. */
+    private static final long GRACE_MILLIS = 1000;
+
+
+    private final AppProps props;
+    private final Executor executor;
+
+    public BatchRunner(AppProps props, @Qualifier("applicationTaskExecutor") Executor executor) {
+        this.props = props;
+        this.executor = executor;
+    }
+
+    /** Absolute deadline ({@link System#nanoTime()} based) for a batch starting now; capped by {@code app.batchDeadlineMillis}. */
+    public long deadline(Integer requestedMillis) {
+        long max = props.getBatchDeadlineMillis();
+        long millis = requestedMillis != null && requestedMillis > 0 ? Math.min(requestedMillis, max) : max;
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /** Requested concurrency capped by {@code app.batchConcurrency}. */
+    public int concurrency(Integer requested) {
+        int max = Math.max(1, props.getBatchConcurrency());
+        return requested != null && requested > 0 ? Math.min(requested, max) : max;
+    }
+
+    /** Throws {@link IllegalArgumentException} when the batch is empty or larger than {@code app.batchMaxItems}. */
+    public void checkSize(List<?> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Batch has no items.");
+        }
+        if (items.size() > props.getBatchMaxItems()) {
+            throw new IllegalArgumentException("Batch has " + items.size() + " items; the limit is "
+                    + props.getBatchMaxItems() + " (app.batchMaxItems).");
+        }
+    }
+
+    /**
+     * Runs {@code tasks} and completes with one result per task, in order. A null task stands for an item
+     * whose result is already known (in {@code done}, keyed by index, e.g. it failed validation).
+     */
+    public CompletableFuture<List<Map<String, Object>>> run(List<Supplier<Map<String, Object>>> tasks,
+                                                           Map<Integer, Map<String, Object>> done,
+                                                           int concurrency,
+                                                           long deadline) {
+        int n = tasks.size();
+        AtomicReferenceArray<Map<String, Object>> results = new AtomicReferenceArray<>(n);
+        done.forEach(results::set);
+        AtomicInteger next = new AtomicInteger();
+
+        int workers = Math.max(1, Math.min(concurrency, n - done.size()));
+        CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            running[w] = CompletableFuture.runAsync(() -> {
+                for (int i = next.getAndIncrement(); i < n; i = next.getAndIncrement()) {
+                    Supplier<Map<String, Object>> task = tasks.get(i);
+                    if (task == null) continue;
+                    if (deadline - System.nanoTime() <= 0) {
+                        results.set(i, deadlineExceeded(false));
+                        continue;
+                    }
+                    results.set(i, runOne(task));
+                }
+            }, executor);
+        }
+
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadline - System.nanoTime())) + GRACE_MILLIS;
+        return CompletableFuture.allOf(running)
+                .completeOnTimeout(null, waitMillis, TimeUnit.MILLISECONDS)
+                .handle((ignored, ex) -> {
+                    List<Map<String, Object>> out = new ArrayList<>(n);
+                    int late = 0;
+                    for (int i = 0; i < n; i++) {
+                        Map<String, Object> r = results.get(i);
+                        if (r == null) {
+                            r = deadlineExceeded(true);
+                            late++;
+                        }
+                        out.add(r);
+                    }
+                    if (late > 0) log.warn("Batch deadline passed with {} of {} items unfinished", late, n);
+                    return out;
+                });
+    }
+
+    private static Map<String, Object> runOne(Supplier<Map<String, Object>> task) {
+        try {
+            return task.get();
+        } catch (IllegalArgumentException ex) {
+            return error("INVALID", ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.warn("Batch item failed", ex);
+            return error("FAILED", ex.getMessage());
+        }
+    }
+
+    private static Map<String, Object> deadlineExceeded(boolean started) {
+        return error("DEADLINE_EXCEEDED", started
+                ? "The batch deadline passed before this item finished."
+                : "The batch deadline passed before this item started.");
+    }
+
+    /** Response body for a finished batch: {@code items} in request order plus counts. */
+    public static Map<String, Object> summary(List<Map<String, Object>> items, long startedNanos) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("items", items);
+        out.put("count", items.size());
+        out.put("errors", items.stream().filter(r -> r.containsKey("error")).count());
+        out.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos));
+        return out;
+    }
+
+    public static Map<String, Object> error(String type, String message) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", type);
+        err.put("message", message);
+        return err;
+    }
+}
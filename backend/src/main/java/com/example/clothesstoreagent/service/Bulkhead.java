@@ -0,0 +1,147 @@
+package com.example.clothesstoreagent.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.Supplier;
+
+/**
+ * Caps how many callers run one workload at a time. Callers over the limit wait for up to
+ * {@code maxWaitMillis} and are then rejected, so a flood in one workload turns into fast BUSY answers
+ * there instead of slow answers everywhere. Freed slots go to the waiter with the highest
+ * {@link Priority}, in arrival order within a priority.
+ */
+public class Bulkhead {
+
+    public static class RejectedException extends RuntimeException {
+        public RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    private final String name;
+    private final int limit;
+    private final long maxWaitMillis;
+
+    private final Object lock = new Object();
+    /** Guarded by {@link #lock}. */
+    private int available;
+    /** Guarded by {@link #lock}. Ordered by priority, then arrival. */
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+    private long arrivals;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    private static final class Waiter implements Comparable<Waiter> {
+        final int priority;
+        final long seq;
+        final CountDownLatch granted = new CountDownLatch(1);
+
+        Waiter(int priority, long seq) {
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Waiter o) {
+            return priority != o.priority ? Integer.compare(priority, o.priority) : Long.compare(seq, o.seq);
+        }
+    }
+
+    public Bulkhead(String name, int limit, long maxWaitMillis) {
+        this.name = name;
+        this.limit = Math.max(1, limit);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+        this.available = this.limit;
+    }
+
+    public <T> T call(Supplier<T> work) {
+        return call(Priority.NORMAL, work);
+    }
+
+    /** Runs {@code work} once a slot is free; waiters with a higher {@code priority} get freed slots first. */
+    public <T> T call(Priority priority, Supplier<T> work) {
+        long started = System.nanoTime();
+        boolean acquired;
+        waiting.incrementAndGet();
+        try {
+            acquired = acquire(priority);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long waited = System.nanoTime() - started;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulate(waited);
+        if (!acquired) {
+            rejected.incrementAndGet();
+            throw new RejectedException(name + " workload is at capacity (" + limit
+                    + " running, waited " + TimeUnit.NANOSECONDS.toMillis(waited) + " ms)");
+        }
+        admitted.incrementAndGet();
+        try {
+            return work.get();
+        } finally {
+            release();
+        }
+    }
+
+    private boolean acquire(Priority priority) {
+        Waiter w;
+        synchronized (lock) {
+            if (available > 0 && queue.isEmpty()) {
+                available--;
+                return true;
+            }
+            w = new Waiter(priority.ordinal(), arrivals++);
+            queue.add(w);
+        }
+        boolean granted;
+        try {
+            granted = w.granted.await(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            granted = false;
+        }
+        if (granted) return true;
+        synchronized (lock) {
+            // A release may have handed us the slot just as the wait ended; keep it rather than leak it.
+            if (w.granted.getCount() == 0) return true;
+            queue.remove(w);
+            return false;
+        }
+    }
+
+    private void release() {
+        synchronized (lock) {
+            Waiter next = queue.poll();
+            if (next != null) next.granted.countDown();
+            else available++;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long n = admitted.get() + rejected.get();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("limit", limit);
+        int active;
+        synchronized (lock) {
+            active = limit - available;
+        }
+        out.put("active", active);
+        out.put("waiting", waiting.get());
+        out.put("admitted", admitted.get());
+        out.put("rejected", rejected.get());
+        out.put("avgWaitMillis", n == 0 ? 0.0 : totalWaitNanos.get() / 1e6 / n);
+        out.put("maxWaitMillis", maxWaitNanos.get() / 1e6);
+        return out;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.clothesstoreagent.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Lets another thread stop a request's statement: {@link #cancel} calls {@link Statement#cancel()} on the
+ * statement running at the time (SQL Server gets an attention signal and stops the batch, the connection
+ * goes back to the pool at once) and makes any later statement of the same request fail before it is sent.
+ * One instance per request; {@link #NONE} ignores cancellation.
+ */
+public class Cancellation {
+
+    private static final Logger log = LoggerFactory.getLogger(Cancellation.class);
+
+    public static final Cancellation NONE = new Cancellation();
+
+    private Statement statement;
+    private String reason;
+
+    /** Cancels once; returns false if already cancelled. */
+    public boolean cancel(String reason) {
+        if (this == NONE) return false;
+        Statement running;
+        synchronized (this) {
+            if (this.reason != null) return false;
+            this.reason = reason;
+            running = statement;
+        }
+        if (running != null) {
+            try {
+                running.cancel();
+            } catch (SQLException ex) {
+                log.debug("Statement cancel failed: {}", ex.getMessage());
+            }
+        }
+        log.info("Query cancelled: {}", reason);
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return reason != null;
+    }
+
+    public synchronized String reason() {
+        return reason;
+    }
+
+    /** Registers {@code st} as the running statement; fails if the request was already cancelled. */
+    void attach(Statement st) throws SQLException {
+        if (this == NONE) return;
+        synchronized (this) {
+            if (reason != null) throw new SQLException("Cancelled: " + reason, "HY008");
+            statement = st;
+        }
+    }
+
+    void detach() {
+        if (this == NONE) return;
+        synchronized (this) {
+            statement = null;
+        }
+    }
+}
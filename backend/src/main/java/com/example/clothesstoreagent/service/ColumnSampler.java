@@ -0,0 +1,223 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects distinct sample values for schema columns.
+ * One round trip per table (all columns in a single UNION ALL batch), tables sampled
+ * in parallel on a small bounded pool. If the batch fails, the table is retried one column at a time so
+ * one unconvertible column does not lose the others' samples. Values are the first n in sort order, so the
+ * samples (and the schema ETag built from them) only change when the data does. Each table scan runs in the {@link Workload#SCHEMA} bulkhead
+ * on the schema connection pool, so sampling cannot crowd out queries.
+ *
+ * Modes ({@code app.schemaSamplingMode}):
+ * <ul>
+ *   <li>{@code scan} – DISTINCT TOP n per column over the whole table (default)</li>
+ *   <li>{@code tablesample} – same, but reads only {@code app.schemaTableSamplePercent} of the pages</li>
+ *   <li>{@code statistics} – histogram steps from {@code sys.dm_db_stats_histogram}, most frequent first;
+ *       columns without statistics fall back to {@code scan}</li>
+ * </ul>
+ */
+@Component
+public class ColumnSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(ColumnSampler.class);
+
+    /** Types that cannot be cast to NVARCHAR or used with DISTINCT (text/ntext), or say nothing useful as text. */
+    private static final List<String> UNSAMPLEABLE =
+            List.of("varbinary", "image", "xml", "text", "geography", "geometry");
+
+    private final WorkloadPools pools;
+    private final JdbcTemplate jdbc;
+    private final AppProps props;
+    private final ExecutorService pool;
+    private volatile Map<String, Long> lastMillisByTable = Map.of();
+
+    public ColumnSampler(WorkloadPools pools, AppProps props) {
+        this.pools = pools;
+        this.jdbc = pools.jdbc(Workload.SCHEMA);
+        this.props = props;
+        AtomicInteger n = new AtomicInteger();
+        // More threads than bulkhead permits would only queue (and time out) inside the bulkhead.
+        int threads = Math.max(1, Math.min(props.getSchemaSamplingConcurrency(), props.getSchemaConcurrency()));
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "schema-sampler-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Samples every table in {@code columnsByTable}. Keys of the result are {@code schema.table.column}
+     * in the same table/column order as the input.
+     */
+    public Map<String, List<String>> sample(Map<String, List<Map<String, Object>>> columnsByTable) {
+        int perCol = Math.max(0, props.getSchemaSamplesPerColumn());
+        Map<String, List<String>> out = new LinkedHashMap<>();
+        if (perCol == 0 || columnsByTable.isEmpty()) return out;
+
+        String mode = String.valueOf(props.getSchemaSamplingMode()).trim().toLowerCase(Locale.ROOT);
+        Map<String, Future<Map<String, List<String>>>> futures = new LinkedHashMap<>();
+        Map<String, Long> millis = new ConcurrentHashMap<>();
+        for (Map.Entry<String, List<Map<String, Object>>> e : columnsByTable.entrySet()) {
+            futures.put(e.getKey(), pool.submit(() -> timed(e.getKey(), e.getValue(), mode, perCol, millis)));
+        }
+
+        for (Map.Entry<String, Future<Map<String, List<String>>>> f : futures.entrySet()) {
+            try {
+                out.putAll(f.getValue().get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                log.warn("Sampling failed for {}: {}", f.getKey(), ex.getCause().getMessage());
+            }
+        }
+
+        Map<String, Long> ordered = new LinkedHashMap<>();
+        for (String tbl : columnsByTable.keySet()) {
+            if (millis.containsKey(tbl)) ordered.put(tbl, millis.get(tbl));
+        }
+        lastMillisByTable = Collections.unmodifiableMap(ordered);
+        return out;
+    }
+
+    /** Wall time of the most recent sampling run, per table. */
+    public Map<String, Long> getLastMillisByTable() {
+        return lastMillisByTable;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private Map<String, List<String>> timed(String tbl,
+                                            List<Map<String, Object>> columns,
+                                            String mode,
+                                            int perCol,
+                                            Map<String, Long> millis) {
+        long started = System.nanoTime();
+        try {
+            return pools.call(Workload.SCHEMA, () -> sampleTable(tbl, columns, mode, perCol));
+        } finally {
+            long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            millis.put(tbl, ms);
+            log.debug("Sampled {} ({} columns, mode={}) in {} ms", tbl, columns.size(), mode, ms);
+        }
+    }
+
+    private Map<String, List<String>> sampleTable(String tbl,
+                                                  List<Map<String, Object>> columns,
+                                                  String mode,
+                                                  int perCol) {
+        List<String> sampleable = new ArrayList<>();
+        for (Map<String, Object> c : columns) {
+            String dataType = String.valueOf(c.get("DATA_TYPE")).toLowerCase(Locale.ROOT);
+            if (UNSAMPLEABLE.stream().anyMatch(dataType::contains)) continue;
+            sampleable.add(c.get("COLUMN_NAME").toString());
+        }
+        if (sampleable.isEmpty()) return Map.of();
+
+        Map<String, List<String>> byColumn = new HashMap<>();
+        List<String> remaining = sampleable;
+        if ("statistics".equals(mode)) {
+            try {
+                byColumn.putAll(fromHistograms(tbl, perCol));
+            } catch (Exception ex) {
+                log.warn("Histogram sampling unavailable for {}, scanning instead: {}", tbl, ex.getMessage());
+            }
+            remaining = sampleable.stream().filter(c -> !byColumn.containsKey(c)).toList();
+        }
+        if (!remaining.isEmpty()) {
+            byColumn.putAll(fromScan(tbl, remaining, perCol, "tablesample".equals(mode)));
+        }
+
+        Map<String, List<String>> out = new LinkedHashMap<>();
+        for (String col : sampleable) {
+            List<String> vals = byColumn.get(col);
+            if (vals != null && !vals.isEmpty()) out.put(tbl + "." + col, vals);
+        }
+        return out;
+    }
+
+    private Map<String, List<String>> fromScan(String tbl, List<String> cols, int perCol, boolean tableSample) {
+        String[] parts = tbl.split("\\.", 2);
+        String from = quote(parts[0]) + "." + quote(parts[1]);
+        if (tableSample) {
+            from += " TABLESAMPLE (" + Math.max(1, Math.min(100, props.getSchemaTableSamplePercent())) + " PERCENT)";
+        }
+
+        Map<String, List<String>> out = new HashMap<>();
+        try {
+            out.putAll(scan(from, cols, perCol));
+        } catch (DataAccessException ex) {
+            // One column the server cannot convert fails the whole batch; keep the others
+            log.warn("Sampling {} in one batch failed, sampling column by column: {}", tbl, ex.getMessage());
+            for (String col : cols) {
+                try {
+                    out.putAll(scan(from, List.of(col), perCol));
+                } catch (DataAccessException colEx) {
+                    log.warn("Sampling {}.{} failed: {}", tbl, col, colEx.getMessage());
+                }
+            }
+        }
+        // TOP picks the first values in order; sorting keeps the listing (and so the schema ETag) stable
+        out.values().forEach(Collections::sort);
+        return out;
+    }
+
+    private Map<String, List<String>> scan(String from, List<String> cols, int perCol) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < cols.size(); i++) {
+            if (i > 0) sql.append("\nUNION ALL\n");
+            String col = quote(cols.get(i));
+            sql.append("SELECT k, v FROM (SELECT DISTINCT TOP ").append(perCol)
+               .append(' ').append(i).append(" AS k, CAST(").append(col).append(" AS NVARCHAR(200)) AS v")
+               .append(" FROM ").append(from)
+               .append(" WHERE ").append(col).append(" IS NOT NULL ORDER BY v) s").append(i);
+        }
+
+        Map<String, List<String>> out = new HashMap<>();
+        jdbc.query(sql.toString(), rs -> {
+            String col = cols.get(rs.getInt("k"));
+            out.computeIfAbsent(col, c -> new ArrayList<>()).add(rs.getString("v"));
+        });
+        return out;
+    }
+
+    private Map<String, List<String>> fromHistograms(String tbl, int perCol) {
+        String[] parts = tbl.split("\\.", 2);
+        Map<String, LinkedHashSet<String>> out = new HashMap<>();
+        jdbc.query("""
+            SELECT c.name AS col, CAST(h.range_high_key AS NVARCHAR(200)) AS v
+            FROM sys.stats s
+            JOIN sys.stats_columns sc ON sc.object_id = s.object_id AND sc.stats_id = s.stats_id AND sc.stats_column_id = 1
+            JOIN sys.columns c ON c.object_id = sc.object_id AND c.column_id = sc.column_id
+            CROSS APPLY sys.dm_db_stats_histogram(s.object_id, s.stats_id) h
+            WHERE s.object_id = OBJECT_ID(?) AND h.range_high_key IS NOT NULL
+            ORDER BY c.name, h.equal_rows DESC, v
+        """, rs -> {
+            Set<String> vals = out.computeIfAbsent(rs.getString("col"), c -> new LinkedHashSet<>());
+            if (vals.size() < perCol) vals.add(rs.getString("v"));
+        }, quote(parts[0]) + "." + quote(parts[1]));
+
+        Map<String, List<String>> lists = new HashMap<>();
+        out.forEach((col, vals) -> lists.put(col, new ArrayList<>(vals)));
+        return lists;
+    }
+
+    private static String quote(String ident) {
+        return "[" + ident.replace("]", "]]" ) + "]";
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Admission by estimated cost. Before a statement runs, SQL Server's estimated plan ({@code SET SHOWPLAN_XML})
+ * gives its subtree cost and row estimate. The estimate is cached per statement text (whitespace-normalized,
+ * after {@link SqlParameterizer}) and the shape of the bound values: numbers and collection sizes by order of
+ * magnitude, dates by the order of magnitude of their distance from today and from the date bound before them,
+ * anything else as is. So {@code TOP 10} and {@code TOP 50} share an estimate, {@code TOP 10} and
+ * {@code TOP 100000} or a one-day and a five-year date range do not. Then:
+ * <ul>
+ *   <li>at or over {@code app.admissionRejectCost} or {@code app.admissionRejectRows}: rejected with
+ *       {@code TOO_EXPENSIVE} before it takes a connection;</li>
+ *   <li>at or over {@code app.admissionHeavyCost}: queued in a small heavy lane
+ *       ({@code app.admissionHeavyConcurrency} at a time) and downgraded to a statement timeout of at most
+ *       {@code app.admissionHeavyTimeoutSeconds};</li>
+ *   <li>anything else runs as usual.</li>
+ * </ul>
+ * Applies to the workloads in {@code app.admissionWorkloads}. When the estimate cannot be had (no SHOWPLAN
+ * permission, compile error, timeout) the statement is admitted; execution reports any real error.
+ */
+@Component
+public class CostAdmission {
+
+    private static final Logger log = LoggerFactory.getLogger(CostAdmission.class);
+
+    private static final int ESTIMATE_TIMEOUT_SECONDS = 10;
+    private static final Pattern COST = Pattern.compile("StatementSubTreeCost=\"([^\"]+)\"");
+    private static final Pattern ROWS = Pattern.compile("StatementEstRows=\"([^\"]+)\"");
+    private static final Pattern ISO_DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}(?:[ T].*)?");
+
+    public static final class Estimate {
+        public final double cost;
+        public final double rows;
+
+        Estimate(double cost, double rows) {
+            this.cost = cost;
+            this.rows = rows;
+        }
+    }
+
+    enum Verdict { ADMIT, HEAVY, REJECT }
+
+    static final class Decision {
+        static final Decision ADMIT = new Decision(Verdict.ADMIT, null);
+
+        final Verdict verdict;
+        final Estimate estimate;
+
+        Decision(Verdict verdict, Estimate estimate) {
+            this.verdict = verdict;
+            this.estimate = estimate;
+        }
+    }
+
+    private static final class Cached {
+        final Estimate estimate;
+        final long createdAt;
+
+        Cached(Estimate estimate, long createdAt) {
+            this.estimate = estimate;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final WorkloadPools pools;
+    private final AppProps props;
+    private final Set<Workload> workloads = EnumSet.noneOf(Workload.class);
+    private final Bulkhead heavyLane;
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong estimates = new AtomicLong();
+    private final AtomicLong estimateNanos = new AtomicLong();
+    private final AtomicLong estimateFailures = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong heavy = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public CostAdmission(WorkloadPools pools, AppProps props) {
+        this.pools = pools;
+        this.props = props;
+        for (String w : props.getAdmissionWorkloads()) workloads.add(Workload.valueOf(w.trim().toUpperCase(Locale.ROOT)));
+        this.heavyLane = new Bulkhead("heavy", props.getAdmissionHeavyConcurrency(), props.getBulkheadWaitMillis());
+    }
+
+    Decision check(String sql, Map<String, Object> params, Workload workload, Priority priority) {
+        if (!props.isAdmissionEnabled() || !workloads.contains(workload)) return Decision.ADMIT;
+        Estimate e = estimate(sql, params, workload, priority);
+        if (e == null) {
+            admitted.incrementAndGet();
+            return Decision.ADMIT;
+        }
+        if (e.cost >= props.getAdmissionRejectCost() || e.rows >= props.getAdmissionRejectRows()) {
+            rejected.incrementAndGet();
+            log.warn("Rejected statement with estimated cost {} and {} rows", e.cost, e.rows);
+            return new Decision(Verdict.REJECT, e);
+        }
+        if (e.cost >= props.getAdmissionHeavyCost()) {
+            heavy.incrementAndGet();
+            return new Decision(Verdict.HEAVY, e);
+        }
+        admitted.incrementAndGet();
+        return new Decision(Verdict.ADMIT, e);
+    }
+
+    /** Runs {@code work} in the heavy lane; throws {@link Bulkhead.RejectedException} when it stays full. */
+    <T> T heavy(Priority priority, Supplier<T> work) {
+        return heavyLane.call(priority, work);
+    }
+
+    /** {@code timeoutSeconds} capped for heavy statements. */
+    int heavyTimeout(int timeoutSeconds) {
+        return Math.min(timeoutSeconds, Math.max(1, props.getAdmissionHeavyTimeoutSeconds()));
+    }
+
+    static Map<String, Object> tooExpensive(Decision d, AppProps props) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", "TOO_EXPENSIVE");
+        err.put("message", String.format(Locale.ROOT,
+                "Estimated cost %.1f and %.0f rows exceed the limits (cost %.1f, rows %d); narrow the query.",
+                d.estimate.cost, d.estimate.rows, props.getAdmissionRejectCost(), props.getAdmissionRejectRows()));
+        err.put("estimatedCost", d.estimate.cost);
+        err.put("estimatedRows", d.estimate.rows);
+        return err;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", props.isAdmissionEnabled());
+        out.put("workloads", workloads);
+        synchronized (cache) {
+            out.put("cachedEstimates", cache.size());
+        }
+        long n = estimates.get();
+        out.put("estimates", n);
+        out.put("avgEstimateMillis", n == 0 ? 0.0 : estimateNanos.get() / 1e6 / n);
+        out.put("estimateFailures", estimateFailures.get());
+        out.put("cacheHits", cacheHits.get());
+        out.put("admitted", admitted.get());
+        out.put("heavy", heavy.get());
+        out.put("rejected", rejected.get());
+        out.put("heavyLane", heavyLane.stats());
+        return out;
+    }
+
+    private Estimate estimate(String sql, Map<String, Object> params, Workload workload, Priority priority) {
+        String key = key(sql, params);
+        long now = System.currentTimeMillis();
+        long ttl = TimeUnit.SECONDS.toMillis(props.getAdmissionCacheTtlSeconds());
+        synchronized (cache) {
+            Cached c = cache.get(key);
+            if (c != null && now - c.createdAt <= ttl) {
+                cacheHits.incrementAndGet();
+                return c.estimate;
+            }
+        }
+
+        long started = System.nanoTime();
+        Estimate e;
+        try {
+            e = pools.call(workload, priority, () -> showplan(pools.dataSource(workload), sql, params));
+        } catch (Bulkhead.RejectedException ex) {
+            return null; // the execution will meet the same queue and report BUSY
+        } catch (RuntimeException ex) {
+            estimateFailures.incrementAndGet();
+            log.debug("No cost estimate, admitting: {}", ex.getMessage());
+            e = null;
+        }
+        estimates.incrementAndGet();
+        estimateNanos.addAndGet(System.nanoTime() - started);
+
+        synchronized (cache) {
+            cache.put(key, new Cached(e, now));
+            int max = Math.max(1, props.getAdmissionCacheSize());
+            Iterator<String> it = cache.keySet().iterator();
+            while (cache.size() > max && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return e;
+    }
+
+    /** Cache key for {@code sql} bound to {@code params}; see the class comment for how values are bucketed. */
+    static String key(String sql, Map<String, Object> params) {
+        StringBuilder key = new StringBuilder(sql.replaceAll("\\s+", " ").trim());
+        if (params == null || params.isEmpty()) return key.toString();
+        LocalDate today = LocalDate.now();
+        LocalDate previous = null;
+        key.append('\0');
+        for (Map.Entry<String, Object> p : params.entrySet()) {
+            key.append(p.getKey()).append('=');
+            Object v = p.getValue();
+            LocalDate date = date(v);
+            if (date != null) {
+                key.append("d").append(magnitude(ChronoUnit.DAYS.between(today, date)));
+                if (previous != null) key.append('~').append(magnitude(ChronoUnit.DAYS.between(previous, date)));
+                previous = date;
+            } else if (v instanceof Number n) {
+                key.append("n").append(magnitude(n.doubleValue()));
+            } else if (v instanceof Collection<?> c) {
+                key.append("c").append(magnitude(c.size()));
+            } else if (v != null && v.getClass().isArray()) {
+                key.append("c").append(magnitude(java.lang.reflect.Array.getLength(v)));
+            } else {
+                key.append("v").append(v);
+            }
+            key.append('\0');
+        }
+        return key.toString();
+    }
+
+    /** Sign and power of ten: 0 for zero, {@code +2} for 100..999, {@code -0} for -1..-9. */
+    private static String magnitude(double v) {
+        if (v == 0) return "0";
+        if (Double.isNaN(v) || Double.isInfinite(v)) return String.valueOf(v);
+        return (v < 0 ? "-" : "+") + (int) Math.floor(Math.log10(Math.abs(v)));
+    }
+
+    private static LocalDate date(Object v) {
+        if (v instanceof LocalDate d) return d;
+        if (v instanceof LocalDateTime d) return d.toLocalDate();
+        if (v instanceof OffsetDateTime d) return d.toLocalDate();
+        if (v instanceof ZonedDateTime d) return d.toLocalDate();
+        if (v instanceof java.sql.Date d) return d.toLocalDate();
+        if (v instanceof Timestamp t) return t.toLocalDateTime().toLocalDate();
+        if (v instanceof String s && ISO_DATE.matcher(s).matches()) {
+            try {
+                return LocalDate.parse(s.substring(0, 10));
+            } catch (DateTimeParseException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compiles without executing. SHOWPLAN is a session setting, so it is switched off again before the
+     * connection goes back to the pool; if that fails the connection is evicted rather than reused.
+     */
+    private static Estimate showplan(DataSource ds, String sql, Map<String, Object> params) {
+        SqlParameterSource src = new MapSqlParameterSource(params != null ? params : Map.of());
+        ParsedSql parsed = NamedParameterUtils.parseSqlStatement(sql);
+        // A distinct text keeps this off the prepared-statement handle the real execution will use.
+        String text = "/* estimate */ " + NamedParameterUtils.substituteNamedParameters(parsed, src);
+        Object[] args = NamedParameterUtils.buildValueArray(parsed, src, null);
+
+        try (Connection con = ds.getConnection()) {
+            try (Statement st = con.createStatement()) {
+                st.execute("SET SHOWPLAN_XML ON");
+            }
+            try {
+                StringBuilder xml = new StringBuilder();
+                try (PreparedStatement ps = con.prepareStatement(text)) {
+                    ps.setQueryTimeout(ESTIMATE_TIMEOUT_SECONDS);
+                    new ArgumentPreparedStatementSetter(args).setValues(ps);
+                    boolean results = ps.execute();
+                    while (results || ps.getUpdateCount() != -1) {
+                        if (results) {
+                            try (ResultSet rs = ps.getResultSet()) {
+                                while (rs.next()) xml.append(rs.getString(1));
+                            }
+                        }
+                        results = ps.getMoreResults();
+                    }
+                }
+                return parse(xml);
+            } finally {
+                try (Statement st = con.createStatement()) {
+                    st.execute("SET SHOWPLAN_XML OFF");
+                } catch (SQLException ex) {
+                    if (ds instanceof HikariDataSource hikari) hikari.evictConnection(con);
+                    throw ex;
+                }
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    /** Largest statement cost and row estimate in the plan; null when the plan has neither. */
+    static Estimate parse(CharSequence xml) {
+        double cost = -1;
+        double rows = -1;
+        Matcher m = COST.matcher(xml);
+        while (m.find()) cost = Math.max(cost, Double.parseDouble(m.group(1)));
+        m = ROWS.matcher(xml);
+        while (m.find()) rows = Math.max(rows, Double.parseDouble(m.group(1)));
+        return cost < 0 ? null : new Estimate(cost, Math.max(0, rows));
+    }
+}
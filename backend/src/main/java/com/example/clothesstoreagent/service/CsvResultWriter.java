@@ -0,0 +1,70 @@
+package com.example.clothesstoreagent.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows as RFC 4180 CSV: a header line with the column names, then one line per row, CRLF line ends.
+ * Fields with a comma, quote or line break are quoted; NULL is an empty field. Dates and times are ISO-8601
+ * and binary values Base64. CSV has no place for a trailer, so {@code end} only flushes; the caller reports
+ * row count, truncation and errors.
+ */
+public class CsvResultWriter implements ResultWriter {
+
+    private final Writer out;
+
+    public CsvResultWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(List<String> columns) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) out.write(',');
+            field(columns.get(i));
+        }
+        out.write("\r\n");
+    }
+
+    @Override
+    public void row(Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.write(',');
+            Object v = values[i];
+            if (v == null) continue;
+            if (v instanceof String s) field(s);
+            else if (v instanceof BigDecimal n) out.write(n.toPlainString());
+            else if (v instanceof Number || v instanceof Boolean) out.write(v.toString());
+            else if (v instanceof java.sql.Timestamp t) out.write(t.toLocalDateTime().toString());
+            else if (v instanceof java.sql.Date d) out.write(d.toLocalDate().toString());
+            else if (v instanceof java.sql.Time t) out.write(t.toLocalTime().toString());
+            else if (v instanceof byte[] b) out.write(Base64.getEncoder().encodeToString(b));
+            else field(v.toString());
+        }
+        out.write("\r\n");
+    }
+
+    @Override
+    public void end(int rowCount, boolean truncated, Map<String, Object> error) throws IOException {
+        out.flush();
+    }
+
+    private void field(String s) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        out.write(s.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Full extracts without holding them in memory: rows are streamed off the {@link java.sql.ResultSet}
+ * ({@link QueryService#export}) into a gzipped CSV or NDJSON file in {@code app.exportDir}, so heap use does not
+ * grow with the result. An export stops at {@code app.exportMaxRows} rows, or after the row that takes the
+ * compressed file past {@code app.exportMaxBytes}; either way the file is kept and marked truncated.
+ *
+ * The file is the export's only state: it is written under a {@code .part} name and renamed when complete,
+ * its name is the (unguessable) export id, and it is deleted {@code app.exportTtlSeconds} after its last
+ * write by a sweep that also clears leftovers of earlier runs. Instances sharing the directory can serve each
+ * other's downloads. At most {@code app.exportMaxConcurrent} exports run at once; they hold a
+ * {@link Workload#QUERY} connection for their whole run.
+ */
+@Service
+public class ExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportService.class);
+
+    public enum Format {
+        CSV(".csv.gz"), NDJSON(".ndjson.gz");
+
+        final String suffix;
+
+        Format(String suffix) {
+            this.suffix = suffix;
+        }
+
+        /** {@code csv} (default) or {@code ndjson}, case-insensitive; {@code null} for anything else. */
+        public static Format of(String name) {
+            if (name == null || name.isBlank() || name.equalsIgnoreCase("csv")) return CSV;
+            return name.equalsIgnoreCase("ndjson") ? NDJSON : null;
+        }
+    }
+
+    private static final Pattern ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    private static final int BUFFER = 64 * 1024;
+
+    private final AppProps props;
+    private final QueryService queries;
+    private final ObjectMapper om;
+    private final Path dir;
+    private final Semaphore running;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public ExportService(AppProps props, QueryService queries, ObjectMapper om) throws IOException {
+        this.props = props;
+        this.queries = queries;
+        this.om = om;
+        this.dir = props.getExportDir() != null && !props.getExportDir().isBlank()
+                ? Path.of(props.getExportDir())
+                : Path.of(System.getProperty("java.io.tmpdir"), "clothes-store-exports");
+        this.running = new Semaphore(Math.max(1, props.getExportMaxConcurrent()));
+        Files.createDirectories(dir);
+        purge();
+    }
+
+    /**
+     * Runs the query into a new export file. Returns {@code exportId}, {@code format}, {@code rowCount},
+     * {@code truncated} (with {@code truncatedBy}: rows or bytes), {@code bytes}, the {@code download} path and
+     * {@code expiresAt}; or the query's error map ({@code BUSY} when too many exports run), with no file left.
+     */
+    public Map<String, Object> export(String sql,
+                                      Map<String, Object> params,
+                                      Integer maxRows,
+                                      Integer timeoutSeconds,
+                                      Format format,
+                                      QueryService.Options options) {
+        if (!running.tryAcquire()) {
+            refused.incrementAndGet();
+            return error("BUSY", "Too many exports running (limit " + props.getExportMaxConcurrent() + "); retry later.");
+        }
+        String id = UUID.randomUUID().toString();
+        Path file = dir.resolve(id + format.suffix);
+        Path part = dir.resolve(id + format.suffix + ".part");
+        long started = System.nanoTime();
+        try {
+            Budget budget;
+            try (Counting counted = new Counting(Files.newOutputStream(part, StandardOpenOption.CREATE_NEW));
+                 GZIPOutputStream gz = new GZIPOutputStream(counted, BUFFER)) {
+                ResultWriter out = format == Format.CSV
+                        ? new CsvResultWriter(new BufferedWriter(new OutputStreamWriter(gz, StandardCharsets.UTF_8), BUFFER))
+                        : new JsonResultWriter(om, gz, true, Map.of());
+                budget = new Budget(out, counted, props.getExportMaxBytes());
+                try {
+                    queries.export(sql, params, maxRows, timeoutSeconds, options, budget);
+                } catch (BudgetExceeded ex) {
+                    budget.truncatedBy = "bytes";
+                    out.end(budget.rows, true, null);
+                }
+            }
+            if (budget.error != null) {
+                Files.deleteIfExists(part);
+                failed.incrementAndGet();
+                log.warn("Export {} failed after {} rows: {}", id, budget.rows, budget.error.get("message"));
+                return budget.error;
+            }
+            Files.move(part, file, StandardCopyOption.ATOMIC_MOVE);
+            created.incrementAndGet();
+            if (budget.truncatedBy != null) truncated.incrementAndGet();
+
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("exportId", id);
+            out.put("format", format.name().toLowerCase(Locale.ROOT));
+            out.put("rowCount", budget.rows);
+            out.put("truncated", budget.truncatedBy != null);
+            if (budget.truncatedBy != null) out.put("truncatedBy", budget.truncatedBy);
+            out.put("bytes", Files.size(file));
+            out.put("download", "/api/exports/" + id);
+            out.put("expiresAt", Instant.now().plusSeconds(props.getExportTtlSeconds()).toString());
+            log.info("Export {} written rows={} bytes={} truncatedBy={} in {} ms", id, budget.rows, out.get("bytes"),
+                    budget.truncatedBy, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            return out;
+        } catch (IOException | UncheckedIOException ex) {
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException ignored) {
+                // the sweep gets it
+            }
+            failed.incrementAndGet();
+            log.warn("Export {} failed: {}", id, ex.getMessage());
+            return error("EXPORT_FAILED", "Could not write the export: " + ex.getMessage());
+        } finally {
+            running.release();
+        }
+    }
+
+    /** The finished file of export {@code id}, or {@code null} if unknown or expired. */
+    public Path file(String id) {
+        if (id == null || !ID.matcher(id).matches()) return null;
+        for (Format f : Format.values()) {
+            Path p = dir.resolve(id + f.suffix);
+            if (Files.isRegularFile(p)) return p;
+        }
+        return null;
+    }
+
+    public Map<String, Object> delete(String id) {
+        Path p = file(id);
+        if (p == null) return notFound(id);
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ex) {
+            return error("EXPORT_FAILED", "Could not delete export " + id + ": " + ex.getMessage());
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("exportId", id);
+        out.put("deleted", true);
+        return out;
+    }
+
+    public Map<String, Object> stats() {
+        long files = 0, bytes = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.gz")) {
+            for (Path p : ds) {
+                files++;
+                bytes += Files.size(p);
+            }
+        } catch (IOException ex) {
+            log.debug("Cannot list {}: {}", dir, ex.getMessage());
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("dir", dir.toAbsolutePath().toString());
+        out.put("files", files);
+        out.put("bytes", bytes);
+        out.put("running", Math.max(1, props.getExportMaxConcurrent()) - running.availablePermits());
+        out.put("created", created.get());
+        out.put("truncated", truncated.get());
+        out.put("failed", failed.get());
+        out.put("refused", refused.get());
+        out.put("expired", expired.get());
+        return out;
+    }
+
+    /**
+     * Deletes export files (finished or partial) not written for {@code app.exportTtlSeconds}. A file being
+     * downloaded may go too; on Linux the download still completes, elsewhere the next sweep retries.
+     */
+    @Scheduled(fixedDelay = 60, timeUnit = TimeUnit.SECONDS)
+    public void purge() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(props.getExportTtlSeconds());
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.{gz,part}")) {
+            for (Path p : ds) {
+                if (!ID.matcher(p.getFileName().toString()).lookingAt()) continue;
+                try {
+                    if (Files.getLastModifiedTime(p).toMillis() < cutoff && Files.deleteIfExists(p)) {
+                        expired.incrementAndGet();
+                        log.debug("Export file {} expired", p.getFileName());
+                    }
+                } catch (IOException ex) {
+                    log.debug("Cannot expire {}: {}", p, ex.getMessage());
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("Export sweep of {} failed: {}", dir, ex.getMessage());
+        }
+    }
+
+    public static Map<String, Object> notFound(String id) {
+        return error("EXPORT_NOT_FOUND", "No export " + id + " (unknown, or expired).");
+    }
+
+    private static Map<String, Object> error(String code, String message) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", code);
+        err.put("message", message);
+        return err;
+    }
+
+    /** Signals that the file passed {@code app.exportMaxBytes}; {@link QueryService} cancels the statement. */
+    private static final class BudgetExceeded extends IOException {
+        BudgetExceeded() {
+            super("export byte budget reached");
+        }
+    }
+
+    /** Passes rows through, counting them, and stops the query once the compressed file is over budget. */
+    private static final class Budget implements ResultWriter {
+        final ResultWriter out;
+        final Counting counted;
+        final long maxBytes;
+        int rows;
+        String truncatedBy;
+        Map<String, Object> error;
+
+        Budget(ResultWriter out, Counting counted, long maxBytes) {
+            this.out = out;
+            this.counted = counted;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void begin(List<String> columns) throws IOException {
+            out.begin(columns);
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            out.row(values);
+            rows++;
+            if (maxBytes > 0 && counted.count > maxBytes) throw new BudgetExceeded();
+        }
+
+        @Override
+        public void end(int rowCount, boolean truncated, Map<String, Object> error) throws IOException {
+            if (truncated) truncatedBy = "rows";
+            this.error = error;
+            out.end(rowCount, truncated, error);
+        }
+    }
+
+    /** Bytes that reached the file, i.e. after compression. */
+    private static final class Counting extends FilterOutputStream {
+        long count;
+
+        Counting(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
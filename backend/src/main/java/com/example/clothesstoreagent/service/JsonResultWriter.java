@@ -0,0 +1,115 @@
+package com.example.clothesstoreagent.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows as they arrive, either as one JSON document
+ * ({@code {"columns":[..],"rows":[{..},..],"rowCount":n,"truncated":b}}) or as NDJSON
+ * (a header line with the columns, one line per row, then a trailer line with rowCount/truncated).
+ * Output is always compact regardless of {@code INDENT_OUTPUT}.
+ */
+public class JsonResultWriter implements ResultWriter {
+
+    private final JsonGenerator gen;
+    private final ObjectWriter values;
+    private final boolean ndjson;
+    private final Map<String, Object> prelude;
+    private List<String> columns;
+    private boolean begun;
+
+    /**
+     * @param prelude extra top-level fields written before {@code columns} (e.g. the NLQ plan); may be empty
+     */
+    public JsonResultWriter(ObjectMapper om, OutputStream out, boolean ndjson, Map<String, Object> prelude) throws IOException {
+        this.values = om.writer()
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.gen = om.getFactory().createGenerator(out);
+        this.gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.gen.setRootValueSeparator(null);
+        this.ndjson = ndjson;
+        this.prelude = prelude != null ? prelude : Map.of();
+    }
+
+    @Override
+    public void begin(List<String> columns) throws IOException {
+        this.columns = columns;
+        this.begun = true;
+        gen.writeStartObject();
+        writePrelude();
+        gen.writeArrayFieldStart("columns");
+        for (String c : columns) gen.writeString(c);
+        gen.writeEndArray();
+        if (ndjson) {
+            gen.writeEndObject();
+            newline();
+        } else {
+            gen.writeArrayFieldStart("rows");
+        }
+    }
+
+    @Override
+    public void row(Object[] row) throws IOException {
+        gen.writeStartObject();
+        for (int i = 0; i < row.length; i++) {
+            gen.writeFieldName(columns.get(i));
+            writeValue(row[i]);
+        }
+        gen.writeEndObject();
+        if (ndjson) newline();
+    }
+
+    @Override
+    public void end(int rowCount, boolean truncated, Map<String, Object> error) throws IOException {
+        if (!begun) {
+            gen.writeStartObject();
+            writePrelude();
+        } else if (ndjson) {
+            gen.writeStartObject();
+        } else {
+            gen.writeEndArray();
+        }
+        gen.writeNumberField("rowCount", rowCount);
+        gen.writeBooleanField("truncated", truncated);
+        if (error != null) {
+            for (Map.Entry<String, Object> e : error.entrySet()) {
+                gen.writeFieldName(e.getKey());
+                writeValue(e.getValue());
+            }
+        }
+        gen.writeEndObject();
+        if (ndjson) newline();
+        gen.flush();
+    }
+
+    private void writePrelude() throws IOException {
+        for (Map.Entry<String, Object> e : prelude.entrySet()) {
+            gen.writeFieldName(e.getKey());
+            writeValue(e.getValue());
+        }
+    }
+
+    private void writeValue(Object v) throws IOException {
+        if (v == null) gen.writeNull();
+        else if (v instanceof String s) gen.writeString(s);
+        else if (v instanceof Integer n) gen.writeNumber(n);
+        else if (v instanceof Long n) gen.writeNumber(n);
+        else if (v instanceof BigDecimal n) gen.writeNumber(n);
+        else if (v instanceof Double n) gen.writeNumber(n);
+        else if (v instanceof Boolean b) gen.writeBoolean(b);
+        else values.writeValue(gen, v);
+    }
+
+    private void newline() throws IOException {
+        gen.writeRaw('\n');
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Continuation tokens for results cut off at {@code maxRows}. A token carries everything needed to fetch the
+ * next page (the original SQL and params, page size, and the position: last row's sort key plus how many
+ * rows with that key were already returned, or a plain row offset), compressed and signed with HMAC-SHA256,
+ * so no state is kept on the server and a client cannot alter the SQL it replays. See {@link SqlPager} for
+ * how the next page is fetched.
+ *
+ * The signing key is {@code app.cursorSecret}; when blank, a random key is generated at startup and tokens
+ * stop working after a restart (and are not accepted by other instances).
+ */
+@Component
+public class PageCursors {
+
+    private static final Logger log = LoggerFactory.getLogger(PageCursors.class);
+    private static final int VERSION = 1;
+    private static final int MAC_BYTES = 16;
+    private static final int MAX_TOKEN_BYTES = 256 * 1024;
+
+    /**
+     * Result entry with the row after the last one returned, set by {@link QueryService} on truncated results
+     * and removed here before the result reaches the caller.
+     */
+    static final String LOOKAHEAD = "_lookahead";
+
+    /** Token payload. Key values are kept as {@code type:text} strings so they survive JSON unchanged. */
+    public static final class State {
+        public int v = VERSION;
+        public String sql;
+        public Map<String, Object> params;
+        public int size;
+        public int timeout;
+        public String workload;
+        /** {@code keyset} or {@code offset}. */
+        public String mode;
+        public List<String> keys;
+        public List<Boolean> desc;
+        /** Rows returned so far. */
+        public long position;
+        /** Key of the last returned row; null when it could not be carried (then the next page uses the offset). */
+        public List<String> last;
+        /** Rows already returned whose key equals {@code last}. */
+        public int ties;
+    }
+
+    /** What to run for the page a token points at. */
+    static final class Page {
+        final State state;
+        final String sql;
+        final Map<String, Object> params;
+
+        Page(State state, String sql, Map<String, Object> params) {
+            this.state = state;
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    private final ObjectMapper om = new ObjectMapper();
+    private final boolean enabled;
+    private final SecretKeySpec key;
+
+    public PageCursors(AppProps props) {
+        this.enabled = props.isCursorEnabled();
+        byte[] secret;
+        if (props.getCursorSecret() == null || props.getCursorSecret().isBlank()) {
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            if (enabled) log.info("app.cursorSecret not set; page cursors are signed with a per-process key");
+        } else {
+            secret = props.getCursorSecret().getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+    }
+
+    /**
+     * Adds {@code nextCursor} to a first-page result that was truncated, when the statement can be paged.
+     * The result may be shared (result cache), so a copy is returned.
+     */
+    Map<String, Object> first(Map<String, Object> result, String sql, Map<String, Object> params,
+                              int size, int timeout, Workload workload) {
+        if (!enabled || !Boolean.TRUE.equals(result.get("truncated"))) return strip(result);
+        SqlPager.Shape shape = SqlPager.analyze(sql);
+        if (shape == null) return strip(result);
+        List<String> columns = columns(result);
+        List<SqlPager.Key> keys = SqlPager.resolve(shape, columns);
+        if (keys == null && SqlPager.offset(shape, columns) == null) return strip(result);
+
+        State s = new State();
+        s.sql = sql;
+        s.params = params != null ? params : Map.of();
+        s.size = size;
+        s.timeout = timeout;
+        s.workload = workload.name();
+        s.mode = keys != null ? "keyset" : "offset";
+        if (keys != null) {
+            s.keys = new ArrayList<>(keys.size());
+            s.desc = new ArrayList<>(keys.size());
+            for (SqlPager.Key k : keys) {
+                s.keys.add(k.column);
+                s.desc.add(k.desc);
+            }
+        }
+        return advance(result, s, null);
+    }
+
+    /** Adds {@code nextCursor} to a page fetched with {@code page} when more rows follow. */
+    Map<String, Object> next(Map<String, Object> result, Page page) {
+        if (!Boolean.TRUE.equals(result.get("truncated"))) return strip(result);
+        State s = copy(page.state);
+        return advance(result, s, page.state);
+    }
+
+    /** Verifies and decodes {@code token}; throws {@link IllegalArgumentException} when it is not one of ours. */
+    Page open(String token) {
+        State s = decode(token);
+        SqlPager.Shape shape = SqlPager.analyze(s.sql);
+        if (shape == null) throw new IllegalArgumentException("Cursor no longer applies to its query.");
+
+        Map<String, Object> params = new LinkedHashMap<>(s.params != null ? s.params : Map.of());
+        String sql;
+        long skip;
+        if ("keyset".equals(s.mode)) {
+            List<SqlPager.Key> keys = new ArrayList<>(s.keys.size());
+            for (int i = 0; i < s.keys.size(); i++) keys.add(new SqlPager.Key(s.keys.get(i), s.desc.get(i)));
+            boolean seek = s.last != null;
+            sql = SqlPager.keyset(shape, keys, seek);
+            if (seek) {
+                for (int i = 0; i < s.last.size(); i++) params.put(SqlPager.KEY + i, value(s.last.get(i)));
+            }
+            skip = seek ? s.ties : s.position;
+        } else {
+            sql = SqlPager.offset(shape, null);
+            skip = s.position;
+        }
+        params.put(SqlPager.SKIP, skip);
+        params.put(SqlPager.TAKE, s.size + 1);
+        return new Page(s, sql, params);
+    }
+
+    /**
+     * Moves {@code s} past this page and adds it as {@code nextCursor}. In keyset mode the next page starts after
+     * the last row's key, skipping the rows with that key already returned. That skip is only exact when those
+     * are all the rows with that key, as their order among themselves differs from statement to statement; so
+     * when the row after the page has the same key, the rows with that key are left to the next page (this one
+     * comes back shorter). A page that is all one key cannot be shortened and skips by count, like OFFSET.
+     */
+    private Map<String, Object> advance(Map<String, Object> result, State s, State previous) {
+        List<Map<String, Object>> rows = rows(result);
+        if (rows.isEmpty()) return strip(result);
+        if ("keyset".equals(s.mode)) {
+            Object lookahead = result.get(LOOKAHEAD);
+            Map<String, Object> lastRow = rows.get(rows.size() - 1);
+            int run = 1;
+            for (int i = rows.size() - 2; i >= 0 && sameKey(rows.get(i), lastRow, s.keys); i--) run++;
+            boolean split = !(lookahead instanceof Map<?, ?> after) || sameKey(after, lastRow, s.keys);
+            if (split && run < rows.size()) {
+                rows = rows.subList(0, rows.size() - run);
+                lastRow = rows.get(rows.size() - 1);
+                run = 1;
+                for (int i = rows.size() - 2; i >= 0 && sameKey(rows.get(i), lastRow, s.keys); i--) run++;
+            }
+            s.last = encodeKey(lastRow, s.keys);
+            if (s.last != null) {
+                if (run == rows.size() && previous != null && s.last.equals(previous.last)) run += previous.ties;
+                s.ties = run;
+            } else {
+                s.ties = 0;
+            }
+        }
+        s.position += rows.size();
+        Map<String, Object> out = new LinkedHashMap<>(result);
+        out.remove(LOOKAHEAD);
+        if (rows.size() != rows(result).size()) {
+            out.put("rowCount", rows.size());
+            out.put("rows", rows);
+        }
+        out.put("nextCursor", encode(s));
+        return out;
+    }
+
+    /** A copy of {@code result} without {@link #LOOKAHEAD}; {@code result} itself when it has none. */
+    private static Map<String, Object> strip(Map<String, Object> result) {
+        if (!result.containsKey(LOOKAHEAD)) return result;
+        Map<String, Object> out = new LinkedHashMap<>(result);
+        out.remove(LOOKAHEAD);
+        return out;
+    }
+
+    /**
+     * Exact equality on purpose: a case- or accent-insensitive collation may consider more values equal,
+     * which can only make a tie count too small (a repeated row), never too large (a skipped row).
+     */
+    private static boolean sameKey(Map<?, ?> a, Map<?, ?> b, List<String> keys) {
+        for (String k : keys) {
+            if (!Objects.equals(a.get(k), b.get(k))) return false;
+        }
+        return true;
+    }
+
+    private static List<String> encodeKey(Map<String, Object> row, List<String> keys) {
+        List<String> out = new ArrayList<>(keys.size());
+        for (String k : keys) {
+            String v = encodeValue(row.get(k));
+            if (v == null) return null;
+            out.add(v);
+        }
+        return out;
+    }
+
+    /** {@code type:text} for values that can be bound back as parameters, else null. */
+    static String encodeValue(Object v) {
+        if (v instanceof String || v instanceof Character || v instanceof UUID) return "s:" + v;
+        if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) return "i:" + v;
+        if (v instanceof BigDecimal d) return "n:" + d.toPlainString();
+        if (v instanceof BigInteger i) return "n:" + i;
+        if (v instanceof Double || v instanceof Float) return "f:" + v;
+        if (v instanceof Boolean) return "b:" + v;
+        if (v instanceof Timestamp t) return "ts:" + t.toLocalDateTime();
+        if (v instanceof LocalDateTime t) return "ts:" + t;
+        if (v instanceof java.sql.Date d) return "d:" + d.toLocalDate();
+        if (v instanceof LocalDate d) return "d:" + d;
+        return null;
+    }
+
+    static Object value(String encoded) {
+        int colon = encoded.indexOf(':');
+        String text = encoded.substring(colon + 1);
+        return switch (encoded.substring(0, colon)) {
+            case "s" -> text;
+            case "i" -> Long.parseLong(text);
+            case "n" -> new BigDecimal(text);
+            case "f" -> Double.parseDouble(text);
+            case "b" -> Boolean.parseBoolean(text);
+            case "ts" -> Timestamp.valueOf(LocalDateTime.parse(text));
+            case "d" -> java.sql.Date.valueOf(LocalDate.parse(text));
+            default -> throw new IllegalArgumentException("Invalid cursor.");
+        };
+    }
+
+    private String encode(State s) {
+        try {
+            byte[] json = om.writeValueAsBytes(s);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.setInput(json);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 2 + 16);
+            byte[] buf = new byte[1024];
+            while (!deflater.finished()) out.write(buf, 0, deflater.deflate(buf));
+            deflater.end();
+            byte[] payload = out.toByteArray();
+            Base64.Encoder b64 = Base64.getUrlEncoder().withoutPadding();
+            return b64.encodeToString(payload) + "." + b64.encodeToString(mac(payload));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode cursor", e);
+        }
+    }
+
+    private State decode(String token) {
+        if (token == null || token.length() > MAX_TOKEN_BYTES) throw new IllegalArgumentException("Invalid cursor.");
+        int dot = token.indexOf('.');
+        if (dot < 0) throw new IllegalArgumentException("Invalid cursor.");
+        byte[] payload;
+        byte[] sig;
+        try {
+            payload = Base64.getUrlDecoder().decode(token.substring(0, dot));
+            sig = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+        if (!MessageDigest.isEqual(mac(payload), sig)) {
+            throw new IllegalArgumentException("Invalid cursor (bad signature, or issued before a restart).");
+        }
+        try {
+            Inflater inflater = new Inflater();
+            inflater.setInput(payload);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 3);
+            byte[] buf = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                out.write(buf, 0, n);
+            }
+            inflater.end();
+            State s = om.readValue(out.toByteArray(), State.class);
+            if (s.v != VERSION) throw new IllegalArgumentException("Cursor is from an incompatible version.");
+            return s;
+        } catch (DataFormatException | IOException e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+    }
+
+    private byte[] mac(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return Arrays.copyOf(mac.doFinal(payload), MAC_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static State copy(State p) {
+        State s = new State();
+        s.sql = p.sql;
+        s.params = p.params;
+        s.size = p.size;
+        s.timeout = p.timeout;
+        s.workload = p.workload;
+        s.mode = p.mode;
+        s.keys = p.keys;
+        s.desc = p.desc;
+        s.position = p.position;
+        return s;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> columns(Map<String, Object> result) {
+        return (List<String>) result.getOrDefault("columns", List.of());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> rows(Map<String, Object> result) {
+        return (List<Map<String, Object>>) result.getOrDefault("rows", List.of());
+    }
+}
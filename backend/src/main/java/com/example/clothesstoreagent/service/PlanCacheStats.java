@@ -0,0 +1,97 @@
+package com.example.clothesstoreagent.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * SQL Server plan cache figures for judging parameterization: cumulative compile counters
+ * ({@code sys.dm_os_performance_counters}), cached plans by type, and the statements with the most cached
+ * plans ({@code sys.dm_exec_query_stats} grouped by {@code query_hash}: many plans for one hash are
+ * near-duplicate ad hoc statements). Counter deltas are reported against a baseline taken at the first call
+ * (or the last reset), so a before/after comparison is: reset, run the workload, read.
+ *
+ * Read from the primary, also when reads go to replicas. Needs VIEW SERVER STATE (VIEW SERVER PERFORMANCE
+ * STATE on 2022+); without it the error is returned.
+ */
+@Component
+public class PlanCacheStats {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanCacheStats.class);
+
+    private final WorkloadPools pools;
+    private Map<String, Long> baseline;
+
+    public PlanCacheStats(WorkloadPools pools) {
+        this.pools = pools;
+    }
+
+    public Map<String, Object> snapshot(boolean reset) {
+        try {
+            return pools.call(Workload.SCHEMA, () -> read(pools.primaryJdbc(Workload.SCHEMA), reset));
+        } catch (Bulkhead.RejectedException ex) {
+            Map<String, Object> err = new LinkedHashMap<>();
+            err.put("error", "BUSY");
+            err.put("message", ex.getMessage());
+            return err;
+        } catch (DataAccessException ex) {
+            log.warn("Plan cache statistics unavailable: {}", ex.getMostSpecificCause().getMessage());
+            Map<String, Object> err = new LinkedHashMap<>();
+            err.put("error", "QUERY_FAILED");
+            err.put("message", ex.getMostSpecificCause().getMessage());
+            return err;
+        }
+    }
+
+    private Map<String, Object> read(JdbcTemplate jdbc, boolean reset) {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        jdbc.query("""
+            SELECT RTRIM(counter_name) AS counter_name, cntr_value
+            FROM sys.dm_os_performance_counters
+            WHERE object_name LIKE '%SQL Statistics%'
+              AND counter_name IN ('Batch Requests/sec', 'SQL Compilations/sec', 'SQL Re-Compilations/sec')
+        """, rs -> {
+            String name = rs.getString("counter_name");
+            counters.put(name.substring(0, name.indexOf('/')), rs.getLong("cntr_value"));
+        });
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        synchronized (this) {
+            if (baseline == null || reset) baseline = counters;
+            Map<String, Long> delta = new LinkedHashMap<>();
+            counters.forEach((k, v) -> delta.put(k, v - baseline.getOrDefault(k, v)));
+            out.put("sinceBaseline", delta);
+        }
+        out.put("counters", counters);
+
+        out.put("cachedPlans", jdbc.queryForList("""
+            SELECT objtype,
+                   COUNT(*) AS plans,
+                   SUM(CASE WHEN usecounts = 1 THEN 1 ELSE 0 END) AS singleUse,
+                   SUM(CAST(size_in_bytes AS bigint)) AS bytes
+            FROM sys.dm_exec_cached_plans
+            WHERE cacheobjtype = 'Compiled Plan'
+            GROUP BY objtype
+            ORDER BY plans DESC
+        """));
+
+        out.put("mostPlansPerQuery", jdbc.queryForList("""
+            SELECT TOP 20
+                   CONVERT(varchar(18), qs.query_hash, 1) AS queryHash,
+                   COUNT(DISTINCT qs.plan_handle) AS plans,
+                   SUM(qs.execution_count) AS executions,
+                   MIN(qs.creation_time) AS firstCompiled,
+                   MAX(LEFT(st.text, 200)) AS sample
+            FROM sys.dm_exec_query_stats qs
+            CROSS APPLY sys.dm_exec_sql_text(qs.sql_handle) st
+            WHERE st.text NOT LIKE '%dm[_]exec[_]%'
+            GROUP BY qs.query_hash
+            ORDER BY plans DESC, executions DESC
+        """));
+        return out;
+    }
+}
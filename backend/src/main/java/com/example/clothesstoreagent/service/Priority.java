@@ -0,0 +1,14 @@
+package com.example.clothesstoreagent.service;
+
+/**
+ * Order in which callers waiting for the same {@link Bulkhead} are let in: all waiting {@code INTERACTIVE}
+ * calls before any {@code NORMAL} one, and so on; arrival order within a priority.
+ */
+public enum Priority {
+    /** A person waiting on {@code /api/query}. */
+    INTERACTIVE,
+    /** NLQ execution and internal work. */
+    NORMAL,
+    /** Items of {@code /batch} requests. */
+    BATCH
+}
@@ -0,0 +1,229 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Queries and prompts run in the background: {@link #submit} returns a job id at once, the work runs on the
+ * application task executor (still passing its workload's bulkhead), and the caller polls {@link #status}.
+ * {@link #cancel} stops the running statement through its {@link Cancellation}.
+ *
+ * At most {@code app.jobMaxActive} jobs are queued or running; more are refused with {@code TOO_MANY_JOBS}.
+ * Finished jobs keep their result for {@code app.jobResultTtlSeconds}, and at most
+ * {@code app.jobMaxRetained} of them are kept (oldest dropped first); after that the id is unknown.
+ */
+@Service
+public class QueryJobs {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryJobs.class);
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+
+    private static final class Job {
+        final String id = UUID.randomUUID().toString();
+        final String kind;
+        final Cancellation cancel = new Cancellation();
+        final Instant submittedAt = Instant.now();
+        volatile Status status = Status.QUEUED;
+        volatile Instant startedAt;
+        volatile Instant finishedAt;
+        /** {@link System#nanoTime()} at finish; drives expiry. */
+        volatile long finishedNanos;
+        volatile Map<String, Object> result;
+
+        Job(String kind) {
+            this.kind = kind;
+        }
+
+        boolean finished() {
+            return finishedAt != null;
+        }
+    }
+
+    private final AppProps props;
+    private final Executor executor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public QueryJobs(AppProps props, @Qualifier("applicationTaskExecutor") Executor executor) {
+        this.props = props;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts {@code work} in the background. It receives the job's {@link Cancellation} (pass it on with
+     * {@link QueryService.Options#withCancel}) and returns the result map, an {@code error} entry marking
+     * failure. Returns the job's status, or error {@code TOO_MANY_JOBS}.
+     */
+    public Map<String, Object> submit(String kind, Function<Cancellation, Map<String, Object>> work) {
+        if (active.incrementAndGet() > Math.max(1, props.getJobMaxActive())) {
+            active.decrementAndGet();
+            refused.incrementAndGet();
+            Map<String, Object> err = new LinkedHashMap<>();
+            err.put("error", "TOO_MANY_JOBS");
+            err.put("message", "Too many jobs queued or running (limit " + props.getJobMaxActive() + "); retry later.");
+            return err;
+        }
+        Job job = new Job(kind);
+        jobs.put(job.id, job);
+        submitted.incrementAndGet();
+        try {
+            executor.execute(() -> run(job, work));
+        } catch (RejectedExecutionException ex) {
+            finish(job, Status.FAILED, error("QUERY_FAILED", "Job could not be scheduled: " + ex.getMessage()));
+        }
+        log.info("Job {} submitted kind={}", job.id, kind);
+        return describe(job, false);
+    }
+
+    /** Status of job {@code id}, with its {@code result} once finished; error {@code JOB_NOT_FOUND} if unknown or expired. */
+    public Map<String, Object> status(String id) {
+        Job job = jobs.get(id);
+        return job != null ? describe(job, true) : notFound(id);
+    }
+
+    /**
+     * Cancels job {@code id}: a queued job never starts, a running one has its statement cancelled and
+     * finishes as {@code CANCELLED} shortly after. Finished jobs are left as they are.
+     */
+    public Map<String, Object> cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null) return notFound(id);
+        if (!job.finished() && job.cancel.cancel("job " + id + " cancelled")) {
+            synchronized (job) {
+                if (job.status == Status.QUEUED) finish(job, Status.CANCELLED, cancelledResult(job));
+            }
+        }
+        return describe(job, false);
+    }
+
+    public Map<String, Object> stats() {
+        Map<Status, Integer> byStatus = new EnumMap<>(Status.class);
+        for (Job job : jobs.values()) byStatus.merge(job.status, 1, Integer::sum);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("active", active.get());
+        out.put("retained", jobs.size());
+        out.put("byStatus", byStatus);
+        out.put("submitted", submitted.get());
+        out.put("refused", refused.get());
+        out.put("cancelled", cancelled.get());
+        out.put("expired", expired.get());
+        return out;
+    }
+
+    /** Drops finished jobs past their TTL, then the oldest finished ones over {@code app.jobMaxRetained}. */
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.SECONDS)
+    public void purge() {
+        long now = System.nanoTime();
+        long ttl = TimeUnit.SECONDS.toNanos(props.getJobResultTtlSeconds());
+        List<Job> done = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (!job.finished()) continue;
+            if (now - job.finishedNanos > ttl) drop(job);
+            else done.add(job);
+        }
+        int over = done.size() - Math.max(0, props.getJobMaxRetained());
+        if (over > 0) {
+            done.sort(Comparator.comparingLong(j -> j.finishedNanos));
+            for (int i = 0; i < over; i++) drop(done.get(i));
+        }
+    }
+
+    private void run(Job job, Function<Cancellation, Map<String, Object>> work) {
+        synchronized (job) {
+            if (job.finished()) return; // cancelled while queued
+            job.status = Status.RUNNING;
+            job.startedAt = Instant.now();
+        }
+        Map<String, Object> result;
+        try {
+            result = work.apply(job.cancel);
+        } catch (RuntimeException ex) {
+            log.warn("Job {} failed", job.id, ex);
+            result = error("QUERY_FAILED", ex.getMessage());
+        }
+        Status status = !failed(result) ? Status.SUCCEEDED
+                : job.cancel.isCancelled() ? Status.CANCELLED
+                : Status.FAILED;
+        finish(job, status, result);
+    }
+
+    /** An error at the top level, or in the nested {@code result} of an NLQ response. */
+    private static boolean failed(Map<String, Object> result) {
+        return result.containsKey("error") || result.get("result") instanceof Map<?, ?> inner && inner.containsKey("error");
+    }
+
+    private void finish(Job job, Status status, Map<String, Object> result) {
+        synchronized (job) {
+            if (job.finished()) return;
+            job.result = result;
+            job.finishedNanos = System.nanoTime();
+            job.finishedAt = Instant.now();
+            job.status = status;
+        }
+        active.decrementAndGet();
+        // Counted here, not on request: a job whose statement had already finished still succeeds
+        if (status == Status.CANCELLED) cancelled.incrementAndGet();
+        log.info("Job {} {} kind={}", job.id, status, job.kind);
+    }
+
+    private void drop(Job job) {
+        if (jobs.remove(job.id, job)) expired.incrementAndGet();
+    }
+
+    private Map<String, Object> describe(Job job, boolean withResult) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        Status status;
+        Map<String, Object> result;
+        synchronized (job) {
+            status = job.status;
+            result = job.result;
+        }
+        out.put("jobId", job.id);
+        out.put("kind", job.kind);
+        out.put("status", status);
+        out.put("submittedAt", job.submittedAt.toString());
+        if (job.startedAt != null) out.put("startedAt", job.startedAt.toString());
+        if (job.finishedAt != null) {
+            out.put("finishedAt", job.finishedAt.toString());
+            out.put("expiresInSeconds", Math.max(0, props.getJobResultTtlSeconds()
+                    - TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - job.finishedNanos)));
+            if (withResult) out.put("result", result);
+        }
+        return out;
+    }
+
+    private static Map<String, Object> cancelledResult(Job job) {
+        return error("CANCELLED", "Query cancelled: " + job.cancel.reason());
+    }
+
+    private static Map<String, Object> notFound(String id) {
+        return error("JOB_NOT_FOUND", "No job " + id + " (unknown, or its result expired).");
+    }
+
+    private static Map<String, Object> error(String code, String message) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", code);
+        err.put("message", message);
+        return err;
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache for {@link QueryService#execute} results, bounded by an estimate of retained bytes,
+ * with TTL and LRU or LFU eviction ({@code app.resultCachePolicy}). Concurrent misses for the same key
+ * share one database execution, which the others wait for within their own timeout, deadline and
+ * cancellation. Error results are never stored.
+ */
+@Component
+public class QueryResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryResultCache.class);
+
+    private static final long CANCEL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    public static final class Key {
+        final String sql;
+        final Map<String, Object> params;
+        final int maxRows;
+        final int timeoutSeconds;
+        private final int hash;
+
+        Key(String sql, Map<String, Object> params, int maxRows, int timeoutSeconds) {
+            this.sql = normalize(sql);
+            this.params = params == null || params.isEmpty() ? Map.of() : new TreeMap<>(params);
+            this.maxRows = maxRows;
+            this.timeoutSeconds = timeoutSeconds;
+            this.hash = Objects.hash(this.sql, this.params, maxRows, timeoutSeconds);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key k)) return false;
+            return hash == k.hash && maxRows == k.maxRows && timeoutSeconds == k.timeoutSeconds
+                    && sql.equals(k.sql) && params.equals(k.params);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+    }
+
+    private static final class Entry {
+        final Map<String, Object> value;
+        final long bytes;
+        final long expiresAt;
+        long hits;
+
+        Entry(Map<String, Object> value, long bytes, long expiresAt) {
+            this.value = value;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final AppProps props;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final ConcurrentHashMap<Key, CompletableFuture<Map<String, Object>>> inFlight = new ConcurrentHashMap<>();
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    /** Coalesced callers that stopped waiting (timeout, deadline, cancel). */
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public QueryResultCache(AppProps props) {
+        this.props = props;
+    }
+
+    public Key key(String sql, Map<String, Object> params, int maxRows, int timeoutSeconds) {
+        return new Key(sql, params, maxRows, timeoutSeconds);
+    }
+
+    /**
+     * Returns the cached result for {@code key}, joins an identical in-flight execution, or runs
+     * {@code loader}. Without {@code options.useCache} the cache is neither read nor written. A joined execution
+     * is awaited no longer than this caller's own statement could run (its timeout, capped by
+     * {@code options.deadline}) and only until {@code options.cancel} fires; then the caller gets the error its
+     * own statement would have ended with.
+     */
+    public Map<String, Object> get(Key key, QueryService.Options options, Supplier<Map<String, Object>> loader) {
+        if (!props.isResultCacheEnabled() || !options.useCache) {
+            bypassed.incrementAndGet();
+            return loader.get();
+        }
+
+        Map<String, Object> cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        CompletableFuture<Map<String, Object>> mine = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            Map<String, Object> joined = await(running, key, options);
+            // The other caller was cancelled (job deleted, client gone); that is no answer for this one.
+            if (!"CANCELLED".equals(joined.get("error")) || options.cancel.isCancelled()) return joined;
+            return loader.get();
+        }
+
+        misses.incrementAndGet();
+        try {
+            Map<String, Object> result = loader.get();
+            if (!result.containsKey("error")) {
+                result = Collections.unmodifiableMap(result);
+                store(key, result);
+            }
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Map<String, Object> await(CompletableFuture<Map<String, Object>> running, Key key, QueryService.Options options) {
+        long now = System.nanoTime();
+        long wait = TimeUnit.SECONDS.toNanos(key.timeoutSeconds);
+        if (options.deadline != 0) wait = Math.min(wait, options.deadline - now);
+        long until = now + wait;
+        // Cancellation has no callback, so a cancellable caller re-checks it between short waits.
+        long slice = options.cancel == Cancellation.NONE ? Long.MAX_VALUE : CANCEL_CHECK_NANOS;
+        try {
+            while (true) {
+                if (options.cancel.isCancelled()) {
+                    abandoned.incrementAndGet();
+                    return error("CANCELLED", "Query cancelled: " + options.cancel.reason());
+                }
+                long left = until - System.nanoTime();
+                if (left <= 0) {
+                    abandoned.incrementAndGet();
+                    return error("QUERY_FAILED", "Query timed out waiting for an identical query already running.");
+                }
+                try {
+                    return running.get(Math.min(left, slice), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ignored) {
+                    // check again
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            abandoned.incrementAndGet();
+            return error("CANCELLED", "Query cancelled: interrupted");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    public synchronized void invalidate(Key key) {
+        Entry e = entries.remove(key);
+        if (e != null) totalBytes -= e.bytes;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        synchronized (this) {
+            out.put("entries", entries.size());
+            out.put("bytes", totalBytes);
+        }
+        out.put("maxBytes", props.getResultCacheMaxBytes());
+        out.put("hits", hits.get());
+        out.put("misses", misses.get());
+        out.put("coalesced", coalesced.get());
+        out.put("abandoned", abandoned.get());
+        out.put("bypassed", bypassed.get());
+        out.put("evictions", evictions.get());
+        out.put("inFlight", inFlight.size());
+        return out;
+    }
+
+    private synchronized Map<String, Object> lookup(Key key) {
+        Entry e = entries.get(key);
+        if (e == null) return null;
+        if (System.nanoTime() - e.expiresAt > 0) {
+            entries.remove(key);
+            totalBytes -= e.bytes;
+            return null;
+        }
+        e.hits++;
+        return e.value;
+    }
+
+    private synchronized void store(Key key, Map<String, Object> value) {
+        long max = props.getResultCacheMaxBytes();
+        long bytes = estimateBytes(value);
+        if (bytes > max / 4) {
+            log.debug("Result of ~{} bytes too large to cache", bytes);
+            return;
+        }
+        long ttl = TimeUnit.SECONDS.toNanos(Math.max(1, props.getResultCacheTtlSeconds()));
+        Entry prev = entries.put(key, new Entry(value, bytes, System.nanoTime() + ttl));
+        if (prev != null) totalBytes -= prev.bytes;
+        totalBytes += bytes;
+
+        boolean lfu = "lfu".equalsIgnoreCase(props.getResultCachePolicy());
+        while (totalBytes > max && !entries.isEmpty()) {
+            Key victim = lfu ? leastFrequent() : entries.keySet().iterator().next();
+            totalBytes -= entries.remove(victim).bytes;
+            evictions.incrementAndGet();
+        }
+    }
+
+    /** Lowest hit count; ties go to the least recently used since iteration is in access order. */
+    private Key leastFrequent() {
+        Key victim = null;
+        long min = Long.MAX_VALUE;
+        for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+            if (e.getValue().hits < min) {
+                min = e.getValue().hits;
+                victim = e.getKey();
+            }
+        }
+        return victim;
+    }
+
+    private static Map<String, Object> error(String code, String message) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", code);
+        err.put("message", message);
+        return err;
+    }
+
+    /** Rough retained-size estimate; good enough to keep the cache near its byte budget. */
+    static long estimateBytes(Object v) {
+        if (v == null) return 8;
+        if (v instanceof CharSequence s) return 40 + 2L * s.length();
+        if (v instanceof Number || v instanceof Boolean) return 24;
+        if (v instanceof Map<?, ?> m) {
+            long n = 64;
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                n += 32 + estimateBytes(e.getKey()) + estimateBytes(e.getValue());
+            }
+            return n;
+        }
+        if (v instanceof Collection<?> c) {
+            long n = 40;
+            for (Object o : c) n += 8 + estimateBytes(o);
+            return n;
+        }
+        return 32;
+    }
+
+    /**
+     * The statement's {@link SqlLexer} tokens, one space apart, without comments or trailing semicolons. Line
+     * breaks and comments only matter to the tokenizer (a {@code --} comment ends at the line break), so
+     * statements that differ only there run the same and share a key; literals and quoted identifiers are kept
+     * verbatim. Text the tokenizer rejects is used as is.
+     */
+    static String normalize(String sql) {
+        if (sql == null) return "";
+        StringBuilder sb = new StringBuilder(sql.length());
+        int kept = 0;
+        try {
+            SqlLexer lx = new SqlLexer(sql);
+            while (lx.next() != SqlLexer.EOF) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(sql, lx.start, lx.end);
+                if (!lx.isSymbol(';')) kept = sb.length();
+            }
+        } catch (IllegalArgumentException ex) {
+            return sql;
+        }
+        sb.setLength(kept);
+        return sb.toString();
+    }
+}
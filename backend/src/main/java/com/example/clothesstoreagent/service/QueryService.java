@@ -4,126 +4,449 @@ import com.example.clothesstoreagent.config.AppProps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.SqlParameter;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.ResultSetMetaData;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Service
 public class QueryService {
 
     private static final Logger log = LoggerFactory.getLogger(QueryService.class);
 
-    private final NamedParameterJdbcTemplate namedJdbc;
-    private final JdbcTemplate jdbc;
+    private final WorkloadPools pools;
     private final AppProps props;
+    private final QueryResultCache cache;
+    private final SqlValidator validator;
+    private final PageCursors cursors;
+    private final CostAdmission admission;
 
-    private static final Pattern LEADING_SELECT =
-            Pattern.compile("^\\s*SELECT\\b", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-    private static final Pattern CTE_THEN_SELECT =
-            Pattern.compile("^\\s*WITH\\b[\\s\\S]+?\\bSELECT\\b", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    /** Per-call execution switches. Immutable; derive variants with the {@code with*} methods. */
+    public static final class Options {
+        public static final Options DEFAULT = new Options(true, Workload.QUERY, StageListener.NONE, 0, Priority.NORMAL,
+                Cancellation.NONE);
 
-    public QueryService(NamedParameterJdbcTemplate namedJdbc, JdbcTemplate jdbc, AppProps props) {
-        this.namedJdbc = namedJdbc;
-        this.jdbc = jdbc;
+        public final boolean useCache;
+        public final Workload workload;
+        public final StageListener stages;
+        /** {@link System#nanoTime()} by which the statement must finish (caps its timeout); 0 = none. */
+        public final long deadline;
+        /** Place in the workload's queue when it is full. */
+        public final Priority priority;
+        /** Stops the statement from another thread (job cancel, client gone); see {@link Cancellation}. */
+        public final Cancellation cancel;
+
+        private Options(boolean useCache, Workload workload, StageListener stages, long deadline, Priority priority,
+                        Cancellation cancel) {
+            this.useCache = useCache;
+            this.workload = workload;
+            this.stages = stages;
+            this.deadline = deadline;
+            this.priority = priority;
+            this.cancel = cancel;
+        }
+
+        public Options withCache(boolean useCache) {
+            return new Options(useCache, workload, stages, deadline, priority, cancel);
+        }
+
+        public Options withWorkload(Workload workload) {
+            return new Options(useCache, workload, stages, deadline, priority, cancel);
+        }
+
+        public Options withStages(StageListener stages) {
+            return new Options(useCache, workload, stages != null ? stages : StageListener.NONE, deadline, priority,
+                    cancel);
+        }
+
+        public Options withDeadline(long deadline) {
+            return new Options(useCache, workload, stages, deadline, priority, cancel);
+        }
+
+        public Options withPriority(Priority priority) {
+            return new Options(useCache, workload, stages, deadline, priority, cancel);
+        }
+
+        public Options withCancel(Cancellation cancel) {
+            return new Options(useCache, workload, stages, deadline, priority, cancel != null ? cancel : Cancellation.NONE);
+        }
+
+        /** {@code timeoutSeconds}, lowered to what is left until the deadline (at least 1s). */
+        int timeout(int timeoutSeconds) {
+            if (deadline == 0) return timeoutSeconds;
+            long left = TimeUnit.NANOSECONDS.toSeconds(deadline - System.nanoTime() + 999_999_999L);
+            return (int) Math.max(1, Math.min(timeoutSeconds, left));
+        }
+    }
+
+    public QueryService(WorkloadPools pools,
+                        AppProps props,
+                        QueryResultCache cache,
+                        SqlValidator validator,
+                        PageCursors cursors,
+                        CostAdmission admission) {
+        this.pools = pools;
         this.props = props;
+        this.cache = cache;
+        this.validator = validator;
+        this.cursors = cursors;
+        this.admission = admission;
     }
 
     public Map<String, Object> execute(String sql,
                                        Map<String, Object> params,
                                        Integer maxRows,
                                        Integer timeoutSeconds) {
+        return execute(sql, params, maxRows, timeoutSeconds, Options.DEFAULT);
+    }
+
+    /**
+     * Runs {@code sql} and returns at most {@code maxRows} rows. When rows were cut off and the statement
+     * can be paged, the result carries {@code nextCursor} for {@link #next}; such a page may hold fewer rows,
+     * to keep rows with the same sort key on one page. Literals are sent as parameters
+     * when {@code app.sqlParameterize} is on (see {@link SqlParameterizer}).
+     */
+    public Map<String, Object> execute(String sql,
+                                       Map<String, Object> params,
+                                       Integer maxRows,
+                                       Integer timeoutSeconds,
+                                       Options options) {
+        int max = Math.min(
+                maxRows != null ? maxRows : props.getDefaultMaxRows(),
+                props.getDefaultMaxRows()
+        );
+        int timeout = timeoutSeconds != null ? timeoutSeconds : props.getDefaultQueryTimeoutSeconds();
+        SqlParameterizer.Result p = parameterize(sql, params);
+        Map<String, Object> result = executeOnce(p.sql, p.params, max, timeout, options);
+        return cursors.first(result, p.sql, p.params, max, timeout, options.workload);
+    }
+
+    /**
+     * Fetches the page a {@code nextCursor} points at, with the size, timeout and workload of the original
+     * request. The result has the same shape as {@link #execute}, including the following {@code nextCursor}.
+     * An invalid or tampered cursor yields error {@code INVALID_CURSOR}.
+     */
+    public Map<String, Object> next(String cursor, Options options) {
+        PageCursors.Page page;
+        try {
+            page = cursors.open(cursor);
+        } catch (IllegalArgumentException ex) {
+            Map<String, Object> err = new LinkedHashMap<>();
+            err.put("error", "INVALID_CURSOR");
+            err.put("message", ex.getMessage());
+            return err;
+        }
+        Options paged = options.withWorkload(Workload.valueOf(page.state.workload));
+        Map<String, Object> result = executeOnce(page.sql, page.params, page.state.size, page.state.timeout, paged);
+        return cursors.next(result, page);
+    }
 
+    /** The statement timeout {@code cursor} carries; the default one when it does not open. */
+    public int pageTimeout(String cursor) {
+        try {
+            return cursors.open(cursor).state.timeout;
+        } catch (IllegalArgumentException ex) {
+            return props.getDefaultQueryTimeoutSeconds();
+        }
+    }
+
+    private Map<String, Object> executeOnce(String sql,
+                                            Map<String, Object> params,
+                                            int max,
+                                            int timeout,
+                                            Options options) {
+        long started = System.nanoTime();
         validate(sql);
+        options.stages.stage("validate", System.nanoTime() - started);
 
+        QueryResultCache.Key key = cache.key(sql, params, max, timeout);
+        return cache.get(key, options, () -> run(sql, params, max, timeout, options));
+    }
+
+    /**
+     * Drops the cached result for this exact request, or everything when {@code sql} is null.
+     */
+    public void invalidateCache(String sql, Map<String, Object> params, Integer maxRows, Integer timeoutSeconds) {
+        if (sql == null) {
+            cache.invalidateAll();
+            return;
+        }
         int max = Math.min(
                 maxRows != null ? maxRows : props.getDefaultMaxRows(),
                 props.getDefaultMaxRows()
         );
         int timeout = timeoutSeconds != null ? timeoutSeconds : props.getDefaultQueryTimeoutSeconds();
+        SqlParameterizer.Result p = parameterize(sql, params);
+        cache.invalidate(cache.key(p.sql, p.params, max, timeout));
+    }
+
+    public Map<String, Object> cacheStats() {
+        return cache.stats();
+    }
 
-        int prevMaxRows = jdbc.getMaxRows();
-        int prevTimeout = jdbc.getQueryTimeout();
+    private Map<String, Object> run(String sql, Map<String, Object> params, int max, int timeout, Options options) {
         try {
-            jdbc.setMaxRows(max);
-            jdbc.setQueryTimeout(timeout);
-            log.debug("Executing SQL maxRows={} timeout={} params={}",
-                    max,
-                    timeout,
-                    params != null ? params.keySet() : "none");
-
-            SqlParameterSource psrc = new MapSqlParameterSource(params != null ? params : Map.of());
-            List<Map<String, Object>> rows = namedJdbc.queryForList(sql, psrc);
-
-            List<String> columns = new ArrayList<>();
-            if (!rows.isEmpty()) {
-                columns.addAll(rows.get(0).keySet());
+            CostAdmission.Decision admit = admission.check(sql, params, options.workload, options.priority);
+            switch (admit.verdict) {
+                case REJECT:
+                    return CostAdmission.tooExpensive(admit, props);
+                case HEAVY:
+                    int capped = admission.heavyTimeout(timeout);
+                    return admission.heavy(options.priority, () ->
+                            pools.call(options.workload, options.priority, () -> fetch(sql, params, max, capped, options)));
+                default:
+                    return pools.call(options.workload, options.priority, () -> fetch(sql, params, max, timeout, options));
             }
-
-            boolean truncated = rows.size() >= max;
-            Map<String, Object> resp = new LinkedHashMap<>();
-            resp.put("columns", columns);
-            resp.put("rowCount", rows.size());
-            resp.put("truncated", truncated);
-            resp.put("rows", rows);
-            log.debug("Query succeeded rowCount={} truncated={}", rows.size(), truncated);
-            return resp;
-
+        } catch (Bulkhead.RejectedException ex) {
+            log.warn("Query rejected: {}", ex.getMessage());
+            return busy(ex);
         } catch (DataAccessException ex) {
-            Map<String, Object> err = new LinkedHashMap<>();
-            err.put("error", "QUERY_FAILED");
-            err.put("message", ex.getMostSpecificCause() != null
-                    ? ex.getMostSpecificCause().getMessage()
-                    : ex.getMessage());
+            if (options.cancel.isCancelled()) return cancelled(options.cancel);
+            Map<String, Object> err = failure(ex);
             log.warn("Query failed: {}", err.get("message"));
             return err;
+        }
+    }
 
+    private Map<String, Object> fetch(String sql, Map<String, Object> params, int max, int timeout, Options options) {
+        log.debug("Executing SQL workload={} maxRows={} timeout={} params={}",
+                options.workload,
+                max,
+                timeout,
+                params != null ? params.keySet() : "none");
+
+        SqlParameterSource psrc = new MapSqlParameterSource(params != null ? params : Map.of());
+        // Limits live on this statement only; fetch one extra row to know whether we cut anything off.
+        PreparedStatementCreator psc = statement(sql, psrc, max + 1, options.timeout(timeout), props.getDefaultFetchSize(),
+                options.cancel);
+        List<String> columns = new ArrayList<>();
+        long started = System.nanoTime();
+        long[] firstResult = {0};
+        List<Map<String, Object>> rows;
+        try {
+            rows = pools.jdbc(options.workload).query(psc, rs -> {
+                firstResult[0] = System.nanoTime();
+                ResultSetMetaData md = rs.getMetaData();
+                for (int i = 1; i <= md.getColumnCount(); i++) columns.add(JdbcUtils.lookupColumnName(md, i));
+                List<Map<String, Object>> out = new ArrayList<>();
+                int n = 0;
+                while (rs.next()) {
+                    out.add(ResultLayout.ROW_MAPPER.mapRow(rs, n++));
+                }
+                return out;
+            });
         } finally {
-            jdbc.setMaxRows(prevMaxRows);
-            jdbc.setQueryTimeout(prevTimeout);
-            log.trace("Restored JDBC settings maxRows={} timeout={}", prevMaxRows, prevTimeout);
+            options.cancel.detach();
         }
+        options.stages.stage("execute", firstResult[0] - started);
+        options.stages.stage("map", System.nanoTime() - firstResult[0]);
+
+        boolean truncated = rows.size() > max;
+        Map<String, Object> lookahead = truncated ? rows.get(max) : null;
+        if (truncated) rows = rows.subList(0, max);
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("columns", columns);
+        resp.put("rowCount", rows.size());
+        resp.put("truncated", truncated);
+        resp.put("rows", rows);
+        // For the page cursor, which removes it (see PageCursors#advance)
+        if (lookahead != null) resp.put(PageCursors.LOOKAHEAD, lookahead);
+        log.debug("Query succeeded rowCount={} truncated={}", rows.size(), truncated);
+        return resp;
     }
 
-    private void validate(String sql) {
-        if (sql == null || sql.trim().isEmpty()) {
-            throw new IllegalArgumentException("SQL is required");
-        }
+    /**
+     * Streams rows from the {@link java.sql.ResultSet} into {@code writer} as they are fetched, without
+     * materializing the result. Caps come from {@code app.streamMaxRows}; the fetch size from
+     * {@code app.streamFetchSize}. Query failures are reported through {@link ResultWriter#end};
+     * I/O failures (client went away) propagate and close the statement. Here the {@code map} stage
+     * also includes writing the rows out.
+     */
+    public void stream(String sql,
+                       Map<String, Object> params,
+                       Integer maxRows,
+                       Integer timeoutSeconds,
+                       ResultWriter writer) throws IOException {
+        stream(sql, params, maxRows, timeoutSeconds, Options.DEFAULT, writer);
+    }
 
-        String s = sql.trim();
-        s = s.replaceAll("[\\s;]+$", "");
+    public void stream(String sql,
+                       Map<String, Object> params,
+                       Integer maxRows,
+                       Integer timeoutSeconds,
+                       Options options,
+                       ResultWriter writer) throws IOException {
+        stream(sql, params, maxRows, props.getStreamMaxRows(),
+                timeoutSeconds != null ? timeoutSeconds : props.getDefaultQueryTimeoutSeconds(), options, writer);
+    }
 
-        boolean looksSelect = LEADING_SELECT.matcher(s).find() || CTE_THEN_SELECT.matcher(s).find();
-        if (!looksSelect) {
-            throw new IllegalArgumentException("Only SELECT statements are allowed in this endpoint.");
-        }
+    /**
+     * {@link #stream} for exports to a file: capped by {@code app.exportMaxRows} instead of
+     * {@code app.streamMaxRows}, with {@code app.exportTimeoutSeconds} as the default timeout.
+     */
+    public void export(String sql,
+                       Map<String, Object> params,
+                       Integer maxRows,
+                       Integer timeoutSeconds,
+                       Options options,
+                       ResultWriter writer) throws IOException {
+        stream(sql, params, maxRows, props.getExportMaxRows(),
+                timeoutSeconds != null ? timeoutSeconds : props.getExportTimeoutSeconds(), options, writer);
+    }
 
-        if (s.contains(";")) {
-            throw new IllegalArgumentException("Multiple statements not allowed.");
+    private void stream(String sql,
+                        Map<String, Object> params,
+                        Integer maxRows,
+                        int cap,
+                        int timeout,
+                        Options options,
+                        ResultWriter writer) throws IOException {
+
+        long started = System.nanoTime();
+        validate(sql);
+        options.stages.stage("validate", System.nanoTime() - started);
+        SqlParameterizer.Result p = parameterize(sql, params);
+
+        int max = Math.min(maxRows != null ? maxRows : cap, cap);
+        CostAdmission.Decision admit = admission.check(p.sql, p.params, options.workload, options.priority);
+        if (admit.verdict == CostAdmission.Verdict.REJECT) {
+            writer.end(0, false, CostAdmission.tooExpensive(admit, props));
+            return;
         }
+        boolean heavy = admit.verdict == CostAdmission.Verdict.HEAVY;
+        if (heavy) timeout = admission.heavyTimeout(timeout);
+        SqlParameterSource psrc = new MapSqlParameterSource(p.params);
 
-        String upper = s.toUpperCase(Locale.ROOT);
-        for (String bad : props.getDisallowSqlKeywords()) {
-            if (upper.contains(" " + bad + " ") || upper.startsWith(bad + " ") || upper.contains("\n" + bad + " ")) {
-                throw new IllegalArgumentException("Disallowed keyword detected: " + bad);
-            }
+        // One extra row tells us whether the cap actually cut something off.
+        PreparedStatementCreator psc = statement(p.sql, psrc, max + 1, options.timeout(timeout), props.getStreamFetchSize(),
+                options.cancel);
+        int[] count = {0};
+        boolean[] truncated = {false};
+        long[] firstResult = {0};
+        long executeStarted = System.nanoTime();
+        try {
+            Supplier<Object> work = () -> pools.call(options.workload, options.priority, () -> pools.jdbc(options.workload).query(psc, rs -> {
+                firstResult[0] = System.nanoTime();
+                try {
+                    ResultSetMetaData md = rs.getMetaData();
+                    int n = md.getColumnCount();
+                    List<String> columns = new ArrayList<>(n);
+                    for (int i = 1; i <= n; i++) columns.add(JdbcUtils.lookupColumnName(md, i));
+                    writer.begin(columns);
+
+                    Object[] row = new Object[n];
+                    while (rs.next()) {
+                        if (count[0] == max) { truncated[0] = true; break; }
+                        for (int i = 0; i < n; i++) row[i] = JdbcUtils.getResultSetValue(rs, i + 1);
+                        writer.row(row);
+                        count[0]++;
+                    }
+                    return null;
+                } catch (IOException e) {
+                    // Stop the server before the driver closes the result set, which would read out the rest.
+                    rs.getStatement().cancel();
+                    throw new UncheckedIOException(e);
+                }
+            }));
+            if (heavy) admission.heavy(options.priority, work);
+            else work.get();
+        } catch (UncheckedIOException ex) {
+            log.info("Streaming stopped after {} rows: {}", count[0], ex.getCause().getMessage());
+            throw ex.getCause();
+        } catch (Bulkhead.RejectedException ex) {
+            log.warn("Streaming query rejected: {}", ex.getMessage());
+            writer.end(0, false, busy(ex));
+            return;
+        } catch (DataAccessException ex) {
+            Map<String, Object> err = options.cancel.isCancelled() ? cancelled(options.cancel) : failure(ex);
+            log.warn("Streaming query failed after {} rows: {}", count[0], err.get("message"));
+            writer.end(count[0], false, err);
+            return;
+        } finally {
+            options.cancel.detach();
         }
+        writer.end(count[0], truncated[0], null);
+        options.stages.stage("execute", firstResult[0] - executeStarted);
+        options.stages.stage("map", System.nanoTime() - firstResult[0]);
+        log.debug("Streamed rowCount={} truncated={}", count[0], truncated[0]);
+    }
 
-        List<String> allow = props.getAllowTables();
-        if (allow != null && !allow.isEmpty()) {
-            boolean any = false;
-            String lowered = s.toLowerCase(Locale.ROOT);
-            for (String t : allow) {
-                if (lowered.contains(t.toLowerCase(Locale.ROOT))) { any = true; break; }
-            }
-            if (!any) {
-                throw new IllegalArgumentException(
-                        "SQL references tables outside the allowlist. Adjust 'app.allowTables' or the query.");
+    /**
+     * Builds a statement that carries its own maxRows/timeout/fetchSize. The shared template is never
+     * mutated, so concurrent requests cannot see each other's limits.
+     */
+    private PreparedStatementCreator statement(String sql,
+                                               SqlParameterSource psrc,
+                                               int maxRows,
+                                               int timeoutSeconds,
+                                               int fetchSize,
+                                               Cancellation cancel) {
+        ParsedSql parsed = NamedParameterUtils.parseSqlStatement(sql);
+        String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsed, psrc);
+        List<SqlParameter> declared = NamedParameterUtils.buildSqlParameterList(parsed, psrc);
+        Object[] args = NamedParameterUtils.buildValueArray(parsed, psrc, null);
+        PreparedStatementCreator inner = new PreparedStatementCreatorFactory(sqlToUse, declared)
+                .newPreparedStatementCreator(args);
+        return con -> {
+            PreparedStatement ps = inner.createPreparedStatement(con);
+            try {
+                cancel.attach(ps);
+            } catch (SQLException ex) {
+                ps.close();
+                throw ex;
             }
-        }
+            ps.setMaxRows(maxRows);
+            ps.setQueryTimeout(timeoutSeconds);
+            // Never more than the statement can return (some drivers reject a fetch size over maxRows)
+            if (fetchSize > 0) ps.setFetchSize(maxRows > 0 ? Math.min(fetchSize, maxRows) : fetchSize);
+            return ps;
+        };
+    }
+
+    private SqlParameterizer.Result parameterize(String sql, Map<String, Object> params) {
+        return props.isSqlParameterize()
+                ? SqlParameterizer.parameterize(sql, params)
+                : new SqlParameterizer.Result(sql, params != null ? params : Map.of());
+    }
+
+    private static Map<String, Object> failure(DataAccessException ex) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", "QUERY_FAILED");
+        err.put("message", ex.getMostSpecificCause() != null
+                ? ex.getMostSpecificCause().getMessage()
+                : ex.getMessage());
+        return err;
+    }
+
+    private static Map<String, Object> cancelled(Cancellation cancel) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", "CANCELLED");
+        err.put("message", "Query cancelled: " + cancel.reason());
+        return err;
+    }
+
+    private static Map<String, Object> busy(Bulkhead.RejectedException ex) {
+        Map<String, Object> err = new LinkedHashMap<>();
+        err.put("error", "BUSY");
+        err.put("message", ex.getMessage());
+        return err;
+    }
+
+    public void validate(String sql) {
+        validator.validate(sql);
     }
 }
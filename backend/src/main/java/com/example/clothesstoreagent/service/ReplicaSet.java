@@ -0,0 +1,297 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read replicas ({@code app.replicas}) that the workloads in {@code app.replicaWorkloads} read from instead
+ * of the primary. Each replica has its own Hikari pool; {@link #routing} wraps a workload's primary pool in
+ * a data source that hands out a replica connection per checkout:
+ * <ul>
+ *   <li>the in-rotation replica with the fewest connections checked out through it (least outstanding
+ *       requests), ties going to the one with the lower health-check latency;</li>
+ *   <li>if that replica fails to give a connection it leaves the rotation and the next one is tried;</li>
+ *   <li>with none left, the primary ({@code app.replicaFallbackToPrimary}) or an error.</li>
+ * </ul>
+ * Every {@code app.replicaHealthSeconds} each replica runs its lag query ({@code app.replicaLagSql}, by
+ * default the Always On redo estimate for the current database; 0 when it is not in an availability
+ * group). A replica is in rotation while the last check succeeded and the lag is at most
+ * {@code app.replicaMaxLagSeconds}. Until the first check, reads go to the primary.
+ */
+@Component
+public class ReplicaSet {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaSet.class);
+
+    /**
+     * Seconds the local secondary is behind: the primary's own figure when present, else the redo queue over
+     * the redo rate (a stalled redo counts as far behind). No rows (not in an AG) yields NULL, read as 0.
+     */
+    static final String DEFAULT_LAG_SQL = """
+        SELECT MAX(COALESCE(secondary_lag_seconds,
+                   CASE WHEN COALESCE(redo_queue_size, 0) = 0 THEN 0
+                        WHEN redo_rate > 0 THEN CAST(redo_queue_size AS float) / redo_rate
+                        ELSE 1e9 END))
+        FROM sys.dm_hadr_database_replica_states
+        WHERE is_local = 1 AND database_id = DB_ID()
+        """;
+
+    private static final int CHECK_TIMEOUT_SECONDS = 5;
+    /** Weight of the newest health-check latency in the moving average. */
+    private static final double ALPHA = 0.3;
+
+    static final class Member {
+        final String name;
+        final HikariDataSource ds;
+        final String lagSql;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicBoolean checking = new AtomicBoolean();
+        final AtomicLong served = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        volatile boolean inRotation;
+        volatile double lagSeconds = -1;
+        volatile double latencyMillis = -1;
+        volatile String lastError;
+        volatile long checkedAt;
+
+        Member(String name, HikariDataSource ds, String lagSql) {
+            this.name = name;
+            this.ds = ds;
+            this.lagSql = lagSql;
+        }
+
+        void down(String error) {
+            inRotation = false;
+            lastError = error;
+            failures.incrementAndGet();
+        }
+    }
+
+    private final AppProps props;
+    private final Executor executor;
+    private final List<Member> members = new ArrayList<>();
+    private final Set<Workload> workloads = EnumSet.noneOf(Workload.class);
+    private final AtomicLong primaryFallbacks = new AtomicLong();
+
+    public ReplicaSet(AppProps props,
+                      DataSource main,
+                      DataSourceProperties dsProps,
+                      ObjectProvider<MeterRegistry> meters,
+                      @Qualifier("applicationTaskExecutor") Executor executor) {
+        this.props = props;
+        this.executor = executor;
+        MeterRegistry registry = meters.getIfAvailable();
+        for (String w : props.getReplicaWorkloads()) workloads.add(Workload.valueOf(w.trim().toUpperCase(Locale.ROOT)));
+
+        int n = 0;
+        for (AppProps.Replica r : props.getReplicas()) {
+            n++;
+            if (r.getUrl() == null || r.getUrl().isBlank()) continue;
+            String name = r.getName() != null && !r.getName().isBlank() ? r.getName() : "replica" + n;
+            HikariDataSource ds = dsProps.initializeDataSourceBuilder().type(HikariDataSource.class)
+                    .url(r.getUrl())
+                    .username(blank(r.getUsername()) ? dsProps.determineUsername() : r.getUsername())
+                    .password(blank(r.getPassword()) ? dsProps.determinePassword() : r.getPassword())
+                    .build();
+            ds.setPoolName(name + "-pool");
+            if (main instanceof HikariDataSource m) {
+                ds.setMaximumPoolSize(r.getPoolSize() > 0 ? r.getPoolSize() : m.getMaximumPoolSize());
+                ds.setDataSourceProperties(m.getDataSourceProperties());
+            } else if (r.getPoolSize() > 0) {
+                ds.setMaximumPoolSize(r.getPoolSize());
+            }
+            ds.setMinimumIdle(1);
+            ds.setReadOnly(true);
+            if (registry != null) ds.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            String lagSql = !blank(r.getLagSql()) ? r.getLagSql()
+                    : !blank(props.getReplicaLagSql()) ? props.getReplicaLagSql()
+                    : DEFAULT_LAG_SQL;
+            members.add(new Member(name, ds, lagSql));
+        }
+        if (!members.isEmpty()) {
+            log.info("Read replicas {} for workloads {}", members.stream().map(m -> m.name).toList(), workloads);
+        }
+    }
+
+    /** True when {@code workload} reads from the replicas. */
+    boolean routes(Workload workload) {
+        return !members.isEmpty() && workloads.contains(workload);
+    }
+
+    /** A data source that picks a replica per connection and falls back to {@code primary}. */
+    DataSource routing(DataSource primary) {
+        return new Router(primary);
+    }
+
+    /** Runs each replica's lag query off the scheduler thread; a replica whose last check is still running is skipped. */
+    @Scheduled(fixedDelayString = "${app.replicaHealthSeconds:5}", timeUnit = TimeUnit.SECONDS)
+    public void checkHealth() {
+        for (Member m : members) {
+            if (!m.checking.compareAndSet(false, true)) continue;
+            try {
+                executor.execute(() -> {
+                    try {
+                        check(m);
+                    } finally {
+                        m.checking.set(false);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                m.checking.set(false);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("workloads", members.isEmpty() ? Set.of() : workloads);
+        out.put("maxLagSeconds", props.getReplicaMaxLagSeconds());
+        out.put("primaryFallbacks", primaryFallbacks.get());
+        List<Map<String, Object>> list = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Member m : members) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("name", m.name);
+            s.put("inRotation", m.inRotation);
+            s.put("lagSeconds", m.lagSeconds);
+            s.put("checkLatencyMillis", m.latencyMillis);
+            s.put("checkedSecondsAgo", m.checkedAt == 0 ? null : (now - m.checkedAt) / 1000);
+            s.put("outstanding", m.outstanding.get());
+            s.put("served", m.served.get());
+            s.put("failures", m.failures.get());
+            s.put("lastError", m.lastError);
+            HikariPoolMXBean mx = m.ds.getHikariPoolMXBean();
+            if (mx != null) {
+                s.put("poolActive", mx.getActiveConnections());
+                s.put("poolIdle", mx.getIdleConnections());
+            }
+            list.add(s);
+        }
+        out.put("replicas", list);
+        return out;
+    }
+
+    @PreDestroy
+    public void close() {
+        members.forEach(m -> m.ds.close());
+    }
+
+    private void check(Member m) {
+        long started = System.nanoTime();
+        double lag;
+        try (Connection con = m.ds.getConnection(); Statement st = con.createStatement()) {
+            st.setQueryTimeout(CHECK_TIMEOUT_SECONDS);
+            try (ResultSet rs = st.executeQuery(m.lagSql)) {
+                lag = rs.next() ? rs.getDouble(1) : 0; // SQL NULL reads as 0
+            }
+        } catch (SQLException | RuntimeException ex) {
+            if (m.inRotation || m.lastError == null) log.warn("Replica {} out of rotation: {}", m.name, ex.getMessage());
+            m.down(ex.getMessage());
+            m.checkedAt = System.currentTimeMillis();
+            return;
+        }
+        double millis = (System.nanoTime() - started) / 1e6;
+        m.latencyMillis = m.latencyMillis < 0 ? millis : ALPHA * millis + (1 - ALPHA) * m.latencyMillis;
+        m.lagSeconds = lag;
+        m.checkedAt = System.currentTimeMillis();
+
+        boolean ok = lag <= props.getReplicaMaxLagSeconds();
+        if (ok != m.inRotation) {
+            if (ok) log.info("Replica {} in rotation (lag {}s)", m.name, lag);
+            else log.warn("Replica {} out of rotation: lag {}s over {}s", m.name, lag, props.getReplicaMaxLagSeconds());
+        }
+        m.lastError = ok ? null : "lag " + lag + "s";
+        m.inRotation = ok;
+    }
+
+    /** In-rotation replicas, best first. */
+    private List<Member> candidates() {
+        List<Member> out = new ArrayList<>(members.size());
+        for (Member m : members) if (m.inRotation) out.add(m);
+        if (out.size() > 1) {
+            out.sort(Comparator.<Member>comparingInt(m -> m.outstanding.get()).thenComparingDouble(m -> m.latencyMillis));
+        }
+        return out;
+    }
+
+    private static boolean blank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    private final class Router extends AbstractDataSource {
+        private final DataSource primary;
+
+        Router(DataSource primary) {
+            this.primary = primary;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            for (Member m : candidates()) {
+                // Counted from before the checkout, so callers queueing for this pool steer others away.
+                m.outstanding.incrementAndGet();
+                Connection con;
+                try {
+                    con = m.ds.getConnection();
+                } catch (SQLException ex) {
+                    m.outstanding.decrementAndGet();
+                    log.warn("Replica {} out of rotation: {}", m.name, ex.getMessage());
+                    m.down(ex.getMessage());
+                    continue;
+                }
+                m.served.incrementAndGet();
+                return tracked(m, con);
+            }
+            if (!props.isReplicaFallbackToPrimary()) throw new SQLException("No read replica in rotation", "08001");
+            primaryFallbacks.incrementAndGet();
+            return primary.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new UnsupportedOperationException("Replica routing uses the configured credentials");
+        }
+    }
+
+    /** {@code con}, giving back its slot in {@code m.outstanding} on the first close. */
+    private static Connection tracked(Member m, Connection con) {
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ReplicaSet.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+                        m.outstanding.decrementAndGet();
+                    }
+                    try {
+                        return method.invoke(con, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.clothesstoreagent.service;
+
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response layouts for query results. {@code rows} (default) is what {@link QueryService#execute} returns:
+ * one object per row, so every column name repeats in every row. {@code columnar} keeps {@code columns} once
+ * and turns each row into an array of values in column order.
+ */
+public final class ResultLayout {
+
+    /**
+     * Maps rows like {@link ColumnMapRowMapper} (case-insensitive, a repeated column name keeps the last value),
+     * but also keeps every value by position, so {@code SELECT o.id, c.id} still has two values per columnar row.
+     */
+    static final RowMapper<Map<String, Object>> ROW_MAPPER = new ColumnMapRowMapper() {
+        @Override
+        public Map<String, Object> mapRow(ResultSet rs, int rowNum) throws SQLException {
+            ResultSetMetaData md = rs.getMetaData();
+            int n = md.getColumnCount();
+            Row row = new Row(n);
+            for (int i = 1; i <= n; i++) {
+                Object value = getColumnValue(rs, i);
+                row.values[i - 1] = value;
+                row.put(JdbcUtils.lookupColumnName(md, i), value);
+            }
+            return row;
+        }
+    };
+
+    private ResultLayout() {
+    }
+
+    /** True for {@code columnar} (any case); anything else means {@code rows}. */
+    public static boolean isColumnar(String layout) {
+        return "columnar".equalsIgnoreCase(layout);
+    }
+
+    /**
+     * A columnar view of {@code result}. The input map may be shared (result cache), so it is never modified;
+     * rows are converted lazily while the response is serialized. Maps without {@code rows} (errors) are
+     * returned as is.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> columnar(Map<String, Object> result) {
+        if (result == null || !(result.get("rows") instanceof List<?> rows)) return result;
+        Map<String, Object> out = new LinkedHashMap<>(result);
+        out.put("rows", new ValueRows((List<Map<String, Object>>) rows));
+        return out;
+    }
+
+    private static final class ValueRows extends AbstractList<Object[]> {
+        private final List<Map<String, Object>> rows;
+
+        ValueRows(List<Map<String, Object>> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Object[] get(int index) {
+            Map<String, Object> row = rows.get(index);
+            return row instanceof Row r ? r.values.clone() : row.values().toArray();
+        }
+
+        @Override
+        public int size() {
+            return rows.size();
+        }
+    }
+
+    /** A row map that also holds its values in column order, duplicates included. */
+    private static final class Row extends LinkedCaseInsensitiveMap<Object> {
+        final Object[] values;
+
+        Row(int columns) {
+            super(columns);
+            this.values = new Object[columns];
+        }
+    }
+}
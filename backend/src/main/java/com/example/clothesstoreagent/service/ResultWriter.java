@@ -0,0 +1,21 @@
+package com.example.clothesstoreagent.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sink for rows pulled straight off a {@link java.sql.ResultSet}.
+ * Call order is {@code begin}, any number of {@code row}, then {@code end};
+ * {@code end} may come without {@code begin} when the query fails before producing metadata.
+ */
+public interface ResultWriter {
+
+    void begin(List<String> columns) throws IOException;
+
+    /** The array is reused between calls; copy it if you need to keep it. */
+    void row(Object[] values) throws IOException;
+
+    /** @param error {@code null} on success, otherwise the same error/message map {@code execute} returns */
+    void end(int rowCount, boolean truncated, Map<String, Object> error) throws IOException;
+}
@@ -1,52 +1,209 @@
 package com.example.clothesstoreagent.service;
 
 import com.example.clothesstoreagent.config.AppProps;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Service
 public class SchemaService {
 
+    private static final Logger log = LoggerFactory.getLogger(SchemaService.class);
+
     private final JdbcTemplate jdbc;
     private final AppProps props;
+    private final ObjectMapper om;
+    private final ColumnSampler sampler;
+
+    private final AtomicReference<SchemaSnapshot> current = new AtomicReference<>();
+    private final Object refreshLock = new Object();
 
-    public SchemaService(JdbcTemplate jdbc, AppProps props) {
-        this.jdbc = jdbc;
+    public SchemaService(WorkloadPools pools, AppProps props, ObjectMapper om, ColumnSampler sampler) {
+        this.jdbc = pools.jdbc(Workload.SCHEMA);
         this.props = props;
+        this.om = om;
+        this.sampler = sampler;
     }
 
     public Map<String, Object> getSchema() {
+        return getSnapshot().getSchema();
+    }
+
+    /**
+     * Returns the current snapshot, loading it on first use. Never hits the catalog
+     * once loaded; {@link #refresh()} keeps it up to date in the background.
+     */
+    public SchemaSnapshot getSnapshot() {
+        SchemaSnapshot snap = current.get();
+        if (snap != null) return snap;
+        synchronized (refreshLock) {
+            snap = current.get();
+            if (snap == null) {
+                snap = load(null);
+                current.set(snap);
+            }
+            return snap;
+        }
+    }
+
+    /** ETag of the snapshot already in memory, or null before the first load. Never touches the database. */
+    public String currentEtag() {
+        SchemaSnapshot snap = current.get();
+        return snap != null ? snap.getEtag() : null;
+    }
+
+    @Scheduled(fixedDelayString = "${app.schemaRefreshSeconds:60}",
+               initialDelayString = "${app.schemaRefreshSeconds:60}",
+               timeUnit = TimeUnit.SECONDS)
+    public void refresh() {
+        if (current.get() == null) return; // nobody asked yet; stay lazy
+        synchronized (refreshLock) {
+            try {
+                SchemaSnapshot prev = current.get();
+                SchemaSnapshot next = load(prev);
+                if (next != prev) {
+                    current.set(next);
+                }
+            } catch (Exception ex) {
+                log.warn("Schema refresh failed, keeping version {}: {}",
+                        current.get().getVersion(), ex.getMessage());
+            }
+        }
+    }
+
+    private SchemaSnapshot load(SchemaSnapshot prev) {
+        long started = System.nanoTime();
+        Set<String> allow = allowedTables();
+
+        Map<String, LocalDateTime> modified = new LinkedHashMap<>();
+        List<Map<String, Object>> tables = new ArrayList<>();
+        jdbc.query("""
+            SELECT s.name AS TABLE_SCHEMA, o.name AS TABLE_NAME, o.modify_date
+            FROM sys.objects o
+            JOIN sys.schemas s ON s.schema_id = o.schema_id
+            WHERE o.type = 'U'
+            ORDER BY s.name, o.name
+        """, rs -> {
+            String schema = rs.getString("TABLE_SCHEMA");
+            String table = rs.getString("TABLE_NAME");
+            String key = schema + "." + table;
+            if (!allow.isEmpty() && !allow.contains(key.toLowerCase())) return;
+            modified.put(key, rs.getTimestamp("modify_date").toLocalDateTime());
+            Map<String, Object> t = new LinkedHashMap<>();
+            t.put("TABLE_SCHEMA", schema);
+            t.put("TABLE_NAME", table);
+            tables.add(t);
+        });
+
+        // modify_date only moves on DDL, so samples also expire on their own
+        Instant now = Instant.now();
+        Set<String> stale = new LinkedHashSet<>();
+        long ttl = props.getSchemaSampleTtlSeconds();
+        if (prev != null && ttl > 0) {
+            for (String key : modified.keySet()) {
+                Instant sampledAt = prev.getSampledAtByTable().get(key);
+                if (sampledAt == null || !sampledAt.plusSeconds(ttl).isAfter(now)) stale.add(key);
+            }
+        }
+
+        if (prev != null && stale.isEmpty() && modified.equals(prev.getModifiedByTable())) {
+            log.debug("Schema unchanged (version {})", prev.getVersion());
+            return prev;
+        }
+
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, LocalDateTime> e : modified.entrySet()) {
+            if (prev == null || !e.getValue().equals(prev.getModifiedByTable().get(e.getKey()))) {
+                changed.add(e.getKey());
+            }
+        }
+        Set<String> resample = new LinkedHashSet<>(changed);
+        resample.addAll(stale);
+
+        Map<String, List<Map<String, Object>>> prevColumns = prev != null ? columnsOf(prev) : Map.of();
+        Map<String, List<String>> prevSamples = prev != null ? samplesOf(prev) : Map.of();
+
+        Map<String, List<Map<String, Object>>> freshColumns = readColumns(prev == null ? null : changed, allow);
+        Map<String, List<Map<String, Object>>> columnsByTable = new LinkedHashMap<>();
+        for (String key : modified.keySet()) {
+            List<Map<String, Object>> cols = changed.contains(key) ? freshColumns.get(key) : prevColumns.get(key);
+            if (cols != null) columnsByTable.put(key, cols);
+        }
+
+        Map<String, List<Map<String, Object>>> toSample = new LinkedHashMap<>();
+        for (String key : resample) {
+            if (columnsByTable.containsKey(key)) toSample.put(key, columnsByTable.get(key));
+        }
+        Map<String, List<String>> fresh = sampler.sample(toSample);
+
+        Map<String, List<String>> samplesByColumn = new LinkedHashMap<>();
+        Map<String, Instant> sampledAt = new LinkedHashMap<>();
+        for (String key : columnsByTable.keySet()) {
+            String prefix = key + ".";
+            Map<String, List<String>> source = resample.contains(key) ? fresh : prevSamples;
+            source.forEach((col, vals) -> {
+                if (col.startsWith(prefix)) samplesByColumn.put(col, vals);
+            });
+            sampledAt.put(key, resample.contains(key) ? now : prev.getSampledAtByTable().getOrDefault(key, now));
+        }
+
         Map<String, Object> out = new LinkedHashMap<>();
+        out.put("tables", tables);
+        out.put("columnsByTable", columnsByTable);
+        out.put("fks", readForeignKeys(allow));
+        out.put("samplesByColumn", samplesByColumn);
 
-        List<Map<String, Object>> tables = jdbc.queryForList("""
-            SELECT TABLE_SCHEMA, TABLE_NAME
-            FROM INFORMATION_SCHEMA.TABLES
-            WHERE TABLE_TYPE = 'BASE TABLE'
-            ORDER BY TABLE_SCHEMA, TABLE_NAME
-        """);
+        byte[] json = toJson(out);
+        String etag = etagOf(json);
+        if (prev != null && etag.equals(prev.getEtag())) {
+            // Only modify_date moved (e.g. an index rebuild) or resampling found the same values;
+            // keep the version but remember the new dates.
+            return new SchemaSnapshot(prev.getVersion(), etag, prev.getLoadedAt(), prev.getSchema(), modified,
+                    sampledAt, prev.getJson());
+        }
 
-        Set<String> allow = props.getAllowTables().stream()
-                .map(s -> s.trim().toLowerCase())
-                .filter(s -> !s.isEmpty())
-                .collect(Collectors.toCollection(LinkedHashSet::new));
+        long version = prev != null ? prev.getVersion() + 1 : 1;
+        log.info("Schema snapshot v{} loaded: {} tables ({} re-read, {} resampled) in {} ms",
+                version, tables.size(), changed.size(), resample.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return new SchemaSnapshot(version, etag, now, out, modified, sampledAt, json);
+    }
 
-        List<Map<String, Object>> filteredTables = (allow.isEmpty())
-                ? tables
-                : tables.stream().filter(t -> allow.contains(
-                    (t.get("TABLE_SCHEMA") + "." + t.get("TABLE_NAME")).toLowerCase()))
-                    .collect(Collectors.toList());
-        out.put("tables", filteredTables);
+    /** Reads columns for the given tables, or for every table when {@code only} is null. */
+    private Map<String, List<Map<String, Object>>> readColumns(Set<String> only, Set<String> allow) {
+        Map<String, List<Map<String, Object>>> columnsByTable = new LinkedHashMap<>();
+        if (only != null && only.isEmpty()) return columnsByTable;
 
-        List<Map<String, Object>> cols = jdbc.queryForList("""
+        String sql = """
             SELECT TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME, DATA_TYPE, IS_NULLABLE
             FROM INFORMATION_SCHEMA.COLUMNS
-            ORDER BY TABLE_SCHEMA, TABLE_NAME, ORDINAL_POSITION
-        """);
+        """;
+        List<Map<String, Object>> cols;
+        if (only == null) {
+            cols = jdbc.queryForList(sql + " ORDER BY TABLE_SCHEMA, TABLE_NAME, ORDINAL_POSITION");
+        } else {
+            cols = new ArrayList<>();
+            for (String key : only) {
+                String[] parts = key.split("\\.", 2);
+                cols.addAll(jdbc.queryForList(
+                        sql + " WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION",
+                        parts[0], parts[1]));
+            }
+        }
 
-        Map<String, List<Map<String, Object>>> columnsByTable = new LinkedHashMap<>();
         for (Map<String, Object> c : cols) {
             String key = c.get("TABLE_SCHEMA") + "." + c.get("TABLE_NAME");
             if (!allow.isEmpty() && !allow.contains(key.toLowerCase())) continue;
@@ -56,8 +213,10 @@ public class SchemaService {
                 "IS_NULLABLE", c.get("IS_NULLABLE")
             ));
         }
-        out.put("columnsByTable", columnsByTable);
+        return columnsByTable;
+    }
 
+    private List<Map<String, Object>> readForeignKeys(Set<String> allow) {
         List<Map<String, Object>> fks = jdbc.queryForList("""
             SELECT
               fk.name AS constraint_name,
@@ -80,43 +239,40 @@ public class SchemaService {
                 allow.contains((m.get("to_schema")+"."+m.get("to_table")).toString().toLowerCase())
             ).collect(Collectors.toList());
         }
-        out.put("fks", fks);
+        return fks;
+    }
 
-        int perCol = Math.max(0, props.getSchemaSamplesPerColumn());
-        Map<String, List<String>> samplesByColumn = new LinkedHashMap<>();
+    private Set<String> allowedTables() {
+        return props.getAllowTables().stream()
+                .map(s -> s.trim().toLowerCase())
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
 
-        if (perCol > 0) {
-            for (String tbl : columnsByTable.keySet()) {
-                String[] parts = tbl.split("\\.", 2);
-                String schema = parts[0], table = parts[1];
-
-                for (Map<String, Object> c : columnsByTable.get(tbl)) {
-                    String col = c.get("COLUMN_NAME").toString();
-                    String dataType = String.valueOf(c.get("DATA_TYPE")).toLowerCase(Locale.ROOT);
-
-                    if (dataType.contains("varbinary") || dataType.contains("image") || dataType.contains("xml"))
-                        continue;
-
-                    String sql = "SELECT TOP " + perCol + " DISTINCT " +
-                            "CAST(" + quote(schema) + "." + quote(table) + "." + quote(col) + " AS NVARCHAR(200)) AS v " +
-                            "FROM " + quote(schema) + "." + quote(table) + " " +
-                            "WHERE " + quote(col) + " IS NOT NULL";
-
-                    try {
-                        List<String> vals = jdbc.query(sql, (rs, n) -> rs.getString("v"));
-                        if (!vals.isEmpty()) {
-                            samplesByColumn.put(schema + "." + table + "." + col, vals);
-                        }
-                    } catch (Exception ignore) { }
-                }
-            }
-        }
-        out.put("samplesByColumn", samplesByColumn);
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<Map<String, Object>>> columnsOf(SchemaSnapshot snap) {
+        return (Map<String, List<Map<String, Object>>>) snap.getSchema().get("columnsByTable");
+    }
 
-        return out;
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<String>> samplesOf(SchemaSnapshot snap) {
+        return (Map<String, List<String>>) snap.getSchema().get("samplesByColumn");
     }
 
-    private static String quote(String ident) {
-        return "[" + ident.replace("]", "]]" ) + "]";
+    private byte[] toJson(Map<String, Object> schema) {
+        try {
+            return om.writeValueAsBytes(schema);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize schema snapshot", e);
+        }
+    }
+
+    private static String etagOf(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,57 @@
+package com.example.clothesstoreagent.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable view of the schema context at one point in time.
+ * A new instance (with a higher version) is only published when the content changes,
+ * so the ETag is stable across polls that find nothing new.
+ */
+public final class SchemaSnapshot {
+
+    private final long version;
+    private final String etag;
+    private final Instant loadedAt;
+    private final Map<String, Object> schema;
+    private final Map<String, LocalDateTime> modifiedByTable;
+    private final Map<String, Instant> sampledAtByTable;
+    private final byte[] json;
+
+    SchemaSnapshot(long version,
+                   String etag,
+                   Instant loadedAt,
+                   Map<String, Object> schema,
+                   Map<String, LocalDateTime> modifiedByTable,
+                   Map<String, Instant> sampledAtByTable,
+                   byte[] json) {
+        this.version = version;
+        this.etag = etag;
+        this.loadedAt = loadedAt;
+        this.schema = Collections.unmodifiableMap(new LinkedHashMap<>(schema));
+        this.modifiedByTable = Collections.unmodifiableMap(new LinkedHashMap<>(modifiedByTable));
+        this.sampledAtByTable = Collections.unmodifiableMap(new LinkedHashMap<>(sampledAtByTable));
+        this.json = json;
+    }
+
+    public long getVersion() { return version; }
+
+    /** Strong validator derived from the serialized content (quoted, ready for the ETag header). */
+    public String getEtag() { return etag; }
+
+    public Instant getLoadedAt() { return loadedAt; }
+
+    public Map<String, Object> getSchema() { return schema; }
+
+    /** {@code schema.table -> sys.objects.modify_date} for every table in the snapshot. */
+    public Map<String, LocalDateTime> getModifiedByTable() { return modifiedByTable; }
+
+    /** {@code schema.table ->} when its sample values were last read. */
+    public Map<String, Instant> getSampledAtByTable() { return sampledAtByTable; }
+
+    /** Pre-serialized JSON body, so repeated downloads skip Jackson entirely. Callers must not modify it. */
+    public byte[] getJson() { return json; }
+}
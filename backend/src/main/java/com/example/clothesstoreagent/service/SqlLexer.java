@@ -0,0 +1,197 @@
+package com.example.clothesstoreagent.service;
+
+import java.util.List;
+
+/**
+ * Minimal single-pass T-SQL tokenizer. Skips whitespace and comments ({@code --}, nested {@code /* *\/}),
+ * and reports each token as a type plus {@code [start, end)} offsets into the source, so scanning allocates
+ * nothing; text is only materialized on request ({@link #text()}, {@link #identifier()}).
+ *
+ * Token types: {@link #WORD} (keywords, identifiers, {@code @vars}, {@code #temp}), {@link #QUOTED_IDENT}
+ * ({@code [x]} or {@code "x"}), {@link #STRING} ({@code 'x'} / {@code N'x'}), {@link #NUMBER}, and
+ * {@link #SYMBOL} (any other single character).
+ */
+final class SqlLexer {
+
+    static final int EOF = 0;
+    static final int WORD = 1;
+    static final int QUOTED_IDENT = 2;
+    static final int STRING = 3;
+    static final int NUMBER = 4;
+    static final int SYMBOL = 5;
+
+    private final String sql;
+    private final int length;
+    private int pos;
+
+    int type;
+    int start;
+    int end;
+
+    SqlLexer(String sql) {
+        this.sql = sql;
+        this.length = sql.length();
+    }
+
+    /** Advances to the next token and returns its type. Throws on unterminated strings, identifiers or comments. */
+    int next() {
+        skipTrivia();
+        start = pos;
+        if (pos >= length) {
+            end = pos;
+            return type = EOF;
+        }
+        char c = sql.charAt(pos);
+        if ((c == 'N' || c == 'n') && pos + 1 < length && sql.charAt(pos + 1) == '\'') {
+            pos++;
+            return quoted('\'', STRING);
+        }
+        if (c == '\'') return quoted('\'', STRING);
+        if (c == '"') return quoted('"', QUOTED_IDENT);
+        if (c == '[') return quoted(']', QUOTED_IDENT);
+        if (isWordStart(c)) {
+            pos++;
+            while (pos < length && isWordPart(sql.charAt(pos))) pos++;
+            end = pos;
+            return type = WORD;
+        }
+        if (c >= '0' && c <= '9') {
+            pos++;
+            while (pos < length && (isWordPart(sql.charAt(pos)) || sql.charAt(pos) == '.')) pos++;
+            end = pos;
+            return type = NUMBER;
+        }
+        pos++;
+        end = pos;
+        return type = SYMBOL;
+    }
+
+    /** Position to hand back to {@link #reset} for one-token lookahead. */
+    int mark() {
+        return pos;
+    }
+
+    void reset(int mark) {
+        pos = mark;
+    }
+
+    char symbol() {
+        return sql.charAt(start);
+    }
+
+    boolean isSymbol(char c) {
+        return type == SYMBOL && sql.charAt(start) == c;
+    }
+
+    String text() {
+        return sql.substring(start, end);
+    }
+
+    /** Identifier text with brackets/quotes removed and doubled closers unescaped. */
+    String identifier() {
+        if (type != QUOTED_IDENT) return text();
+        char close = sql.charAt(start) == '[' ? ']' : '"';
+        String inner = sql.substring(start + 1, end - 1);
+        return inner.indexOf(close) < 0 ? inner : inner.replace("" + close + close, "" + close);
+    }
+
+    private int quoted(char close, int tokenType) {
+        pos++;
+        while (pos < length) {
+            if (sql.charAt(pos) == close) {
+                if (pos + 1 < length && sql.charAt(pos + 1) == close) {
+                    pos += 2;
+                    continue;
+                }
+                pos++;
+                end = pos;
+                return type = tokenType;
+            }
+            pos++;
+        }
+        throw new IllegalArgumentException("Unterminated " + (tokenType == STRING ? "string literal" : "identifier") + ".");
+    }
+
+    private void skipTrivia() {
+        while (pos < length) {
+            char c = sql.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '-' && pos + 1 < length && sql.charAt(pos + 1) == '-') {
+                pos += 2;
+                while (pos < length && sql.charAt(pos) != '\n') pos++;
+            } else if (c == '/' && pos + 1 < length && sql.charAt(pos + 1) == '*') {
+                // T-SQL block comments nest.
+                int depth = 1;
+                pos += 2;
+                while (depth > 0) {
+                    if (pos + 1 >= length) throw new IllegalArgumentException("Unterminated comment.");
+                    char a = sql.charAt(pos);
+                    char b = sql.charAt(pos + 1);
+                    if (a == '/' && b == '*') { depth++; pos += 2; }
+                    else if (a == '*' && b == '/') { depth--; pos += 2; }
+                    else pos++;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static boolean isWordStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '@' || c == '#';
+    }
+
+    private static boolean isWordPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '@' || c == '#' || c == '$';
+    }
+
+    /**
+     * Case-insensitive lookup of words by source region (open addressing, no allocation per lookup).
+     * Returns the index of the word in the list it was built from, or -1.
+     */
+    static final class Keywords {
+        private final String[] keys;
+        private final int[] ids;
+        private final int mask;
+
+        Keywords(List<String> words) {
+            int size = Integer.highestOneBit(Math.max(4, words.size() * 4) - 1) << 1;
+            keys = new String[size];
+            ids = new int[size];
+            mask = size - 1;
+            for (int i = 0; i < words.size(); i++) {
+                String w = words.get(i).trim();
+                if (w.isEmpty() || get(w, 0, w.length()) >= 0) continue;
+                int slot = hash(w, 0, w.length()) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = w;
+                ids[slot] = i;
+            }
+        }
+
+        int get(String s, int from, int to) {
+            int len = to - from;
+            for (int slot = hash(s, from, to) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                String k = keys[slot];
+                if (k.length() == len && k.regionMatches(true, 0, s, from, len)) return ids[slot];
+            }
+            return -1;
+        }
+
+        int get(SqlLexer lx) {
+            return lx.type == WORD ? get(lx.sql, lx.start, lx.end) : -1;
+        }
+
+        private static int hash(String s, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; i++) {
+                char c = s.charAt(i);
+                if (c >= 'a' && c <= 'z') c -= 32;
+                else if (c > 127) c = Character.toUpperCase(c);
+                h = 31 * h + c;
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
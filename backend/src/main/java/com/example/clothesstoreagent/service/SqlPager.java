@@ -0,0 +1,458 @@
+package com.example.clothesstoreagent.service;
+
+import java.util.*;
+
+/**
+ * Rewrites an already validated SELECT so that it returns one page starting after a known position.
+ * Used by {@link PageCursors}; the rewritten statement goes through validation again before it runs.
+ *
+ * Two forms:
+ * <ul>
+ *   <li><b>keyset</b>, when every top-level ORDER BY item is a plain column of the result (by alias, by
+ *       reference in the select list, or by ordinal): the statement becomes a derived table filtered to
+ *       rows at or after the last row's key values, ordered by those columns, with
+ *       {@code OFFSET :_pskip ROWS} skipping only the rows that tie with the last key and were already
+ *       returned. The database seeks instead of re-reading earlier pages.</li>
+ *   <li><b>offset</b> otherwise: {@code OFFSET :_pskip ROWS FETCH NEXT :_ptake ROWS ONLY} is appended (with
+ *       {@code ORDER BY (SELECT NULL)} when there is no ORDER BY, so page boundaries are only stable when
+ *       the query is ordered).</li>
+ * </ul>
+ * Statements that already use OFFSET, FOR XML/JSON/BROWSE, or whose shape cannot be determined are not
+ * pageable ({@link #analyze} returns null).
+ */
+final class SqlPager {
+
+    static final String SKIP = "_pskip";
+    static final String TAKE = "_ptake";
+    static final String KEY = "_pkey";
+
+    private static final List<String> WORDS = List.of(
+            "SELECT", "WITH", "TOP", "DISTINCT", "ALL", "PERCENT", "TIES", "FROM", "INTO", "WHERE", "GROUP",
+            "HAVING", "UNION", "EXCEPT", "INTERSECT", "ORDER", "BY", "OPTION", "FOR", "OFFSET", "ASC", "DESC", "AS");
+    private static final int SELECT = 0, WITH = 1, TOP = 2, DISTINCT = 3, ALL = 4, PERCENT = 5, TIES = 6,
+            FROM = 7, ORDER = 15, BY = 16, OPTION = 17, FOR = 18, OFFSET = 19, ASC = 20, DESC = 21;
+    private static final SqlLexer.Keywords KEYWORDS = new SqlLexer.Keywords(WORDS);
+
+    /** One ORDER BY item: a column reference (lower-case, dotted, unquoted), an ordinal, or neither. */
+    static final class OrderItem {
+        final String ref;
+        final int ordinal;
+        final boolean desc;
+
+        OrderItem(String ref, int ordinal, boolean desc) {
+            this.ref = ref;
+            this.ordinal = ordinal;
+            this.desc = desc;
+        }
+    }
+
+    /** One select-list item: its column reference if it is a plain one, and its output name if known. */
+    static final class SelectItem {
+        final String ref;
+        final String name;
+        final boolean star;
+
+        SelectItem(String ref, String name, boolean star) {
+            this.ref = ref;
+            this.name = name;
+            this.star = star;
+        }
+    }
+
+    /** A resolved sort key: result column and direction. */
+    static final class Key {
+        final String column;
+        final boolean desc;
+
+        Key(String column, boolean desc) {
+            this.column = column;
+            this.desc = desc;
+        }
+    }
+
+    /** Top-level layout of a statement, as offsets into {@code sql}. */
+    static final class Shape {
+        final String sql;
+        /** Start of the main SELECT (after any CTE header). */
+        final int mainStart;
+        /** Start of the top-level ORDER BY, or -1. */
+        final int orderStart;
+        /** End of the main statement, before any OPTION clause or semicolon. */
+        final int bodyEnd;
+        /** The OPTION (...) clause, or empty. */
+        final String tail;
+        final boolean top;
+        final List<OrderItem> order;
+        final List<SelectItem> select;
+
+        Shape(String sql, int mainStart, int orderStart, int bodyEnd, String tail, boolean top,
+              List<OrderItem> order, List<SelectItem> select) {
+            this.sql = sql;
+            this.mainStart = mainStart;
+            this.orderStart = orderStart;
+            this.bodyEnd = bodyEnd;
+            this.tail = tail;
+            this.top = top;
+            this.order = order;
+            this.select = select;
+        }
+    }
+
+    private SqlPager() {
+    }
+
+    /** Null when the statement cannot be paged. */
+    static Shape analyze(String sql) {
+        SqlLexer lx = new SqlLexer(sql);
+        lx.next();
+        int first = KEYWORDS.get(lx);
+        int mainStart;
+        if (first == SELECT) {
+            mainStart = lx.start;
+        } else if (first == WITH) {
+            mainStart = afterCteHeader(lx);
+            if (mainStart < 0) return null;
+        } else {
+            return null;
+        }
+
+        // Modifiers of the first SELECT: DISTINCT / ALL, TOP (n) [PERCENT] [WITH TIES].
+        boolean top = false;
+        int mark = lx.mark();
+        while (true) {
+            lx.next();
+            int kw = KEYWORDS.get(lx);
+            if (kw == DISTINCT || kw == ALL || (kw == PERCENT && top)) {
+                mark = lx.mark();
+            } else if (kw == TOP) {
+                top = true;
+                if (lx.next() == SqlLexer.SYMBOL && lx.symbol() == '(') skipParens(lx);
+                mark = lx.mark();
+            } else if (kw == WITH && top && peek(lx) == TIES) {
+                lx.next();
+                mark = lx.mark();
+            } else {
+                lx.reset(mark);
+                break;
+            }
+        }
+
+        // Its select list runs to the first top-level clause keyword.
+        int selectStart = mark;
+        int selectEnd = -1;
+        int depth = 0;
+        for (int t = lx.next(); selectEnd < 0; t = lx.next()) {
+            if (t == SqlLexer.SYMBOL) {
+                char c = lx.symbol();
+                if (c == '(') depth++;
+                else if (c == ')') depth--;
+                else if (c == ';' && depth == 0) selectEnd = lx.start;
+            } else if (t == SqlLexer.EOF || (depth == 0 && KEYWORDS.get(lx) >= FROM && KEYWORDS.get(lx) <= OFFSET)) {
+                selectEnd = lx.start;
+            }
+        }
+        lx.reset(selectEnd);
+
+        // Rest of the main statement: ORDER BY, OPTION (...) and the end.
+        int orderStart = -1;
+        int orderItems = -1;
+        int bodyEnd = -1;
+        int tailStart = -1;
+        String tail = "";
+        depth = 0;
+        for (int t = lx.next(); ; t = lx.next()) {
+            if (t == SqlLexer.SYMBOL) {
+                char c = lx.symbol();
+                if (c == '(') depth++;
+                else if (c == ')') depth--;
+                else if (c == ';' && depth == 0) t = SqlLexer.EOF;
+            }
+            if (t == SqlLexer.EOF) {
+                if (tailStart >= 0) tail = sql.substring(tailStart, lx.start).trim();
+                else bodyEnd = lx.start;
+                break;
+            }
+            if (tailStart >= 0 || depth > 0) continue;
+            int kw = KEYWORDS.get(lx);
+            if (kw == OFFSET || kw == FOR) {
+                return null;
+            } else if (kw == OPTION) {
+                bodyEnd = lx.start;
+                tailStart = lx.start;
+            } else if (kw == ORDER) {
+                int start = lx.start;
+                if (peek(lx) != BY) return null;
+                lx.next();
+                orderStart = start;
+                orderItems = lx.mark();
+            }
+        }
+
+        List<SelectItem> select = new ArrayList<>();
+        for (String item : splitTopLevel(sql.substring(selectStart, selectEnd))) select.add(selectItem(item));
+        List<OrderItem> order = new ArrayList<>();
+        if (orderStart >= 0) {
+            for (String item : splitTopLevel(sql.substring(orderItems, bodyEnd))) order.add(orderItem(item));
+        }
+        return new Shape(sql, mainStart, orderStart, bodyEnd, tail, top, order, select);
+    }
+
+    /**
+     * Maps the ORDER BY items onto result columns, or null when any item is an expression, a column that is
+     * not in the result, or when the result cannot be wrapped as a derived table (unnamed or duplicate columns).
+     */
+    static List<Key> resolve(Shape shape, List<String> columns) {
+        if (shape.order.isEmpty() || !wrappable(columns)) return null;
+        boolean star = shape.select.stream().anyMatch(s -> s.star);
+        List<Key> keys = new ArrayList<>(shape.order.size());
+        Set<String> seen = new HashSet<>();
+        for (OrderItem o : shape.order) {
+            String column = null;
+            if (o.ordinal > 0) {
+                if (!star && o.ordinal <= columns.size()) column = columns.get(o.ordinal - 1);
+            } else if (o.ref != null) {
+                column = resolveRef(o.ref, shape.select, columns, star);
+            }
+            if (column == null || !seen.add(column.toLowerCase(Locale.ROOT))) return null;
+            keys.add(new Key(column, o.desc));
+        }
+        return keys;
+    }
+
+    private static String resolveRef(String ref, List<SelectItem> select, List<String> columns, boolean star) {
+        int dot = ref.lastIndexOf('.');
+        String name = ref.substring(dot + 1);
+        if (dot < 0) {
+            // Unqualified ORDER BY names bind to select-list aliases first, then to columns.
+            for (SelectItem s : select) {
+                if (s.name != null && s.name.equalsIgnoreCase(name)) return column(columns, s.name);
+            }
+            return star ? column(columns, name) : null;
+        }
+        for (SelectItem s : select) {
+            if (ref.equals(s.ref) && s.name != null) return column(columns, s.name);
+        }
+        if (!star) return null;
+        for (SelectItem s : select) {
+            if (s.name != null && s.name.equalsIgnoreCase(name)) return null; // another expression owns that name
+        }
+        return column(columns, name);
+    }
+
+    private static String column(List<String> columns, String name) {
+        for (String c : columns) {
+            if (c.equalsIgnoreCase(name)) return c;
+        }
+        return null;
+    }
+
+    /** Every column named, and no two alike, as a derived table requires. */
+    static boolean wrappable(List<String> columns) {
+        Set<String> names = new HashSet<>();
+        for (String c : columns) {
+            if (c == null || c.isEmpty() || !names.add(c.toLowerCase(Locale.ROOT))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The keyset form. With {@code seek}, filters to rows at or after {@code :_pkey0..n} in key order;
+     * without, it only orders and skips (used when a key value of the last row cannot be carried).
+     */
+    static String keyset(Shape shape, List<Key> keys, boolean seek) {
+        String core = shape.sql.substring(shape.mainStart,
+                shape.top || shape.orderStart < 0 ? shape.bodyEnd : shape.orderStart);
+        StringBuilder out = new StringBuilder(shape.sql.length() + 200);
+        out.append(shape.sql, 0, shape.mainStart)
+                .append("SELECT * FROM (\n").append(core).append("\n) AS [_page]");
+        if (seek) out.append("\nWHERE ").append(seekPredicate(keys));
+        out.append("\nORDER BY ");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) out.append(", ");
+            out.append(column(keys.get(i))).append(keys.get(i).desc ? " DESC" : " ASC");
+        }
+        return finish(out, shape);
+    }
+
+    /**
+     * The offset form; null when the statement has TOP and {@code columns} cannot be wrapped
+     * (pass null once that has been checked).
+     */
+    static String offset(Shape shape, List<String> columns) {
+        StringBuilder out = new StringBuilder(shape.sql.length() + 100);
+        if (shape.top) {
+            if (columns != null && !wrappable(columns)) return null;
+            out.append(shape.sql, 0, shape.mainStart)
+                    .append("SELECT * FROM (\n").append(shape.sql, shape.mainStart, shape.bodyEnd)
+                    .append("\n) AS [_page]\nORDER BY (SELECT NULL)");
+        } else {
+            out.append(shape.sql, 0, shape.bodyEnd);
+            if (shape.orderStart < 0) out.append("\nORDER BY (SELECT NULL)");
+        }
+        return finish(out, shape);
+    }
+
+    private static String finish(StringBuilder out, Shape shape) {
+        out.append("\nOFFSET :").append(SKIP).append(" ROWS FETCH NEXT :").append(TAKE).append(" ROWS ONLY");
+        if (!shape.tail.isEmpty()) out.append('\n').append(shape.tail);
+        return out.toString();
+    }
+
+    /**
+     * {@code (k0 > :_pkey0) OR (k0 = :_pkey0 AND k1 > :_pkey1) ... OR (all equal)}, with the comparison
+     * flipped for DESC keys. NULLs sort first in SQL Server, so a DESC key also lets NULLs through.
+     */
+    private static String seekPredicate(List<Key> keys) {
+        StringBuilder p = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            boolean last = i == keys.size() - 1;
+            if (i > 0) p.append(" OR ");
+            p.append('(');
+            for (int j = 0; j < i; j++) {
+                p.append(column(keys.get(j))).append(" = :").append(KEY).append(j).append(" AND ");
+            }
+            Key k = keys.get(i);
+            String op = (k.desc ? "<" : ">") + (last ? "=" : "");
+            String cmp = column(k) + " " + op + " :" + KEY + i;
+            p.append(k.desc ? "(" + cmp + " OR " + column(k) + " IS NULL)" : cmp).append(')');
+        }
+        return keys.size() == 1 ? p.substring(1, p.length() - 1) : "(" + p + ")";
+    }
+
+    private static String column(Key k) {
+        return "[_page].[" + k.column.replace("]", "]]") + "]";
+    }
+
+    /** Position of the main SELECT after {@code WITH name [(cols)] AS (...) [, ...]}, or -1. */
+    private static int afterCteHeader(SqlLexer lx) {
+        int depth = 0;
+        boolean afterClose = false;
+        for (int t = lx.next(); t != SqlLexer.EOF; t = lx.next()) {
+            if (t == SqlLexer.SYMBOL) {
+                char c = lx.symbol();
+                if (c == '(') depth++;
+                else if (c == ')') depth--;
+                afterClose = c == ')' && depth == 0;
+                continue;
+            }
+            if (depth == 0 && afterClose && KEYWORDS.get(lx) == SELECT) return lx.start;
+            afterClose = false;
+        }
+        return -1;
+    }
+
+    private static void skipParens(SqlLexer lx) {
+        int depth = 1;
+        while (depth > 0 && lx.next() != SqlLexer.EOF) {
+            if (lx.type == SqlLexer.SYMBOL) {
+                if (lx.symbol() == '(') depth++;
+                else if (lx.symbol() == ')') depth--;
+            }
+        }
+    }
+
+    /** Keyword id of the next token, without consuming it. */
+    private static int peek(SqlLexer lx) {
+        int mark = lx.mark();
+        lx.next();
+        int kw = KEYWORDS.get(lx);
+        lx.reset(mark);
+        return kw;
+    }
+
+    /** Splits a fragment on commas outside parentheses. */
+    private static List<String> splitTopLevel(String text) {
+        List<String> out = new ArrayList<>();
+        SqlLexer lx = new SqlLexer(text);
+        int depth = 0;
+        int from = 0;
+        for (int t = lx.next(); t != SqlLexer.EOF; t = lx.next()) {
+            if (t != SqlLexer.SYMBOL) continue;
+            char c = lx.symbol();
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else if (c == ',' && depth == 0) {
+                out.add(text.substring(from, lx.start));
+                from = lx.end;
+            }
+        }
+        out.add(text.substring(from));
+        return out;
+    }
+
+    private static SelectItem selectItem(String text) {
+        List<String[]> tokens = tokens(text);
+        int n = tokens.size();
+        if (n == 0) return new SelectItem(null, null, false);
+        if ("*".equals(tokens.get(n - 1)[1]) && tokens.get(n - 1)[0] == null) {
+            return new SelectItem(null, null, n == 1 || ".".equals(tokens.get(n - 2)[1]));
+        }
+        // alias = expression
+        if (n >= 3 && tokens.get(0)[0] != null && "=".equals(tokens.get(1)[1])) {
+            return new SelectItem(ref(tokens.subList(2, n)), tokens.get(0)[0], false);
+        }
+        String ref = ref(tokens);
+        if (ref != null) return new SelectItem(ref, ref.substring(ref.lastIndexOf('.') + 1), false);
+        // expression [AS] alias
+        String[] last = tokens.get(n - 1);
+        if (n >= 2 && last[0] != null) {
+            String before = tokens.get(n - 2)[1];
+            boolean as = "as".equalsIgnoreCase(before) && tokens.get(n - 2)[0] != null;
+            List<String[]> expr = tokens.subList(0, as ? n - 2 : n - 1);
+            String exprRef = ref(expr);
+            if (as || exprRef != null || ")".equals(before) || "'".equals(before)) {
+                return new SelectItem(exprRef, last[0], false);
+            }
+        }
+        return new SelectItem(null, null, false);
+    }
+
+    private static OrderItem orderItem(String text) {
+        List<String[]> tokens = tokens(text);
+        boolean desc = false;
+        int n = tokens.size();
+        if (n > 0 && tokens.get(n - 1)[0] != null) {
+            int kw = KEYWORDS.get(tokens.get(n - 1)[1], 0, tokens.get(n - 1)[1].length());
+            if (kw == ASC || kw == DESC) {
+                desc = kw == DESC;
+                n--;
+            }
+        }
+        if (n == 1 && tokens.get(0)[0] == null && tokens.get(0)[1].chars().allMatch(Character::isDigit)) {
+            return new OrderItem(null, Integer.parseInt(tokens.get(0)[1]), desc);
+        }
+        return new OrderItem(ref(tokens.subList(0, n)), 0, desc);
+    }
+
+    /** Lower-case dotted name if {@code tokens} are exactly {@code ident(.ident)*}, else null. */
+    private static String ref(List<String[]> tokens) {
+        if (tokens.isEmpty() || tokens.size() % 2 == 0) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            String[] t = tokens.get(i);
+            if (i % 2 == 0) {
+                if (t[0] == null) return null;
+                sb.append(t[0].toLowerCase(Locale.ROOT));
+            } else {
+                if (!".".equals(t[1])) return null;
+                sb.append('.');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Tokens of a fragment as {@code [identifier or null, raw text]}: words and quoted identifiers carry
+     * their identifier, everything else only its text ({@code '} for strings, so they stay opaque).
+     */
+    private static List<String[]> tokens(String text) {
+        SqlLexer lx = new SqlLexer(text);
+        List<String[]> out = new ArrayList<>();
+        for (int t = lx.next(); t != SqlLexer.EOF; t = lx.next()) {
+            if (t == SqlLexer.WORD || t == SqlLexer.QUOTED_IDENT) out.add(new String[]{lx.identifier(), lx.text()});
+            else if (t == SqlLexer.STRING) out.add(new String[]{null, "'"});
+            else out.add(new String[]{null, lx.text()});
+        }
+        return out;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.clothesstoreagent.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Lifts literals out of a statement into named parameters ({@code :_lit0}, {@code :_lit1}, ...), so prompts
+ * that differ only in a count or a date send SQL Server the same text and share one cached plan (and one
+ * prepared-statement handle on the connection) instead of compiling an ad hoc plan per value.
+ *
+ * Lifted: integer literals in {@code TOP}, {@code WHERE} and {@code JOIN ... ON} (at any nesting level), and
+ * ISO date / date-time strings there. Left alone, roughly following SQL Server's own forced
+ * parameterization: the select list, GROUP BY, HAVING, ORDER BY (ordinals, OFFSET/FETCH), OPTION, FROM
+ * (TABLESAMPLE, FOR SYSTEM_TIME), type lengths such as {@code decimal(10,2)}, {@code CONVERT} styles,
+ * decimal and hex numbers, and other strings: a varchar column compared with an nvarchar parameter (the
+ * driver's default for strings) can lose its index seek, and a constant status gains little from sharing.
+ */
+final class SqlParameterizer {
+
+    static final String PREFIX = "_lit";
+
+    /** SQL Server accepts 2100 parameters per request; leave room for paging and the caller's own. */
+    private static final int MAX_LIFTED = 2000;
+
+    private static final List<String> WORDS = List.of(
+            "SELECT", "TOP", "FROM", "JOIN", "APPLY", "ON", "WHERE", "GROUP", "HAVING", "ORDER", "OPTION",
+            "UNION", "EXCEPT", "INTERSECT", "TABLESAMPLE", "CONVERT", "TRY_CONVERT",
+            "DECIMAL", "DEC", "NUMERIC", "VARCHAR", "NVARCHAR", "CHAR", "NCHAR", "VARBINARY", "BINARY",
+            "DATETIME2", "DATETIMEOFFSET", "TIME", "FLOAT");
+    private static final int SELECT = 0, TOP = 1, FROM = 2, JOIN = 3, APPLY = 4, ON = 5, WHERE = 6, GROUP = 7,
+            HAVING = 8, ORDER = 9, OPTION = 10, UNION = 11, EXCEPT = 12, INTERSECT = 13, TABLESAMPLE = 14,
+            CONVERT = 15, TRY_CONVERT = 16, FIRST_TYPE = 17;
+    private static final SqlLexer.Keywords KEYWORDS = new SqlLexer.Keywords(WORDS);
+
+    private static final Pattern DATE = Pattern.compile(
+            "N?'\\d{4}-\\d{2}-\\d{2}(?:[ T]\\d{2}:\\d{2}(?::\\d{2}(?:\\.\\d{1,7})?)?)?'", Pattern.CASE_INSENSITIVE);
+
+    /** Clause a literal sits in. */
+    private static final int OTHER = 0, LIFT = 1;
+
+    /** What a pair of parentheses holds. */
+    private static final int PLAIN = 0, TOP_COUNT = 1, KEEP = 2, CONVERT_ARGS = 3;
+
+    static final class Result {
+        final String sql;
+        final Map<String, Object> params;
+
+        Result(String sql, Map<String, Object> params) {
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    private static final class Frame {
+        int clause;
+        final int kind;
+        int commas;
+
+        Frame(int clause, int kind) {
+            this.clause = clause;
+            this.kind = kind;
+        }
+    }
+
+    private SqlParameterizer() {
+    }
+
+    /**
+     * The statement with eligible literals replaced by parameters, and {@code params} plus their values.
+     * Returns the input unchanged when there is nothing to lift or the text cannot be tokenized (the
+     * validator reports that).
+     */
+    static Result parameterize(String sql, Map<String, Object> params) {
+        Map<String, Object> base = params != null ? params : Map.of();
+        try {
+            return lift(sql, base);
+        } catch (IllegalArgumentException ex) {
+            return new Result(sql, base);
+        }
+    }
+
+    private static Result lift(String sql, Map<String, Object> params) {
+        SqlLexer lx = new SqlLexer(sql);
+        List<Frame> stack = new ArrayList<>();
+        Frame frame = new Frame(OTHER, PLAIN);
+        int nextKind = PLAIN;
+        boolean topPending = false;
+
+        StringBuilder out = null;
+        Map<String, Object> lifted = null;
+        int copied = 0;
+        int index = 0;
+
+        for (int t = lx.next(); t != SqlLexer.EOF; t = lx.next()) {
+            Object value;
+            if (t == SqlLexer.WORD) {
+                int kw = KEYWORDS.get(lx);
+                topPending = kw == TOP;
+                nextKind = kw == TABLESAMPLE || kw >= FIRST_TYPE ? KEEP
+                        : kw == CONVERT || kw == TRY_CONVERT ? CONVERT_ARGS
+                        : PLAIN;
+                switch (kw) {
+                    case WHERE, ON -> frame.clause = LIFT;
+                    case SELECT, FROM, JOIN, APPLY, GROUP, HAVING, ORDER, OPTION, UNION, EXCEPT, INTERSECT ->
+                            frame.clause = OTHER;
+                    default -> { }
+                }
+                continue;
+            }
+
+            if (t == SqlLexer.SYMBOL) {
+                char c = lx.symbol();
+                if (c == '(') {
+                    stack.add(frame);
+                    int kind = topPending ? TOP_COUNT : nextKind;
+                    frame = new Frame(kind == TOP_COUNT ? LIFT : frame.clause, kind);
+                } else if (c == ')') {
+                    if (!stack.isEmpty()) frame = stack.remove(stack.size() - 1);
+                } else if (c == ',') {
+                    frame.commas++;
+                }
+                topPending = false;
+                nextKind = PLAIN;
+                continue;
+            }
+
+            boolean bareTop = topPending;
+            topPending = false;
+            nextKind = PLAIN;
+            if (!bareTop && !liftable(frame, stack)) continue;
+
+            if (t == SqlLexer.NUMBER) {
+                if (lx.start > 0 && sql.charAt(lx.start - 1) == '.') continue; // .5
+                value = integer(lx.text());
+                if (value == null) continue;
+            } else if (t == SqlLexer.STRING && !bareTop && DATE.matcher(lx.text()).matches()) {
+                String text = lx.text();
+                value = text.substring(text.indexOf('\'') + 1, text.length() - 1);
+            } else {
+                continue;
+            }
+
+            if (lifted != null && lifted.size() - params.size() >= MAX_LIFTED) return new Result(sql, params);
+            String name = PREFIX + index++;
+            while (params.containsKey(name)) name = PREFIX + index++;
+            if (out == null) {
+                out = new StringBuilder(sql.length() + 16);
+                lifted = new LinkedHashMap<>(params);
+            }
+            out.append(sql, copied, lx.start).append(bareTop ? "(:" + name + ")" : ":" + name);
+            copied = lx.end;
+            lifted.put(name, value);
+        }
+
+        if (out == null) return new Result(sql, params);
+        out.append(sql, copied, sql.length());
+        return new Result(out.toString(), lifted);
+    }
+
+    /** Literal in a lifted clause, and no enclosing parentheses that must keep constants. */
+    private static boolean liftable(Frame frame, List<Frame> stack) {
+        if (frame.clause != LIFT || !argumentOk(frame)) return false;
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            Frame f = stack.get(i);
+            if (!argumentOk(f)) return false;
+        }
+        return true;
+    }
+
+    /** {@code CONVERT(type, value[, style])}: only the value may be lifted. */
+    private static boolean argumentOk(Frame f) {
+        return f.kind != KEEP && (f.kind != CONVERT_ARGS || f.commas == 1);
+    }
+
+    /** Plain decimal integers only; anything else (decimals, hex, exponents, money) keeps its literal type. */
+    private static Object integer(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return null;
+        }
+        if (text.length() > 18) return null;
+        long v = Long.parseLong(text);
+        return v <= Integer.MAX_VALUE ? (Object) (int) v : (Object) v;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only guardrail for ad hoc and generated SQL, in one pass over {@link SqlLexer} tokens:
+ * <ul>
+ *   <li>the statement must be a SELECT, or a WITH whose main statement is a SELECT;</li>
+ *   <li>only a trailing semicolon is accepted;</li>
+ *   <li>no word token may be one of {@code app.disallowSqlKeywords} (string literals, comments and
+ *       quoted identifiers are not words, so they never trigger this);</li>
+ *   <li>with {@code app.allowTables} set, every object after FROM, JOIN, APPLY or a comma in a FROM list
+ *       must be allowlisted. A FROM list runs through join predicates ({@code ON}) and
+ *       {@code FOR SYSTEM_TIME} clauses up to WHERE, GROUP, HAVING, ORDER, a set operator, OPTION, another
+ *       FOR or the parenthesis it is in. Unqualified names resolve to {@code dbo}; CTE names are skipped;
+ *       names with a database or server part are never allowlisted.</li>
+ * </ul>
+ * Outcomes are cached per SQL text (up to {@code app.sqlValidationCacheSize} entries), since the same
+ * generated statements come back again and again.
+ */
+@Component
+public class SqlValidator {
+
+    private static final List<String> STRUCTURE = List.of(
+            "SELECT", "WITH", "FROM", "JOIN", "APPLY", "AS",
+            "WHERE", "GROUP", "ORDER", "HAVING", "UNION", "EXCEPT", "INTERSECT", "OPTION", "ON", "FOR");
+    private static final int SELECT = 0, WITH = 1, FROM = 2, JOIN = 3, APPLY = 4, AS = 5, ON = 14, FOR = 15;
+    private static final SqlLexer.Keywords STRUCTURE_WORDS = new SqlLexer.Keywords(STRUCTURE);
+
+    /** Built-in table-valued functions that read nothing but their arguments. */
+    private static final Set<String> SAFE_FUNCTIONS = Set.of("string_split", "openjson", "generate_series");
+
+    private static final String OK = "";
+
+    private final List<String> disallowed;
+    private final SqlLexer.Keywords disallowedWords;
+    private final Set<String> allowTables;
+    private final int cacheSize;
+    private final Map<String, String> outcomes = new ConcurrentHashMap<>();
+
+    public SqlValidator(AppProps props) {
+        this.disallowed = List.copyOf(props.getDisallowSqlKeywords());
+        this.disallowedWords = new SqlLexer.Keywords(disallowed);
+        Set<String> allow = new HashSet<>();
+        for (String t : props.getAllowTables()) {
+            String name = t.trim().toLowerCase(Locale.ROOT);
+            if (!name.isEmpty()) allow.add(name.contains(".") ? name : "dbo." + name);
+        }
+        this.allowTables = allow;
+        this.cacheSize = props.getSqlValidationCacheSize();
+    }
+
+    /** Throws {@link IllegalArgumentException} with a user-facing message when {@code sql} is not allowed. */
+    public void validate(String sql) {
+        if (sql == null || sql.isBlank()) {
+            throw new IllegalArgumentException("SQL is required");
+        }
+        String outcome = cacheSize > 0 ? outcomes.get(sql) : null;
+        if (outcome == null) {
+            try {
+                outcome = check(sql);
+            } catch (IllegalArgumentException ex) {
+                outcome = ex.getMessage();
+            }
+            if (cacheSize > 0) {
+                if (outcomes.size() >= cacheSize) outcomes.clear();
+                outcomes.put(sql, outcome);
+            }
+        }
+        if (!outcome.isEmpty()) {
+            throw new IllegalArgumentException(outcome);
+        }
+    }
+
+    /** Returns {@link #OK} or the rejection message. */
+    private String check(String sql) {
+        SqlLexer lx = new SqlLexer(sql);
+        lx.next();
+        int first = STRUCTURE_WORDS.get(lx);
+        if (first != SELECT && first != WITH) {
+            return "Only SELECT statements are allowed in this endpoint.";
+        }
+
+        // CTE header: name [(cols)] AS (body) [, ...] then the main statement.
+        // Stages: 0 expect name, 1 after name, 2 after AS, 3 after body.
+        boolean header = first == WITH;
+        int cteStage = 0;
+        Set<String> ctes = header ? new HashSet<>() : Set.of();
+
+        int depth = 0;
+        boolean[] fromList = new boolean[16];
+        boolean expectTable = false;
+
+        for (int t = lx.next(); t != SqlLexer.EOF; t = lx.next()) {
+            if (t == SqlLexer.SYMBOL) {
+                char c = lx.symbol();
+                if (c == ';') {
+                    while (lx.next() == SqlLexer.SYMBOL && lx.symbol() == ';') { }
+                    if (lx.type != SqlLexer.EOF) return "Multiple statements not allowed.";
+                    break;
+                } else if (c == '(') {
+                    expectTable = false; // derived table or function arguments
+                    if (++depth == fromList.length) fromList = Arrays.copyOf(fromList, depth * 2);
+                    fromList[depth] = false;
+                } else if (c == ')') {
+                    if (depth > 0) depth--;
+                    if (header && depth == 0 && cteStage == 2) cteStage = 3;
+                } else if (c == ',') {
+                    if (header && depth == 0 && cteStage == 3) cteStage = 0;
+                    else if (fromList[depth]) expectTable = true;
+                }
+                continue;
+            }
+            if (t != SqlLexer.WORD && t != SqlLexer.QUOTED_IDENT) {
+                continue;
+            }
+
+            int bad = disallowedWords.get(lx);
+            if (bad >= 0) {
+                return "Disallowed keyword detected: " + disallowed.get(bad).trim().toUpperCase(Locale.ROOT);
+            }
+            int kw = STRUCTURE_WORDS.get(lx);
+
+            if (header && depth == 0) {
+                if (cteStage == 0) {
+                    ctes.add(lx.identifier().toLowerCase(Locale.ROOT));
+                    cteStage = 1;
+                } else if (kw == AS && cteStage == 1) {
+                    cteStage = 2;
+                } else if (cteStage == 3) {
+                    if (kw != SELECT) return "Only SELECT statements are allowed in this endpoint.";
+                    header = false;
+                }
+                continue;
+            }
+
+            if (expectTable && kw < 0) {
+                expectTable = false;
+                String err = checkObject(lx, ctes);
+                if (err != null) return err;
+                continue;
+            }
+            expectTable = false;
+            if (kw == FROM) {
+                fromList[depth] = true;
+                expectTable = true;
+            } else if (kw == JOIN || kw == APPLY) {
+                expectTable = true;
+            } else if (kw == ON || (kw == FOR && followedBy(lx, "SYSTEM_TIME"))) {
+                // A join predicate or a temporal clause: the FROM list goes on after it
+            } else if (kw > AS || kw == SELECT) {
+                fromList[depth] = false;
+            }
+        }
+
+        if (header) return "Only SELECT statements are allowed in this endpoint.";
+        return OK;
+    }
+
+    /** True when the token after the current one is the word {@code word}; does not move the lexer. */
+    private static boolean followedBy(SqlLexer lx, String word) {
+        int mark = lx.mark();
+        boolean match = lx.next() == SqlLexer.WORD && lx.text().equalsIgnoreCase(word);
+        lx.reset(mark);
+        return match;
+    }
+
+    /** Reads a (possibly dotted) object name starting at the current token and checks it against the allowlist. */
+    private String checkObject(SqlLexer lx, Set<String> ctes) {
+        String[] parts = new String[4];
+        int n = 0;
+        parts[n++] = lx.identifier();
+        while (true) {
+            int mark = lx.mark();
+            if (lx.next() != SqlLexer.SYMBOL || lx.symbol() != '.') {
+                lx.reset(mark);
+                break;
+            }
+            if (n == parts.length) return outside(String.join(".", parts));
+            int after = lx.mark();
+            int t = lx.next();
+            if (t == SqlLexer.WORD || t == SqlLexer.QUOTED_IDENT) {
+                parts[n++] = lx.identifier();
+            } else {
+                parts[n++] = ""; // db..table
+                lx.reset(after);
+            }
+        }
+        int mark = lx.mark();
+        boolean function = lx.next() == SqlLexer.SYMBOL && lx.symbol() == '(';
+        lx.reset(mark);
+
+        String last = parts[n - 1].toLowerCase(Locale.ROOT);
+        if (n == 1 && (ctes.contains(last) || (function && SAFE_FUNCTIONS.contains(last)))) return null;
+        if (allowTables.isEmpty()) return null;
+
+        String schema = n >= 2 && !parts[n - 2].isEmpty() ? parts[n - 2].toLowerCase(Locale.ROOT) : "dbo";
+        String name = schema + "." + last;
+        if (n > 2 || !allowTables.contains(name)) return outside(n > 2 ? String.join(".", Arrays.copyOf(parts, n)) : name);
+        return null;
+    }
+
+    private static String outside(String name) {
+        return "SQL references " + name + ", which is outside the allowlist. Adjust 'app.allowTables' or the query.";
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.clothesstoreagent.service;
+
+/**
+ * Receives per-stage wall times from {@link QueryService} ({@code validate}, {@code execute}, {@code map}).
+ * {@code execute} ends when the first result set is available; {@code map} covers fetching and mapping rows.
+ */
+@FunctionalInterface
+public interface StageListener {
+
+    StageListener NONE = (stage, nanos) -> { };
+
+    void stage(String stage, long nanos);
+}
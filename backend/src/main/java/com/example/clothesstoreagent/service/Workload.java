@@ -0,0 +1,14 @@
+package com.example.clothesstoreagent.service;
+
+/**
+ * Kinds of database work that must not starve each other. Each has its own concurrency limit and,
+ * unless configured to share, its own connection pool (see {@link WorkloadPools}).
+ */
+public enum Workload {
+    /** Ad hoc SQL from {@code /api/query}. */
+    QUERY,
+    /** Execution of plans compiled from {@code /api/nlq}. */
+    NLQ,
+    /** Catalog reads and column sampling for {@code /api/schema}. */
+    SCHEMA
+}
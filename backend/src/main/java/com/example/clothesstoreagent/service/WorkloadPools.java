@@ -0,0 +1,170 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Connection pool and bulkhead per {@link Workload}.
+ *
+ * QUERY uses the application's main pool ({@code spring.datasource.hikari.*}). NLQ and SCHEMA get their
+ * own, smaller Hikari pools on the same database ({@code app.nlqPoolSize}, {@code app.schemaPoolSize});
+ * a size of 0 makes that workload share the main pool. Pools connect lazily, on first use.
+ *
+ * With read replicas configured, the workloads in {@code app.replicaWorkloads} read through a
+ * {@link ReplicaSet} router instead, and their own pool only serves as the fallback.
+ */
+@Component
+public class WorkloadPools {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkloadPools.class);
+
+    private final Map<Workload, DataSource> dataSources = new EnumMap<>(Workload.class);
+    private final Map<Workload, JdbcTemplate> templates = new EnumMap<>(Workload.class);
+    private final Map<Workload, JdbcTemplate> primaryTemplates = new EnumMap<>(Workload.class);
+    private final Map<Workload, Bulkhead> bulkheads = new EnumMap<>(Workload.class);
+    private final List<HikariDataSource> owned = new ArrayList<>();
+    /** Workloads other than QUERY that run on the main pool. */
+    private final Set<Workload> sharing = EnumSet.noneOf(Workload.class);
+
+    public WorkloadPools(DataSource dataSource,
+                         JdbcTemplate jdbc,
+                         DataSourceProperties dsProps,
+                         AppProps props,
+                         ReplicaSet replicas,
+                         ObjectProvider<MeterRegistry> meters) {
+        MeterRegistry registry = meters.getIfAvailable();
+        for (Workload w : Workload.values()) {
+            int poolSize = switch (w) {
+                case QUERY -> 0;
+                case NLQ -> props.getNlqPoolSize();
+                case SCHEMA -> props.getSchemaPoolSize();
+            };
+            int concurrency = switch (w) {
+                case QUERY -> props.getQueryConcurrency();
+                case NLQ -> props.getNlqConcurrency();
+                case SCHEMA -> props.getSchemaConcurrency();
+            };
+
+            if (poolSize > 0) {
+                HikariDataSource ds = dsProps.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+                ds.setPoolName(w.name().toLowerCase(Locale.ROOT) + "-pool");
+                ds.setMaximumPoolSize(poolSize);
+                ds.setMinimumIdle(Math.min(1, poolSize));
+                // Driver settings (statement pooling) come from spring.datasource.hikari, bound to the main pool only.
+                if (dataSource instanceof HikariDataSource main) ds.setDataSourceProperties(main.getDataSourceProperties());
+                // The main pool is bound by Spring Boot; ours need it explicitly (hikaricp.* meters, tag pool).
+                if (registry != null) ds.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+                owned.add(ds);
+                dataSources.put(w, ds);
+                templates.put(w, new JdbcTemplate(ds));
+            } else {
+                dataSources.put(w, dataSource);
+                templates.put(w, jdbc);
+                if (w != Workload.QUERY) sharing.add(w);
+            }
+            primaryTemplates.put(w, templates.get(w));
+            if (replicas.routes(w)) templates.put(w, new JdbcTemplate(replicas.routing(dataSources.get(w))));
+            bulkheads.put(w, new Bulkhead(w.name(), concurrency, props.getBulkheadWaitMillis()));
+            log.debug("Workload {}: concurrency={} pool={} replicas={}", w, concurrency, poolSize > 0 ? poolSize : "shared",
+                    replicas.routes(w));
+        }
+    }
+
+    public JdbcTemplate jdbc(Workload workload) {
+        return templates.get(workload);
+    }
+
+    /** The workload's primary pool, bypassing replicas (for server-wide figures of the primary itself). */
+    public JdbcTemplate primaryJdbc(Workload workload) {
+        return primaryTemplates.get(workload);
+    }
+
+    /** Runs {@code work} inside the workload's bulkhead; throws {@link Bulkhead.RejectedException} when full. */
+    public <T> T call(Workload workload, Supplier<T> work) {
+        return call(workload, Priority.NORMAL, work);
+    }
+
+    /**
+     * As {@link #call(Workload, Supplier)}, queueing by {@code priority}. A workload that shares the main pool
+     * also takes a slot in the query bulkhead, so when that pool is saturated interactive queries still go
+     * first.
+     */
+    public <T> T call(Workload workload, Priority priority, Supplier<T> work) {
+        Bulkhead own = bulkheads.get(workload);
+        if (!sharing.contains(workload)) return own.call(priority, work);
+        return own.call(priority, () -> bulkheads.get(Workload.QUERY).call(priority, work));
+    }
+
+    /** The workload's primary pool. */
+    DataSource dataSource(Workload workload) {
+        return dataSources.get(workload);
+    }
+
+    /**
+     * Starts every primary pool and waits, until {@code deadlineNanos} ({@link System#nanoTime()}), for each to
+     * hold its minimum idle connections (Hikari opens them in the background). Returns connections per pool.
+     */
+    public Map<String, Integer> prefill(long deadlineNanos) throws SQLException, InterruptedException {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (DataSource ds : new LinkedHashSet<>(dataSources.values())) {
+            if (!(ds instanceof HikariDataSource hikari)) continue;
+            try (Connection ignored = hikari.getConnection()) {
+                // opening one starts the pool
+            }
+            int target = Math.min(hikari.getMinimumIdle(), hikari.getMaximumPoolSize());
+            HikariPoolMXBean mx = hikari.getHikariPoolMXBean();
+            while (mx.getTotalConnections() < target && System.nanoTime() - deadlineNanos < 0) {
+                Thread.sleep(20);
+            }
+            out.put(hikari.getPoolName(), mx.getTotalConnections());
+        }
+        return out;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (Workload w : Workload.values()) {
+            Map<String, Object> s = bulkheads.get(w).stats();
+            s.put("pool", poolStats(dataSources.get(w)));
+            out.put(w.name().toLowerCase(Locale.ROOT), s);
+        }
+        return out;
+    }
+
+    @PreDestroy
+    public void close() {
+        owned.forEach(HikariDataSource::close);
+    }
+
+    private static Map<String, Object> poolStats(DataSource ds) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        if (!(ds instanceof HikariDataSource hikari)) return out;
+        out.put("name", hikari.getPoolName());
+        out.put("maxSize", hikari.getMaximumPoolSize());
+        HikariPoolMXBean mx = hikari.getHikariPoolMXBean();
+        if (mx == null) {
+            out.put("started", false);
+            return out;
+        }
+        out.put("active", mx.getActiveConnections());
+        out.put("idle", mx.getIdleConnections());
+        out.put("awaitingConnection", mx.getThreadsAwaitingConnection());
+        return out;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.clothesstoreagent.api;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.service.Cancellation;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DisconnectsTest {
+
+    @Test
+    void withoutPollingTheStatementRunsOnTheCallingThread() {
+        Disconnects disconnects = new Disconnects(new AppProps());
+        assertFalse(disconnects.watching());
+
+        Thread caller = Thread.currentThread();
+        Executor executor = task -> fail("no executor hop without a way to notice a disconnect");
+        DeferredResult<Map<String, Object>> result = disconnects.run(null,
+                () -> Map.of("sameThread", Thread.currentThread() == caller), executor, new Cancellation(), 25_000);
+        assertTrue(result.hasResult());
+        assertEquals(Map.of("sameThread", true), result.getResult());
+    }
+
+    @Test
+    void asyncTimeoutFollowsTheStatementTimeout() {
+        AppProps props = new AppProps();
+        props.setDefaultQueryTimeoutSeconds(20);
+        props.setBulkheadWaitMillis(5000);
+        Disconnects disconnects = new Disconnects(props);
+
+        assertEquals(30_000, disconnects.timeoutMillis(null, 0));
+        assertEquals(70_000, disconnects.timeoutMillis(60, 0));
+        assertEquals(90_000, disconnects.timeoutMillis(20, 60_000));
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        long untilDeadline = disconnects.timeoutMillisUntil(deadline);
+        assertTrue(untilDeadline > 14_000 && untilDeadline <= 15_000, String.valueOf(untilDeadline));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.clothesstoreagent.nlq;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.service.SchemaService;
+import com.example.clothesstoreagent.service.SchemaSnapshot;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Single flight in {@link AzureOpenAIProvider#compileAsync} against a stub chat-completions endpoint
+ * (JDK {@link HttpServer}) that holds every response until the test releases it.
+ */
+class AzureOpenAIProviderTest {
+
+    private static final String COMPLETION =
+            "{\"choices\":[{\"message\":{\"content\":\"{\\\"sql\\\":\\\"SELECT 1 AS n\\\",\\\"params\\\":{}}\"}}]}";
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch arrived = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private AzureOpenAIProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/openai/deployments/test/chat/completions", exchange -> {
+            calls.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            arrived.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = COMPLETION.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+
+        AppProps props = new AppProps();
+        props.setAzureOpenaiEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+        props.setAzureOpenaiApiKey("test-key");
+        props.setAzureOpenaiDeployment("test");
+
+        SchemaSnapshot snapshot = mock(SchemaSnapshot.class);
+        when(snapshot.getVersion()).thenReturn(1L);
+        when(snapshot.getSchema()).thenReturn(Map.of());
+        when(snapshot.getJson()).thenReturn("{}".getBytes(StandardCharsets.UTF_8));
+        SchemaService schema = mock(SchemaService.class);
+        when(schema.getSnapshot()).thenReturn(snapshot);
+        provider = new AzureOpenAIProvider(props, schema);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void identicalConcurrentPromptsMakeOneUpstreamCall() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<NlqProvider.Plan>> plans = new ArrayList<>();
+            CountDownLatch start = new CountDownLatch(1);
+            for (int i = 0; i < 8; i++) {
+                // Whitespace around the prompt does not make it a different request
+                String prompt = i % 2 == 0 ? "top products" : "  top products\n";
+                plans.add(callers.submit(() -> {
+                    start.await();
+                    return provider.compile(prompt);
+                }));
+            }
+            start.countDown();
+            assertTrue(arrived.await(10, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            release.countDown();
+
+            for (Future<NlqProvider.Plan> f : plans) assertEquals("SELECT 1 AS n", f.get(10, TimeUnit.SECONDS).sql);
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void oneWaiterGivingUpDoesNotFailTheOthers() throws Exception {
+        CompletableFuture<NlqProvider.Plan> cancelled = provider.compileAsync("revenue by month");
+        assertTrue(arrived.await(10, TimeUnit.SECONDS));
+        CompletableFuture<NlqProvider.Plan> timedOut = provider.compileAsync("revenue by month")
+                .orTimeout(50, TimeUnit.MILLISECONDS);
+        CompletableFuture<NlqProvider.Plan> waiting = provider.compileAsync("revenue by month");
+
+        cancelled.cancel(true);
+        ExecutionException timeout = assertThrows(ExecutionException.class, () -> timedOut.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, timeout.getCause());
+        assertFalse(waiting.isDone());
+
+        release.countDown();
+        assertEquals("SELECT 1 AS n", waiting.get(10, TimeUnit.SECONDS).sql);
+        assertTrue(cancelled.isCancelled());
+        assertEquals(1, calls.get());
+
+        // Once the shared call is done, the next identical prompt goes upstream again
+        assertEquals("SELECT 1 AS n", provider.compile("revenue by month").sql);
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.clothesstoreagent.nlq;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.example.clothesstoreagent.config.NlqConfig;
+import com.example.clothesstoreagent.service.SchemaService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CachingNlqProviderTest {
+
+    @Test
+    void rulePlansAreNotReusedForOtherLiterals() {
+        SchemaService schema = mock(SchemaService.class);
+        when(schema.currentEtag()).thenReturn("v1");
+        NlqProvider cached = new NlqConfig().nlqProvider(new AppProps(), schema);
+        assertInstanceOf(CachingNlqProvider.class, cached);
+        RuleBasedProvider rules = new RuleBasedProvider();
+
+        // Only 7 days is an intent; 30 days must stay unrecognized, not reuse the 7-day plan
+        sameAsRules(cached, rules, "daily revenue last 7 days");
+        sameAsRules(cached, rules, "daily revenue last 30 days");
+        // The slot's pattern and range still apply
+        sameAsRules(cached, rules, "top 5 products by revenue last month");
+        sameAsRules(cached, rules, "top 5000 products by revenue last month");
+        sameAsRules(cached, rules, "top 0 products by revenue last month");
+        sameAsRules(cached, rules, "top 12 products by revenue last month");
+
+        Map<String, Object> stats = ((CachingNlqProvider) cached).stats();
+        assertEquals(0L, stats.get("generalizedHits"));
+        long hits = (Long) stats.get("hits");
+        sameAsRules(cached, rules, "Top 5 products by revenue, last month!");
+        assertEquals(hits + 1, ((CachingNlqProvider) cached).stats().get("hits"));
+    }
+
+    @Test
+    void modelPlansAreReusedForOtherLiterals() {
+        AtomicInteger calls = new AtomicInteger();
+        Pattern count = Pattern.compile("top (\\d+)");
+        NlqProvider model = prompt -> {
+            calls.incrementAndGet();
+            Matcher m = count.matcher(prompt);
+            assertTrue(m.find());
+            return new NlqProvider.Plan("top_products", "SELECT TOP (:n) name FROM dbo.products",
+                    Map.of("n", Integer.parseInt(m.group(1))));
+        };
+        CachingNlqProvider cached = new CachingNlqProvider(model, new AppProps(), () -> "v1");
+
+        assertEquals(5, cached.compile("top 5 products").params.get("n"));
+        NlqProvider.Plan seven = cached.compile("Top 7 products?");
+        assertEquals(7, seven.params.get("n"));
+        assertEquals("SELECT TOP (:n) name FROM dbo.products", seven.sql);
+        assertEquals(1, calls.get());
+        assertEquals(1L, cached.stats().get("generalizedHits"));
+
+        CachingNlqProvider exactOnly = new CachingNlqProvider(model, new AppProps(), () -> "v1", false);
+        exactOnly.compile("top 5 products");
+        exactOnly.compile("top 7 products");
+        exactOnly.compile("top 7 products");
+        assertEquals(3, calls.get());
+    }
+
+    private static void sameAsRules(NlqProvider cached, RuleBasedProvider rules, String prompt) {
+        NlqProvider.Plan expected;
+        try {
+            expected = rules.compile(prompt);
+        } catch (IllegalArgumentException ex) {
+            assertThrows(IllegalArgumentException.class, () -> cached.compile(prompt), prompt);
+            return;
+        }
+        NlqProvider.Plan actual = cached.compile(prompt);
+        assertEquals(List.of(expected.intent, expected.sql, expected.params),
+                List.of(actual.intent, actual.sql, actual.params), prompt);
+    }
+}
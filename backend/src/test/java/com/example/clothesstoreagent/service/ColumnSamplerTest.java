@@ -0,0 +1,115 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Scan sampling against a template that answers each UNION ALL branch from fixed column values, in an order
+ * that changes between calls, and fails any batch naming the column the "server" cannot convert.
+ */
+class ColumnSamplerTest {
+
+    private static final Pattern BRANCH = Pattern.compile("TOP \\d+ (\\d+) AS k, CAST\\(\\[(\\w+)] AS NVARCHAR");
+
+    private final Map<String, List<String>> data = Map.of(
+            "status", List.of("shipped", "cancelled", "pending"),
+            "qty", List.of("3", "1", "2"),
+            "region", List.of("north"));
+    private final List<String> statements = new ArrayList<>();
+    private ColumnSampler sampler;
+    private int calls;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        doAnswer(inv -> {
+            String sql = inv.getArgument(0);
+            RowCallbackHandler rch = inv.getArgument(1);
+            statements.add(sql);
+            calls++;
+            List<Object[]> rows = new ArrayList<>();
+            Matcher m = BRANCH.matcher(sql);
+            while (m.find()) {
+                if (m.group(2).equals("location")) {
+                    throw new UncategorizedSQLException("sample", sql, new SQLException("Operand type clash"));
+                }
+                for (String v : data.get(m.group(2))) rows.add(new Object[]{Integer.parseInt(m.group(1)), v});
+            }
+            if (calls % 2 == 0) Collections.reverse(rows);
+            for (Object[] row : rows) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getInt("k")).thenReturn((Integer) row[0]);
+                when(rs.getString("v")).thenReturn((String) row[1]);
+                rch.processRow(rs);
+            }
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class));
+
+        WorkloadPools pools = mock(WorkloadPools.class);
+        when(pools.jdbc(Workload.SCHEMA)).thenReturn(jdbc);
+        when(pools.call(eq(Workload.SCHEMA), any())).thenAnswer(inv -> ((Supplier<?>) inv.getArgument(1)).get());
+        sampler = new ColumnSampler(pools, new AppProps());
+    }
+
+    @AfterEach
+    void tearDown() {
+        sampler.shutdown();
+    }
+
+    @Test
+    void oneBadColumnOnlyLosesItsOwnSamples() {
+        Map<String, List<String>> samples = sampler.sample(Map.of("dbo.orders",
+                List.of(column("status", "nvarchar"), column("location", "sql_variant"), column("qty", "int"))));
+
+        assertEquals(Map.of(
+                "dbo.orders.status", List.of("cancelled", "pending", "shipped"),
+                "dbo.orders.qty", List.of("1", "2", "3")), samples);
+        assertEquals(List.of("dbo.orders.status", "dbo.orders.qty"), new ArrayList<>(samples.keySet()));
+        // The batch, then one statement per column
+        assertEquals(4, statements.size());
+        for (String sql : statements) assertTrue(sql.contains("IS NOT NULL ORDER BY v)"), sql);
+    }
+
+    @Test
+    void spatialAndBinaryColumnsAreNotScanned() {
+        Map<String, List<String>> samples = sampler.sample(Map.of("dbo.stores", List.of(
+                column("region", "nvarchar"), column("location", "geography"), column("outline", "geometry"),
+                column("photo", "varbinary"), column("notes", "ntext"))));
+
+        assertEquals(Map.of("dbo.stores.region", List.of("north")), samples);
+        assertEquals(1, statements.size());
+        assertFalse(statements.get(0).contains("[location]"));
+    }
+
+    @Test
+    void samplesDoNotDependOnRowOrder() {
+        Map<String, List<Map<String, Object>>> table = Map.of("dbo.orders",
+                List.of(column("status", "nvarchar"), column("qty", "int")));
+        Map<String, List<String>> first = sampler.sample(table);
+        Map<String, List<String>> second = sampler.sample(table);
+        assertEquals(2, calls);
+        assertEquals(first, second);
+    }
+
+    private static Map<String, Object> column(String name, String type) {
+        return Map.of("COLUMN_NAME", name, "DATA_TYPE", type);
+    }
+}
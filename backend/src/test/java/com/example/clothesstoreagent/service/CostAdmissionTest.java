@@ -0,0 +1,74 @@
+package com.example.clothesstoreagent.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CostAdmissionTest {
+
+    @Test
+    void topCountsShareAnEstimateOnlyWithinAnOrderOfMagnitude() {
+        String top10 = key("SELECT TOP 10 id FROM dbo.orders WHERE customer_id = 42");
+        assertEquals(top10, key("SELECT TOP 50 id FROM dbo.orders WHERE customer_id = 17"));
+        assertEquals(top10, key("SELECT  TOP 99 id\nFROM dbo.orders WHERE customer_id = 99"));
+        assertNotEquals(top10, key("SELECT TOP 100000 id FROM dbo.orders WHERE customer_id = 42"));
+        assertNotEquals(top10, key("SELECT TOP 10 id FROM dbo.orders WHERE customer_id = 4200000"));
+        assertNotEquals(key("SELECT id FROM dbo.orders WHERE total > 0"),
+                key("SELECT id FROM dbo.orders WHERE total > 5"));
+    }
+
+    @Test
+    void dateRangesAreKeyedByWidthAndDistance() {
+        String sql = "SELECT id FROM dbo.orders WHERE created_at >= '%s' AND created_at < '%s'";
+        LocalDate today = LocalDate.now();
+        String lastWeek = key(String.format(sql, today.minusDays(7), today));
+        assertEquals(lastWeek, key(String.format(sql, today.minusDays(5), today)));
+        assertEquals(lastWeek, key(String.format(sql, today.minusDays(9), today)));
+        assertNotEquals(lastWeek, key(String.format(sql, today.minusYears(5), today)));
+        // Same width, years back
+        assertNotEquals(lastWeek, key(String.format(sql, today.minusYears(3).minusDays(7), today.minusYears(3))));
+        // One day against one year, both three years back
+        String base = today.minusYears(3).toString();
+        assertNotEquals(key(String.format(sql, base, LocalDate.parse(base).plusDays(1))),
+                key(String.format(sql, base, LocalDate.parse(base).plusYears(1))));
+    }
+
+    @Test
+    void boundValuesOfOtherKinds() {
+        String sql = "SELECT id FROM dbo.orders WHERE status = :status AND id IN (:ids) AND created_at >= :since";
+        assertEquals(CostAdmission.key(sql, params("open", List.of(1, 2, 3), LocalDate.now().minusDays(3))),
+                CostAdmission.key(sql, params("open", List.of(7, 8, 9, 10), LocalDate.now().minusDays(4))));
+        assertNotEquals(CostAdmission.key(sql, params("open", List.of(1, 2, 3), LocalDate.now())),
+                CostAdmission.key(sql, params("void", List.of(1, 2, 3), LocalDate.now())));
+        assertNotEquals(CostAdmission.key(sql, params("open", List.of(1, 2, 3), LocalDate.now())),
+                CostAdmission.key(sql, params("open", java.util.Collections.nCopies(500, 1), LocalDate.now())));
+        assertEquals("SELECT 1", CostAdmission.key(" SELECT\n 1 ", null));
+    }
+
+    @Test
+    void planParsing() {
+        CostAdmission.Estimate e = CostAdmission.parse("<StmtSimple StatementSubTreeCost=\"0.5\" StatementEstRows=\"10\"/>"
+                + "<StmtSimple StatementSubTreeCost=\"12.25\" StatementEstRows=\"3\"/>");
+        assertEquals(12.25, e.cost);
+        assertEquals(10, e.rows);
+        assertNull(CostAdmission.parse("<ShowPlanXML/>"));
+    }
+
+    private static String key(String sql) {
+        SqlParameterizer.Result r = SqlParameterizer.parameterize(sql, null);
+        return CostAdmission.key(r.sql, r.params);
+    }
+
+    private static Map<String, Object> params(String status, List<Integer> ids, LocalDate since) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("status", status);
+        out.put("ids", ids);
+        out.put("since", since);
+        return out;
+    }
+}
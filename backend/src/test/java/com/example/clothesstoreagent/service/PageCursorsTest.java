@@ -0,0 +1,203 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pages through results with {@code nextCursor} on H2 in SQL Server mode and checks every row comes back
+ * exactly once, in order; plus cursor signing.
+ */
+class PageCursorsTest {
+
+    private static final int ROWS = 60;
+    private static final int PAGE = 7;
+
+    private static HikariDataSource ds;
+    private static WorkloadPools pools;
+    private static QueryService service;
+    private static PageCursors cursors;
+
+    @BeforeAll
+    static void setUp() {
+        ds = new HikariDataSource();
+        ds.setJdbcUrl("jdbc:h2:mem:page-cursors;MODE=MSSQLServer;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1");
+        JdbcTemplate setup = new JdbcTemplate(ds);
+        setup.execute("CREATE SCHEMA IF NOT EXISTS dbo");
+        setup.execute("CREATE TABLE dbo.items (id INT PRIMARY KEY, category VARCHAR(10), price DECIMAL(10,2),"
+                + " size INT)");
+        // Runs of 1 to 4 rows per price, against pages of 7; 12 rows per size, longer than a page;
+        // a third of the categories NULL
+        setup.execute("INSERT INTO dbo.items SELECT X, CASE WHEN MOD(X, 3) = 0 THEN NULL ELSE 'c' || MOD(X, 5) END,"
+                + " (X * 5 / 13) * 10, MOD(X * 7, 5) FROM SYSTEM_RANGE(1, " + ROWS + ")");
+
+        AppProps props = new AppProps();
+        props.setCursorSecret("test-secret");
+        props.setNlqPoolSize(0);
+        props.setSchemaPoolSize(0);
+        props.setAdmissionEnabled(false);
+        props.setResultCacheEnabled(false);
+        DataSourceProperties dsProps = new DataSourceProperties();
+        ObjectProvider<MeterRegistry> meters = new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        pools = new WorkloadPools(ds, new JdbcTemplate(ds), dsProps, props,
+                new ReplicaSet(props, ds, dsProps, meters, Runnable::run), meters);
+        cursors = new PageCursors(props);
+        service = new QueryService(pools, props, new QueryResultCache(props), new SqlValidator(props), cursors,
+                new CostAdmission(pools, props));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        pools.close();
+        ds.close();
+    }
+
+    @Test
+    void keysetKeepsTiedRowsOnOnePage() {
+        for (String sql : List.of(
+                "SELECT id, price FROM dbo.items ORDER BY price",
+                "SELECT id, price FROM dbo.items ORDER BY price DESC",
+                "SELECT category, price, id FROM dbo.items ORDER BY category, price DESC")) {
+            List<List<Map<String, Object>>> pages = pages(sql, "keyset");
+            List<Map<String, Object>> rows = flat(pages);
+            assertEquals(ROWS, rows.size(), sql);
+            assertEquals(ROWS, new HashSet<>(ids(rows)).size(), "a row came back twice: " + sql);
+            assertEquals(sortKeys(new JdbcTemplate(ds).queryForList(sql), "id"), sortKeys(rows, "id"), sql);
+            for (int i = 0; i + 1 < pages.size(); i++) {
+                List<Map<String, Object>> page = pages.get(i);
+                Map<String, Object> last = page.get(page.size() - 1);
+                Map<String, Object> next = pages.get(i + 1).get(0);
+                last.remove("id");
+                next.remove("id");
+                assertNotEquals(last, next, "a tie was split across pages: " + sql);
+                assertTrue(page.size() <= PAGE);
+            }
+        }
+    }
+
+    @Test
+    void tieLongerThanAPageStillCoversEveryKey() {
+        String sql = "SELECT id, size FROM dbo.items ORDER BY size";
+        List<Map<String, Object>> rows = flat(pages(sql, "keyset"));
+        assertEquals(ROWS, rows.size());
+        assertEquals(sortKeys(new JdbcTemplate(ds).queryForList(sql), "id"), sortKeys(rows, "id"));
+    }
+
+    @Test
+    void keysetPagesDescendingAndMixedOrder() {
+        for (String sql : List.of(
+                "SELECT id, price FROM dbo.items ORDER BY id DESC",
+                "SELECT id, category, price FROM dbo.items ORDER BY category DESC, price ASC, id DESC",
+                "SELECT i.id AS item, i.category FROM dbo.items AS i ORDER BY 2, item DESC")) {
+            List<Integer> expected = ids(new JdbcTemplate(ds).queryForList(sql));
+            assertEquals(expected, ids(flat(pages(sql, "keyset"))), sql);
+        }
+    }
+
+    @Test
+    void offsetWhenTheOrderIsNoPlainColumn() {
+        String sql = "SELECT id, price FROM dbo.items ORDER BY price * 2, id";
+        List<Integer> expected = ids(new JdbcTemplate(ds).queryForList(sql));
+        assertEquals(expected, ids(flat(pages(sql, "offset"))));
+
+        // Without ORDER BY pages are only stable as far as the scan is, but still cover the result once
+        List<Map<String, Object>> rows = flat(pages("SELECT TOP 40 id FROM dbo.items", "offset"));
+        assertEquals(40, new HashSet<>(ids(rows)).size());
+    }
+
+    @Test
+    void tamperedCursorIsRejected() {
+        String cursor = firstCursor("SELECT id FROM dbo.items ORDER BY id");
+        int dot = cursor.indexOf('.');
+        char c = cursor.charAt(dot / 2);
+        String tampered = cursor.substring(0, dot / 2) + (c == 'A' ? 'B' : 'A') + cursor.substring(dot / 2 + 1);
+
+        for (String bad : List.of(tampered, cursor.substring(0, dot), cursor + "x", "not-a-cursor", "a.b")) {
+            Map<String, Object> out = service.next(bad, QueryService.Options.DEFAULT);
+            assertEquals("INVALID_CURSOR", out.get("error"), bad);
+        }
+    }
+
+    @Test
+    void cursorSignedWithAnotherKeyIsRejected() {
+        String cursor = firstCursor("SELECT id FROM dbo.items ORDER BY id");
+        AppProps other = new AppProps();
+        other.setCursorSecret("another-secret");
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> new PageCursors(other).open(cursor));
+        assertTrue(ex.getMessage().contains("bad signature"));
+        assertNotNull(cursors.open(cursor));
+    }
+
+    @Test
+    void untruncatedOrUnpageableResultsHaveNoCursor() {
+        assertNull(service.execute("SELECT id FROM dbo.items ORDER BY id", null, ROWS, 10).get("nextCursor"));
+        // OFFSET is already taken by the statement itself
+        assertNull(service.execute("SELECT id FROM dbo.items ORDER BY id OFFSET 5 ROWS", null, PAGE, 10)
+                .get("nextCursor"));
+    }
+
+    /** Runs {@code sql} and follows {@code nextCursor} to the end, checking every cursor is in {@code mode}. */
+    @SuppressWarnings("unchecked")
+    private static List<List<Map<String, Object>>> pages(String sql, String mode) {
+        List<List<Map<String, Object>>> pages = new ArrayList<>();
+        Map<String, Object> page = service.execute(sql, null, PAGE, 10);
+        for (int n = 0; n < ROWS; n++) {
+            assertNull(page.get("error"), sql + ": " + page.get("message"));
+            assertFalse(page.containsKey(PageCursors.LOOKAHEAD));
+            List<Map<String, Object>> rows = (List<Map<String, Object>>) page.get("rows");
+            assertEquals(rows.size(), page.get("rowCount"));
+            pages.add(new ArrayList<>(rows));
+            String cursor = (String) page.get("nextCursor");
+            if (cursor == null) return pages;
+            assertEquals(mode, cursors.open(cursor).state.mode, sql);
+            page = service.next(cursor, QueryService.Options.DEFAULT);
+        }
+        throw new AssertionError("too many pages for " + sql);
+    }
+
+    private static List<Map<String, Object>> flat(List<List<Map<String, Object>>> pages) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (List<Map<String, Object>> p : pages) {
+            for (Map<String, Object> row : p) out.add(new LinkedHashMap<>(row));
+        }
+        return out;
+    }
+
+    /** The rows without {@code except}, i.e. the sequence of sort keys when only that column is not one. */
+    private static List<Map<String, Object>> sortKeys(List<Map<String, Object>> rows, String except) {
+        List<Map<String, Object>> out = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> copy = new LinkedHashMap<>(row);
+            copy.remove(except);
+            out.add(copy);
+        }
+        return out;
+    }
+
+    private static String firstCursor(String sql) {
+        String cursor = (String) service.execute(sql, null, PAGE, 10).get("nextCursor");
+        assertNotNull(cursor);
+        return cursor;
+    }
+
+    private static List<Integer> ids(List<Map<String, Object>> rows) {
+        List<Integer> out = new ArrayList<>(rows.size());
+        for (Map<String, Object> r : rows) {
+            Object id = r.containsKey("id") ? r.get("id") : r.get("item");
+            out.add(((Number) id).intValue());
+        }
+        return out;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryJobsTest {
+
+    @Test
+    void cancelledCountsOnlyJobsThatEndCancelled() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        Executor executor = queued::add;
+        QueryJobs jobs = new QueryJobs(new AppProps(), executor);
+
+        // Cancelled while queued: never runs
+        String neverRun = id(jobs.submit("query", c -> Map.of("rowCount", 0)));
+        jobs.cancel(neverRun);
+        assertEquals(QueryJobs.Status.CANCELLED, jobs.status(neverRun).get("status"));
+
+        // Cancelled while running, but its work ignores that and succeeds
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String finishes = id(jobs.submit("query", c -> {
+            started.countDown();
+            await(release);
+            return Map.of("rowCount", 1);
+        }));
+        Thread worker = new Thread(queued.get(1));
+        worker.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        jobs.cancel(finishes);
+        jobs.cancel(finishes);
+        release.countDown();
+        worker.join(5000);
+        assertEquals(QueryJobs.Status.SUCCEEDED, jobs.status(finishes).get("status"));
+
+        // Cancelled while running and its statement fails for it
+        String[] stopped = new String[1];
+        stopped[0] = id(jobs.submit("query", c -> {
+            jobs.cancel(stopped[0]);
+            return Map.of("error", "CANCELLED", "message", "Query cancelled: " + c.reason());
+        }));
+        queued.get(2).run();
+        assertEquals(QueryJobs.Status.CANCELLED, jobs.status(stopped[0]).get("status"));
+
+        queued.get(0).run();
+        assertEquals(QueryJobs.Status.CANCELLED, jobs.status(neverRun).get("status"));
+        assertEquals(2L, jobs.stats().get("cancelled"));
+        assertEquals(0, jobs.stats().get("active"));
+    }
+
+    private static String id(Map<String, Object> submitted) {
+        assertNull(submitted.get("error"));
+        return (String) submitted.get("jobId");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
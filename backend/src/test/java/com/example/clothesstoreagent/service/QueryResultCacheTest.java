@@ -0,0 +1,147 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryResultCacheTest {
+
+    private final QueryResultCache cache = new QueryResultCache(new AppProps());
+
+    @Test
+    void lineCommentEndsAtItsLineBreak() {
+        String commented = "SELECT id -- newest first\nFROM dbo.orders ORDER BY id DESC";
+        String swallowed = "SELECT id -- newest first FROM dbo.orders ORDER BY id DESC";
+        assertNotEquals(QueryResultCache.normalize(commented), QueryResultCache.normalize(swallowed));
+        assertNotEquals(key(commented), key(swallowed));
+        assertEquals(key("SELECT id FROM dbo.orders ORDER BY id DESC"), key(commented));
+    }
+
+    @Test
+    void commentsAndLayoutDoNotMatter() {
+        String plain = "SELECT id, name FROM dbo.products WHERE price > 10";
+        assertEquals(key(plain), key("  SELECT id,\n\tname  FROM dbo.products -- all of them\r\nWHERE price > 10"));
+        assertEquals(key(plain), key("SELECT /* cols /* nested */ */ id, name FROM dbo.products WHERE price > 10"));
+        assertEquals(key(plain), key("SELECT id , name FROM dbo.products WHERE price>10"));
+    }
+
+    @Test
+    void quotedTextIsKeptVerbatim() {
+        assertNotEquals(key("SELECT * FROM dbo.products WHERE name = 'a  b'"),
+                key("SELECT * FROM dbo.products WHERE name = 'a b'"));
+        assertNotEquals(key("SELECT [a  b] FROM dbo.products"), key("SELECT [a b] FROM dbo.products"));
+        assertNotEquals(key("SELECT * FROM dbo.products WHERE name = '-- x'"),
+                key("SELECT * FROM dbo.products WHERE name = ''"));
+        assertEquals("SELECT 'it''s -- not a comment'", QueryResultCache.normalize("SELECT 'it''s -- not a comment'"));
+    }
+
+    @Test
+    void trailingSemicolonsAreDropped() {
+        String plain = "SELECT id FROM dbo.orders";
+        assertEquals(key(plain), key("SELECT id FROM dbo.orders;"));
+        assertEquals(key(plain), key("SELECT id FROM dbo.orders ; ;\n"));
+        assertEquals(key(plain), key("SELECT id FROM dbo.orders; -- done"));
+        assertEquals("SELECT ';'", QueryResultCache.normalize("SELECT ';';"));
+    }
+
+    @Test
+    void keyCoversParamsAndLimits() {
+        String sql = "SELECT id FROM dbo.orders WHERE id > :id";
+        assertEquals(cache.key(sql, Map.of("id", 1), 10, 5), cache.key(sql, Map.of("id", 1), 10, 5));
+        assertNotEquals(cache.key(sql, Map.of("id", 1), 10, 5), cache.key(sql, Map.of("id", 2), 10, 5));
+        assertNotEquals(cache.key(sql, Map.of("id", 1), 10, 5), cache.key(sql, Map.of("id", 1), 11, 5));
+        assertNotEquals(cache.key(sql, Map.of("id", 1), 10, 5), cache.key(sql, Map.of("id", 1), 10, 6));
+    }
+
+    @Test
+    void unterminatedTextIsUsedAsIs() {
+        assertEquals("SELECT 'open", QueryResultCache.normalize("SELECT 'open"));
+    }
+
+    @Test
+    void followerWaitEndsAtItsDeadline() throws Exception {
+        QueryResultCache.Key key = key("SELECT 1");
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Map<String, Object>> leader = startLeader(key, release);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        long started = System.nanoTime();
+        Map<String, Object> out = cache.get(key, QueryService.Options.DEFAULT.withDeadline(deadline), this::fail);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertEquals("QUERY_FAILED", out.get("error"));
+        assertTrue(waited < 5_000, "waited " + waited + " ms");
+        release.countDown();
+        assertEquals(1, leader.get(5, TimeUnit.SECONDS).get("rowCount"));
+    }
+
+    @Test
+    void followerWaitEndsWhenCancelled() throws Exception {
+        QueryResultCache.Key key = key("SELECT 2");
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Map<String, Object>> leader = startLeader(key, release);
+
+        Cancellation cancel = new Cancellation();
+        CompletableFuture<Map<String, Object>> follower = CompletableFuture.supplyAsync(() ->
+                cache.get(key, QueryService.Options.DEFAULT.withCancel(cancel), this::fail));
+        Thread.sleep(150);
+        cancel.cancel("client gone");
+
+        Map<String, Object> out = follower.get(5, TimeUnit.SECONDS);
+        assertEquals("CANCELLED", out.get("error"));
+        assertFalse(leader.isDone());
+        release.countDown();
+        assertEquals(1, leader.get(5, TimeUnit.SECONDS).get("rowCount"));
+        assertEquals(1L, cache.stats().get("abandoned"));
+    }
+
+    @Test
+    void followerGetsTheLeadersResult() throws Exception {
+        QueryResultCache.Key key = key("SELECT 3");
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Map<String, Object>> leader = startLeader(key, release);
+
+        CompletableFuture<Map<String, Object>> follower = CompletableFuture.supplyAsync(() ->
+                cache.get(key, QueryService.Options.DEFAULT.withCancel(new Cancellation()), this::fail));
+        Thread.sleep(150);
+        release.countDown();
+
+        assertSame(leader.get(5, TimeUnit.SECONDS), follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, cache.stats().get("coalesced"));
+    }
+
+    /** Starts a caller whose execution of {@code key} runs until {@code release}, and waits until it is in flight. */
+    private CompletableFuture<Map<String, Object>> startLeader(QueryResultCache.Key key, CountDownLatch release)
+            throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<Map<String, Object>> leader = CompletableFuture.supplyAsync(() ->
+                cache.get(key, QueryService.Options.DEFAULT, () -> {
+                    running.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    Map<String, Object> out = new LinkedHashMap<>();
+                    out.put("rowCount", 1);
+                    return out;
+                }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        return leader;
+    }
+
+    private Map<String, Object> fail() {
+        throw new AssertionError("follower ran its own query");
+    }
+
+    private QueryResultCache.Key key(String sql) {
+        return cache.key(sql, Map.of(), 100, 20);
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many concurrent {@link QueryService#execute} calls, each with its own maxRows and timeout, over a pool much
+ * smaller than the number of callers (H2 in SQL Server mode). Every statement must carry exactly its own
+ * limits, and neither the shared {@link JdbcTemplate} nor the pooled connections may keep any of them.
+ * Throughput against a fixed per-query latency must grow about linearly with callers up to the pool size.
+ */
+class QueryServiceConcurrencyTest {
+
+    private static final int ROWS = 1000;
+    private static final int POOL = 4;
+    private static final int FETCH_SIZE = 100;
+    private static final int LATENCY_MILLIS = 40;
+
+    /** Limits seen on each statement when it ran, by SQL text. */
+    private static final Map<String, int[]> seen = new ConcurrentHashMap<>();
+
+    private static HikariDataSource hikari;
+    private static WorkloadPools pools;
+    private static QueryService service;
+
+    @BeforeAll
+    static void setUp() {
+        hikari = new HikariDataSource();
+        hikari.setJdbcUrl("jdbc:h2:mem:query-concurrency;MODE=MSSQLServer;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1");
+        hikari.setMaximumPoolSize(POOL);
+        JdbcTemplate setup = new JdbcTemplate(hikari);
+        setup.execute("CREATE SCHEMA IF NOT EXISTS dbo");
+        setup.execute("CREATE TABLE dbo.nums (id INT PRIMARY KEY)");
+        setup.execute("INSERT INTO dbo.nums SELECT X FROM SYSTEM_RANGE(1, " + ROWS + ")");
+        setup.execute("CREATE ALIAS IF NOT EXISTS SLEEP_MS FOR \"java.lang.Thread.sleep(long)\"");
+
+        AppProps props = new AppProps();
+        props.setDefaultMaxRows(ROWS);
+        props.setDefaultFetchSize(FETCH_SIZE);
+        props.setQueryConcurrency(POOL * 4);
+        props.setNlqPoolSize(0);
+        props.setSchemaPoolSize(0);
+        props.setAdmissionEnabled(false);
+        props.setResultCacheEnabled(false);
+
+        DataSource recording = new Recording(hikari);
+        DataSourceProperties dsProps = new DataSourceProperties();
+        ObjectProvider<MeterRegistry> meters = new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        ReplicaSet replicas = new ReplicaSet(props, recording, dsProps, meters, Runnable::run);
+        pools = new WorkloadPools(recording, new JdbcTemplate(recording), dsProps, props, replicas, meters);
+        service = new QueryService(pools, props, new QueryResultCache(props), new SqlValidator(props),
+                new PageCursors(props), new CostAdmission(pools, props));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        pools.close();
+        hikari.close();
+    }
+
+    @Test
+    void eachStatementKeepsItsOwnLimits() throws Exception {
+        int calls = 200;
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int i = 0; i < calls; i++) {
+                int req = i;
+                done.add(callers.submit(() -> check(req)));
+            }
+            for (Future<?> f : done) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(calls, seen.keySet().stream().filter(sql -> sql.contains(" AS req ")).count());
+
+        // Nothing left behind on the shared template or on the pooled connections
+        JdbcTemplate shared = pools.jdbc(Workload.QUERY);
+        assertEquals(-1, shared.getMaxRows());
+        assertEquals(-1, shared.getQueryTimeout());
+        for (int i = 0; i < POOL * 2; i++) {
+            assertEquals(ROWS, shared.queryForList("SELECT id FROM dbo.nums").size());
+        }
+    }
+
+    @Test
+    void throughputScalesWithCallersUpToThePoolSize() throws Exception {
+        int perCaller = 10;
+        measure(POOL, perCaller); // warm the pool
+        double single = measure(1, perCaller);
+        for (int callers = 2; callers <= POOL; callers++) {
+            double rate = measure(callers, perCaller);
+            assertTrue(rate >= 0.7 * callers * single,
+                    String.format("%d callers: %.1f q/s against %.1f q/s for one", callers, rate, single));
+        }
+        // Past the pool the extra callers only queue for connections
+        double over = measure(POOL * 2, perCaller);
+        assertTrue(over <= 1.3 * POOL * single,
+                String.format("%d callers: %.1f q/s against %.1f q/s for one", POOL * 2, over, single));
+    }
+
+    /** Queries per second with {@code callers} threads each running {@code perCaller} fixed-latency queries. */
+    private static double measure(int callers, int perCaller) throws Exception {
+        String sql = "SELECT id, SLEEP_MS(" + LATENCY_MILLIS + ") AS pause FROM dbo.nums WHERE id = 1";
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int c = 0; c < callers; c++) {
+                done.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perCaller; i++) {
+                        Map<String, Object> result = service.execute(sql, null, 10, 30,
+                                QueryService.Options.DEFAULT.withCache(false));
+                        assertNull(result.get("error"), () -> String.valueOf(result.get("message")));
+                    }
+                    return null;
+                }));
+            }
+            long began = System.nanoTime();
+            start.countDown();
+            for (Future<?> f : done) f.get(60, TimeUnit.SECONDS);
+            return callers * perCaller / ((System.nanoTime() - began) / 1e9);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void check(int req) {
+        int max = 1 + (req * 37) % (ROWS - 1);
+        int timeout = 1 + req % 30;
+        String sql = "SELECT id, " + req + " AS req FROM dbo.nums ORDER BY id";
+
+        Map<String, Object> result = service.execute(sql, null, max, timeout,
+                QueryService.Options.DEFAULT.withCache(false));
+
+        assertNull(result.get("error"), () -> "request " + req + ": " + result.get("message"));
+        assertEquals(max, result.get("rowCount"), "rows of request " + req);
+        assertEquals(true, result.get("truncated"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> rows = (List<Map<String, Object>>) result.get("rows");
+        for (Map<String, Object> row : rows) assertEquals(req, ((Number) row.get("req")).intValue());
+
+        int[] limits = seen.get(sql);
+        assertNotNull(limits, "no statement recorded for request " + req);
+        assertEquals(max + 1, limits[0], "maxRows of request " + req);
+        assertEquals(timeout, limits[1], "timeout of request " + req);
+        assertEquals(Math.min(FETCH_SIZE, max + 1), limits[2], "fetch size of request " + req);
+    }
+
+    /** Records the limits each prepared statement has at the moment it runs. */
+    private static final class Recording extends DelegatingDataSource {
+        Recording(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection con = super.getConnection();
+            return proxy(Connection.class, con, (method, args) -> {
+                Object out = invoke(method, con, args);
+                if (out instanceof PreparedStatement ps && method.getName().equals("prepareStatement")) {
+                    String sql = (String) args[0];
+                    return proxy(PreparedStatement.class, ps, (m, a) -> {
+                        if (m.getName().startsWith("execute")) {
+                            seen.put(sql, new int[]{ps.getMaxRows(), ps.getQueryTimeout(), ps.getFetchSize()});
+                        }
+                        return invoke(m, ps, a);
+                    });
+                }
+                return out;
+            });
+        }
+    }
+
+    private interface Handler {
+        Object call(Method method, Object[] args) throws Throwable;
+    }
+
+    private static <T> T proxy(Class<T> type, T target, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (p, method, args) -> handler.call(method, args)));
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
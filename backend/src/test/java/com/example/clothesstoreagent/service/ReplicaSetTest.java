@@ -0,0 +1,208 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Routes over two H2 databases standing in for replicas, each reporting its lag from a one-row table the test
+ * sets, and a third as the primary; every database knows its own name.
+ */
+class ReplicaSetTest {
+
+    private static HikariDataSource primary;
+
+    private AppProps props;
+    private ReplicaSet replicas;
+    private DataSource router;
+
+    @BeforeAll
+    static void setUpPrimary() {
+        primary = new HikariDataSource();
+        primary.setJdbcUrl(url("primary"));
+        primary.setUsername("sa");
+        named(primary, "primary");
+    }
+
+    @AfterAll
+    static void tearDownPrimary() {
+        primary.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        props = new AppProps();
+        props.setReplicaMaxLagSeconds(30);
+        List<AppProps.Replica> list = new ArrayList<>();
+        for (String name : List.of("a", "b")) {
+            named(new DriverManagerDataSource(url(name), "sa", ""), name);
+            setLag(name, 0);
+            AppProps.Replica r = new AppProps.Replica();
+            r.setName(name);
+            r.setUrl(url(name));
+            r.setUsername("sa");
+            r.setPoolSize(4);
+            r.setLagSql("SELECT seconds FROM dbo.lag");
+            list.add(r);
+        }
+        props.setReplicas(list);
+        ObjectProvider<MeterRegistry> meters = new DefaultListableBeanFactory().getBeanProvider(MeterRegistry.class);
+        DataSourceProperties dsProps = new DataSourceProperties();
+        dsProps.setUrl(url("primary"));
+        replicas = new ReplicaSet(props, primary, dsProps, meters, Runnable::run);
+        router = replicas.routing(primary);
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicas.close();
+    }
+
+    @Test
+    void primaryUntilTheFirstCheck() throws SQLException {
+        try (Connection con = router.getConnection()) {
+            assertEquals("primary", name(con));
+        }
+        assertEquals(1L, replicas.stats().get("primaryFallbacks"));
+        replicas.checkHealth();
+        try (Connection con = router.getConnection()) {
+            assertNotEquals("primary", name(con));
+        }
+    }
+
+    @Test
+    void leastOutstandingReplicaIsPicked() throws SQLException {
+        replicas.checkHealth();
+        Connection first = router.getConnection();
+        Connection second = router.getConnection();
+        String busy = name(first);
+        String other = name(second);
+        assertNotEquals(busy, other, "the second checkout should go to the idle replica");
+
+        // One each out; a third goes to either, and a fourth to the one the third did not
+        Connection third = router.getConnection();
+        Connection fourth = router.getConnection();
+        assertNotEquals(name(third), name(fourth));
+        boolean thirdOnBusy = name(third).equals(busy);
+
+        // Giving back both of busy's connections makes it the only one with none out
+        (thirdOnBusy ? third : fourth).close();
+        first.close();
+        first.close(); // a second close gives back nothing more
+        try (Connection next = router.getConnection()) {
+            assertEquals(busy, name(next));
+        }
+        second.close();
+        (thirdOnBusy ? fourth : third).close();
+
+        long served = 0;
+        for (Map<String, Object> m : members()) {
+            assertEquals(0, m.get("outstanding"));
+            served += (Long) m.get("served");
+        }
+        assertEquals(5, served);
+        assertEquals(0L, replicas.stats().get("primaryFallbacks"));
+    }
+
+    @Test
+    void laggingReplicaLeavesTheRotationAndComesBack() throws SQLException {
+        setLag("a", 120);
+        replicas.checkHealth();
+        Map<String, Object> a = member("a");
+        assertEquals(false, a.get("inRotation"));
+        assertEquals(120.0, a.get("lagSeconds"));
+        assertEquals(true, member("b").get("inRotation"));
+
+        // Even with b busy, everything goes to b
+        List<Connection> held = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Connection con = router.getConnection();
+            held.add(con);
+            assertEquals("b", name(con));
+        }
+        for (Connection con : held) con.close();
+
+        setLag("a", 30); // at the limit is still in
+        replicas.checkHealth();
+        assertEquals(true, member("a").get("inRotation"));
+        try (Connection b = router.getConnection(); Connection next = router.getConnection()) {
+            assertEquals("b".equals(name(b)) ? "a" : "b", name(next));
+        }
+    }
+
+    @Test
+    void primaryWhenNoReplicaIsHealthy() throws SQLException {
+        setLag("a", 1e9);
+        new JdbcTemplate(new DriverManagerDataSource(url("b"), "sa", "")).execute("DROP TABLE dbo.lag");
+        replicas.checkHealth();
+        assertEquals(false, member("a").get("inRotation"));
+        Map<String, Object> b = member("b");
+        assertEquals(false, b.get("inRotation"));
+        assertNotNull(b.get("lastError"));
+
+        try (Connection con = router.getConnection()) {
+            assertEquals("primary", name(con));
+        }
+        assertEquals(1L, replicas.stats().get("primaryFallbacks"));
+
+        props.setReplicaFallbackToPrimary(false);
+        SQLException ex = assertThrows(SQLException.class, () -> router.getConnection());
+        assertEquals("08001", ex.getSQLState());
+    }
+
+    private static String url(String name) {
+        return "jdbc:h2:mem:replica-set-" + name + ";MODE=MSSQLServer;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1";
+    }
+
+    private static void named(DataSource ds, String name) {
+        JdbcTemplate jdbc = new JdbcTemplate(ds);
+        jdbc.execute("CREATE SCHEMA IF NOT EXISTS dbo");
+        jdbc.execute("CREATE TABLE IF NOT EXISTS dbo.node (name VARCHAR(20))");
+        jdbc.execute("DELETE FROM dbo.node");
+        jdbc.update("INSERT INTO dbo.node VALUES (?)", name);
+    }
+
+    private static void setLag(String name, double seconds) {
+        JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource(url(name), "sa", ""));
+        jdbc.execute("CREATE TABLE IF NOT EXISTS dbo.lag (seconds FLOAT)");
+        jdbc.execute("DELETE FROM dbo.lag");
+        jdbc.update("INSERT INTO dbo.lag VALUES (?)", seconds);
+    }
+
+    private static String name(Connection con) throws SQLException {
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery("SELECT name FROM dbo.node")) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> members() {
+        return (List<Map<String, Object>>) replicas.stats().get("replicas");
+    }
+
+    private Map<String, Object> member(String name) {
+        return members().stream().filter(m -> name.equals(m.get("name"))).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.clothesstoreagent.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultLayoutTest {
+
+    @Test
+    void repeatedColumnNamesKeepTheirOwnValues() {
+        JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:result-layout;MODE=MSSQLServer;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbc.execute("CREATE SCHEMA IF NOT EXISTS dbo");
+        jdbc.execute("CREATE TABLE dbo.customers (id INT, name VARCHAR(20))");
+        jdbc.execute("CREATE TABLE dbo.orders (id INT, customer_id INT)");
+        jdbc.execute("INSERT INTO dbo.customers VALUES (7, 'Ada')");
+        jdbc.execute("INSERT INTO dbo.orders VALUES (100, 7), (101, 7)");
+
+        List<Map<String, Object>> rows = jdbc.query("SELECT o.id, c.id, c.name AS ID, c.name "
+                + "FROM dbo.orders o JOIN dbo.customers c ON c.id = o.customer_id ORDER BY o.id",
+                ResultLayout.ROW_MAPPER);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("columns", List.of("id", "id", "ID", "name"));
+        result.put("rows", rows);
+
+        // The rows layout is unchanged: one key per name, case-insensitive, last value wins
+        assertEquals("Ada", rows.get(0).get("Id"));
+        assertEquals(2, rows.get(0).size());
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> values = (List<Object[]>) ResultLayout.columnar(result).get("rows");
+        assertEquals(2, values.size());
+        assertArrayEquals(new Object[]{100, 7, "Ada", "Ada"}, values.get(0));
+        assertArrayEquals(new Object[]{101, 7, "Ada", "Ada"}, values.get(1));
+        assertSame(rows, result.get("rows"), "input left as is");
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/** Refresh over a catalog whose one table never sees DDL while its data (and so its samples) changes. */
+class SchemaServiceTest {
+
+    private final AppProps props = new AppProps();
+    private final AtomicReference<List<String>> values = new AtomicReference<>(List.of("Apparel"));
+    private final AtomicInteger sampled = new AtomicInteger();
+    private SchemaService schema;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        ResultSet table = mock(ResultSet.class);
+        when(table.getString("TABLE_SCHEMA")).thenReturn("dbo");
+        when(table.getString("TABLE_NAME")).thenReturn("products");
+        when(table.getTimestamp("modify_date")).thenReturn(Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        doAnswer(inv -> {
+            ((RowCallbackHandler) inv.getArgument(1)).processRow(table);
+            return null;
+        }).when(jdbc).query(anyString(), any(RowCallbackHandler.class));
+        when(jdbc.queryForList(anyString())).thenAnswer(inv -> ((String) inv.getArgument(0)).contains("COLUMNS")
+                ? List.of(Map.of("TABLE_SCHEMA", "dbo", "TABLE_NAME", "products",
+                        "COLUMN_NAME", "category", "DATA_TYPE", "nvarchar", "IS_NULLABLE", "NO"))
+                : List.of());
+
+        ColumnSampler sampler = mock(ColumnSampler.class);
+        when(sampler.sample(any())).thenAnswer(inv -> {
+            sampled.incrementAndGet();
+            return Map.of("dbo.products.category", values.get());
+        });
+        WorkloadPools pools = mock(WorkloadPools.class);
+        when(pools.jdbc(Workload.SCHEMA)).thenReturn(jdbc);
+        schema = new SchemaService(pools, props, new ObjectMapper(), sampler);
+    }
+
+    @Test
+    void withoutTtlSamplesWaitForDdl() {
+        props.setSchemaSampleTtlSeconds(0);
+        SchemaSnapshot first = schema.getSnapshot();
+        values.set(List.of("Apparel", "Shoes"));
+        schema.refresh();
+        assertSame(first, schema.getSnapshot());
+        assertEquals(1, sampled.get());
+    }
+
+    @Test
+    void expiredSamplesAreReadAgain() throws InterruptedException {
+        props.setSchemaSampleTtlSeconds(1);
+        SchemaSnapshot first = schema.getSnapshot();
+        schema.refresh();
+        assertSame(first, schema.getSnapshot(), "samples are still fresh");
+
+        Thread.sleep(1100);
+        schema.refresh();
+        assertEquals(2, sampled.get());
+        SchemaSnapshot same = schema.getSnapshot();
+        assertEquals(first.getVersion(), same.getVersion(), "same values, same version");
+        assertEquals(first.getEtag(), same.getEtag());
+        assertTrue(same.getSampledAtByTable().get("dbo.products")
+                .isAfter(first.getSampledAtByTable().get("dbo.products")));
+
+        values.set(List.of("Apparel", "Shoes"));
+        Thread.sleep(1100);
+        schema.refresh();
+        SchemaSnapshot next = schema.getSnapshot();
+        assertEquals(first.getVersion() + 1, next.getVersion());
+        assertNotEquals(first.getEtag(), next.getEtag());
+        assertEquals(Map.of("dbo.products.category", List.of("Apparel", "Shoes")),
+                next.getSchema().get("samplesByColumn"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.clothesstoreagent.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlLexerTest {
+
+    @Test
+    void tokenTypes() {
+        assertEquals(List.of("WORD:SELECT", "WORD:@from", "SYMBOL:,", "WORD:#tmp", "SYMBOL:,", "NUMBER:1.5e3",
+                        "SYMBOL:,", "STRING:N'x'", "SYMBOL:,", "STRING:'it''s'", "SYMBOL:,", "QUOTED_IDENT:[a b]",
+                        "SYMBOL:,", "QUOTED_IDENT:\"c\"", "SYMBOL:;"),
+                tokens("SELECT @from, #tmp, 1.5e3, N'x', 'it''s', [a b], \"c\";"));
+    }
+
+    @Test
+    void commentsAreSkipped() {
+        assertEquals(List.of("WORD:SELECT", "NUMBER:1", "WORD:FROM", "WORD:t"),
+                tokens("-- lead\nSELECT /* a */ 1 --tail\r\nFROM/**/t -- end"));
+        assertEquals(List.of("WORD:a", "SYMBOL:-", "SYMBOL:/", "WORD:b"), tokens("a - / b"));
+    }
+
+    @Test
+    void blockCommentsNest() {
+        assertEquals(List.of("WORD:a", "WORD:b"), tokens("a /* 1 /* 2 */ still 1 */ b"));
+        assertEquals(List.of("WORD:a", "WORD:b"), tokens("a /* -- not a line comment */ b"));
+        assertEquals(List.of("WORD:a", "STRING:'/* x */'"), tokens("a '/* x */'"));
+    }
+
+    @Test
+    void identifiersAreUnquoted() {
+        assertEquals("a]b", lexed("[a]]b]").identifier());
+        assertEquals("say \"hi\"", lexed("\"say \"\"hi\"\"\"").identifier());
+        assertEquals("plain", lexed("plain").identifier());
+    }
+
+    @Test
+    void unterminatedInputIsRejected() {
+        assertEquals("Unterminated string literal.", error("SELECT 'abc"));
+        assertEquals("Unterminated string literal.", error("SELECT 'it''"));
+        assertEquals("Unterminated identifier.", error("SELECT [abc"));
+        assertEquals("Unterminated identifier.", error("SELECT \"abc"));
+        assertEquals("Unterminated comment.", error("SELECT /* abc"));
+        assertEquals("Unterminated comment.", error("SELECT /* a /* b */ c"));
+    }
+
+    @Test
+    void keywordsMatchRegionsIgnoringCase() {
+        SqlLexer.Keywords kw = new SqlLexer.Keywords(List.of("SELECT", "from", " Join ", "select"));
+        assertEquals(0, kw.get("xxSeLeCtyy", 2, 8));
+        assertEquals(1, kw.get("FROM", 0, 4));
+        assertEquals(2, kw.get("join", 0, 4));
+        assertEquals(-1, kw.get("joins", 0, 5));
+        assertEquals(1, kw.get(lexed("From x")));
+        // Only word tokens are looked up
+        assertEquals(-1, kw.get(lexed("'from'")));
+        assertEquals(-1, kw.get(lexed("[from]")));
+    }
+
+    private static SqlLexer lexed(String sql) {
+        SqlLexer lx = new SqlLexer(sql);
+        lx.next();
+        return lx;
+    }
+
+    private static List<String> tokens(String sql) {
+        String[] names = {"EOF", "WORD", "QUOTED_IDENT", "STRING", "NUMBER", "SYMBOL"};
+        List<String> out = new ArrayList<>();
+        SqlLexer lx = new SqlLexer(sql);
+        for (int t = lx.next(); t != SqlLexer.EOF; t = lx.next()) out.add(names[t] + ":" + lx.text());
+        return out;
+    }
+
+    private static String error(String sql) {
+        return assertThrows(IllegalArgumentException.class, () -> tokens(sql)).getMessage();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.clothesstoreagent.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlPagerTest {
+
+    @Test
+    void orderByColumnsResolveToKeys() {
+        List<SqlPager.Key> keys = keys("SELECT o.id AS order_id, o.status FROM dbo.orders o ORDER BY o.status DESC, 1",
+                "order_id", "status");
+        assertEquals(List.of("status", "order_id"), keys.stream().map(k -> k.column).toList());
+        assertEquals(List.of(true, false), keys.stream().map(k -> k.desc).toList());
+
+        assertEquals("total", keys("SELECT id, total = qty * price FROM dbo.t ORDER BY total", "id", "total")
+                .get(0).column);
+        assertEquals("ID", keys("SELECT * FROM dbo.t ORDER BY id ASC", "ID", "name").get(0).column);
+    }
+
+    @Test
+    void expressionsAndMissingColumnsFallBackToOffset() {
+        assertNull(keys("SELECT id, price FROM dbo.t ORDER BY price * 2", "id", "price"));
+        assertNull(keys("SELECT id FROM dbo.t ORDER BY created_at", "id"));
+        assertNull(keys("SELECT id FROM dbo.t", "id"));
+        // A derived table needs every column named once
+        assertNull(keys("SELECT id, id FROM dbo.t ORDER BY 1", "id", "id"));
+        assertNull(keys("SELECT id, COUNT(*) FROM dbo.t GROUP BY id ORDER BY id", "id", ""));
+        // Ordinals cannot be mapped through *
+        assertNull(keys("SELECT * FROM dbo.t ORDER BY 1", "id"));
+
+        SqlPager.Shape shape = SqlPager.analyze("SELECT id, price FROM dbo.t ORDER BY price * 2");
+        assertEquals("SELECT id, price FROM dbo.t ORDER BY price * 2\nOFFSET :_pskip ROWS FETCH NEXT :_ptake ROWS ONLY",
+                SqlPager.offset(shape, List.of("id", "price")));
+        assertTrue(SqlPager.offset(SqlPager.analyze("SELECT id FROM dbo.t OPTION (RECOMPILE)"), List.of("id"))
+                .startsWith("SELECT id FROM dbo.t \nORDER BY (SELECT NULL)\nOFFSET"));
+        assertNull(SqlPager.offset(SqlPager.analyze("SELECT TOP 5 id, id FROM dbo.t"), List.of("id", "id")));
+    }
+
+    @Test
+    void notPageable() {
+        assertNull(SqlPager.analyze("SELECT id FROM dbo.t ORDER BY id OFFSET 10 ROWS"));
+        assertNull(SqlPager.analyze("SELECT id FROM dbo.t FOR JSON PATH"));
+        assertNull(SqlPager.analyze("UPDATE dbo.t SET id = 1"));
+    }
+
+    @Test
+    void keysetSeeksPastTheLastKey() {
+        SqlPager.Shape shape = SqlPager.analyze(
+                "WITH x AS (SELECT * FROM dbo.t) SELECT TOP 100 a, b FROM x ORDER BY a DESC, b OPTION (MAXDOP 1);");
+        List<SqlPager.Key> keys = SqlPager.resolve(shape, List.of("a", "b"));
+        assertEquals("""
+                WITH x AS (SELECT * FROM dbo.t) SELECT * FROM (
+                SELECT TOP 100 a, b FROM x ORDER BY a DESC, b\s
+                ) AS [_page]
+                WHERE ((([_page].[a] < :_pkey0 OR [_page].[a] IS NULL)) OR ([_page].[a] = :_pkey0 AND [_page].[b] >= :_pkey1))
+                ORDER BY [_page].[a] DESC, [_page].[b] ASC
+                OFFSET :_pskip ROWS FETCH NEXT :_ptake ROWS ONLY
+                OPTION (MAXDOP 1)""", SqlPager.keyset(shape, keys, true));
+    }
+
+    private static List<SqlPager.Key> keys(String sql, String... columns) {
+        SqlPager.Shape shape = SqlPager.analyze(sql);
+        assertNotNull(shape, sql);
+        return SqlPager.resolve(shape, List.of(columns));
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlParameterizerTest {
+
+    @Test
+    void bareTopBecomesAParenthesizedParameter() {
+        SqlParameterizer.Result r = lift("SELECT TOP 5 id FROM dbo.orders");
+        assertEquals("SELECT TOP (:_lit0) id FROM dbo.orders", r.sql);
+        assertEquals(Map.of("_lit0", 5), r.params);
+
+        r = lift("SELECT TOP (10) PERCENT id FROM dbo.orders");
+        assertEquals("SELECT TOP (:_lit0) PERCENT id FROM dbo.orders", r.sql);
+
+        r = lift("SELECT * FROM dbo.customers c CROSS APPLY (SELECT TOP 1 id FROM dbo.orders o WHERE o.id > 7) x");
+        assertEquals("SELECT * FROM dbo.customers c CROSS APPLY (SELECT TOP (:_lit0) id FROM dbo.orders o "
+                + "WHERE o.id > :_lit1) x", r.sql);
+        assertEquals(Map.of("_lit0", 1, "_lit1", 7), r.params);
+    }
+
+    @Test
+    void whereAndJoinLiteralsAreLifted() {
+        SqlParameterizer.Result r = lift("SELECT o.id FROM dbo.orders o JOIN dbo.order_items oi ON oi.order_id = o.id "
+                + "AND oi.qty > 2 WHERE o.created_at >= '2024-01-01' AND o.created_at < N'2024-02-01 00:00:00' "
+                + "AND o.customer_id IN (SELECT id FROM dbo.customers WHERE id < 3000000000)");
+        assertEquals("SELECT o.id FROM dbo.orders o JOIN dbo.order_items oi ON oi.order_id = o.id "
+                + "AND oi.qty > :_lit0 WHERE o.created_at >= :_lit1 AND o.created_at < :_lit2 "
+                + "AND o.customer_id IN (SELECT id FROM dbo.customers WHERE id < :_lit3)", r.sql);
+        assertEquals(2, r.params.get("_lit0"));
+        assertEquals("2024-01-01", r.params.get("_lit1"));
+        assertEquals("2024-02-01 00:00:00", r.params.get("_lit2"));
+        assertEquals(3000000000L, r.params.get("_lit3"));
+    }
+
+    @Test
+    void selectListGroupingAndOrderingKeepTheirLiterals() {
+        unchanged("SELECT id, 1 AS one, 'x' AS tag, qty * 2 FROM dbo.order_items");
+        unchanged("SELECT status, COUNT(*) FROM dbo.orders GROUP BY status HAVING COUNT(*) > 5 ORDER BY 2 DESC, 1");
+        unchanged("SELECT id FROM dbo.orders ORDER BY id OFFSET 10 ROWS FETCH NEXT 5 ROWS ONLY");
+        unchanged("SELECT id FROM dbo.orders OPTION (MAXDOP 1)");
+        // A lifted WHERE does not carry over into the clauses after it
+        assertEquals("SELECT id FROM dbo.orders WHERE id > :_lit0 ORDER BY 1",
+                lift("SELECT id FROM dbo.orders WHERE id > 3 ORDER BY 1").sql);
+    }
+
+    @Test
+    void otherLiteralsAreLeftAlone() {
+        unchanged("SELECT id FROM dbo.orders WHERE status = 'completed'");
+        unchanged("SELECT id FROM dbo.orders WHERE total > 10.5 AND flags = 0x1F AND rate > 1e3");
+        unchanged("SELECT id FROM dbo.orders WHERE total = CAST(total AS decimal(10,2))");
+        unchanged("SELECT id FROM dbo.orders WHERE note = CONVERT(varchar(20), created_at, 120)");
+        assertEquals("SELECT id FROM dbo.orders WHERE d = CONVERT(date, :_lit0, 23)",
+                lift("SELECT id FROM dbo.orders WHERE d = CONVERT(date, '2024-05-01', 23)").sql);
+        unchanged("SELECT id FROM dbo.orders TABLESAMPLE (10 PERCENT) WHERE note = 'TOP 5 WHERE id = 3'");
+    }
+
+    @Test
+    void commentsAreNotRewritten() {
+        SqlParameterizer.Result r = lift("SELECT id FROM dbo.orders -- WHERE id = 5\nWHERE id = 6 /* AND qty > 7 */");
+        assertEquals("SELECT id FROM dbo.orders -- WHERE id = 5\nWHERE id = :_lit0 /* AND qty > 7 */", r.sql);
+        assertEquals(Map.of("_lit0", 6), r.params);
+    }
+
+    @Test
+    void liftedNamesSkipTheCallersParams() {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("_lit0", "mine");
+        params.put("_lit2", 42);
+        SqlParameterizer.Result r = SqlParameterizer.parameterize(
+                "SELECT TOP 3 id FROM dbo.orders WHERE status = :_lit0 AND qty > 4 AND id > :_lit2 AND id < 9", params);
+        assertEquals("SELECT TOP (:_lit1) id FROM dbo.orders WHERE status = :_lit0 AND qty > :_lit3 "
+                + "AND id > :_lit2 AND id < :_lit4", r.sql);
+        assertEquals("mine", r.params.get("_lit0"));
+        assertEquals(3, r.params.get("_lit1"));
+        assertEquals(42, r.params.get("_lit2"));
+        assertEquals(4, r.params.get("_lit3"));
+        assertEquals(9, r.params.get("_lit4"));
+        assertEquals(Map.of("_lit0", "mine", "_lit2", 42), params, "caller's map changed");
+    }
+
+    @Test
+    void untokenizableTextIsReturnedAsIs() {
+        SqlParameterizer.Result r = lift("SELECT id FROM dbo.orders WHERE id = 5 AND note = 'open");
+        assertEquals("SELECT id FROM dbo.orders WHERE id = 5 AND note = 'open", r.sql);
+        assertTrue(r.params.isEmpty());
+    }
+
+    @Test
+    void sameShapeSharesTextButNotCachedResults() {
+        QueryResultCache cache = new QueryResultCache(new AppProps());
+        SqlParameterizer.Result five = lift("SELECT TOP 5 id FROM dbo.orders WHERE id > 100");
+        SqlParameterizer.Result ten = lift("SELECT TOP 10 id FROM dbo.orders WHERE id > 100");
+        SqlParameterizer.Result fiveAgain = lift("SELECT  TOP 5 id\nFROM dbo.orders WHERE id > 100");
+
+        // One plan for both counts...
+        assertEquals(five.sql, ten.sql);
+        // ...but each count keeps its own cache entry
+        QueryResultCache.Key k5 = cache.key(five.sql, five.params, 100, 20);
+        QueryResultCache.Key k10 = cache.key(ten.sql, ten.params, 100, 20);
+        assertNotEquals(k5, k10);
+        assertEquals(k5, cache.key(fiveAgain.sql, fiveAgain.params, 100, 20));
+
+        AtomicInteger loads = new AtomicInteger();
+        QueryService.Options options = QueryService.Options.DEFAULT;
+        cache.get(k5, options, () -> result(loads.incrementAndGet()));
+        cache.get(k10, options, () -> result(loads.incrementAndGet()));
+        Map<String, Object> hit = cache.get(cache.key(fiveAgain.sql, fiveAgain.params, 100, 20), options,
+                () -> result(loads.incrementAndGet()));
+        assertEquals(2, loads.get());
+        assertEquals(1, hit.get("load"));
+        assertEquals(1L, cache.stats().get("hits"));
+    }
+
+    private static Map<String, Object> result(int load) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("load", load);
+        return out;
+    }
+
+    private static SqlParameterizer.Result lift(String sql) {
+        return SqlParameterizer.parameterize(sql, null);
+    }
+
+    private static void unchanged(String sql) {
+        SqlParameterizer.Result r = lift(sql);
+        assertEquals(sql, r.sql);
+        assertTrue(r.params.isEmpty(), sql);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.clothesstoreagent.service;
+
+import com.example.clothesstoreagent.config.AppProps;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlValidatorTest {
+
+    private final SqlValidator validator = validator();
+
+    private static SqlValidator validator() {
+        AppProps props = new AppProps();
+        props.setDisallowSqlKeywords(List.of("INSERT", "UPDATE", "DELETE", "DROP", "ALTER", "TRUNCATE", "CREATE",
+                "MERGE", "EXEC", "EXECUTE", "OPENROWSET", "OPENQUERY"));
+        props.setAllowTables(List.of("dbo.customers", "dbo.products", "orders", "dbo.order_items"));
+        return new SqlValidator(props);
+    }
+
+    @Test
+    void acceptsPlainSelects() {
+        ok("SELECT id, name FROM dbo.products");
+        ok("select * from orders o join order_items oi on oi.order_id = o.id;");
+        ok("SELECT 1");
+    }
+
+    @Test
+    void onlySelectOrWith() {
+        rejected("DELETE FROM dbo.orders", "Only SELECT");
+        rejected("  -- a comment first\nUPDATE dbo.orders SET status = 'x'", "Only SELECT");
+        rejected("WITH x AS (SELECT 1 AS n) DELETE FROM dbo.orders", "Disallowed keyword detected: DELETE");
+        rejected("WITH x AS (SELECT 1 AS n)", "Only SELECT");
+    }
+
+    @Test
+    void keywordsInCommentsLiteralsAndQuotedIdentifiersAreIgnored() {
+        ok("SELECT id FROM dbo.orders -- DELETE everything\n");
+        ok("SELECT id FROM dbo.orders /* DROP TABLE dbo.orders */");
+        ok("SELECT 'DELETE' AS word, N'drop' AS other FROM dbo.orders");
+        ok("SELECT id AS [delete], name AS \"Update\" FROM dbo.products");
+        ok("SELECT 'it''s -- not a comment; DROP' FROM dbo.products");
+    }
+
+    @Test
+    void keywordsNextToCommentsAreFound() {
+        rejected("SELECT id FROM dbo.orders /* hidden */DELETE", "Disallowed keyword detected: DELETE");
+        rejected("SELECT id FROM dbo.orders -- comment\nEXEC sp_who", "Disallowed keyword detected: EXEC");
+        rejected("SELECT id FROM dbo.orders WHERE 1 = 1 OR/**/dRoP", "Disallowed keyword detected: DROP");
+        rejected("SELECT * FROM OPENROWSET('SQLNCLI', 'x', 'SELECT 1')", "Disallowed keyword detected: OPENROWSET");
+    }
+
+    @Test
+    void blockCommentsNest() {
+        // T-SQL closes the outer comment only at the second */, so DROP is still commented out.
+        ok("SELECT id FROM dbo.orders /* outer /* inner */ DROP TABLE dbo.orders */");
+        // Read without nesting, the first */ would end the comment and hide this DELETE behind it.
+        rejected("SELECT id FROM dbo.orders /* outer /* inner */ still comment */ DELETE FROM dbo.orders",
+                "Disallowed keyword detected: DELETE");
+    }
+
+    @Test
+    void multipleStatements() {
+        rejected("SELECT 1; SELECT 2", "Multiple statements not allowed.");
+        rejected("SELECT id FROM dbo.orders;DROP TABLE dbo.orders", "Multiple statements not allowed.");
+        rejected("SELECT 1 /* ; */ ; -- x\n SELECT 2", "Multiple statements not allowed.");
+        ok("SELECT 1;");
+        ok("SELECT 1 ; ;  -- trailing");
+        ok("SELECT ';' AS semi FROM dbo.orders");
+    }
+
+    @Test
+    void tablesOutsideTheAllowlist() {
+        rejected("SELECT * FROM dbo.secrets", "dbo.secrets");
+        rejected("SELECT * FROM secrets", "dbo.secrets");
+        rejected("SELECT * FROM [dbo].[secrets]", "dbo.secrets");
+        rejected("SELECT * FROM \"dbo\".\"Secrets\"", "dbo.secrets");
+        rejected("SELECT * FROM sales.orders", "sales.orders");
+        rejected("SELECT * FROM otherdb.dbo.orders", "otherdb.dbo.orders");
+        rejected("SELECT * FROM otherdb..orders", "otherdb..orders");
+        rejected("SELECT * FROM dbo.orders o JOIN dbo.secrets s ON s.id = o.id", "dbo.secrets");
+        rejected("SELECT * FROM dbo.orders o LEFT OUTER JOIN (dbo.customers c JOIN dbo.secrets s ON 1 = 1) ON 1 = 1",
+                "dbo.secrets");
+        rejected("SELECT * FROM dbo.orders WHERE id IN (SELECT order_id FROM dbo.secrets)", "dbo.secrets");
+        ok("SELECT * FROM [dbo].[Orders] AS o JOIN Customers c ON c.id = o.customer_id");
+    }
+
+    @Test
+    void commaJoins() {
+        ok("SELECT * FROM dbo.orders o, dbo.customers c WHERE c.id = o.customer_id");
+        rejected("SELECT * FROM dbo.orders o, dbo.customers c, dbo.secrets s", "dbo.secrets");
+        rejected("SELECT * FROM dbo.orders AS o, [dbo].[secrets]", "dbo.secrets");
+        // Commas in the select list and in function arguments are no FROM list
+        ok("SELECT id, COALESCE(status, 'none'), name FROM dbo.orders o, dbo.customers c");
+        ok("SELECT * FROM dbo.orders o WHERE o.id IN (1, 2, 3) ORDER BY o.id, o.status");
+        // The FROM list goes on past a join predicate and a temporal clause
+        rejected("SELECT * FROM dbo.orders o JOIN dbo.customers c ON c.id = o.customer_id, sys.sql_logins l",
+                "sys.sql_logins");
+        rejected("SELECT * FROM dbo.orders FOR SYSTEM_TIME ALL, sys.objects", "sys.objects");
+        rejected("SELECT * FROM dbo.orders FOR SYSTEM_TIME AS OF '2024-01-01' o, dbo.secrets s", "dbo.secrets");
+        rejected("SELECT * FROM dbo.orders o JOIN dbo.customers c ON c.id IN (1, 2), dbo.secrets", "dbo.secrets");
+        ok("SELECT * FROM dbo.orders o JOIN dbo.customers c ON c.id = o.customer_id, dbo.products p");
+        // ...but ends at FOR XML / FOR JSON and the clauses after the FROM list
+        ok("SELECT id FROM dbo.orders FOR XML PATH('order'), ROOT('orders')");
+        ok("SELECT id FROM dbo.orders FOR JSON PATH, ROOT('orders')");
+        ok("SELECT status, COUNT(*) FROM dbo.orders GROUP BY status, id ORDER BY status, id");
+    }
+
+    @Test
+    void commonTableExpressions() {
+        ok("WITH recent AS (SELECT * FROM dbo.orders) SELECT * FROM recent");
+        ok("WITH recent (id, total) AS (SELECT id, 1 FROM dbo.orders), big AS (SELECT * FROM recent) "
+                + "SELECT * FROM big b JOIN [recent] r ON r.id = b.id");
+        rejected("WITH r AS (SELECT * FROM dbo.secrets) SELECT * FROM r", "dbo.secrets");
+        rejected("WITH r AS (SELECT * FROM dbo.orders) SELECT * FROM r JOIN dbo.secrets s ON 1 = 1", "dbo.secrets");
+        rejected("WITH r AS (SELECT * FROM dbo.orders), s AS (SELECT * FROM r, dbo.secrets) SELECT * FROM s",
+                "dbo.secrets");
+        // A CTE name only shadows an unqualified reference
+        rejected("WITH secrets AS (SELECT 1 AS n) SELECT * FROM dbo.secrets", "dbo.secrets");
+    }
+
+    @Test
+    void apply() {
+        ok("SELECT * FROM dbo.customers c CROSS APPLY (SELECT TOP 1 * FROM dbo.orders o WHERE o.customer_id = c.id) x");
+        rejected("SELECT * FROM dbo.customers c CROSS APPLY (SELECT TOP 1 * FROM dbo.secrets s) x", "dbo.secrets");
+        rejected("SELECT * FROM dbo.customers c OUTER APPLY dbo.customer_secrets(c.id) x", "dbo.customer_secrets");
+    }
+
+    @Test
+    void functionsOutsideTheAllowlist() {
+        ok("SELECT value FROM STRING_SPLIT('a,b', ',')");
+        ok("SELECT * FROM dbo.products p CROSS APPLY OPENJSON(p.name) j");
+        rejected("SELECT * FROM dbo.fn_all_passwords()", "dbo.fn_all_passwords");
+        rejected("SELECT * FROM fn_dblog(NULL, NULL)", "dbo.fn_dblog");
+        rejected("SELECT * FROM sys.dm_exec_sessions", "sys.dm_exec_sessions");
+        // The safe list is for the bare built-ins only
+        rejected("SELECT * FROM evil.string_split('a', ',')", "evil.string_split");
+    }
+
+    @Test
+    void unterminatedInput() {
+        rejected("SELECT 'open FROM dbo.orders", "Unterminated string literal.");
+        rejected("SELECT N'open", "Unterminated string literal.");
+        rejected("SELECT [open FROM dbo.orders", "Unterminated identifier.");
+        rejected("SELECT \"open FROM dbo.orders", "Unterminated identifier.");
+        rejected("SELECT 1 /* open", "Unterminated comment.");
+        rejected("SELECT 1 /* outer /* inner */", "Unterminated comment.");
+    }
+
+    @Test
+    void outcomesAreCached() {
+        String bad = "SELECT * FROM dbo.secrets";
+        String first = assertThrows(IllegalArgumentException.class, () -> validator.validate(bad)).getMessage();
+        String again = assertThrows(IllegalArgumentException.class, () -> validator.validate(bad)).getMessage();
+        assertEquals(first, again);
+        assertThrows(IllegalArgumentException.class, () -> validator.validate("   "));
+    }
+
+    private void ok(String sql) {
+        assertDoesNotThrow(() -> validator.validate(sql), sql);
+    }
+
+    private void rejected(String sql, String message) {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> validator.validate(sql), sql);
+        assertTrue(ex.getMessage().contains(message), () -> sql + " -> " + ex.getMessage());
+    }
+}